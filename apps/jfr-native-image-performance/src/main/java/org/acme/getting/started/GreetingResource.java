@@ -38,4 +38,39 @@ public class GreetingResource {
     public String regular(String text) {
         return service.regular(text);
     }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/allocation/{text}")
+    public String allocation(String text) {
+        return service.allocation(text);
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/contention/{text}")
+    public String contention(String text) {
+        return service.contention(text);
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/exceptions/{text}")
+    public String exceptions(String text) {
+        return service.exceptions(text);
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/socket/{text}")
+    public String socket(String text) {
+        return service.socket(text);
+    }
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @Path("/virtual/{text}")
+    public String virtual(String text) throws Exception {
+        return service.virtual(text);
+    }
 }
\ No newline at end of file
@@ -2,10 +2,38 @@ package org.acme.getting.started;
 
 import jakarta.enterprise.context.ApplicationScoped;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
 @ApplicationScoped
 public class GreetingService {
+
+    // JDK 21+, looked up with constant arguments, so as native-image registers it on its own
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = newVirtualThreadPerTaskExecutor();
+
+    private final Object monitor = new Object();
+
+    private static Method newVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
     public String greeting(String name) {
         return "hello " + name + "JFR TEST ";
     }
@@ -51,4 +79,129 @@ public class GreetingService {
         LockSupport.parkNanos(this,1);
         return result;
     }
+
+    /** Allocation sampling, i.e. jdk.ObjectAllocationSample. Arrays of various sizes, some of them too big for a TLAB,
+     * and short-lived strings.*/
+    public String allocation(String text) {
+        final List<Object> objects = new ArrayList<>();
+        long size = 0;
+        for (int i = 0; i < 200; i++) {
+            final byte[] b = new byte[1024 * (1 + i % 16)];
+            b[i % b.length] = (byte) text.charAt(i % text.length());
+            objects.add(b);
+            objects.add(text + i);
+            size += b.length;
+        }
+        return Long.toString(size + objects.size());
+    }
+
+    /** Contended monitors, i.e. jdk.JavaMonitorEnter and jdk.JavaMonitorWait. All requests share one monitor,
+     * waiting on it lets other requests in and makes them compete to get it back.*/
+    public String contention(String text) {
+        int result = 0;
+        for (int i = 0; i < 100; i++) {
+            synchronized (monitor) {
+                result += text.hashCode() ^ i;
+                if (i % 20 == 0) {
+                    try {
+                        monitor.wait(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+        }
+        return Integer.toString(result);
+    }
+
+    /** Thrown and caught exceptions, i.e. jdk.JavaExceptionThrow, jdk.JavaErrorThrow and jdk.ExceptionStatistics.*/
+    public String exceptions(String text) {
+        int caught = 0;
+        for (int i = 0; i < 100; i++) {
+            try {
+                // The text is not a number, the way input validation usually fails
+                caught += Integer.parseInt(text + i);
+            } catch (NumberFormatException e) {
+                caught++;
+            }
+            try {
+                throw new IllegalStateException(text);
+            } catch (IllegalStateException e) {
+                caught += e.getMessage().length() > 0 ? 1 : 0;
+            }
+        }
+        return Integer.toString(caught);
+    }
+
+    /** Socket I/O, i.e. jdk.SocketRead and jdk.SocketWrite. Round trips over a loopback connection.*/
+    public String socket(String text) {
+        final byte[] payload = text.repeat(1 + 1024 / Math.max(1, text.length())).getBytes();
+        long echoed = 0;
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+             Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            final OutputStream clientOut = client.getOutputStream();
+            final InputStream clientIn = client.getInputStream();
+            final OutputStream acceptedOut = accepted.getOutputStream();
+            final InputStream acceptedIn = accepted.getInputStream();
+            final byte[] buffer = new byte[payload.length];
+            for (int i = 0; i < 10; i++) {
+                clientOut.write(payload);
+                clientOut.flush();
+                acceptedOut.write(buffer, 0, readFully(acceptedIn, buffer));
+                acceptedOut.flush();
+                echoed += readFully(clientIn, buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Long.toString(echoed);
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int read = 0;
+        while (read < buffer.length) {
+            final int r = in.read(buffer, read, buffer.length - read);
+            if (r < 0) {
+                throw new IOException("Connection closed after " + read + " bytes");
+            }
+            read += r;
+        }
+        return read;
+    }
+
+    /** Virtual threads, i.e. jdk.VirtualThreadStart, jdk.VirtualThreadEnd and jdk.VirtualThreadPinned.
+     * Half of the threads park while holding a monitor, which pins them to their carrier.
+     * Before JDK 21, platform threads do the same work, so as the endpoint still answers.*/
+    public String virtual(String text) throws Exception {
+        final ExecutorService executor = NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null ?
+                (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null) :
+                Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                final boolean pinned = i % 2 == 0;
+                final int n = i;
+                futures.add(executor.submit(() -> {
+                    if (pinned) {
+                        synchronized (this) {
+                            LockSupport.parkNanos(100_000);
+                        }
+                    } else {
+                        LockSupport.parkNanos(100_000);
+                    }
+                    return text.hashCode() ^ n;
+                }));
+            }
+            int result = 0;
+            for (Future<Integer> f : futures) {
+                result += f.get();
+            }
+            return (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null ? "virtual " : "platform ") + result;
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
 }
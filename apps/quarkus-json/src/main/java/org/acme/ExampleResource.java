@@ -1,5 +1,12 @@
 package org.acme;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
@@ -7,8 +14,13 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
@@ -21,6 +33,17 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 @Path("/")
 public class ExampleResource {
 
+    private static final int RECORDS = 10_000;
+
+    private final ObjectMapper mapper;
+    // Chunks are flushed as the buffer fills up, not after each record
+    private final ObjectWriter recordWriter;
+
+    public ExampleResource(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.recordWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
     @GET
     @Path("/ready")
     @Produces(MediaType.TEXT_PLAIN)
@@ -33,33 +56,59 @@ public class ExampleResource {
     @Produces(MediaType.APPLICATION_JSON)
     public Response hello() {
         final Map<Integer, Record> m = new HashMap<>();
-        for (int i = 0; i < 10_000; i++) {
-            final Record r = new Record();
-            r.s0 = "A".repeat(100);
-            r.s1 = "B".repeat(200);
-            r.s2 = "C".repeat(300);
-            r.s3 = "D".repeat(10);
-            r.s4 = "E".repeat(20);
-            r.s5 = "F".repeat(30);
-            r.s6 = "G".repeat(40);
-            r.s7 = "H".repeat(50);
-            r.s8 = "I".repeat(60);
-            r.s9 = "J".repeat(60);
-            r.i0 = Integer.MAX_VALUE;
-            r.i1 = Integer.MIN_VALUE;
-            r.i2 = 0;
-            r.i3 = 10;
-            r.i4 = 20;
-            r.i5 = 30;
-            r.i6 = 40;
-            r.l0 = Stream.of(lorem).collect(Collectors.toList());
-            r.m0 = Stream.of(lorem).collect(Collectors.toMap(String::toLowerCase, String::toUpperCase, (x, y) -> y));
-            m.put(i, r);
-            r.bi0 = new BigInteger("1".repeat(128));
+        for (int i = 0; i < RECORDS; i++) {
+            m.put(i, record());
         }
         return Response.ok().entity(m).build();
     }
 
+    /**
+     * Writes the same JSON as /dump, byte for byte, one record at a time, without the whole map on the heap.
+     * Integer keys 0..RECORDS-1 iterate in ascending order in the HashMap /dump serializes, so do they here.
+     */
+    @GET
+    @Path("/dump/stream")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response dumpStream() {
+        final StreamingOutput stream = out -> {
+            // Closing the generator flushes it and returns its buffers to the recycler
+            try (JsonGenerator g = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+                g.writeStartObject();
+                for (int i = 0; i < RECORDS; i++) {
+                    g.writeFieldName(Integer.toString(i));
+                    recordWriter.writeValue(g, record());
+                }
+                g.writeEndObject();
+            }
+        };
+        return Response.ok().entity(stream).build();
+    }
+
+    private static Record record() {
+        final Record r = new Record();
+        r.s0 = "A".repeat(100);
+        r.s1 = "B".repeat(200);
+        r.s2 = "C".repeat(300);
+        r.s3 = "D".repeat(10);
+        r.s4 = "E".repeat(20);
+        r.s5 = "F".repeat(30);
+        r.s6 = "G".repeat(40);
+        r.s7 = "H".repeat(50);
+        r.s8 = "I".repeat(60);
+        r.s9 = "J".repeat(60);
+        r.i0 = Integer.MAX_VALUE;
+        r.i1 = Integer.MIN_VALUE;
+        r.i2 = 0;
+        r.i3 = 10;
+        r.i4 = 20;
+        r.i5 = 30;
+        r.i6 = 40;
+        r.l0 = Stream.of(lorem).collect(Collectors.toList());
+        r.m0 = Stream.of(lorem).collect(Collectors.toMap(String::toLowerCase, String::toUpperCase, (x, y) -> y));
+        r.bi0 = new BigInteger("1".repeat(128));
+        return r;
+    }
+
     @POST
     @Path("/load")
     @Produces(MediaType.TEXT_PLAIN)
@@ -72,40 +121,70 @@ public class ExampleResource {
     @Path("/load/hash")
     @Produces(MediaType.TEXT_PLAIN)
     @Consumes(MediaType.APPLICATION_JSON)
-    public Response loadHash(Map<Integer, Record> m) throws NoSuchAlgorithmException {
+    public Response loadHash(Map<Integer, Record> m) throws NoSuchAlgorithmException, IOException {
         final ByteArrayOutputStream ba = new ByteArrayOutputStream(100_000_000);
-        m.forEach((k, v) -> {
-                    ba.writeBytes(k.toString().getBytes(UTF_8));
-                    ba.writeBytes(v.s0.getBytes(UTF_8));
-                    ba.writeBytes(v.s1.getBytes(UTF_8));
-                    ba.writeBytes(v.s2.getBytes(UTF_8));
-                    ba.writeBytes(v.s3.getBytes(UTF_8));
-                    ba.writeBytes(v.s4.getBytes(UTF_8));
-                    ba.writeBytes(v.s5.getBytes(UTF_8));
-                    ba.writeBytes(v.s6.getBytes(UTF_8));
-                    ba.writeBytes(v.s7.getBytes(UTF_8));
-                    ba.writeBytes(v.s8.getBytes(UTF_8));
-                    ba.writeBytes(v.s9.getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i0).getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i1).getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i2).getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i3).getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i4).getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i5).getBytes(UTF_8));
-                    ba.writeBytes(Integer.toString(v.i6).getBytes(UTF_8));
-                    v.l0.forEach(s -> ba.writeBytes(s.getBytes(UTF_8)));
-                    v.m0.forEach((x, y) -> {
-                        ba.writeBytes(x.getBytes(UTF_8));
-                        ba.writeBytes(y.getBytes(UTF_8));
-                    });
-                    ba.writeBytes(v.bi0.toByteArray());
-                }
-        );
+        for (Map.Entry<Integer, Record> e : m.entrySet()) {
+            write(ba, e.getKey(), e.getValue());
+        }
         final MessageDigest digest = MessageDigest.getInstance("SHA-256");
         digest.update(ba.toByteArray());
         return Response.ok().entity(String.format("%064x%n", new BigInteger(1, digest.digest()))).build();
     }
 
+    /**
+     * The same hash as /load/hash, the body is parsed one record at a time and digested as it goes,
+     * neither the map nor the bytes to digest are held on the heap. Records come in the order of the document,
+     * as they do in the LinkedHashMap Jackson deserializes /load/hash's body to.
+     */
+    @POST
+    @Path("/load/hash/stream")
+    @Produces(MediaType.TEXT_PLAIN)
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response loadHashStream(InputStream body) throws NoSuchAlgorithmException, IOException {
+        final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        try (JsonParser p = mapper.getFactory().createParser(body);
+             DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return Response.status(Response.Status.BAD_REQUEST).entity("JSON object expected").build();
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                final Integer k = Integer.valueOf(p.getCurrentName());
+                p.nextToken();
+                write(out, k, mapper.readValue(p, Record.class));
+            }
+        }
+        return Response.ok().entity(String.format("%064x%n", new BigInteger(1, digest.digest()))).build();
+    }
+
+    private static void write(OutputStream out, Integer k, Record v) throws IOException {
+        out.write(k.toString().getBytes(UTF_8));
+        out.write(v.s0.getBytes(UTF_8));
+        out.write(v.s1.getBytes(UTF_8));
+        out.write(v.s2.getBytes(UTF_8));
+        out.write(v.s3.getBytes(UTF_8));
+        out.write(v.s4.getBytes(UTF_8));
+        out.write(v.s5.getBytes(UTF_8));
+        out.write(v.s6.getBytes(UTF_8));
+        out.write(v.s7.getBytes(UTF_8));
+        out.write(v.s8.getBytes(UTF_8));
+        out.write(v.s9.getBytes(UTF_8));
+        out.write(Integer.toString(v.i0).getBytes(UTF_8));
+        out.write(Integer.toString(v.i1).getBytes(UTF_8));
+        out.write(Integer.toString(v.i2).getBytes(UTF_8));
+        out.write(Integer.toString(v.i3).getBytes(UTF_8));
+        out.write(Integer.toString(v.i4).getBytes(UTF_8));
+        out.write(Integer.toString(v.i5).getBytes(UTF_8));
+        out.write(Integer.toString(v.i6).getBytes(UTF_8));
+        for (String s : v.l0) {
+            out.write(s.getBytes(UTF_8));
+        }
+        for (Map.Entry<String, String> e : v.m0.entrySet()) {
+            out.write(e.getKey().getBytes(UTF_8));
+            out.write(e.getValue().getBytes(UTF_8));
+        }
+        out.write(v.bi0.toByteArray());
+    }
+
     public static final String[] lorem = new String[]{
             "Lorem", "ipsum", "dolor", "sit", "amet,", "consectetur", "adipiscing", "elit.", "Nulla", "lacinia", "mollis",
             "rutrum.", "Orci", "varius", "natoque", "penatibus", "et", "magnis", "dis", "parturient", "montes,", "nascetur",
@@ -19,8 +19,11 @@ package org.acme.vertx;
 import java.util.ArrayList;
 import java.util.List;
 
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
+import io.vertx.core.json.JsonObject;
 import io.vertx.mutiny.pgclient.PgPool;
+import io.vertx.mutiny.sqlclient.PreparedQuery;
 import io.vertx.mutiny.sqlclient.Row;
 import io.vertx.mutiny.sqlclient.RowSet;
 import io.vertx.mutiny.sqlclient.Tuple;
@@ -55,6 +58,22 @@ public class Fruit {
                 });
     }
 
+    /**
+     * Reads the fruits with a cursor, fetchSize rows at a time, as they are consumed, so as the memory
+     * does not grow with the table. Cursors live in a transaction, it is rolled back if the stream
+     * fails or is cancelled, e.g. the client went away.
+     */
+    public static Multi<Fruit> stream(PgPool client, int fetchSize) {
+        return client.getConnection()
+                .onItem().transformToMulti(connection -> connection.begin()
+                        .onItem().transformToMulti(transaction -> connection.prepare("SELECT id, name FROM fruits ORDER BY id ASC")
+                                .onItem().transformToMulti(statement -> statement.createStream(fetchSize).toMulti())
+                                .onTermination().call((failure, cancelled) ->
+                                        failure == null && !cancelled ? transaction.commit() : transaction.rollback()))
+                        .onTermination().invoke(connection::closeAndForget))
+                .onItem().transform(Fruit::from);
+    }
+
     public static Uni<Fruit> findById(PgPool client, Long id) {
         return client.preparedQuery("SELECT id, name FROM fruits WHERE id = $1").execute(Tuple.of(id))
                 .onItem().transform(RowSet::iterator)
@@ -76,6 +95,90 @@ public class Fruit {
                 .onItem().transform(pgRowSet -> pgRowSet.rowCount() == 1);
     }
 
+    /**
+     * One prepared statement executed for all the fruits in a single round trip, i.e. the driver sends
+     * all the Bind/Execute messages with one Sync.
+     *
+     * @return the number of inserted rows
+     */
+    public static Uni<Integer> saveAll(PgPool client, List<Fruit> fruits) {
+        return client.preparedQuery("INSERT INTO fruits (name) VALUES ($1)").executeBatch(names(fruits))
+                .onItem().transform(Fruit::rowCount);
+    }
+
+    /**
+     * @return the number of updated rows
+     */
+    public static Uni<Integer> updateAll(PgPool client, List<Fruit> fruits) {
+        return client.preparedQuery("UPDATE fruits SET name = $1 WHERE id = $2").executeBatch(namesAndIds(fruits))
+                .onItem().transform(Fruit::rowCount);
+    }
+
+    /**
+     * One query per fruit, all of them sent on the same connection without waiting for the previous ones
+     * to complete, up to the client's pipelining limit.
+     *
+     * @return the number of inserted rows
+     */
+    public static Uni<Integer> savePipelined(PgPool client, List<Fruit> fruits) {
+        return client.withConnection(connection -> pipeline(
+                connection.preparedQuery("INSERT INTO fruits (name) VALUES ($1)"), names(fruits)));
+    }
+
+    /**
+     * @return the number of updated rows
+     */
+    public static Uni<Integer> updatePipelined(PgPool client, List<Fruit> fruits) {
+        return client.withConnection(connection -> pipeline(
+                connection.preparedQuery("UPDATE fruits SET name = $1 WHERE id = $2"), namesAndIds(fruits)));
+    }
+
+    private static Uni<Integer> pipeline(PreparedQuery<RowSet<Row>> query, List<Tuple> tuples) {
+        final List<Uni<RowSet<Row>>> executions = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            executions.add(query.execute(tuple));
+        }
+        return Uni.combine().all().unis(executions)
+                .combinedWith(rowSets -> {
+                    int count = 0;
+                    for (Object rowSet : rowSets) {
+                        count += ((RowSet<?>) rowSet).rowCount();
+                    }
+                    return count;
+                });
+    }
+
+    private static List<Tuple> names(List<Fruit> fruits) {
+        final List<Tuple> tuples = new ArrayList<>(fruits.size());
+        for (Fruit fruit : fruits) {
+            tuples.add(Tuple.of(fruit.name));
+        }
+        return tuples;
+    }
+
+    private static List<Tuple> namesAndIds(List<Fruit> fruits) {
+        final List<Tuple> tuples = new ArrayList<>(fruits.size());
+        for (Fruit fruit : fruits) {
+            tuples.add(Tuple.of(fruit.name, fruit.id));
+        }
+        return tuples;
+    }
+
+    /**
+     * A batch yields a row set per execution, chained by next().
+     */
+    private static int rowCount(RowSet<Row> rowSet) {
+        int count = 0;
+        for (RowSet<Row> r = rowSet; r != null; r = r.next()) {
+            count += r.rowCount();
+        }
+        return count;
+    }
+
+    public String toJson() {
+        return new JsonObject().put("id", id).put("name", name).encode();
+    }
+
     private static Fruit from(Row row) {
         return new Fruit(row.getLong("id"), row.getString("name"));
     }
@@ -17,9 +17,12 @@
 package org.acme.vertx;
 
 import java.net.URI;
+import java.util.List;
+import java.util.function.BiFunction;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
@@ -27,14 +30,18 @@ import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.annotations.SseElementType;
+import org.jboss.resteasy.annotations.Stream;
 import org.jboss.resteasy.annotations.jaxrs.PathParam;
 
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import io.vertx.mutiny.pgclient.PgPool;
 
@@ -50,6 +57,10 @@ public class FruitResource {
     @Inject
     PgPool client;
 
+    @Inject
+    @ConfigProperty(name = "myapp.stream.fetch-size", defaultValue = "100")
+    int fetchSize;
+
     @PostConstruct
     void config() {
         if (schemaCreate) {
@@ -73,6 +84,23 @@ public class FruitResource {
                 .onItem().transform(ResponseBuilder::build);
     }
 
+    @GET
+    @Path("stream/ndjson")
+    @Produces("application/x-ndjson")
+    @Stream(Stream.MODE.RAW)
+    public Multi<String> streamNdjson(@QueryParam("fetch") Integer fetch) {
+        return Fruit.stream(client, fetchSize(fetch))
+                .onItem().transform(fruit -> fruit.toJson() + "\n");
+    }
+
+    @GET
+    @Path("stream/sse")
+    @Produces(MediaType.SERVER_SENT_EVENTS)
+    @SseElementType(MediaType.APPLICATION_JSON)
+    public Multi<Fruit> streamSse(@QueryParam("fetch") Integer fetch) {
+        return Fruit.stream(client, fetchSize(fetch));
+    }
+
     @GET
     @Path("{id}")
     public Uni<Response> getSingle(@PathParam Long id) {
@@ -88,6 +116,30 @@ public class FruitResource {
                 .onItem().transform(uri -> Response.created(uri).build());
     }
 
+    @POST
+    @Path("batch")
+    public Uni<Response> createBatch(List<Fruit> fruits) {
+        return write(fruits, Fruit::saveAll);
+    }
+
+    @POST
+    @Path("pipelined")
+    public Uni<Response> createPipelined(List<Fruit> fruits) {
+        return write(fruits, Fruit::savePipelined);
+    }
+
+    @PUT
+    @Path("batch")
+    public Uni<Response> updateBatch(List<Fruit> fruits) {
+        return write(fruits, Fruit::updateAll);
+    }
+
+    @PUT
+    @Path("pipelined")
+    public Uni<Response> updatePipelined(List<Fruit> fruits) {
+        return write(fruits, Fruit::updatePipelined);
+    }
+
     @PUT
     @Path("{id}")
     public Uni<Response> update(@PathParam Long id, Fruit fruit) {
@@ -103,4 +155,22 @@ public class FruitResource {
                 .onItem().transform(deleted -> deleted ? Status.NO_CONTENT : Status.NOT_FOUND)
                 .onItem().transform(status -> Response.status(status).build());
     }
+
+    private int fetchSize(Integer fetch) {
+        if (fetch == null) {
+            return fetchSize;
+        }
+        if (fetch < 1) {
+            throw new BadRequestException("fetch must be a positive int, was: " + fetch);
+        }
+        return fetch;
+    }
+
+    private Uni<Response> write(List<Fruit> fruits, BiFunction<PgPool, List<Fruit>, Uni<Integer>> write) {
+        if (fruits == null || fruits.isEmpty()) {
+            return Uni.createFrom().item(Response.status(Status.BAD_REQUEST).build());
+        }
+        return write.apply(client, fruits)
+                .onItem().transform(count -> Response.ok(count).build());
+    }
 }
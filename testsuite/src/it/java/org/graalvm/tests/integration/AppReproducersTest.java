@@ -26,6 +26,7 @@ import org.graalvm.tests.integration.utils.Apps;
 import org.graalvm.tests.integration.utils.ContainerNames;
 import org.graalvm.tests.integration.utils.LogBuilder;
 import org.graalvm.tests.integration.utils.Logs;
+import org.graalvm.tests.integration.utils.ResourceAllocator;
 import org.graalvm.tests.integration.utils.versions.IfMandrelVersion;
 import org.graalvm.tests.integration.utils.versions.UsedVersion;
 import org.jboss.logging.Logger;
@@ -34,6 +35,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.api.parallel.ResourceLock;
 
 import java.io.File;
 import java.io.IOException;
@@ -82,6 +87,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  * @author Michal Karm Babacek <karm@redhat.com>
  */
 @Tag("reproducers")
+@Execution(ExecutionMode.CONCURRENT)
+@ExtendWith(ResourceAllocator.class)
 public class AppReproducersTest {
 
     private static final Logger LOGGER = Logger.getLogger(AppReproducersTest.class.getName());
@@ -103,7 +110,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -454,7 +461,7 @@ public class AppReproducersTest {
         LOGGER.info("Testing app: " + app);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -495,6 +502,7 @@ public class AppReproducersTest {
 
     @Test
     @Tag("builder-image")
+    @ResourceLock(ResourceAllocator.CONTAINERS)
     @Tag("imageio")
     @IfMandrelVersion(min = "21.1", inContainer = true)
     public void imageioAWTContainerTest(TestInfo testInfo) throws IOException, InterruptedException {
@@ -516,8 +524,8 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
-        final File metaINF = Path.of(BASE_DIR, app.dir, "src", "main", "resources", "META-INF", "native-image").toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
+        final File metaINF = Path.of(appDir.getAbsolutePath(), "src", "main", "resources", "META-INF", "native-image").toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -697,7 +705,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -780,6 +788,7 @@ public class AppReproducersTest {
 
     @Test
     @Tag("builder-image")
+    @ResourceLock(ResourceAllocator.CONTAINERS)
     @IfMandrelVersion(minJDK = "21.0.3", inContainer = true)
     public void monitorFieldOffsetContainerTest(TestInfo testInfo) throws IOException, InterruptedException {
         monitorFieldOffsetOK(testInfo, Apps.MONITOR_OFFSET_OK_BUILDER_IMAGE);
@@ -798,7 +807,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final boolean inContainer = app.runtimeContainer != ContainerNames.NONE;
@@ -835,7 +844,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final boolean inContainer = app.runtimeContainer != ContainerNames.NONE;
@@ -860,6 +869,7 @@ public class AppReproducersTest {
 
     @Test
     @Tag("builder-image")
+    @ResourceLock(ResourceAllocator.CONTAINERS)
     @IfMandrelVersion(minJDK = "21.0.0", inContainer = true)
     public void jdkReflectionsContainerTest(TestInfo testInfo) throws IOException, InterruptedException {
         jdkReflections(testInfo, Apps.JDK_REFLECTIONS_BUILDER_IMAGE);
@@ -877,7 +887,7 @@ public class AppReproducersTest {
         File buildLog = null;
         File runLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final boolean inContainer = app.runtimeContainer != ContainerNames.NONE;
@@ -917,6 +927,7 @@ public class AppReproducersTest {
 
     @Test
     @Tag("builder-image")
+    @ResourceLock(ResourceAllocator.CONTAINERS)
     @IfMandrelVersion(min = "23.1.5", max = "23.1.999", inContainer = true)
     public void forSerializationContainer23_1Test(TestInfo testInfo) throws IOException, InterruptedException {
         forSerialization(testInfo, Apps.FOR_SERIALIZATION_BUILDER_IMAGE);
@@ -930,6 +941,7 @@ public class AppReproducersTest {
 
     @Test
     @Tag("builder-image")
+    @ResourceLock(ResourceAllocator.CONTAINERS)
     @IfMandrelVersion(min = "24.2.0", inContainer = true)
     public void forSerializationContainerPost24_2Test(TestInfo testInfo) throws IOException, InterruptedException {
         forSerialization(testInfo, Apps.FOR_SERIALIZATION_BUILDER_IMAGE);
@@ -945,8 +957,8 @@ public class AppReproducersTest {
         LOGGER.info("Testing app: " + app);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
-        final File metaINF = Path.of(BASE_DIR, app.dir, "src", "main", "resources", "META-INF", "native-image").toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
+        final File metaINF = Path.of(appDir.getAbsolutePath(), "src", "main", "resources", "META-INF", "native-image").toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final boolean inContainer = app.runtimeContainer != ContainerNames.NONE;
@@ -999,7 +1011,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -1044,7 +1056,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -1088,7 +1100,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -1133,7 +1145,7 @@ public class AppReproducersTest {
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -1146,7 +1158,7 @@ public class AppReproducersTest {
 
             builderRoutine(app, report, cn, mn, appDir, processLog, null, getSwitches(app));
 
-            final File inputData = new File(BASE_DIR + File.separator + app.dir + File.separator + "target" + File.separator + "test_data.txt");
+            final File inputData = Path.of(appDir.getAbsolutePath(), "target", "test_data.txt").toFile();
 
             LOGGER.info("Running JVM mode...");
             long start = System.currentTimeMillis();
@@ -24,6 +24,7 @@ import org.graalvm.tests.integration.utils.Apps;
 import org.graalvm.tests.integration.utils.ContainerNames;
 import org.graalvm.tests.integration.utils.GDBSession;
 import org.graalvm.tests.integration.utils.Logs;
+import org.graalvm.tests.integration.utils.ResourceAllocator;
 import org.graalvm.tests.integration.utils.WebpageTester;
 import org.graalvm.tests.integration.utils.versions.QuarkusVersion;
 import org.graalvm.tests.integration.utils.versions.UsedVersion;
@@ -33,6 +34,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+import org.junit.jupiter.api.parallel.ResourceLock;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -90,6 +95,8 @@ import static org.junit.jupiter.api.Assertions.fail;
  * @author Michal Karm Babacek <karm@redhat.com>
  */
 @Tag("reproducers")
+@Execution(ExecutionMode.CONCURRENT)
+@ExtendWith(ResourceAllocator.class)
 public class DebugSymbolsTest {
 
     private static final Logger LOGGER = Logger.getLogger(DebugSymbolsTest.class.getName());
@@ -107,7 +114,7 @@ public class DebugSymbolsTest {
         LOGGER.info("Testing app: " + app);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -197,12 +204,14 @@ public class DebugSymbolsTest {
     @Test
     @Tag("debugSymbolsQuarkus")
     @DisabledOnOs({OS.WINDOWS, OS.MAC}) // This targets GCC/GDB toolchain specifically.
+    // GDBSession GOTO URLs are on 8080
+    @ResourceLock(ResourceAllocator.DEFAULT_PORTS)
     public void debugSymbolsQuarkus(TestInfo testInfo) throws IOException, InterruptedException {
         final Apps app = Apps.DEBUG_QUARKUS_FULL_MICROPROFILE;
         LOGGER.info("Testing app: " + app);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         String patch = null;
@@ -305,13 +314,15 @@ public class DebugSymbolsTest {
     @Test
     @Tag("debugSymbolsQuarkus")
     @Tag("builder-image")
+    @ResourceLock(ResourceAllocator.CONTAINERS)
+    @ResourceLock(ResourceAllocator.DEFAULT_PORTS)
     @DisabledOnOs({ OS.WINDOWS, OS.MAC }) // This targets GCC/GDB toolchain specifically.
     public void debugSymbolsQuarkusContainer(TestInfo testInfo) throws IOException, InterruptedException {
         final Apps app = Apps.DEBUG_QUARKUS_BUILDER_IMAGE_VERTX;
         LOGGER.info("Testing app: " + app);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final Pattern dbReady = Pattern.compile(".*listening on IPv4 address.*port 5432.*");
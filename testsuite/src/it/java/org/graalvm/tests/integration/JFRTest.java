@@ -21,10 +21,16 @@ package org.graalvm.tests.integration;
 
 import org.graalvm.home.Version;
 import org.graalvm.tests.integration.utils.Apps;
+import org.graalvm.tests.integration.utils.BuildScheduler;
 import org.graalvm.tests.integration.utils.Commands;
 import org.graalvm.tests.integration.utils.ContainerNames;
+import org.graalvm.tests.integration.utils.JFRAnalyzer;
 import org.graalvm.tests.integration.utils.LogBuilder;
 import org.graalvm.tests.integration.utils.Logs;
+import org.graalvm.tests.integration.utils.PairedComparison;
+import org.graalvm.tests.integration.utils.ProcessSampler;
+import org.graalvm.tests.integration.utils.ResourceAllocator;
+import org.graalvm.tests.integration.utils.SampleStats;
 import org.graalvm.tests.integration.utils.WebpageTester;
 import org.graalvm.tests.integration.utils.versions.IfMandrelVersion;
 import org.graalvm.tests.integration.utils.versions.IfQuarkusVersion;
@@ -37,11 +43,11 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Isolated;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
@@ -51,11 +57,15 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
@@ -78,7 +88,7 @@ import static org.graalvm.tests.integration.utils.Commands.findExecutable;
 import static org.graalvm.tests.integration.utils.Commands.getBaseDir;
 import static org.graalvm.tests.integration.utils.Commands.getContainerMemoryKb;
 import static org.graalvm.tests.integration.utils.Commands.getPodmanMachineSSHPort;
-import static org.graalvm.tests.integration.utils.Commands.getRSSkB;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
 import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
 import static org.graalvm.tests.integration.utils.Commands.getUnixUIDGID;
 import static org.graalvm.tests.integration.utils.Commands.openSSHTunnel;
@@ -88,11 +98,13 @@ import static org.graalvm.tests.integration.utils.Commands.removeContainers;
 import static org.graalvm.tests.integration.utils.Commands.replaceSwitchesInCmd;
 import static org.graalvm.tests.integration.utils.Commands.runCommand;
 import static org.graalvm.tests.integration.utils.Commands.stopAllRunningContainers;
+import static org.graalvm.tests.integration.utils.Commands.stopRunningContainer;
 import static org.graalvm.tests.integration.utils.Commands.waitForTcpClosed;
 import static org.graalvm.tests.integration.utils.Logs.getLogsDir;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
 /**
  * Tests for build and start of applications with some real source code.
@@ -102,6 +114,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  */
 @Tag("reproducers")
 @DisabledOnOs({OS.WINDOWS})
+// Measures, never runs alongside other tests
+@Isolated
+@ExtendWith(ResourceAllocator.class)
 public class JFRTest {
 
     private static final Logger LOGGER = Logger.getLogger(JFRTest.class.getName());
@@ -121,9 +136,53 @@ public class JFRTest {
         }
     }
 
+    /**
+     * Workloads of apps/jfr-native-image-performance GreetingService, each stressing a different category of events.
+     */
     public enum Endpoint {
-        REGULAR,
-        WORK;
+        // jdk.ThreadPark, once per request
+        REGULAR(JFR_PERF_JFC),
+        // jdk.ThreadPark, a thousand times per request
+        WORK(JFR_PERF_JFC),
+        // jdk.ObjectAllocationSample
+        ALLOCATION(JFR_PERF_EVENTS_JFC),
+        // jdk.JavaMonitorEnter, jdk.JavaMonitorWait
+        CONTENTION(JFR_PERF_EVENTS_JFC),
+        // jdk.JavaExceptionThrow, jdk.JavaErrorThrow, jdk.ExceptionStatistics
+        EXCEPTIONS(JFR_PERF_EVENTS_JFC),
+        // jdk.SocketRead, jdk.SocketWrite
+        SOCKET(JFR_PERF_EVENTS_JFC),
+        // jdk.VirtualThreadStart, jdk.VirtualThreadEnd, jdk.VirtualThreadPinned
+        VIRTUAL(JFR_PERF_EVENTS_JFC, 21);
+
+        // JFR settings file the app with JFR is started with
+        public final String jfc;
+        public final int minJdk;
+
+        Endpoint(String jfc) {
+            this(jfc, 11);
+        }
+
+        Endpoint(String jfc, int minJdk) {
+            this.jfc = jfc;
+            this.minJdk = minJdk;
+        }
+
+        /**
+         * @return endpoints listed in JFR_PERF_TEST_ENDPOINTS, all by default, the JDK is new enough for
+         */
+        public static List<Endpoint> enabled(int jdkFeature) {
+            final String list = getProperty("JFR_PERF_TEST_ENDPOINTS", "");
+            final List<Endpoint> endpoints = new ArrayList<>();
+            for (Endpoint e : values()) {
+                if (e.minJdk > jdkFeature) {
+                    LOGGER.info("Endpoint " + e + " needs JDK " + e.minJdk + ", skipping.");
+                } else if (list.isBlank() || Arrays.asList(list.toLowerCase().split(",")).contains(e.toString())) {
+                    endpoints.add(e);
+                }
+            }
+            return endpoints;
+        }
 
         @Override
         public String toString() {
@@ -136,6 +195,19 @@ public class JFRTest {
     // https://bugs.openjdk.org/browse/JDK-8225312
     public static final String JFR_FLIGHT_RECORDER_HOTSPOT_TOKEN = "<FLIGHT_RECORDER>";
 
+    // The run commands of JFR_PERFORMANCE apps refer to this one, thresholds are set with it
+    public static final String JFR_PERF_JFC = "jfr-perf.jfc";
+    // Records events of all the Endpoint workloads, no matter how short, so as not to skew the thresholds it is a separate file
+    public static final String JFR_PERF_EVENTS_JFC = "jfr-perf-events.jfc";
+
+    // Number of JFR, no JFR pairs of trials per endpoint, each trial is a cold start and a Hyperfoil run.
+    // The exact two-sided Wilcoxon p-value cannot get below 0.0625 with 5 pairs, 6 is the fewest that can reach 0.05.
+    public static final int JFR_PERF_AB_PAIRS = Integer.parseInt(getProperty("JFR_PERF_TEST_AB_PAIRS", "6"));
+    // interleaved, i.e. JFR, no JFR, JFR, no JFR..., or randomized order within each pair
+    public static final PairedComparison.Order JFR_PERF_AB_ORDER = PairedComparison.Order.of(getProperty("JFR_PERF_TEST_AB_ORDER", "interleaved"));
+    // Which end of the overhead's confidence interval is compared to thresholds: lower, median or upper
+    public static final SampleStats.Bound JFR_PERF_THRESHOLD_BOUND = SampleStats.Bound.of(getProperty("JFR_PERF_TEST_THRESHOLD_BOUND", "median"));
+
     @Test
     @Tag("builder-image")
     @Tag("jfr")
@@ -153,7 +225,10 @@ public class JFRTest {
 
     /**
      * This test compares a simple Quarkus plaintext app built with and without JFR.
-     * The comparison is done using two different Hyperfoil benchmarks. This results in 4 runs total.
+     * The comparison is done using two different Hyperfoil benchmarks. For each of them, JFR_PERF_TEST_AB_PAIRS pairs
+     * of trials run, i.e. the app with JFR and the app without JFR alternate, each trial being a cold start and a Hyperfoil run.
+     * Each pair yields an overhead and the report shows the median overhead with its confidence interval and a paired
+     * Wilcoxon signed-rank test p-value, see {@link PairedComparison}.
      * Thresholds defined in the app directory are not absolute values (unlike in other perf tests in the project),
      * instead they are the percent difference between the runs with/without JFR. This allows for a relative comparison
      * to see how much JFR is impacting performance.
@@ -165,6 +240,7 @@ public class JFRTest {
      * the defined thresholds with respect to the "normal" case benchmark.
      *
      * e.g. in "work Measurements Diff %:" report, timeToFirstOKRequestMs 47 means that JFR was 47% slower than no JFR.
+     * JFR being faster is logged as 0.
      */
     @Test
     @Tag("jfr-perf")
@@ -191,12 +267,14 @@ public class JFRTest {
         LOGGER.info("Testing app: " + appJfr);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, appJfr.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(appJfr).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final Path measurementsLog = Paths.get(Logs.getLogsDir(cn, mn).toString(), "measurements.csv");
-        final Path jfrPerfJfc = Paths.get(appDir.getAbsolutePath(), "jfr-perf.jfc");
+        final Path jfrPerfJfc = Paths.get(appDir.getAbsolutePath(), JFR_PERF_JFC);
+        final Path jfrPerfEventsJfc = Paths.get(appDir.getAbsolutePath(), JFR_PERF_EVENTS_JFC);
         String patch = null;
+        final List<Endpoint> endpoints = Endpoint.enabled(UsedVersion.jdkFeature(inContainer));
 
         try {
             // Cleanup
@@ -210,7 +288,21 @@ public class JFRTest {
             // Build and run
             processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
 
-            generateJFRConfigurationFile(inContainer, jfrPerfJfc, processLog);
+            generateJFRConfigurationFile(inContainer, jfrPerfJfc, List.of("method-profiling=max", "jdk.ThreadPark#threshold=0ns"), processLog);
+            final List<String> eventsSettings = new ArrayList<>(List.of("method-profiling=max",
+                    "allocation-profiling=high",
+                    "exceptions=all",
+                    "jdk.ThreadPark#threshold=0ns",
+                    "jdk.JavaMonitorEnter#threshold=0ns",
+                    "jdk.JavaMonitorWait#threshold=0ns",
+                    "jdk.SocketRead#threshold=0ns",
+                    "jdk.SocketWrite#threshold=0ns"));
+            if (UsedVersion.jdkFeature(inContainer) >= 21) {
+                eventsSettings.addAll(List.of("jdk.VirtualThreadStart#enabled=true",
+                        "jdk.VirtualThreadEnd#enabled=true",
+                        "jdk.VirtualThreadPinned#threshold=0ns"));
+            }
+            generateJFRConfigurationFile(inContainer, jfrPerfEventsJfc, eventsSettings, processLog);
 
             Map<String, String> switches = null;
             if (UsedVersion.getVersion(inContainer).compareTo(Version.create(23, 1, 0)) >= 0) {
@@ -223,25 +315,30 @@ public class JFRTest {
             }
 
             // Container build requires an additional step: docker build...
-            builderRoutine(appJfr, report, cn, mn, appDir, processLog, null, switches);
-            builderRoutine(appNoJfr, report, cn, mn, appDir, processLog, null, switches);
-
-            startComparisonForBenchmark(Endpoint.REGULAR, true, processLog, cn, mn, report, measurementsLog, appDir, appJfr, appNoJfr, inContainer);
-            LOGGER.info("REGULAR workload completed.");
-            startComparisonForBenchmark(Endpoint.WORK, false, processLog, cn, mn, report, measurementsLog, appDir, appJfr, appNoJfr, inContainer);
-            LOGGER.info("WORK workload completed.");
+            // Both apps live in one directory, so the scheduler builds them one after another,
+            // alongside whatever else is being built at the time.
+            builderRoutine(List.of(new BuildScheduler.Build(appJfr, appDir, processLog, null, switches),
+                    new BuildScheduler.Build(appNoJfr, appDir, processLog, null, switches)), report, cn, mn);
+
+            for (Endpoint endpoint : endpoints) {
+                // Thresholds are set for the REGULAR workload, the others are measured to see the overhead per event category
+                startComparisonForBenchmark(endpoint, endpoint == Endpoint.REGULAR, processLog, cn, mn, report, measurementsLog,
+                        appDir, appJfr, appNoJfr, inContainer);
+                LOGGER.info(endpoint.name() + " workload completed.");
+            }
 
             Logs.checkLog(cn, mn, appJfr, processLog);
         } finally {
             Files.deleteIfExists(jfrPerfJfc);
-            cleanup(null, cn, mn, report, appJfr,
-                    processLog,
-                    new File(appDir.getAbsolutePath() + File.separator + "logs", Endpoint.REGULAR + "-" + appNoJfr.name().toLowerCase() + "-hyperfoil-result.json"),
-                    new File(appDir.getAbsolutePath() + File.separator + "logs", Endpoint.WORK + "-" + appNoJfr.name().toLowerCase() + "-hyperfoil-result.json"),
-                    new File(appDir.getAbsolutePath() + File.separator + "logs", Endpoint.REGULAR + "-" + appJfr.name().toLowerCase() + "-hyperfoil-result.json"),
-                    new File(appDir.getAbsolutePath() + File.separator + "logs", Endpoint.WORK + "-" + appJfr.name().toLowerCase() + "-hyperfoil-result.json"),
-                    new File(appDir.getAbsolutePath() + File.separator + "logs", Endpoint.REGULAR + "-" + appJfr.name().toLowerCase() + "-flight-native.jfr"),
-                    new File(appDir.getAbsolutePath() + File.separator + "logs", Endpoint.WORK + "-" + appJfr.name().toLowerCase() + "-flight-native.jfr"));
+            Files.deleteIfExists(jfrPerfEventsJfc);
+            final List<File> logs = new ArrayList<>();
+            logs.add(processLog);
+            for (Endpoint endpoint : endpoints) {
+                logs.add(new File(appDir.getAbsolutePath() + File.separator + "logs", endpoint + "-" + appNoJfr.name().toLowerCase() + "-hyperfoil-result.json"));
+                logs.add(new File(appDir.getAbsolutePath() + File.separator + "logs", endpoint + "-" + appJfr.name().toLowerCase() + "-hyperfoil-result.json"));
+                logs.add(new File(appDir.getAbsolutePath() + File.separator + "logs", endpoint + "-" + appJfr.name().toLowerCase() + "-flight-native.jfr"));
+            }
+            cleanup(null, cn, mn, report, appJfr, logs.toArray(new File[0]));
             stopAllRunningContainers();
             removeContainers(ContainerNames.HYPERFOIL.name);
             if (!inContainer) {
@@ -269,117 +366,13 @@ public class JFRTest {
                                              StringBuilder report, Path measurementsLog, File appDir, Apps appJfr, Apps appNoJfr,
                                              boolean inContainer) throws IOException, InterruptedException {
 
-        final Map<String, Integer> measurementsJfr = runBenchmarkForApp(endpoint, 5, appJfr, appDir, processLog,
-                cn, mn, report, measurementsLog, inContainer);
-        final Map<String, Integer> measurementsNoJfr = runBenchmarkForApp(endpoint, 5, appNoJfr, appDir, processLog,
-                cn, mn, report, measurementsLog, inContainer);
-
-        LOGGER.info("JFR measurementsJfr records: " + measurementsJfr.size() + ", measurementsNoJfr records: " + measurementsNoJfr.size());
-        long imageSizeDiff = getMeasurementDiff("imageSize", measurementsJfr, measurementsNoJfr);
-        long timeToFirstOKRequestMsDiff = getMeasurementDiff("startup", measurementsJfr, measurementsNoJfr);
-        long rssKbDiff = getMeasurementDiff("rss", measurementsJfr, measurementsNoJfr);
-        long meanResponseTimeDiff = getMeasurementDiff("mean", measurementsJfr, measurementsNoJfr);
-        long maxResponseTimeDiff = getMeasurementDiff("max", measurementsJfr, measurementsNoJfr);
-        long responseTime50PercentileDiff = getMeasurementDiff("p50", measurementsJfr, measurementsNoJfr);
-        long responseTime90PercentileDiff = getMeasurementDiff("p90", measurementsJfr, measurementsNoJfr);
-        long responseTime99PercentileDiff = getMeasurementDiff("p99", measurementsJfr, measurementsNoJfr);
-
-        final LogBuilder logBuilder = new LogBuilder();
-        final LogBuilder.Log log = logBuilder.app(appJfr)
-                .executableSizeKb(imageSizeDiff)
-                .timeToFirstOKRequestMs(timeToFirstOKRequestMsDiff)
-                .rssKb(rssKbDiff)
-                .meanResponseTime(meanResponseTimeDiff)
-                .maxResponseTime(maxResponseTimeDiff)
-                .responseTime50Percentile(responseTime50PercentileDiff)
-                .responseTime90Percentile(responseTime90PercentileDiff)
-                .responseTime99Percentile(responseTime99PercentileDiff)
-                .build();
-        Logs.logMeasurements(log, measurementsLog);
-        Logs.appendln(report, "These values represent the % difference as calculated (measurement_JFR - measurement_no_JFR)/measurement_no_JFR");
-        Logs.appendln(report, endpoint + " Measurements Diff %:");
-        Logs.appendln(report, log.headerMarkdown + "\n" + log.lineMarkdown);
-
+        final List<Map<String, Integer>> measurementsJfr = new ArrayList<>(JFR_PERF_AB_PAIRS);
         final Path recording = Paths.get(appDir.getAbsolutePath(), "logs", endpoint + "-" + appJfr.name().toLowerCase() + "-flight-native.jfr");
-        if (Files.exists(recording)) {
-            LOGGER.info("Processing JFR events from " + recording);
-            final long jfrRequestCount = measurementsJfr.get("requestCount");
-            final long jfrResponseCount = measurementsJfr.get("responseCount");
-            final long jfrRequestTimeouts = measurementsJfr.get("requestTimeouts");
-            final long jfrInternalErrors = measurementsJfr.get("internalErrors");
-            final long jdkThreadParkEvents = countJFREvents(inContainer, "jdk.ThreadPark", recording, processLog, report);
-            final long parkedClassGreetingService = countJFREventMatches(inContainer, "jdk.ThreadPark",
-                    Pattern.compile("^[\\s\\t]*parkedClass = org\\.acme\\.getting\\.started\\.GreetingService[\\s\\t]+.*[\\n\\r]*"), recording, processLog, report);
-            LOGGER.info("JFR file results for endpoint " + endpoint + ": \n" +
-                    "jfrRequestCount: " + jfrRequestCount + "\n" +
-                    "jfrResponseCount: " + jfrResponseCount + "\n" +
-                    "jfrRequestTimeouts: " + jfrRequestTimeouts + "\n" +
-                    "jfrInternalErrors: " + jfrInternalErrors + "\n" +
-                    "jdkThreadParkEvents: " + jdkThreadParkEvents + "\n" +
-                    "parkedClassGreetingService: " + parkedClassGreetingService);
-
-            assertEquals(0, jfrInternalErrors, "The test app is not expected to return any errors " +
-                    "during the Hyperfoil run.");
-            assertEquals(jfrRequestCount, jfrResponseCount, "The number of requests: " + jfrRequestCount +
-                    " is expected to be the same as the number of responses: " + jfrResponseCount);
-            assertEquals(0, jfrRequestTimeouts, "The test app is not expected to return any timeouts " +
-                    "during the Hyperfoil run.");
-            assertTrue(jdkThreadParkEvents > parkedClassGreetingService, "There must have been more " +
-                    "jdk.ThreadPark events in general than those specific to GreetingService class.");
-            if (endpoint == Endpoint.REGULAR) {
-                assertEquals(jfrRequestCount, parkedClassGreetingService,
-                        "In the " + Endpoint.REGULAR + " case, the number of requests " + jfrRequestCount +
-                                " is expected to match the total " +
-                                "amount of jdk.ThreadPark events in GreetingService class: " + parkedClassGreetingService);
-            } else {
-                assertEquals(jfrRequestCount * 1000, parkedClassGreetingService,
-                        "In the " + Endpoint.WORK + " case, the number of requests " + jfrRequestCount +
-                                " is expected to generate " +
-                                "a thousand more amount of jdk.ThreadPark events in GreetingService class: " + parkedClassGreetingService);
-            }
-        }
-        if (checkThresholds) {
-            Logs.checkThreshold(appJfr, Logs.Mode.DIFF_NATIVE, imageSizeDiff, rssKbDiff, timeToFirstOKRequestMsDiff, meanResponseTimeDiff, responseTime50PercentileDiff, responseTime90PercentileDiff);
-        }
-    }
-
-    private Map<String, Integer> runBenchmarkForApp(Endpoint endpoint, int trials, Apps app, File appDir, File processLog,
-            String cn, String mn, StringBuilder report, Path measurementsLog,
-            boolean inContainer) throws IOException, InterruptedException {
-
-        Process process = null;
+        final List<Map<String, Integer>> measurementsNoJfr = new ArrayList<>(JFR_PERF_AB_PAIRS);
         Process hyperfoilProcess = null;
-        int rssSum = 0;
-        int startupSum = 0;
         final long[] tunnelPIDs = new long[] { -1L, -1L };
 
         try {
-            for (int i = 0; i < trials; i++) {
-                if (process != null) {
-                    processStopper(process, true, true);
-                    if (inContainer) {
-                        stopAllRunningContainers();
-                    }
-                    assertTrue(waitForTcpClosed("localhost", 8080, 10),
-                            "Quarkus app likely hanging on port 8080.");
-                    assertTrue(waitForTcpClosed("localhost", 8090, 10),
-                            "Hyperfoil likely hanging on port 8090.");
-                }
-                final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[0]);
-                clearCaches(); //TODO consider using warm up instead of clearing caches
-                Logs.appendln(report, "Trial " + i + " in " + appDir.getAbsolutePath());
-                Logs.appendlnSection(report, String.join(" ", cmd));
-                process = runCommand(cmd, appDir, processLog, app);
-                assertNotNull(process, "The test application failed to run. Check " + getLogsDir(cn, mn) + File.separator + processLog.getName());
-                startupSum += WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
-                if (inContainer) {
-                    rssSum += getContainerMemoryKb(app.runtimeContainer.name);
-                } else {
-                    rssSum += getRSSkB(process.pid());
-                }
-                LOGGER.info("Trial " + i + " startup time sum: " + startupSum + " ms, RSS sum: " + rssSum + " KB");
-            }
-
             if (IS_THIS_MACOS) {
                 // TODO: This is obviously way too tailored to our particular macOS podman installation.
                 // We will generalize it as a part of porting to GHA.
@@ -389,9 +382,10 @@ public class JFRTest {
                 tunnelPIDs[1] = openSSHTunnel(identity, String.valueOf(port), "core", "localhost", "8090", true);
             }
 
-            // Run Hyperfoil controller in container and expose port for test
-            final List<String> getAndStartHyperfoil = getRunCommand(app.buildAndRunCmds.runCommands[1]);
-            hyperfoilProcess = runCommand(getAndStartHyperfoil, appDir, processLog, app);
+            // Run Hyperfoil controller in container and expose port for test.
+            // It keeps running for all the trials, so as both apps are measured by the very same load driver.
+            final List<String> getAndStartHyperfoil = getRunCommand(appJfr.buildAndRunCmds.runCommands[1]);
+            hyperfoilProcess = runCommand(getAndStartHyperfoil, appDir, processLog, appJfr);
             Logs.appendln(report, appDir.getAbsolutePath());
             Logs.appendlnSection(report, String.join(" ", getAndStartHyperfoil));
             assertNotNull(hyperfoilProcess, "Hyperfoil failed to run. Check " + getLogsDir(cn, mn) + File.separator + processLog.getName());
@@ -400,12 +394,12 @@ public class JFRTest {
             Commands.waitForContainerLogToMatch(ContainerNames.HYPERFOIL.name,
                     Pattern.compile(".*Hyperfoil controller listening.*", Pattern.DOTALL), 600, 5, TimeUnit.SECONDS);
             // Wait for Hyperfoil to open endpoint
-            WebpageTester.testWeb(app.urlContent.urlContent[2][0], 15, app.urlContent.urlContent[2][1], false);
+            WebpageTester.testWeb(appJfr.urlContent.urlContent[2][0], 15, appJfr.urlContent.urlContent[2][1], false);
 
             // Upload the benchmark
             final HttpClient hc = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
             final HttpRequest uploadRequest = HttpRequest.newBuilder()
-                    .uri(new URI(app.urlContent.urlContent[1][0]))
+                    .uri(new URI(appJfr.urlContent.urlContent[1][0]))
                     .header("Content-Type", "text/vnd.yaml")
                     .POST(HttpRequest.BodyPublishers.ofFile(Path.of(appDir.getAbsolutePath() + "/benchmark.hf.yaml")))
                     .build();
@@ -413,6 +407,191 @@ public class JFRTest {
             assertEquals(204, releaseResponse.statusCode(), "App returned a non HTTP 204 response. The perf report is invalid.");
             LOGGER.info("Hyperfoil upload response code " + releaseResponse.statusCode());
 
+            // Trials of the two apps alternate, so as drift over the run, e.g. thermal throttling, hits both alike.
+            final List<Boolean> schedule = PairedComparison.schedule(JFR_PERF_AB_PAIRS, JFR_PERF_AB_ORDER, new Random(SampleStats.SEED));
+            for (int i = 0; i < schedule.size(); i++) {
+                final Apps app = schedule.get(i) ? appJfr : appNoJfr;
+                if (schedule.get(i)) {
+                    Files.deleteIfExists(recording);
+                }
+                final Map<String, Integer> measurements = runTrial(endpoint, i, app, hc, appDir, processLog, cn, mn, report, inContainer);
+                if (schedule.get(i)) {
+                    // The app dumps the recording on exit, a missing one means it was not let to exit gracefully
+                    assertTrue(Files.exists(recording), "JFR recording " + recording + " of trial " + i + " is missing.");
+                    measurementsJfr.add(measurements);
+                } else {
+                    measurementsNoJfr.add(measurements);
+                }
+            }
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        } finally {
+            removeContainers(ContainerNames.HYPERFOIL.name);
+            if (hyperfoilProcess != null && hyperfoilProcess.isAlive()) {
+                processStopper(hyperfoilProcess, true);
+            }
+            // Bury the tunnels
+            if (IS_THIS_MACOS) {
+                for (long pid : tunnelPIDs) {
+                    if (pid != -1)
+                        pidKiller(pid, true);
+                }
+            }
+        }
+
+        LOGGER.info("JFR measurementsJfr trials: " + measurementsJfr.size() + ", measurementsNoJfr trials: " + measurementsNoJfr.size());
+        logAppMeasurements(endpoint, appJfr, measurementsJfr, report, measurementsLog);
+        logAppMeasurements(endpoint, appNoJfr, measurementsNoJfr, report, measurementsLog);
+        // Image size does not change from trial to trial
+        final long imageSizeDiff = getMeasurementDiff("imageSize", measurementsJfr.get(0), measurementsNoJfr.get(0));
+        final PairedComparison timeToFirstOKRequestMsDiff = compare("startup", measurementsJfr, measurementsNoJfr);
+        final PairedComparison rssKbDiff = compare("rss", measurementsJfr, measurementsNoJfr);
+        final PairedComparison meanResponseTimeDiff = compare("mean", measurementsJfr, measurementsNoJfr);
+        final PairedComparison maxResponseTimeDiff = compare("max", measurementsJfr, measurementsNoJfr);
+        final PairedComparison responseTime50PercentileDiff = compare("p50", measurementsJfr, measurementsNoJfr);
+        final PairedComparison responseTime90PercentileDiff = compare("p90", measurementsJfr, measurementsNoJfr);
+        final PairedComparison responseTime99PercentileDiff = compare("p99", measurementsJfr, measurementsNoJfr);
+
+        // The log takes no negative values, JFR being faster is logged as no difference
+        final LogBuilder logBuilder = new LogBuilder();
+        final LogBuilder.Log log = logBuilder.app(appJfr)
+                .executableSizeKb(Math.max(0L, imageSizeDiff))
+                .timeToFirstOKRequestMs(Math.max(0L, timeToFirstOKRequestMsDiff.get(SampleStats.Bound.MEDIAN)))
+                .rssKb(Math.max(0L, rssKbDiff.get(SampleStats.Bound.MEDIAN)))
+                .meanResponseTime(Math.max(0L, meanResponseTimeDiff.get(SampleStats.Bound.MEDIAN)))
+                .maxResponseTime(Math.max(0L, maxResponseTimeDiff.get(SampleStats.Bound.MEDIAN)))
+                .responseTime50Percentile(Math.max(0L, responseTime50PercentileDiff.get(SampleStats.Bound.MEDIAN)))
+                .responseTime90Percentile(Math.max(0L, responseTime90PercentileDiff.get(SampleStats.Bound.MEDIAN)))
+                .responseTime99Percentile(Math.max(0L, responseTime99PercentileDiff.get(SampleStats.Bound.MEDIAN)))
+                .build();
+        Logs.logMeasurements(log, measurementsLog);
+        Logs.appendln(report, "These values represent the median % difference of " + JFR_PERF_AB_PAIRS + " " +
+                JFR_PERF_AB_ORDER.name().toLowerCase() + " pairs of trials as calculated (measurement_JFR - measurement_no_JFR)/measurement_no_JFR");
+        Logs.appendln(report, endpoint + " Measurements Diff %:");
+        Logs.appendln(report, log.headerMarkdown + "\n" + log.lineMarkdown);
+        for (PairedComparison c : new PairedComparison[]{timeToFirstOKRequestMsDiff, rssKbDiff, meanResponseTimeDiff, maxResponseTimeDiff,
+                responseTime50PercentileDiff, responseTime90PercentileDiff, responseTime99PercentileDiff}) {
+            LOGGER.info(endpoint + " " + c);
+            Logs.appendln(report, c.toString());
+        }
+
+        LOGGER.info("Processing JFR events from " + recording);
+        // The recording is the one of the last JFR trial
+        final Map<String, Integer> lastJfrTrial = measurementsJfr.get(measurementsJfr.size() - 1);
+        final long jfrRequestCount = lastJfrTrial.get("requestCount");
+        final long jfrResponseCount = lastJfrTrial.get("responseCount");
+        final long jfrRequestTimeouts = lastJfrTrial.get("requestTimeouts");
+        final long jfrInternalErrors = lastJfrTrial.get("internalErrors");
+        final JFRAnalyzer.Result jfr = new JFRAnalyzer(recording)
+                .match("parkedClassGreetingService", "jdk.ThreadPark",
+                        JFRAnalyzer.classField("parkedClass", "org.acme.getting.started.GreetingService"))
+                .analyze();
+        Logs.appendln(report, jfr.toString());
+        final long jdkThreadParkEvents = jfr.getEventCount("jdk.ThreadPark");
+        final long parkedClassGreetingService = jfr.getMatchCount("parkedClassGreetingService");
+        LOGGER.info("JFR file results for endpoint " + endpoint + ": \n" +
+                "jfrRequestCount: " + jfrRequestCount + "\n" +
+                "jfrResponseCount: " + jfrResponseCount + "\n" +
+                "jfrRequestTimeouts: " + jfrRequestTimeouts + "\n" +
+                "jfrInternalErrors: " + jfrInternalErrors + "\n" +
+                "jdkThreadParkEvents: " + jdkThreadParkEvents + "\n" +
+                "parkedClassGreetingService: " + parkedClassGreetingService);
+
+        assertEquals(0, jfrInternalErrors, "The test app is not expected to return any errors " +
+                "during the Hyperfoil run.");
+        assertEquals(jfrRequestCount, jfrResponseCount, "The number of requests: " + jfrRequestCount +
+                " is expected to be the same as the number of responses: " + jfrResponseCount);
+        assertEquals(0, jfrRequestTimeouts, "The test app is not expected to return any timeouts " +
+                "during the Hyperfoil run.");
+        if (endpoint != Endpoint.REGULAR && endpoint != Endpoint.WORK) {
+            // Which of the other events native-image JFR supports differs between versions, the counts are in the report
+            LOGGER.info("JFR event counts for endpoint " + endpoint + ": " + jfr.eventCounts);
+        } else {
+            assertTrue(jdkThreadParkEvents > parkedClassGreetingService, "There must have been more " +
+                    "jdk.ThreadPark events in general than those specific to GreetingService class.");
+            if (endpoint == Endpoint.REGULAR) {
+                assertEquals(jfrRequestCount, parkedClassGreetingService,
+                        "In the " + Endpoint.REGULAR + " case, the number of requests " + jfrRequestCount +
+                                " is expected to match the total " +
+                                "amount of jdk.ThreadPark events in GreetingService class: " + parkedClassGreetingService);
+            } else {
+                assertEquals(jfrRequestCount * 1000, parkedClassGreetingService,
+                        "In the " + Endpoint.WORK + " case, the number of requests " + jfrRequestCount +
+                                " is expected to generate " +
+                                "a thousand more amount of jdk.ThreadPark events in GreetingService class: " + parkedClassGreetingService);
+            }
+        }
+        if (checkThresholds) {
+            Logs.checkThreshold(appJfr, Logs.Mode.DIFF_NATIVE, imageSizeDiff,
+                    thresholdOverhead(rssKbDiff),
+                    thresholdOverhead(timeToFirstOKRequestMsDiff),
+                    thresholdOverhead(meanResponseTimeDiff),
+                    thresholdOverhead(responseTime50PercentileDiff),
+                    thresholdOverhead(responseTime90PercentileDiff));
+        }
+    }
+
+    /**
+     * One row per app, as there used to be before the trials were paired, with the median of its trials.
+     */
+    private static void logAppMeasurements(Endpoint endpoint, Apps app, List<Map<String, Integer>> measurements,
+                                           StringBuilder report, Path measurementsLog) throws IOException {
+        final LogBuilder logBuilder = new LogBuilder();
+        final LogBuilder.Log log = logBuilder.app(app)
+                .executableSizeKb(median("imageSize", measurements))
+                .timeToFirstOKRequestMs(median("startup", measurements))
+                .rssKb(median("rss", measurements))
+                .meanResponseTime(median("mean", measurements))
+                .maxResponseTime(median("max", measurements))
+                .responseTime50Percentile(median("p50", measurements))
+                .responseTime90Percentile(median("p90", measurements))
+                .responseTime99Percentile(median("p99", measurements))
+                .build();
+        Logs.logMeasurements(log, measurementsLog);
+        Logs.appendln(report, endpoint + " Measurements " + app.name() + ":");
+        Logs.appendln(report, log.headerMarkdown + "\n" + log.lineMarkdown);
+    }
+
+    private static long median(String measurement, List<Map<String, Integer>> measurements) {
+        return new SampleStats(measurements.stream().mapToLong(m -> m.get(measurement)).toArray()).get(SampleStats.Bound.MEDIAN);
+    }
+
+    private static PairedComparison compare(String measurement, List<Map<String, Integer>> measurementsJfr, List<Map<String, Integer>> measurementsNoJfr) {
+        return new PairedComparison(measurement,
+                measurementsJfr.stream().mapToLong(m -> m.get(measurement)).toArray(),
+                measurementsNoJfr.stream().mapToLong(m -> m.get(measurement)).toArray());
+    }
+
+    /**
+     * JFR being faster than no JFR is no overhead, not a negative one.
+     */
+    private static long thresholdOverhead(PairedComparison comparison) {
+        return Math.max(0L, comparison.get(JFR_PERF_THRESHOLD_BOUND));
+    }
+
+    /**
+     * Cold start of the app, startup time and RSS, then a Hyperfoil run against it and the app is stopped.
+     * Hyperfoil must be already running with the benchmark uploaded.
+     */
+    private Map<String, Integer> runTrial(Endpoint endpoint, int trial, Apps app, HttpClient hc, File appDir, File processLog,
+                                          String cn, String mn, StringBuilder report, boolean inContainer)
+            throws IOException, InterruptedException, URISyntaxException {
+
+        Process process = null;
+        try {
+            final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[0]);
+            // The app without JFR has no settings file on its command line
+            cmd.replaceAll(c -> c.replace(JFR_PERF_JFC, endpoint.jfc));
+            clearCaches(); //TODO consider using warm up instead of clearing caches
+            Logs.appendln(report, "Trial " + trial + " " + app.name() + " in " + appDir.getAbsolutePath());
+            Logs.appendlnSection(report, String.join(" ", cmd));
+            process = runCommand(cmd, appDir, processLog, app);
+            assertNotNull(process, "The test application failed to run. Check " + getLogsDir(cn, mn) + File.separator + processLog.getName());
+            // Local RSS comes from /proc sampled since launch, not from a ps fork once the app is up
+            final ProcessSampler sampler = inContainer ? null : new ProcessSampler(process.pid()).start();
+            final int startup = (int) WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
+            final int rss = (int) (inContainer ? getContainerMemoryKb(app.runtimeContainer.name) : sampler.stop().finalRssKb);
+
             // Run the benchmark
             disableTurbo();
             final HttpRequest benchmarkRequest = HttpRequest.newBuilder()
@@ -423,14 +602,14 @@ public class JFRTest {
             final JSONObject benchmarkResponseJson = new JSONObject(benchmarkResponse.body());
             final String id = benchmarkResponseJson.getString("id");
 
-            // Wait for benchmark to complete
-            Commands.waitForContainerLogToMatch(ContainerNames.HYPERFOIL.name,
-                    Pattern.compile(".*Successfully persisted run.*", Pattern.DOTALL), 30, 2, TimeUnit.SECONDS);
+            // Wait for benchmark to complete. The controller log says "Successfully persisted run" after each run,
+            // so it is the run itself that is asked.
+            waitForRunPersisted(hc, app, id, 30, 2, TimeUnit.SECONDS);
             enableTurbo();
 
             // Get the results
             final HttpRequest resultsRequest = HttpRequest.newBuilder()
-                    .uri(new URI("http://localhost:8090/run/" + id + "/stats/all/json"))
+                    .uri(hyperfoilRun(app, id + "/stats/all/json"))
                     .GET()
                     .timeout(Duration.ofSeconds(3)) // set timeout to allow for cleanup, otherwise will stall at first request above
                     .build();
@@ -438,31 +617,32 @@ public class JFRTest {
             LOGGER.info("Hyperfoil results response code " + resultsResponse.statusCode());
             final JSONObject resultsResponseJson = new JSONObject(resultsResponse.body());
 
-            // Persist the benchmark result in case a human needs to see it.
+            // Persist the benchmark result in case a human needs to see it, the last trial wins.
             Files.writeString(Paths.get(appDir.getAbsolutePath(), "logs", endpoint + "-" + app.name().toLowerCase() + "-hyperfoil-result.json"),
-                    resultsResponseJson.toString(2), StandardOpenOption.CREATE_NEW);
+                    resultsResponseJson.toString(2), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
 
             // Get image size in KB, safe to be within int.
             final int imageSizeKB = (int) (findExecutable(Path.of(appDir.getAbsolutePath(), "target"),
                     Pattern.compile(".*-runner")).length() / 1024L);
-            LOGGER.info(app.name() + " image size " + imageSizeKB + " KB");
 
             // Parse JSON response from Hyperfoil controller server
+            final JSONObject summary = resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary");
             final Map<String, Integer> measurements = new HashMap<>();
-            measurements.put("mean", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getInt("meanResponseTime"));
-            measurements.put("max", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getInt("maxResponseTime"));
-            measurements.put("p50", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getJSONObject("percentileResponseTime").getInt("50.0"));
-            measurements.put("p90", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getJSONObject("percentileResponseTime").getInt("90.0"));
-            measurements.put("p99", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getJSONObject("percentileResponseTime").getInt("99.0"));
-            measurements.put("startup", startupSum / trials);
-            measurements.put("rss", rssSum / trials);
+            measurements.put("mean", summary.getInt("meanResponseTime"));
+            measurements.put("max", summary.getInt("maxResponseTime"));
+            measurements.put("p50", summary.getJSONObject("percentileResponseTime").getInt("50.0"));
+            measurements.put("p90", summary.getJSONObject("percentileResponseTime").getInt("90.0"));
+            measurements.put("p99", summary.getJSONObject("percentileResponseTime").getInt("99.0"));
+            measurements.put("startup", startup);
+            measurements.put("rss", rss);
             measurements.put("imageSize", imageSizeKB);
-            measurements.put("requestCount", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getInt("requestCount"));
-            measurements.put("responseCount", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getInt("responseCount"));
-            measurements.put("requestTimeouts", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getInt("requestTimeouts"));
-            measurements.put("internalErrors", resultsResponseJson.getJSONArray("stats").getJSONObject(0).getJSONObject("total").getJSONObject("summary").getInt("internalErrors"));
+            measurements.put("requestCount", summary.getInt("requestCount"));
+            measurements.put("responseCount", summary.getInt("responseCount"));
+            measurements.put("requestTimeouts", summary.getInt("requestTimeouts"));
+            measurements.put("internalErrors", summary.getInt("internalErrors"));
 
-            LOGGER.info("mean:" + measurements.get("mean")
+            LOGGER.info("Trial " + trial + " " + app.name()
+                    + ", mean:" + measurements.get("mean")
                     + ", max:" + measurements.get("max")
                     + ", p50:" + measurements.get("p50")
                     + ", p90:" + measurements.get("p90")
@@ -475,59 +655,68 @@ public class JFRTest {
                     + ", requestTimeouts:" + measurements.get("requestTimeouts")
                     + ", internalErrors:" + measurements.get("internalErrors")
             );
-
-            final LogBuilder logBuilder = new LogBuilder();
-            final LogBuilder.Log log = logBuilder.app(app)
-                    .executableSizeKb(imageSizeKB)
-                    .timeToFirstOKRequestMs(measurements.get("startup"))
-                    .rssKb(measurements.get("rss"))
-                    .meanResponseTime(measurements.get("mean"))
-                    .maxResponseTime(measurements.get("max"))
-                    .responseTime50Percentile(measurements.get("p50"))
-                    .responseTime90Percentile(measurements.get("p90"))
-                    .responseTime99Percentile(measurements.get("p99"))
-                    .build();
-            Logs.logMeasurements(log, measurementsLog);
-            Logs.appendln(report, endpoint + " Measurements " + app.name() + ":");
-            Logs.appendln(report, log.headerMarkdown + "\n" + log.lineMarkdown);
+            Logs.appendln(report, endpoint + " Trial " + trial + " " + app.name() + ": " + measurements);
             return measurements;
-        } catch (URISyntaxException e) {
-            throw new RuntimeException(e);
         } finally {
-            // Stop container before stopping Hyperfoil process
-            stopAllRunningContainers();
+            // Just the app, Hyperfoil runs in a container too and it is needed for the next trial
+            if (inContainer) {
+                stopRunningContainer(app.runtimeContainer.name);
+            }
             if (process != null && process.isAlive()) {
                 processStopper(process, true);
             }
-            removeContainers(ContainerNames.HYPERFOIL.name);
-            if (hyperfoilProcess != null && hyperfoilProcess.isAlive()) {
-                processStopper(hyperfoilProcess, true);
-            }
-            // Store the JFR recording
+            assertTrue(waitForTcpClosed("localhost", 8080, 10),
+                    "Quarkus app likely hanging on port 8080.");
+            // Store the JFR recording, the last trial wins
             final Path recording = Paths.get(appDir.getAbsolutePath(), "logs", "flight-native.jfr");
             if (Files.exists(recording)) {
                 Files.move(recording,
-                        Paths.get(appDir.getAbsolutePath(), "logs", endpoint + "-" + app.name().toLowerCase() + "-flight-native.jfr"));
+                        Paths.get(appDir.getAbsolutePath(), "logs", endpoint + "-" + app.name().toLowerCase() + "-flight-native.jfr"),
+                        StandardCopyOption.REPLACE_EXISTING);
             }
-            // Bury the tunnels
-            if (IS_THIS_MACOS) {
-                for (long pid : tunnelPIDs) {
-                    if (pid != -1)
-                        pidKiller(pid, true);
-                }
+        }
+    }
+
+    /**
+     * Run resources of the Hyperfoil controller the benchmark was uploaded to, e.g. http://localhost:8090/run/0001
+     */
+    private static URI hyperfoilRun(Apps app, String path) throws URISyntaxException {
+        return new URI(app.urlContent.urlContent[1][0]).resolve("/run/" + path);
+    }
+
+    private static void waitForRunPersisted(HttpClient hc, Apps app, String id, long timeout, long sleep, TimeUnit unit)
+            throws IOException, InterruptedException, URISyntaxException {
+        final HttpRequest runRequest = HttpRequest.newBuilder()
+                .uri(hyperfoilRun(app, id))
+                .GET()
+                .timeout(Duration.ofSeconds(3))
+                .build();
+        final long timeoutMillis = unit.toMillis(timeout);
+        final long startMillis = System.currentTimeMillis();
+        while (System.currentTimeMillis() - startMillis < timeoutMillis) {
+            final HttpResponse<String> runResponse = hc.send(runRequest, HttpResponse.BodyHandlers.ofString());
+            if (runResponse.statusCode() == 200 && new JSONObject(runResponse.body()).optBoolean("persisted", false)) {
+                return;
             }
+            Thread.sleep(unit.toMillis(sleep));
         }
+        fail("Hyperfoil run " + id + " was not persisted within " + timeout + " " + unit + ".");
     }
 
-    private void generateJFRConfigurationFile(boolean inContainer, Path jfrPerfJfc, File logFile) throws IOException {
+    private void generateJFRConfigurationFile(boolean inContainer, Path jfrPerfJfc, List<String> settings, File logFile) throws IOException {
         final List<String> command;
         if (inContainer) {
-            command = getRunCommand(CONTAINER_RUNTIME, "run", IS_THIS_WINDOWS ? "" : "-u", IS_THIS_WINDOWS ? "" : getUnixUIDGID(),
+            final List<String> c = new ArrayList<>(List.of(CONTAINER_RUNTIME, "run", IS_THIS_WINDOWS ? "" : "-u", IS_THIS_WINDOWS ? "" : getUnixUIDGID(),
                     "-t", "--entrypoint", "jfr", "-v", jfrPerfJfc.getParent().toString() + ":/project:z",
-                    BUILDER_IMAGE,
-                    "configure", "method-profiling=max", "jdk.ThreadPark#threshold=0ns", "--output", "./" + jfrPerfJfc.getFileName().toString());
+                    BUILDER_IMAGE, "configure"));
+            c.addAll(settings);
+            c.addAll(List.of("--output", "./" + jfrPerfJfc.getFileName().toString()));
+            command = getRunCommand(c.toArray(new String[0]));
         } else {
-            command = getRunCommand("jfr", "configure", "method-profiling=max", "jdk.ThreadPark#threshold=0ns", "--output", jfrPerfJfc.toString());
+            final List<String> c = new ArrayList<>(List.of("jfr", "configure"));
+            c.addAll(settings);
+            c.addAll(List.of("--output", jfrPerfJfc.toString()));
+            command = getRunCommand(c.toArray(new String[0]));
         }
         final String c = "Command: " + String.join(" ", command) + "\n";
         LOGGER.infof("Command: %s", command);
@@ -536,97 +725,12 @@ public class JFRTest {
         assertTrue(Files.exists(jfrPerfJfc), "The JFR config file " + jfrPerfJfc + " MUST exist at this point in time.");
     }
 
-    /**
-     * @param inContainer     Whether to use jfr tool from a container
-     * @param eventType       e.g. jdk.ThreadPark
-     * @param flightRecording e.g. path to your flight-native.jfr
-     * @param logFile         e.g. path to the build and run log
-     * @return parsed Count from JFR file summary for the particular event
-     * @throws IOException
-     * @throws InterruptedException
-     */
-    private long countJFREvents(boolean inContainer, String eventType, Path flightRecording, File logFile, StringBuilder report) throws IOException, InterruptedException {
-        assertTrue(Files.exists(flightRecording), "The flight record file " + flightRecording + " MUST exist at this point in time.");
-        final Pattern pattern = Pattern.compile("^[\\s\\t]*" + eventType + "[\\s\\t]+([0-9]+)[\\s\\t]+.*[\\n\\r]*");
-        final List<String> cmd;
-        if (inContainer) {
-            cmd = getRunCommand(CONTAINER_RUNTIME, "run", IS_THIS_WINDOWS ? "" : "-u", IS_THIS_WINDOWS ? "" : getUnixUIDGID(),
-                    "-t", "--entrypoint", "jfr", "-v", flightRecording.getParent().toString() + ":/project:z",
-                    BUILDER_IMAGE,
-                    "summary", "./" + flightRecording.getFileName().toString());
-        } else {
-            cmd = getRunCommand("jfr", "summary", flightRecording.toString());
-        }
-        final String command = "Command: " + String.join(" ", cmd) + "\n";
-        Logs.appendlnSection(report, command);
-        LOGGER.infof("Command: %s", cmd);
-        Files.writeString(logFile.toPath(), command, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-        final Process p = Commands.runCommand(cmd, new File("."), null, null);
-        // UTF-8 on Windows might work poorly with colours in terminal.
-        try (BufferedReader processOutputReader =
-                     new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
-            String l;
-            while ((l = processOutputReader.readLine()) != null) {
-                final Matcher m = pattern.matcher(l);
-                if (m.matches()) {
-                    return Long.parseLong(m.group(1));
-                }
-            }
-            p.waitFor(5, TimeUnit.MINUTES);
-        }
-        LOGGER.error("None of the output lines matched regexp: " + pattern.pattern());
-        return -1L;
-    }
-
-    private long countJFREventMatches(boolean inContainer, String eventType, Pattern regexp, Path flightRecording, File logFile, StringBuilder report) throws IOException, InterruptedException {
-        assertTrue(Files.exists(flightRecording), "The flight record file " + flightRecording + " MUST exist at this point in time.");
-        final List<String> cmd;
-        if (inContainer) {
-            cmd = getRunCommand(CONTAINER_RUNTIME, "run", IS_THIS_WINDOWS ? "" : "-u", IS_THIS_WINDOWS ? "" : getUnixUIDGID(),
-                    "-t", "--entrypoint", "jfr", "-v", flightRecording.getParent().toString() + ":/project:z",
-                    BUILDER_IMAGE,
-                    "print", "--events", eventType, "./" + flightRecording.getFileName().toString());
-        } else {
-            cmd = getRunCommand("jfr", "print", "--events", eventType, flightRecording.toString());
-        }
-        final String command = "Command: " + String.join(" ", cmd) + "\n";
-        Logs.appendlnSection(report, command);
-        LOGGER.infof("Command: %s", cmd);
-        Files.writeString(logFile.toPath(), command, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-        // logFile is null, the output could easily be hundreds of megabytes, we log just the start manually here
-        final Process p = Commands.runCommand(cmd, new File("."), null, null);
-        long c = 0;
-        int i = 0;
-        long start = System.currentTimeMillis();
-        final StringBuilder s = new StringBuilder();
-        // UTF-8 on Windows might work poorly with colours in terminal.
-        try (BufferedReader processOutputReader =
-                     new BufferedReader(new InputStreamReader(p.getInputStream(), StandardCharsets.UTF_8))) {
-            String l;
-            // TODO: This is kind of naive. There could be hundreds of thousands of matches and it would be better to do big chunks.
-            while ((l = processOutputReader.readLine()) != null) {
-                if (i < 100) {
-                    s.append(l);
-                    s.append("\n");
-                    i++;
-                }
-                if (regexp.matcher(l).matches()) {
-                    c++;
-                }
-            }
-            Files.writeString(logFile.toPath(), "First " + i + " lines of output: " + s, StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-            p.waitFor(5, TimeUnit.MINUTES);
-        }
-        LOGGER.info("Found " + c + " matches in " + (System.currentTimeMillis() - start) + " ms.");
-        return c;
-    }
-
     public void jfrSmoke(TestInfo testInfo, Apps app) throws IOException, InterruptedException {
         LOGGER.info("Testing app: " + app);
         Process process = null;
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
@@ -646,7 +750,7 @@ public class JFRTest {
             // In this case, four commands are used to run the app, JVM, JVM JFR, Native, Native JFR
             builderRoutine(app, report, cn, mn, appDir, processLog, null, switches);
 
-            final File inputData = Path.of(BASE_DIR, app.dir, "target", "test_data.txt").toFile();
+            final File inputData = Path.of(appDir.getAbsolutePath(), "target", "test_data.txt").toFile();
 
             LOGGER.info("Running JVM mode...");
             long start = System.currentTimeMillis();
@@ -800,7 +904,7 @@ public class JFRTest {
         LOGGER.info("Testing app: " + app);
         File processLog = null;
         final StringBuilder report = new StringBuilder();
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         try {
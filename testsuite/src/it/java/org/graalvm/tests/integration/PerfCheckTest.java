@@ -23,18 +23,27 @@ import com.sun.management.OperatingSystemMXBean;
 import org.graalvm.home.Version;
 import org.graalvm.tests.integration.utils.Apps;
 import org.graalvm.tests.integration.utils.Commands;
+import org.graalvm.tests.integration.utils.LoadGenerator;
+import org.graalvm.tests.integration.utils.LogBuilder;
 import org.graalvm.tests.integration.utils.Logs;
+import org.graalvm.tests.integration.utils.ProcessSampler;
+import org.graalvm.tests.integration.utils.ResourceAllocator;
+import org.graalvm.tests.integration.utils.StreamedResponse;
+import org.graalvm.tests.integration.utils.Uploader;
 import org.graalvm.tests.integration.utils.WebpageTester;
 import org.graalvm.tests.integration.utils.versions.IfMandrelVersion;
 import org.graalvm.tests.integration.utils.versions.IfQuarkusVersion;
 import org.graalvm.tests.integration.utils.versions.QuarkusVersion;
 import org.graalvm.tests.integration.utils.versions.UsedVersion;
 import org.jboss.logging.Logger;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Isolated;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -52,6 +61,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -60,9 +70,8 @@ import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
-import static org.graalvm.tests.integration.AppReproducersTest.BASE_DIR;
+import static org.graalvm.tests.integration.utils.Commands.CONTAINER_RUNTIME;
 import static org.graalvm.tests.integration.utils.Commands.GRAALVM_BUILD_OUTPUT_JSON_FILE;
 import static org.graalvm.tests.integration.utils.Commands.GRAALVM_BUILD_OUTPUT_JSON_FILE_SWITCH;
 import static org.graalvm.tests.integration.utils.Commands.GRAALVM_EXPERIMENTAL_BEGIN;
@@ -73,23 +82,22 @@ import static org.graalvm.tests.integration.utils.Commands.cleanTarget;
 import static org.graalvm.tests.integration.utils.Commands.findExecutable;
 import static org.graalvm.tests.integration.utils.Commands.findFiles;
 import static org.graalvm.tests.integration.utils.Commands.getProperty;
-import static org.graalvm.tests.integration.utils.Commands.getRSSkB;
 import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
 import static org.graalvm.tests.integration.utils.Commands.mapToJSON;
-import static org.graalvm.tests.integration.utils.Commands.parsePerfRecord;
+import static org.graalvm.tests.integration.utils.Commands.parsePerfStatCSV;
+import static org.graalvm.tests.integration.utils.Commands.perfStatOutput;
+import static org.graalvm.tests.integration.utils.Commands.perfStatTarget;
 import static org.graalvm.tests.integration.utils.Commands.parsePort;
 import static org.graalvm.tests.integration.utils.Commands.parseSerialGCLog;
 import static org.graalvm.tests.integration.utils.Commands.processStopper;
 import static org.graalvm.tests.integration.utils.Commands.removeContainer;
 import static org.graalvm.tests.integration.utils.Commands.runCommand;
+import static org.graalvm.tests.integration.utils.Commands.waitForContainerLogToMatch;
 import static org.graalvm.tests.integration.utils.Commands.waitForFileToMatch;
 import static org.graalvm.tests.integration.utils.Commands.waitForTcpClosed;
 import static org.graalvm.tests.integration.utils.Uploader.PERF_APP_REPORT;
-import static org.graalvm.tests.integration.utils.Uploader.postBuildtimePayload;
-import static org.graalvm.tests.integration.utils.Uploader.postRuntimePayload;
-import static org.jboss.resteasy.spi.HttpResponseCodes.SC_ACCEPTED;
-import static org.jboss.resteasy.spi.HttpResponseCodes.SC_CREATED;
-import static org.jboss.resteasy.spi.HttpResponseCodes.SC_OK;
+import static org.graalvm.tests.integration.utils.Uploader.submitBuildtimePayload;
+import static org.graalvm.tests.integration.utils.Uploader.submitRuntimePayload;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -100,6 +108,9 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 // Windows: We need to replace perf with wmic & Dr.Memory or something.
 // Mac: We need to figure out what's Mac's "perf".
 @DisabledOnOs({ OS.WINDOWS, OS.MAC})
+// Measures, never runs alongside other tests
+@Isolated
+@ExtendWith(ResourceAllocator.class)
 public class PerfCheckTest {
 
     private static final Logger LOGGER = Logger.getLogger(PerfCheckTest.class.getName());
@@ -107,15 +118,41 @@ public class PerfCheckTest {
     public static final int LIGHT_REQUESTS = Integer.parseInt(getProperty("PERFCHECK_TEST_LIGHT_REQUESTS", "100"));
     public static final int HEAVY_REQUESTS = Integer.parseInt(getProperty("PERFCHECK_TEST_HEAVY_REQUESTS", "2"));
     public static final int MX_HEAP_MB = Integer.parseInt(getProperty("PERFCHECK_TEST_REQUESTS_MX_HEAP_MB", "2560"));
+    // Load, the default is to fire the same number of requests as the former serial loop did, just concurrently
+    public static final int LOAD_CONCURRENCY = Integer.parseInt(getProperty("PERFCHECK_TEST_LOAD_CONCURRENCY", "4"));
+    public static final int HEAVY_LOAD_CONCURRENCY = Integer.parseInt(getProperty("PERFCHECK_TEST_HEAVY_LOAD_CONCURRENCY", "1"));
+    // 0 means as fast as the concurrency allows
+    public static final int LOAD_REQUESTS_PER_SECOND = Integer.parseInt(getProperty("PERFCHECK_TEST_LOAD_REQUESTS_PER_SECOND", "0"));
+    // 0 means the load is bounded by the number of requests, not by time
+    public static final int LOAD_DURATION_S = Integer.parseInt(getProperty("PERFCHECK_TEST_LOAD_DURATION_S", "0"));
+    // Rows written per request by the quarkus-vertx batch and pipelined endpoints
+    public static final String VERTX_BATCH_SIZES = getProperty("PERFCHECK_TEST_VERTX_BATCH_SIZES", "1,10,100,1000");
+    public static final int VERTX_REQUESTS = Integer.parseInt(getProperty("PERFCHECK_TEST_VERTX_REQUESTS", "200"));
+    // Concurrent updates of the same rows would mostly measure waiting for each other's row locks
+    public static final int VERTX_LOAD_CONCURRENCY = Integer.parseInt(getProperty("PERFCHECK_TEST_VERTX_LOAD_CONCURRENCY", "1"));
+    // Rows seeded for the quarkus-vertx streaming endpoints, the cursor fetch sizes they are read with
+    public static final int VERTX_STREAM_ROWS = Integer.parseInt(getProperty("PERFCHECK_TEST_VERTX_STREAM_ROWS", "1000000"));
+    public static final String VERTX_STREAM_FETCH_SIZES = getProperty("PERFCHECK_TEST_VERTX_STREAM_FETCH_SIZES", "100,1000");
+    public static final int VERTX_STREAM_REQUESTS = Integer.parseInt(getProperty("PERFCHECK_TEST_VERTX_STREAM_REQUESTS", "3"));
     // Build time constraint
     public static final int NATIVE_IMAGE_XMX_GB = Integer.parseInt(getProperty("PERFCHECK_TEST_NATIVE_IMAGE_XMX_GB", "8"));
 
+    // Phases of a run in the process log, e.g. to tell GCs of /dump from GCs of /dump/stream
+    private static final String PHASE_MARKER = "PerfCheckTest phase ";
+    private static final Pattern PHASE_END = Pattern.compile(".*(" + PHASE_MARKER + "|quarkus.*stopped).*");
+
     public static final String FINAL_NAME_TOKEN = "<FINAL_NAME>";
 
     // Reporting
     public static final String APP_RUNTIME_CONTEXT = "api/v1/perfstats/perf";
     public static final String APP_BUILDTIME_CONTEXT = "api/v1/image-stats";
 
+    @AfterAll
+    public static void flushUploads() throws InterruptedException {
+        // Payloads are uploaded in the background, measurements do not wait for the collector
+        Uploader.flush();
+    }
+
     public static Map<String, String> populateHeader(Map<String, String> report) {
         report.put("arch", getProperty("perf.app.arch", System.getProperty("os.arch")));
         report.put("os", getProperty("perf.app.os", System.getProperty("os.name")));
@@ -136,13 +173,56 @@ public class PerfCheckTest {
         return report;
     }
 
+    /**
+     * Checks the metrics of the reports, e.g. instructions or timeSpentInGCs, against threshold.conf,
+     * native mode ones possibly relative to the JVM mode report, i.e. the one without an executable.
+     */
+    private static void checkMetrics(Apps app, List<Map<String, String>> reports) {
+        final Map<String, Double> jvmMetrics = reports.stream()
+                .filter(r -> "-1".equals(r.get("executableSizeKb")))
+                .findFirst()
+                .map(Logs::numericMetrics)
+                .orElse(null);
+        for (Map<String, String> report : reports) {
+            if ("-1".equals(report.get("executableSizeKb"))) {
+                Logs.checkMetrics(app, Logs.Mode.JVM, jvmMetrics, null);
+            } else {
+                Logs.checkMetrics(app, Logs.Mode.NATIVE, Logs.numericMetrics(report), jvmMetrics);
+            }
+        }
+    }
+
+    /**
+     * Checks RSS, time to first OK request and latencies of the reports against threshold.conf, e.g.
+     * linux.native.p99.latency. It is done once all the modes were measured and the reports uploaded,
+     * so as a regression in JVM mode does not cost the native run and the evidence.
+     * Modes the app has no thresholds for are skipped.
+     */
+    private static void checkThresholds(Apps app, List<Map<String, String>> reports) {
+        for (Map<String, String> report : reports) {
+            final Logs.Mode mode = "-1".equals(report.get("executableSizeKb")) ? Logs.Mode.JVM : Logs.Mode.NATIVE;
+            if (!Logs.hasThresholds(app, mode)) {
+                LOGGER.info("There are no " + mode + " mode thresholds for " + app + ", skipping.");
+                continue;
+            }
+            Logs.checkThreshold(app, mode, Logs.SKIP, metric(report, "rssKb"), metric(report, "timeToFirstOKRequestMs"), Logs.SKIP,
+                    metric(report, "meanResponseTimeNs"), metric(report, "responseTime50PercentileNs"),
+                    metric(report, "responseTime90PercentileNs"), metric(report, "responseTime99PercentileNs"));
+        }
+    }
+
+    private static long metric(Map<String, String> report, String key) {
+        final String value = report.get(key);
+        return value == null ? Logs.SKIP : Long.parseLong(value);
+    }
+
     @Test
     @IfMandrelVersion(min = "21.3", max = "23.999")
     public void testQuarkusJSONParseOnce(TestInfo testInfo) throws IOException, InterruptedException, URISyntaxException {
         final Apps app = Apps.QUARKUS_JSON_PERF_PARSEONCE;
         LOGGER.info("Testing app: " + app);
         Process process = null;
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
@@ -176,7 +256,8 @@ public class PerfCheckTest {
                 final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[i]);
                 Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
                 process = runCommand(cmd, appDir, processLog, app);
-                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, 1, TimeUnit.SECONDS);
+                final ProcessSampler sampler = startSampler(process);
+                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, TimeUnit.SECONDS);
                 final long timeToFirstOKRequestMs = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
                 report.put("timeToFirstOKRequestMs", String.valueOf(timeToFirstOKRequestMs));
                 // Test web pages
@@ -202,23 +283,11 @@ public class PerfCheckTest {
                     assertEquals(200, releaseResponse.statusCode(), "App returned a non HTTP 200 response. The perf report is invalid.");
                 }
                 System.out.println();
-                report.put("rssKb", Long.toString(getRSSkB(process.children().sorted().findFirst().get().pid())));
+                final ProcessSampler.Summary samples = sampler.stop();
+                samples.report(report);
                 processStopper(process, false, true);
-                final String statsFor = Arrays.stream(app.buildAndRunCmds.runCommands[i])
-                        // skipping first 4 perf tool conf
-                        .skip(4).collect(Collectors.joining(" ")).trim();
-                waitForFileToMatch(Pattern.compile(".*Performance counter stats for\\s+'\\Q" + statsFor + "\\E':.*"), processLog.toPath(), 0, 5, 1, TimeUnit.SECONDS);
-                final Commands.PerfRecord pr = parsePerfRecord(processLog.toPath(), statsFor);
-                report.put("file", statsFor);
-                report.put("taskClock", String.valueOf(pr.taskClock));
-                report.put("contextSwitches", String.valueOf(pr.contextSwitches));
-                report.put("cpuMigrations", String.valueOf(pr.cpuMigrations));
-                report.put("pageFaults", String.valueOf(pr.pageFaults));
-                report.put("cycles", String.valueOf(pr.cycles));
-                report.put("instructions", String.valueOf(pr.instructions));
-                report.put("branches", String.valueOf(pr.branches));
-                report.put("branchMisses", String.valueOf(pr.branchMisses));
-                report.put("secondsTimeElapsed", String.valueOf(pr.secondsTimeElapsed));
+                final String statsFor = perfStatTarget(app.buildAndRunCmds.runCommands[i]);
+                perfStat(cn, mn, process, appDir, app.buildAndRunCmds.runCommands[i]).report(report);
                 assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
                         "Main port is still open");
                 final Commands.SerialGCLog l;
@@ -244,18 +313,12 @@ public class PerfCheckTest {
             final String reportPayload = mapToJSON(reports);
             LOGGER.info(reportPayload);
             if (PERF_APP_REPORT) {
-                final HttpResponse<String> response = postRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
-                if (response != null) {
-                    LOGGER.info("Response code:" + response.statusCode());
-                    LOGGER.info("Response body:" + response.body());
-                    if (response.statusCode() != SC_CREATED) {
-                        LOGGER.error("Payload was NOT uploaded tot the collector server!");
-                    }
-                }
+                submitRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
             }
             LOGGER.info("Gonna wait for ports closed...");
             assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
                     "Main port is still open");
+            checkMetrics(app, reports);
             Logs.checkLog(cn, mn, app, processLog);
         } finally {
             Files.deleteIfExists(json.toPath());
@@ -280,13 +343,14 @@ public class PerfCheckTest {
         final Apps app = Apps.QUARKUS_JSON_PERF;
         LOGGER.info("Testing app: " + app);
         Process process = null;
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
         final List<Map<String, String>> reports = new ArrayList<>(2);
         // Test data tmp storage
         final File json = Path.of(appDir.getAbsolutePath(), "logs", "record.json").toFile();
+        final File streamedJson = Path.of(appDir.getAbsolutePath(), "logs", "record-stream.json").toFile();
         String patch = null;
 
         try {
@@ -311,9 +375,17 @@ public class PerfCheckTest {
             for (int i = 0; i < app.buildAndRunCmds.runCommands.length; i++) {
                 final Map<String, String> report = populateHeader(new TreeMap<>());
                 final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[i]);
+                final String statsFor = perfStatTarget(app.buildAndRunCmds.runCommands[i]);
+                final String[] headers = new String[] {
+                        "Content-Type", "application/json",
+                        "Accept", "text/plain"
+                };
+                // The whole run metrics, e.g. timeSpentInGCs, perf stat counters, rssKb or the unprefixed latencies,
+                // describe a process that served /load/hash only, as they always have.
                 Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
                 process = runCommand(cmd, appDir, processLog, app);
-                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, 1, TimeUnit.SECONDS);
+                ProcessSampler sampler = startSampler(process);
+                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, TimeUnit.SECONDS);
                 final long timeToFirstOKRequestMs = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
                 report.put("timeToFirstOKRequestMs", String.valueOf(timeToFirstOKRequestMs));
                 // Test web pages
@@ -321,10 +393,6 @@ public class PerfCheckTest {
                         final FileOutputStream fileOutputStream = new FileOutputStream(json)) {
                     fileOutputStream.getChannel().transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
                 }
-                final String[] headers = new String[] {
-                        "Content-Type", "application/json",
-                        "Accept", "text/plain"
-                };
                 final HttpRequest releaseRequest = HttpRequest.newBuilder()
                         .method("POST", HttpRequest.BodyPublishers.ofFile(json.toPath()))
                         .version(HttpClient.Version.HTTP_1_1)
@@ -332,30 +400,14 @@ public class PerfCheckTest {
                         .uri(new URI(app.urlContent.urlContent[3][0]))
                         .headers(headers)
                         .build();
-                final HttpClient hc = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
-                for (int j = 0; j < HEAVY_REQUESTS; j++) {
-                    final HttpResponse<String> releaseResponse = hc.send(releaseRequest, HttpResponse.BodyHandlers.ofString());
-                    System.out.print(".");
-                    assertEquals(200, releaseResponse.statusCode(), "App returned a non HTTP 200 response. The perf report is invalid.");
-                }
-                System.out.println();
-                report.put("rssKb", Long.toString(getRSSkB(process.children().sorted().findFirst().get().pid())));
+                final LoadGenerator.Result load = loadPhase(report, processLog, statsFor, sampler,
+                        new LoadGenerator.Endpoint("/load/hash", releaseRequest, null));
+                load.report(report);
+                final ProcessSampler.Summary samples = sampler.stop();
+                samples.report(report);
                 processStopper(process, false, true);
-                final String statsFor = Arrays.stream(app.buildAndRunCmds.runCommands[i])
-                        // skipping first 4 perf tool conf
-                        .skip(4).collect(Collectors.joining(" ")).trim();
-                waitForFileToMatch(Pattern.compile(".*Performance counter stats for\\s+'\\Q" + statsFor + "\\E':.*"), processLog.toPath(), 0, 5, 1, TimeUnit.SECONDS);
-                final Commands.PerfRecord pr = parsePerfRecord(processLog.toPath(), statsFor);
-                report.put("file", statsFor);
-                report.put("taskClock", String.valueOf(pr.taskClock));
-                report.put("contextSwitches", String.valueOf(pr.contextSwitches));
-                report.put("cpuMigrations", String.valueOf(pr.cpuMigrations));
-                report.put("pageFaults", String.valueOf(pr.pageFaults));
-                report.put("cycles", String.valueOf(pr.cycles));
-                report.put("instructions", String.valueOf(pr.instructions));
-                report.put("branches", String.valueOf(pr.branches));
-                report.put("branchMisses", String.valueOf(pr.branchMisses));
-                report.put("secondsTimeElapsed", String.valueOf(pr.secondsTimeElapsed));
+                logMeasurements(cn, mn, app, statsFor, timeToFirstOKRequestMs, sampler, load);
+                perfStat(cn, mn, process, appDir, app.buildAndRunCmds.runCommands[i]).report(report);
                 assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
                         "Main port is still open");
                 final Commands.SerialGCLog l;
@@ -373,28 +425,71 @@ public class PerfCheckTest {
                     report.put("parseOnce", "null");
                 }
                 report.put("timeSpentInGCs", String.valueOf(l.timeSpentInGCs));
+
+                // Streamed versus buffered variants run in a process of their own, reported per phase only,
+                // e.g. dumpStreamPeakRssKb or loadHashStreamTimeSpentInGCs, so as they do not skew the above.
+                Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+                process = runCommand(cmd, appDir, processLog, app);
+                sampler = startSampler(process);
+                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, TimeUnit.SECONDS);
+                WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
+                try (final ReadableByteChannel readableByteChannel = Channels.newChannel(new URL(app.urlContent.urlContent[4][0]).openStream());
+                        final FileOutputStream fileOutputStream = new FileOutputStream(streamedJson)) {
+                    fileOutputStream.getChannel().transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
+                }
+                assertTrue(Arrays.equals(Files.readAllBytes(json.toPath()), Files.readAllBytes(streamedJson.toPath())),
+                        "/dump/stream must return the very same bytes as /dump");
+                // Both variants must come up with the same hash
+                final HttpResponse<String> hash = HttpClient.newHttpClient().send(releaseRequest, HttpResponse.BodyHandlers.ofString());
+                assertEquals(200, hash.statusCode(), "App returned a non HTTP 200 response. The perf report is invalid.");
+                final HttpRequest streamRequest = HttpRequest.newBuilder()
+                        .method("POST", HttpRequest.BodyPublishers.ofFile(json.toPath()))
+                        .version(HttpClient.Version.HTTP_1_1)
+                        .uri(new URI(app.urlContent.urlContent[5][0]))
+                        .headers(headers)
+                        .build();
+                // Goes first, so as it runs on about as warm a JIT as /load/hash did in its process
+                loadPhase(report, processLog, statsFor, sampler,
+                        new LoadGenerator.Endpoint("/load/hash/stream", streamRequest, hash.body()));
+                // The streamed variant goes first, so as its peak RSS is not the heap the buffered one left behind.
+                for (int d : new int[] { 4, 1 }) {
+                    final HttpRequest dumpRequest = HttpRequest.newBuilder()
+                            .GET()
+                            .version(HttpClient.Version.HTTP_1_1)
+                            .uri(new URI(app.urlContent.urlContent[d][0]))
+                            .build();
+                    loadPhase(report, processLog, statsFor, sampler,
+                            new LoadGenerator.Endpoint(new URI(app.urlContent.urlContent[d][0]).getPath(), dumpRequest, null));
+                }
+                sampler.stop();
+                processStopper(process, false, true);
+                // perf stat of this process is not reported, it just has to finish writing
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    LOGGER.warn("perf stat did not exit in time.");
+                }
+                assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                        "Main port is still open");
+                reportPhaseGCs(report, processLog, statsFor,
+                        phaseName("/load/hash"), phaseName("/load/hash/stream"), phaseName("/dump/stream"), phaseName("/dump"));
                 report.put("testMethod", cn + "#" + mn);
                 report.put("requestsExecuted", String.valueOf(HEAVY_REQUESTS));
+                report.put("requestsTotal", String.valueOf(load.total.getTotalCount()));
                 reports.add(report);
             }
             final String reportPayload = mapToJSON(reports);
             LOGGER.info(reportPayload);
             if (PERF_APP_REPORT) {
-                final HttpResponse<String> response = postRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
-                if (response != null) {
-                    LOGGER.info("Response code:" + response.statusCode());
-                    LOGGER.info("Response body:" + response.body());
-                    if (response.statusCode() != SC_CREATED) {
-                        LOGGER.error("Payload was NOT uploaded tot the collector server!");
-                    }
-                }
+                submitRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
             }
             LOGGER.info("Gonna wait for ports closed...");
             assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
                     "Main port is still open");
+            checkMetrics(app, reports);
+            checkThresholds(app, reports);
             Logs.checkLog(cn, mn, app, processLog);
         } finally {
             Files.deleteIfExists(json.toPath());
+            Files.deleteIfExists(streamedJson.toPath());
             if (process != null) {
                 processStopper(process, true);
             }
@@ -414,7 +509,7 @@ public class PerfCheckTest {
         final Apps app = Apps.QUARKUS_FULL_MICROPROFILE_PERF;
         LOGGER.info("Testing app: " + app);
         Process process = null;
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
@@ -448,40 +543,24 @@ public class PerfCheckTest {
                 final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[i]);
                 Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
                 process = runCommand(cmd, appDir, processLog, app);
+                final ProcessSampler sampler = startSampler(process);
                 final long timeToFirstOKRequestMs = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
-                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, 1, TimeUnit.SECONDS);
+                line = waitForFileToMatch(Pattern.compile(".*Events enabled.*"), processLog.toPath(), line, 20, TimeUnit.SECONDS);
                 report.put("timeToFirstOKRequestMs", String.valueOf(timeToFirstOKRequestMs));
                 LOGGER.info("Testing web page content...");
-                // Just serially iterate. No parallel clients...
-                final HttpClient hc = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
-                final List<HttpRequest> requests = new ArrayList<>();
-                for (String[] urlContent : app.urlContent.urlContent) {
-                    requests.add(HttpRequest.newBuilder().GET().uri(new URI(urlContent[0])).build());
+                final List<LoadGenerator.Endpoint> endpoints = LoadGenerator.endpoints(app.urlContent);
+                final LoadGenerator.Result load = getLoadGenerator(LOAD_CONCURRENCY, LIGHT_REQUESTS * endpoints.size()).run(endpoints);
+                if (load.getErrorsCount() > 0) {
+                    LOGGER.warn("There were " + load.getErrorsCount() + " failed or unexpected responses: " + load.errors);
                 }
-                for (int j = 0; j < LIGHT_REQUESTS; j++) {
-                    for (HttpRequest httpRequest : requests) {
-                        hc.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-                        System.out.print('.');
-                    }
-                }
-                System.out.println();
-                report.put("rssKb", Long.toString(getRSSkB(process.children().sorted().findFirst().get().pid())));
+                load.report(report);
+                report.put("requestErrors", String.valueOf(load.getErrorsCount()));
+                final ProcessSampler.Summary samples = sampler.stop();
+                samples.report(report);
                 processStopper(process, false, true);
-                final String statsFor = Arrays.stream(app.buildAndRunCmds.runCommands[i])
-                        // skipping first 2:  `perf stat'
-                        .skip(2).collect(Collectors.joining(" ")).trim();
-                waitForFileToMatch(Pattern.compile(".*Performance counter stats for\\s+'\\Q" + statsFor + "\\E':.*"), processLog.toPath(), 0, 5, 1, TimeUnit.SECONDS);
-                final Commands.PerfRecord pr = parsePerfRecord(processLog.toPath(), statsFor);
-                report.put("file", statsFor);
-                report.put("taskClock", String.valueOf(pr.taskClock));
-                report.put("contextSwitches", String.valueOf(pr.contextSwitches));
-                report.put("cpuMigrations", String.valueOf(pr.cpuMigrations));
-                report.put("pageFaults", String.valueOf(pr.pageFaults));
-                report.put("cycles", String.valueOf(pr.cycles));
-                report.put("instructions", String.valueOf(pr.instructions));
-                report.put("branches", String.valueOf(pr.branches));
-                report.put("branchMisses", String.valueOf(pr.branchMisses));
-                report.put("secondsTimeElapsed", String.valueOf(pr.secondsTimeElapsed));
+                final String statsFor = perfStatTarget(app.buildAndRunCmds.runCommands[i]);
+                logMeasurements(cn, mn, app, statsFor, timeToFirstOKRequestMs, sampler, load);
+                perfStat(cn, mn, process, appDir, app.buildAndRunCmds.runCommands[i]).report(report);
                 assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
                         "Main port is still open");
                 final Commands.SerialGCLog l;
@@ -499,24 +578,21 @@ public class PerfCheckTest {
                 }
                 report.put("timeSpentInGCs", String.valueOf(l.timeSpentInGCs));
                 report.put("testMethod", cn + "#" + mn);
+                // Per endpoint, as it has always been, requestsTotal is across all of them
                 report.put("requestsExecuted", String.valueOf(LIGHT_REQUESTS));
+                report.put("requestsTotal", String.valueOf(load.total.getTotalCount()));
                 reports.add(report);
             }
             final String reportPayload = mapToJSON(reports);
             LOGGER.info(reportPayload);
             if (PERF_APP_REPORT) {
-                final HttpResponse<String> response = postRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
-                if (response != null) {
-                    LOGGER.info("Response code:" + response.statusCode());
-                    LOGGER.info("Response body:" + response.body());
-                    if (response.statusCode() != SC_CREATED) {
-                        LOGGER.error("Payload was NOT uploaded to the collector server!");
-                    }
-                }
+                submitRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
             }
             LOGGER.info("Gonna wait for ports closed...");
             assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
                     "Main port is still open");
+            checkMetrics(app, reports);
+            checkThresholds(app, reports);
             Logs.checkLog(cn, mn, app, processLog);
         } finally {
             if (process != null) {
@@ -533,6 +609,371 @@ public class PerfCheckTest {
         }
     }
 
+    /**
+     * Writes fruits to PostgreSQL, running in a container next to the app, with one executeBatch per request
+     * and with one query per fruit pipelined on a single connection, PERFCHECK_TEST_VERTX_BATCH_SIZES fruits
+     * per request. Throughput, latencies, peak RSS and GCs are reported per endpoint, operation and batch size,
+     * e.g. fruitsPipelinedUpdate100RequestsPerSecond or fruitsBatchInsert1000PeakRssKb, in JVM and native mode.
+     */
+    @Test
+    @IfMandrelVersion(min = "21.3")
+    public void testQuarkusVertxBatch(TestInfo testInfo) throws IOException, InterruptedException, URISyntaxException {
+        final Apps app = Apps.QUARKUS_VERTX_PERF;
+        LOGGER.info("Testing app: " + app);
+        Process process = null;
+        final File appDir = ResourceAllocator.appDir(app).toFile();
+        final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
+        final String cn = testInfo.getTestClass().get().getCanonicalName();
+        final String mn = testInfo.getTestMethod().get().getName();
+        final List<Map<String, String>> reports = new ArrayList<>(2);
+        final int[] batchSizes = sizes(VERTX_BATCH_SIZES);
+        final Pattern dbReady = Pattern.compile(".*listening on IPv4 address.*port 5432.*");
+
+        String patch = null;
+        if (QUARKUS_VERSION.compareTo(QuarkusVersion.V_3_9_0) >= 0) {
+            patch = "quarkus_3.9.x.patch";
+        } else if (QUARKUS_VERSION.compareTo(QuarkusVersion.V_3_0_0) >= 0) {
+            patch = "quarkus_3.x.patch";
+        }
+        try {
+            // Cleanup
+            cleanTarget(app);
+            removeContainer("quarkus_test_db");
+            Files.createDirectories(Paths.get(appDir.getAbsolutePath(), "logs"));
+
+            if (patch != null) {
+                runCommand(getRunCommand("git", "apply", patch), appDir);
+            }
+
+            // Start db and build executables
+            builderRoutine(app, null, null, null, appDir, processLog);
+            assertTrue(waitForContainerLogToMatch("quarkus_test_db", dbReady, 20, 1, TimeUnit.SECONDS),
+                    "PostgreSQL did not start in time.");
+
+            for (int i = 0; i < app.buildAndRunCmds.runCommands.length; i++) {
+                final Map<String, String> report = populateHeader(new TreeMap<>());
+                report.replace("testApp", "https://github.com/Karm/mandrel-integration-tests/apps/quarkus-vertx/");
+                final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[i]);
+                Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+                process = runCommand(cmd, appDir, processLog, app);
+                final ProcessSampler sampler = startSampler(process);
+                // The app recreates the table on start, with the 3 initial fruits
+                final long timeToFirstOKRequestMs = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
+                report.put("timeToFirstOKRequestMs", String.valueOf(timeToFirstOKRequestMs));
+                final String statsFor = perfStatTarget(app.buildAndRunCmds.runCommands[i]);
+                final List<String> phases = new ArrayList<>();
+                LoadGenerator.Result load = null;
+                long requestsExecuted = 0;
+                for (int size : batchSizes) {
+                    // [1][0] - executeBatch, [2][0] - pipelined
+                    for (int u : new int[] { 1, 2 }) {
+                        final URI uri = new URI(app.urlContent.urlContent[u][0]);
+                        // Inserts go first, so as the fruits with ids 1..size exist by the time they are updated
+                        for (String method : new String[] { "POST", "PUT" }) {
+                            final boolean update = "PUT".equals(method);
+                            final HttpRequest request = HttpRequest.newBuilder()
+                                    .method(method, HttpRequest.BodyPublishers.ofString(fruitsJSON(size, update)))
+                                    .version(HttpClient.Version.HTTP_1_1)
+                                    .uri(uri)
+                                    .headers("Content-Type", "application/json", "Accept", "application/json")
+                                    .build();
+                            final String name = uri.getPath() + (update ? "/update/" : "/insert/") + size;
+                            // The response is the number of written rows
+                            final LoadGenerator.Result l = loadPhase(report, processLog, statsFor, sampler,
+                                    new LoadGenerator.Endpoint(name, request, String.valueOf(size)),
+                                    getLoadGenerator(VERTX_LOAD_CONCURRENCY, VERTX_REQUESTS));
+                            report.put(phaseName(name) + "RowsPerSecond", String.valueOf(l.getRequestsPerSecond() * size));
+                            phases.add(phaseName(name));
+                            requestsExecuted += l.total.getTotalCount();
+                            // The executeBatch inserts of the largest batch stand for the whole run in measurements.csv
+                            if (u == 1 && !update) {
+                                load = l;
+                            }
+                        }
+                    }
+                }
+                load.report(report);
+                final ProcessSampler.Summary samples = sampler.stop();
+                samples.report(report);
+                processStopper(process, false, true);
+                logMeasurements(cn, mn, app, statsFor, timeToFirstOKRequestMs, sampler, load);
+                perfStat(cn, mn, process, appDir, app.buildAndRunCmds.runCommands[i]).report(report);
+                assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                        "Main port is still open");
+                final Commands.SerialGCLog l;
+                if (!statsFor.contains("-jar")) {
+                    long executableSizeKb = Files.size(Path.of(appDir.getAbsolutePath(), statsFor.split(" ")[0])) / 1024L;
+                    report.put("executableSizeKb", String.valueOf(executableSizeKb));
+                    l = parseSerialGCLog(processLog.toPath(), statsFor, false);
+                    report.put("incrementalGCevents", String.valueOf(l.incrementalGCevents));
+                    report.put("fullGCevents", String.valueOf(l.fullGCevents));
+                } else {
+                    l = parseSerialGCLog(processLog.toPath(), statsFor, true);
+                    report.put("incrementalGCevents", "-1");
+                    report.put("fullGCevents", "-1");
+                    report.put("executableSizeKb", "-1");
+                }
+                reportPhaseGCs(report, processLog, statsFor, phases.toArray(new String[0]));
+                report.put("timeSpentInGCs", String.valueOf(l.timeSpentInGCs));
+                report.put("testMethod", cn + "#" + mn);
+                report.put("requestsExecuted", String.valueOf(requestsExecuted));
+                reports.add(report);
+            }
+            final String reportPayload = mapToJSON(reports);
+            LOGGER.info(reportPayload);
+            if (PERF_APP_REPORT) {
+                submitRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
+            }
+            LOGGER.info("Gonna wait for ports closed...");
+            assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                    "Main port is still open");
+            checkMetrics(app, reports);
+            checkThresholds(app, reports);
+            Logs.checkLog(cn, mn, app, processLog);
+        } finally {
+            if (process != null) {
+                processStopper(process, true);
+            }
+            Logs.archiveLog(cn, mn, processLog);
+            cleanTarget(app);
+            removeContainer("quarkus_test_db");
+            if (patch != null) {
+                runCommand(getRunCommand("git", "apply", "-R", patch), appDir);
+            }
+        }
+    }
+
+    /**
+     * Seeds PERFCHECK_TEST_VERTX_STREAM_ROWS fruits and reads them all, streamed from a cursor as NDJSON and as SSE
+     * at PERFCHECK_TEST_VERTX_STREAM_FETCH_SIZES rows per fetch, and then buffered in a single JSON array for comparison.
+     * Time to the first and to the last byte, peak RSS and GCs are reported per endpoint and fetch size,
+     * e.g. fruitsStreamNdjson100TimeToFirstByteMs or fruitsStreamSse1000PeakRssKb and fruitsPeakRssKb,
+     * in JVM and native mode. The streamed peak RSS is expected to stay flat whatever the number of rows.
+     */
+    @Test
+    @IfMandrelVersion(min = "21.3")
+    public void testQuarkusVertxStream(TestInfo testInfo) throws IOException, InterruptedException, URISyntaxException {
+        final Apps app = Apps.QUARKUS_VERTX_PERF;
+        LOGGER.info("Testing app: " + app);
+        Process process = null;
+        final File appDir = ResourceAllocator.appDir(app).toFile();
+        final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
+        final String cn = testInfo.getTestClass().get().getCanonicalName();
+        final String mn = testInfo.getTestMethod().get().getName();
+        final List<Map<String, String>> reports = new ArrayList<>(2);
+        final int[] fetchSizes = sizes(VERTX_STREAM_FETCH_SIZES);
+        final Pattern dbReady = Pattern.compile(".*listening on IPv4 address.*port 5432.*");
+        final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        String patch = null;
+        if (QUARKUS_VERSION.compareTo(QuarkusVersion.V_3_9_0) >= 0) {
+            patch = "quarkus_3.9.x.patch";
+        } else if (QUARKUS_VERSION.compareTo(QuarkusVersion.V_3_0_0) >= 0) {
+            patch = "quarkus_3.x.patch";
+        }
+        try {
+            // Cleanup
+            cleanTarget(app);
+            removeContainer("quarkus_test_db");
+            Files.createDirectories(Paths.get(appDir.getAbsolutePath(), "logs"));
+
+            if (patch != null) {
+                runCommand(getRunCommand("git", "apply", patch), appDir);
+            }
+
+            // Start db and build executables
+            builderRoutine(app, null, null, null, appDir, processLog);
+            assertTrue(waitForContainerLogToMatch("quarkus_test_db", dbReady, 20, 1, TimeUnit.SECONDS),
+                    "PostgreSQL did not start in time.");
+
+            for (int i = 0; i < app.buildAndRunCmds.runCommands.length; i++) {
+                final Map<String, String> report = populateHeader(new TreeMap<>());
+                report.replace("testApp", "https://github.com/Karm/mandrel-integration-tests/apps/quarkus-vertx/");
+                report.put("rows", String.valueOf(VERTX_STREAM_ROWS));
+                final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[i]);
+                Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+                process = runCommand(cmd, appDir, processLog, app);
+                final ProcessSampler sampler = startSampler(process);
+                final long timeToFirstOKRequestMs = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
+                report.put("timeToFirstOKRequestMs", String.valueOf(timeToFirstOKRequestMs));
+                // The app recreated the table on start, with the 3 initial fruits, it is seeded in the db, not through the app
+                final String seeded = runCommand(getRunCommand(CONTAINER_RUNTIME, "exec", "quarkus_test_db",
+                        "psql", "-U", "quarkus_test", "-d", "quarkus_test", "-v", "ON_ERROR_STOP=1", "-c",
+                        "INSERT INTO fruits (name) SELECT 'Fruit ' || g FROM generate_series(1, " + VERTX_STREAM_ROWS + ") AS g"));
+                assertTrue(seeded.contains("INSERT 0 " + VERTX_STREAM_ROWS), "Seeding fruits failed: " + seeded);
+                final String statsFor = perfStatTarget(app.buildAndRunCmds.runCommands[i]);
+                final List<String> phases = new ArrayList<>();
+                long requestsExecuted = 0;
+                // The buffered read goes last, so as the streamed ones' peak RSS is not the heap it left behind
+                final List<String> urls = new ArrayList<>();
+                for (int fetchSize : fetchSizes) {
+                    // [3][0] - NDJSON, [4][0] - SSE
+                    urls.add(app.urlContent.urlContent[3][0] + "?fetch=" + fetchSize);
+                    urls.add(app.urlContent.urlContent[4][0] + "?fetch=" + fetchSize);
+                }
+                urls.add(app.urlContent.urlContent[0][0]);
+                for (String url : urls) {
+                    final URI uri = new URI(url);
+                    final String phase = phaseName(uri.getPath() + (uri.getQuery() == null ? "" : "/" + uri.getQuery().replace("fetch=", "")));
+                    streamPhase(report, processLog, statsFor, sampler, client, phase, uri);
+                    phases.add(phase);
+                    requestsExecuted += VERTX_STREAM_REQUESTS;
+                }
+                final ProcessSampler.Summary samples = sampler.stop();
+                samples.report(report);
+                processStopper(process, false, true);
+                final Logs.Mode mode = statsFor.contains("-jar") ? Logs.Mode.JVM : Logs.Mode.NATIVE;
+                sampler.writeCSV(Paths.get(Logs.getLogsDir(cn, mn).toString(), "process-samples-" + mode + ".csv"));
+                perfStat(cn, mn, process, appDir, app.buildAndRunCmds.runCommands[i]).report(report);
+                assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                        "Main port is still open");
+                final Commands.SerialGCLog l;
+                if (!statsFor.contains("-jar")) {
+                    long executableSizeKb = Files.size(Path.of(appDir.getAbsolutePath(), statsFor.split(" ")[0])) / 1024L;
+                    report.put("executableSizeKb", String.valueOf(executableSizeKb));
+                    l = parseSerialGCLog(processLog.toPath(), statsFor, false);
+                    report.put("incrementalGCevents", String.valueOf(l.incrementalGCevents));
+                    report.put("fullGCevents", String.valueOf(l.fullGCevents));
+                } else {
+                    l = parseSerialGCLog(processLog.toPath(), statsFor, true);
+                    report.put("incrementalGCevents", "-1");
+                    report.put("fullGCevents", "-1");
+                    report.put("executableSizeKb", "-1");
+                }
+                reportPhaseGCs(report, processLog, statsFor, phases.toArray(new String[0]));
+                report.put("timeSpentInGCs", String.valueOf(l.timeSpentInGCs));
+                report.put("testMethod", cn + "#" + mn);
+                report.put("requestsExecuted", String.valueOf(requestsExecuted));
+                reports.add(report);
+            }
+            final String reportPayload = mapToJSON(reports);
+            LOGGER.info(reportPayload);
+            if (PERF_APP_REPORT) {
+                submitRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
+            }
+            LOGGER.info("Gonna wait for ports closed...");
+            assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                    "Main port is still open");
+            checkMetrics(app, reports);
+            Logs.checkLog(cn, mn, app, processLog);
+        } finally {
+            if (process != null) {
+                processStopper(process, true);
+            }
+            Logs.archiveLog(cn, mn, processLog);
+            cleanTarget(app);
+            removeContainer("quarkus_test_db");
+            if (patch != null) {
+                runCommand(getRunCommand("git", "apply", "-R", patch), appDir);
+            }
+        }
+    }
+
+    /**
+     * Drives the GreetService's JSON producing GET endpoints and its greeting update PUT endpoint
+     * round-robin under concurrent load, in JVM and native mode. Latencies are reported for all of them
+     * together as well as per endpoint, e.g. greetGreetingResponseTime99PercentileNs for the PUT.
+     */
+    @Test
+    @Tag("helidon")
+    @IfMandrelVersion(min = "21.3")
+    public void testHelidonQuickStartSE(TestInfo testInfo) throws IOException, InterruptedException, URISyntaxException {
+        final Apps app = Apps.HELIDON_QUICKSTART_SE_PERF;
+        LOGGER.info("Testing app: " + app);
+        Process process = null;
+        final File appDir = ResourceAllocator.appDir(app).toFile();
+        final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
+        final String cn = testInfo.getTestClass().get().getCanonicalName();
+        final String mn = testInfo.getTestMethod().get().getName();
+        final List<Map<String, String>> reports = new ArrayList<>(2);
+        // There is no "stopped" line to end a run with in the log, the next run's command does
+        final Pattern runEnd = Pattern.compile("^perf stat .*");
+
+        try {
+            // Cleanup
+            cleanTarget(app);
+            Files.createDirectories(Paths.get(appDir.getAbsolutePath(), "logs"));
+
+            // Build executables
+            builderRoutine(app, null, null, null, appDir, processLog);
+
+            for (int i = 0; i < app.buildAndRunCmds.runCommands.length; i++) {
+                final Map<String, String> report = populateHeader(new TreeMap<>());
+                report.replace("testApp", "https://github.com/Karm/mandrel-integration-tests/apps/helidon-quickstart-se/");
+                final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[i]);
+                Files.writeString(processLog.toPath(), String.join(" ", cmd) + '\n', StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+                process = runCommand(cmd, appDir, processLog, app);
+                final ProcessSampler sampler = startSampler(process);
+                final long timeToFirstOKRequestMs = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
+                report.put("timeToFirstOKRequestMs", String.valueOf(timeToFirstOKRequestMs));
+                LOGGER.info("Testing web page content...");
+                final List<LoadGenerator.Endpoint> endpoints = new ArrayList<>(3);
+                // [0][0], [1][0] - GET JSON
+                for (int u : new int[] { 0, 1 }) {
+                    final URI uri = new URI(app.urlContent.urlContent[u][0]);
+                    endpoints.add(new LoadGenerator.Endpoint(uri.getPath(),
+                            HttpRequest.newBuilder().GET().uri(uri).build(), app.urlContent.urlContent[u][1]));
+                }
+                // [2][0] - PUT JSON, no content
+                final URI greeting = new URI(app.urlContent.urlContent[2][0]);
+                endpoints.add(new LoadGenerator.Endpoint(greeting.getPath(), HttpRequest.newBuilder()
+                        .PUT(HttpRequest.BodyPublishers.ofString("{\"greeting\":\"Hello\"}"))
+                        .uri(greeting)
+                        .header("Content-Type", "application/json")
+                        .build(), null, 204));
+                final LoadGenerator.Result load = getLoadGenerator(LOAD_CONCURRENCY, LIGHT_REQUESTS * endpoints.size()).run(endpoints);
+                assertEquals(0, load.getErrorsCount(), "App returned a non HTTP 200/204 or an unexpected response: " +
+                        load.errors + ". The perf report is invalid.");
+                load.report(report);
+                reportEndpoints(report, load);
+                final ProcessSampler.Summary samples = sampler.stop();
+                samples.report(report);
+                processStopper(process, false, true);
+                final String statsFor = perfStatTarget(app.buildAndRunCmds.runCommands[i]);
+                logMeasurements(cn, mn, app, statsFor, timeToFirstOKRequestMs, sampler, load);
+                perfStat(cn, mn, process, appDir, app.buildAndRunCmds.runCommands[i]).report(report);
+                assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                        "Main port is still open");
+                final Pattern runBegin = Pattern.compile(".*\\s+\\Q" + statsFor + "\\E$");
+                final Commands.SerialGCLog l;
+                if (!statsFor.contains("-jar")) {
+                    long executableSizeKb = Files.size(Path.of(appDir.getAbsolutePath(), statsFor.split(" ")[0])) / 1024L;
+                    report.put("executableSizeKb", String.valueOf(executableSizeKb));
+                    l = parseSerialGCLog(processLog.toPath(), runBegin, runEnd, false);
+                    report.put("incrementalGCevents", String.valueOf(l.incrementalGCevents));
+                    report.put("fullGCevents", String.valueOf(l.fullGCevents));
+                } else {
+                    l = parseSerialGCLog(processLog.toPath(), runBegin, runEnd, true);
+                    report.put("incrementalGCevents", "-1");
+                    report.put("fullGCevents", "-1");
+                    report.put("executableSizeKb", "-1");
+                }
+                report.put("timeSpentInGCs", String.valueOf(l.timeSpentInGCs));
+                report.put("testMethod", cn + "#" + mn);
+                report.put("requestsExecuted", String.valueOf(LIGHT_REQUESTS));
+                report.put("requestsTotal", String.valueOf(load.total.getTotalCount()));
+                reports.add(report);
+            }
+            final String reportPayload = mapToJSON(reports);
+            LOGGER.info(reportPayload);
+            if (PERF_APP_REPORT) {
+                submitRuntimePayload(APP_RUNTIME_CONTEXT, reportPayload);
+            }
+            LOGGER.info("Gonna wait for ports closed...");
+            assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+                    "Main port is still open");
+            checkMetrics(app, reports);
+            checkThresholds(app, reports);
+            Logs.checkLog(cn, mn, app, processLog);
+        } finally {
+            if (process != null) {
+                processStopper(process, true);
+            }
+            Logs.archiveLog(cn, mn, processLog);
+            cleanTarget(app);
+        }
+    }
+
     /**
      * This test builds and runs integration tests of a more complex Quarkus app,
      * including two databases, testcontainers etc.
@@ -562,7 +1003,7 @@ public class PerfCheckTest {
     public void testQuarkusMPOrmAwt(TestInfo testInfo, boolean inContainer) throws IOException, InterruptedException, URISyntaxException {
         final Apps app = inContainer ? Apps.QUARKUS_BUILDER_IMAGE_MP_ORM_DBS_AWT : Apps.QUARKUS_MP_ORM_DBS_AWT;
         LOGGER.info("Testing app: " + app);
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
         final String mn = testInfo.getTestMethod().get().getName();
@@ -621,19 +1062,11 @@ public class PerfCheckTest {
                 final String qversion = QUARKUS_VERSION.isSnapshot() ?
                         QUARKUS_VERSION.getGitSHA() + '.' + QUARKUS_VERSION.getVersionString() : QUARKUS_VERSION.getVersionString();
                 final String mversion = UsedVersion.getVersion(inContainer).toString();
-                final HttpResponse<String> r;
                 // The json files are like 4K tops, so we can afford Files.readString...
                 if (secondaryPayloads.size() == 1) {
-                    r = postBuildtimePayload(APP_BUILDTIME_CONTEXT, qversion, mversion, Files.readString(mainPayloads.get(0)), Files.readString(secondaryPayloads.get(0)));
+                    submitBuildtimePayload(APP_BUILDTIME_CONTEXT, qversion, mversion, Files.readString(mainPayloads.get(0)), Files.readString(secondaryPayloads.get(0)));
                 } else {
-                    r = postBuildtimePayload(APP_BUILDTIME_CONTEXT, qversion, mversion, Files.readString(mainPayloads.get(0)));
-                }
-                if (r != null) {
-                    LOGGER.info("Response code:" + r.statusCode());
-                    LOGGER.info("Response body:" + r.body());
-                    if (!(r.statusCode() == SC_CREATED || r.statusCode() == SC_ACCEPTED || r.statusCode() == SC_OK)) {
-                        LOGGER.error("Payload was NOT uploaded to the collector server!");
-                    }
+                    submitBuildtimePayload(APP_BUILDTIME_CONTEXT, qversion, mversion, Files.readString(mainPayloads.get(0)));
                 }
             }
             Logs.checkLog(cn, mn, app, processLog);
@@ -649,6 +1082,204 @@ public class PerfCheckTest {
         }
     }
 
+    /**
+     * @return e.g. dumpStream for /dump/stream, the prefix of the phase's metrics in the report
+     */
+    private static String phaseName(String path) {
+        final StringBuilder s = new StringBuilder();
+        for (String part : path.split("/")) {
+            if (!part.isEmpty()) {
+                s.append(s.length() == 0 ? part : Character.toUpperCase(part.charAt(0)) + part.substring(1));
+            }
+        }
+        return s.toString();
+    }
+
+    /**
+     * Marks where a phase of the run begins in the process log, the app's GC log lines follow.
+     */
+    private static void markPhase(File processLog, String phase, String statsFor) throws IOException {
+        Files.writeString(processLog.toPath(), PHASE_MARKER + phase + " of " + statsFor + '\n',
+                StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+    }
+
+    /**
+     * Puts the load's latencies and the peak RSS while it lasted to the report, prefixed with the phase,
+     * e.g. dumpMeanResponseTimeNs and dumpPeakRssKb for /dump.
+     */
+    private static LoadGenerator.Result loadPhase(Map<String, String> report, File processLog, String statsFor,
+            ProcessSampler sampler, LoadGenerator.Endpoint endpoint) throws IOException, InterruptedException {
+        return loadPhase(report, processLog, statsFor, sampler, endpoint, getLoadGenerator(HEAVY_LOAD_CONCURRENCY, HEAVY_REQUESTS));
+    }
+
+    private static LoadGenerator.Result loadPhase(Map<String, String> report, File processLog, String statsFor,
+            ProcessSampler sampler, LoadGenerator.Endpoint endpoint, LoadGenerator loadGenerator) throws IOException, InterruptedException {
+        final String phase = phaseName(endpoint.name);
+        markPhase(processLog, phase, statsFor);
+        final long fromMs = sampler.elapsedMs();
+        final LoadGenerator.Result load = loadGenerator.run(List.of(endpoint));
+        assertEquals(0, load.getErrorsCount(), "App returned a non HTTP 200 or an unexpected response to " +
+                endpoint.name + ". The perf report is invalid.");
+        load.report(report, phase);
+        report.put(phase + "PeakRssKb", String.valueOf(sampler.peakRssKb(fromMs, sampler.elapsedMs())));
+        return load;
+    }
+
+    /**
+     * Puts e.g. dumpTimeSpentInGCs and dumpIncrementalGCevents to the report, the events in native mode only,
+     * as the whole run's timeSpentInGCs and incrementalGCevents are.
+     */
+    private static void reportPhaseGCs(Map<String, String> report, File processLog, String statsFor, String... phases)
+            throws IOException {
+        final boolean isJVM = statsFor.contains("-jar");
+        for (String phase : phases) {
+            final Commands.SerialGCLog l = parseSerialGCLog(processLog.toPath(),
+                    Pattern.compile(Pattern.quote(PHASE_MARKER + phase + " of " + statsFor)), PHASE_END, isJVM);
+            report.put(phase + "TimeSpentInGCs", String.valueOf(l.timeSpentInGCs));
+            report.put(phase + "IncrementalGCevents", isJVM ? "-1" : String.valueOf(l.incrementalGCevents));
+            report.put(phase + "FullGCevents", isJVM ? "-1" : String.valueOf(l.fullGCevents));
+        }
+    }
+
+    /**
+     * Puts each endpoint's latencies in ns and errors to the report, prefixed with its path,
+     * e.g. greetKarmResponseTime99PercentileNs for /greet/Karm.
+     */
+    private static void reportEndpoints(Map<String, String> report, LoadGenerator.Result load) {
+        load.histograms.forEach((name, h) -> {
+            final String prefix = phaseName(name);
+            report.put(prefix + "MeanResponseTimeNs", String.valueOf(h.getMean()));
+            report.put(prefix + "ResponseTime50PercentileNs", String.valueOf(h.getValueAtPercentile(50)));
+            report.put(prefix + "ResponseTime90PercentileNs", String.valueOf(h.getValueAtPercentile(90)));
+            report.put(prefix + "ResponseTime99PercentileNs", String.valueOf(h.getValueAtPercentile(99)));
+            report.put(prefix + "ResponseTime999PercentileNs", String.valueOf(h.getValueAtPercentile(99.9)));
+            report.put(prefix + "RequestErrors", String.valueOf(load.errors.get(name)));
+        });
+    }
+
+    /**
+     * Reads all the fruits PERFCHECK_TEST_VERTX_STREAM_REQUESTS times, one request after another, and puts the median
+     * time to the first and to the last byte, the size and the peak RSS while it lasted to the report, prefixed
+     * with the phase, e.g. fruitsStreamSse100TimeToFirstByteMs.
+     */
+    private static void streamPhase(Map<String, String> report, File processLog, String statsFor, ProcessSampler sampler,
+            HttpClient client, String phase, URI uri) throws IOException, InterruptedException {
+        if (VERTX_STREAM_REQUESTS < 1) {
+            throw new IllegalArgumentException("PERFCHECK_TEST_VERTX_STREAM_REQUESTS must be at least 1, was: " + VERTX_STREAM_REQUESTS);
+        }
+        markPhase(processLog, phase, statsFor);
+        final long fromMs = sampler.elapsedMs();
+        final HttpRequest request = HttpRequest.newBuilder()
+                .GET()
+                .version(HttpClient.Version.HTTP_1_1)
+                .uri(uri)
+                .build();
+        final long[] firstByteMs = new long[VERTX_STREAM_REQUESTS];
+        final long[] lastByteMs = new long[VERTX_STREAM_REQUESTS];
+        StreamedResponse r = null;
+        for (int i = 0; i < VERTX_STREAM_REQUESTS; i++) {
+            // Each fruit is {"id":...,"name":...} whether it is an NDJSON line, an SSE event or an array element
+            r = StreamedResponse.fetch(client, request, "\"id\":");
+            LOGGER.infof("%s: %s", phase, r);
+            assertEquals(200, r.statusCode, "App returned a non HTTP 200 response to " + uri + ". The perf report is invalid.");
+            assertEquals(VERTX_STREAM_ROWS + 3L, r.items, "App did not return all the fruits from " + uri + ".");
+            firstByteMs[i] = TimeUnit.NANOSECONDS.toMillis(r.timeToFirstByteNs);
+            lastByteMs[i] = TimeUnit.NANOSECONDS.toMillis(r.timeToLastByteNs);
+        }
+        Arrays.sort(firstByteMs);
+        Arrays.sort(lastByteMs);
+        report.put(phase + "TimeToFirstByteMs", String.valueOf(firstByteMs[VERTX_STREAM_REQUESTS / 2]));
+        report.put(phase + "TimeToLastByteMs", String.valueOf(lastByteMs[VERTX_STREAM_REQUESTS / 2]));
+        report.put(phase + "Bytes", String.valueOf(r.bytes));
+        report.put(phase + "PeakRssKb", String.valueOf(sampler.peakRssKb(fromMs, sampler.elapsedMs())));
+    }
+
+    /**
+     * @return e.g. 1,10,100 for PERFCHECK_TEST_VERTX_BATCH_SIZES=100,1,10
+     */
+    private static int[] sizes(String sizes) {
+        final int[] parsed = Arrays.stream(sizes.split(","))
+                .map(String::trim)
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+        if (parsed.length == 0 || parsed[0] < 1) {
+            throw new IllegalArgumentException("Sizes must be a comma separated list of positive ints, was: " + sizes);
+        }
+        return parsed;
+    }
+
+    /**
+     * @return a JSON array of fruits, with ids 1..size if they are to be updated
+     */
+    private static String fruitsJSON(int size, boolean withIds) {
+        final StringBuilder s = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                s.append(',');
+            }
+            s.append('{');
+            if (withIds) {
+                s.append("\"id\":").append(i + 1).append(',');
+            }
+            s.append("\"name\":\"Fruit ").append(i).append("\"}");
+        }
+        return s.append(']').toString();
+    }
+
+    private static LoadGenerator getLoadGenerator(int concurrency, long requests) {
+        final LoadGenerator loadGenerator = new LoadGenerator()
+                .concurrency(concurrency)
+                .requestsPerSecond(LOAD_REQUESTS_PER_SECOND);
+        if (LOAD_DURATION_S > 0) {
+            loadGenerator.duration(Duration.ofSeconds(LOAD_DURATION_S));
+        } else {
+            loadGenerator.requests(requests);
+        }
+        return loadGenerator;
+    }
+
+    /**
+     * The process we start is `perf', the app is its child.
+     */
+    private static ProcessSampler startSampler(Process perf) throws InterruptedException {
+        for (int i = 0; i < 50 && perf.children().findAny().isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        final ProcessHandle app = perf.children().sorted().findFirst()
+                .orElseThrow(() -> new IllegalStateException("perf did not start the app in time"));
+        return new ProcessSampler(app.pid()).start();
+    }
+
+    /**
+     * perf writes the counters to its -o file once the measured command exited.
+     */
+    private static Commands.PerfRecord perfStat(String cn, String mn, Process process, File appDir, String[] runCommand)
+            throws IOException, InterruptedException {
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            LOGGER.warn("perf stat did not exit in time, its counters might be missing.");
+        }
+        final Path csv = perfStatOutput(appDir, runCommand);
+        final Commands.PerfRecord pr = parsePerfStatCSV(csv, perfStatTarget(runCommand));
+        Logs.archiveLog(cn, mn, csv.toFile());
+        return pr;
+    }
+
+    /**
+     * Latencies are in ns, the mode is derived from the run command, i.e. JVM for `java -jar'.
+     */
+    private static void logMeasurements(String cn, String mn, Apps app, String statsFor, long timeToFirstOKRequestMs,
+            ProcessSampler sampler, LoadGenerator.Result load) throws IOException, InterruptedException {
+        final Logs.Mode mode = statsFor.contains("-jar") ? Logs.Mode.JVM : Logs.Mode.NATIVE;
+        final ProcessSampler.Summary samples = sampler.stop();
+        sampler.writeCSV(Paths.get(Logs.getLogsDir(cn, mn).toString(), "process-samples-" + mode + ".csv"));
+        final LogBuilder.Log log = load.log(samples.log(new LogBuilder()
+                        .app(app + "_" + mode)
+                        .timeToFirstOKRequestMs(timeToFirstOKRequestMs)))
+                .build();
+        Logs.logMeasurements(log, Paths.get(Logs.getLogsDir(cn, mn).toString(), "measurements.csv"));
+    }
+
     private static Map<String, String> getSwitches1() {
         final Map<String, String> switches;
         if (UsedVersion.getVersion(false).compareTo(Version.create(22, 2, 0)) >= 0) {
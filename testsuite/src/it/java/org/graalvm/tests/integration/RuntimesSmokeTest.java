@@ -21,9 +21,14 @@ package org.graalvm.tests.integration;
 
 import org.graalvm.home.Version;
 import org.graalvm.tests.integration.utils.Apps;
+import org.graalvm.tests.integration.utils.CgroupSampler;
 import org.graalvm.tests.integration.utils.ContainerNames;
 import org.graalvm.tests.integration.utils.LogBuilder;
 import org.graalvm.tests.integration.utils.Logs;
+import org.graalvm.tests.integration.utils.ProcessSampler;
+import org.graalvm.tests.integration.utils.ResourceAllocator;
+import org.graalvm.tests.integration.utils.SampleStats;
+import org.graalvm.tests.integration.utils.StartupTimeline;
 import org.graalvm.tests.integration.utils.WebpageTester;
 import org.graalvm.tests.integration.utils.versions.QuarkusVersion;
 import org.graalvm.tests.integration.utils.versions.UsedVersion;
@@ -34,12 +39,15 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInfo;
 import org.junit.jupiter.api.condition.DisabledOnOs;
 import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.parallel.Isolated;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -48,10 +56,12 @@ import java.util.regex.Pattern;
 import static org.graalvm.tests.integration.utils.Commands.QUARKUS_VERSION;
 import static org.graalvm.tests.integration.utils.Commands.builderRoutine;
 import static org.graalvm.tests.integration.utils.Commands.cleanTarget;
+import static org.graalvm.tests.integration.utils.Commands.clearCaches;
 import static org.graalvm.tests.integration.utils.Commands.findExecutable;
 import static org.graalvm.tests.integration.utils.Commands.getBaseDir;
-import static org.graalvm.tests.integration.utils.Commands.getContainerMemoryKb;
+import static org.graalvm.tests.integration.utils.Commands.getContainerStatsMemoryKb;
 import static org.graalvm.tests.integration.utils.Commands.getOpenedFDs;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
 import static org.graalvm.tests.integration.utils.Commands.getRSSkB;
 import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
 import static org.graalvm.tests.integration.utils.Commands.parsePort;
@@ -69,19 +79,34 @@ import static org.graalvm.tests.integration.utils.Commands.waitForTcpClosed;
  * @author Michal Karm Babacek <karm@redhat.com>
  */
 @Tag("runtimes")
+// Measures, never runs alongside other tests
+@Isolated
+@ExtendWith(ResourceAllocator.class)
 public class RuntimesSmokeTest {
 
     private static final Logger LOGGER = Logger.getLogger(RuntimesSmokeTest.class.getName());
 
     public static final String BASE_DIR = getBaseDir();
 
+    // Startup benchmark mode, the default of 1 is a single start as it has always been
+    public static final int STARTUP_TRIALS = Integer.parseInt(getProperty("RUNTIMES_SMOKE_TEST_STARTUP_TRIALS", "1"));
+    // Discarded starts, only done if STARTUP_TRIALS > 1
+    public static final int STARTUP_WARMUP_TRIALS = Integer.parseInt(getProperty("RUNTIMES_SMOKE_TEST_STARTUP_WARMUP_TRIALS", "1"));
+    public static final boolean STARTUP_CLEAR_CACHES = Boolean.parseBoolean(getProperty("RUNTIMES_SMOKE_TEST_STARTUP_CLEAR_CACHES", "false"));
+    // What is compared to the threshold: lower or upper end of the confidence interval of the median, or the median itself.
+    // lower tolerates more than a single sample used to, it flags only regressions that hold with 95% confidence.
+    public static final SampleStats.Bound STARTUP_THRESHOLD_BOUND = SampleStats.Bound.of(getProperty("RUNTIMES_SMOKE_TEST_STARTUP_THRESHOLD_BOUND", "median"));
+
     public void testRuntime(TestInfo testInfo, Apps app) throws IOException, InterruptedException {
         testRuntime(testInfo, app, null);
     }
     public void testRuntime(TestInfo testInfo, Apps app, Map<String, String> switchReplacements) throws IOException, InterruptedException {
         LOGGER.info("Testing app: " + app);
         Process process = null;
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        ProcessSampler sampler = null;
+        CgroupSampler cgroupSampler = null;
+        StartupTimeline timeline = null;
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         final File processLog = Path.of(appDir.getAbsolutePath(), "logs", "build-and-run.log").toFile();
         final StringBuilder report = new StringBuilder();
         final String cn = testInfo.getTestClass().get().getCanonicalName();
@@ -104,7 +129,32 @@ public class RuntimesSmokeTest {
             // Run
             LOGGER.info("Running...");
             final List<String> cmd = getRunCommand(app.buildAndRunCmds.runCommands[0]);
+            // The containers are started in a different manner, see runtimeContainer
+            final boolean startupTrials = STARTUP_TRIALS > 1 && app.runtimeContainer == ContainerNames.NONE;
+            final List<Long> startups = startupTrials ? startupTrials(app, appDir, processLog, cmd) : null;
+            if (startupTrials && STARTUP_CLEAR_CACHES) {
+                clearCaches();
+            }
+            if (app.runtimeContainer == ContainerNames.NONE) {
+                // Where the time to the first OK request went, see threshold.conf spawnTo*Ms
+                timeline = new StartupTimeline(processLog.toPath(), parsePort(app.urls()[0][0]));
+            }
             process = runCommand(cmd, appDir, processLog, app);
+            if (timeline != null) {
+                timeline.start(process.toHandle());
+            }
+            if (app.runtimeContainer == ContainerNames.NONE && ProcessSampler.isSupported()) {
+                // Memory growth from the very start, not just a single value after the fact
+                sampler = new ProcessSampler(process.pid()).start();
+            }
+            if (app.runtimeContainer != ContainerNames.NONE) {
+                // Same time series as for host processes, from the moment the container is created,
+                // null if the cgroup cannot be read, e.g. cgroup v1
+                final Path cgroup = CgroupSampler.locate(app.runtimeContainer.name, 10, TimeUnit.SECONDS);
+                if (cgroup != null) {
+                    cgroupSampler = new CgroupSampler(cgroup).start();
+                }
+            }
             Logs.appendln(report, appDir.getAbsolutePath());
             Logs.appendlnSection(report, String.join(" ", cmd));
 
@@ -113,9 +163,25 @@ public class RuntimesSmokeTest {
             }
 
             // Test web pages
-            final long timeToFirstOKRequest = WebpageTester.testWeb(app.urlContent.urlContent[0][0], 10, app.urlContent.urlContent[0][1], true);
+            final long measuredTimeToFirstOKRequest = WebpageTester.testWeb(app.urls()[0][0], 10, app.urls()[0][1], true);
+            if (timeline != null) {
+                timeline.ok();
+                Logs.appendln(report, "Startup timeline: " + timeline);
+            }
+            final SampleStats startupStats;
+            final long timeToFirstOKRequest;
+            if (startups != null) {
+                // The measured run is the last trial
+                startups.add(measuredTimeToFirstOKRequest);
+                startupStats = new SampleStats(startups.stream().mapToLong(Long::longValue).toArray());
+                timeToFirstOKRequest = Math.round(startupStats.median);
+                Logs.appendln(report, "Time to first OK request [ms] " + startupStats);
+            } else {
+                startupStats = null;
+                timeToFirstOKRequest = measuredTimeToFirstOKRequest;
+            }
             LOGGER.info("Testing web page content...");
-            for (String[] urlContent : app.urlContent.urlContent) {
+            for (String[] urlContent : app.urls()) {
                 WebpageTester.testWeb(urlContent[0], 5, urlContent[1], false);
             }
 
@@ -129,44 +195,83 @@ public class RuntimesSmokeTest {
             // Running without a container
             if (app.runtimeContainer == ContainerNames.NONE) {
                 executableSizeKb = Files.size(Path.of(appDir.getAbsolutePath(), app.buildAndRunCmds.runCommands[0][0])) / 1024L;
-                rssKb = getRSSkB(process.pid());
-                final long openedFiles = getOpenedFDs(process.pid());
-                processStopper(process, false);
-                log = new LogBuilder()
-                        .app(app)
-                        .buildTimeMs(buildEnds - buildStarts)
-                        .timeToFirstOKRequestMs(timeToFirstOKRequest)
-                        .executableSizeKb(executableSizeKb)
-                        .rssKb(rssKb)
-                        .openedFiles(openedFiles)
-                        .build();
+                if (sampler != null) {
+                    final ProcessSampler.Summary summary = sampler.stop();
+                    sampler.writeCSV(Path.of(Logs.getLogsDir(cn, mn).toString(), "process-samples.csv"));
+                    LOGGER.info("Process samples: " + summary);
+                    rssKb = summary.finalRssKb;
+                    processStopper(process, false);
+                    log = summary.log(timeline.log(new LogBuilder()
+                                    .app(app)
+                                    .buildTimeMs(buildEnds - buildStarts)
+                                    .timeToFirstOKRequestMs(timeToFirstOKRequest)
+                                    .executableSizeKb(executableSizeKb)))
+                            .build();
+                } else {
+                    rssKb = getRSSkB(process.pid());
+                    final long openedFiles = getOpenedFDs(process.pid());
+                    processStopper(process, false);
+                    log = timeline.log(new LogBuilder()
+                                    .app(app)
+                                    .buildTimeMs(buildEnds - buildStarts)
+                                    .timeToFirstOKRequestMs(timeToFirstOKRequest)
+                                    .executableSizeKb(executableSizeKb)
+                                    .rssKb(rssKb)
+                                    .openedFiles(openedFiles))
+                            .build();
+                }
                 // Running as a container
             } else {
                 //  -runner is a Quarkus specific name, but we don't test Helidon in container anyway...
                 executableSizeKb = findExecutable(Path.of(appDir.getAbsolutePath(), "target"),
                         Pattern.compile(".*-runner")).length() / 1024L;
-                rssKb = getContainerMemoryKb(app.runtimeContainer.name);
-                stopRunningContainer(app.runtimeContainer.name);
-                log = new LogBuilder()
-                        .app(app)
-                        .buildTimeMs(buildEnds - buildStarts)
-                        .timeToFirstOKRequestMs(timeToFirstOKRequest)
-                        .executableSizeKb(executableSizeKb)
-                        .rssKb(rssKb)
-                        .build();
+                if (cgroupSampler != null) {
+                    final CgroupSampler.Summary summary = cgroupSampler.stop();
+                    cgroupSampler.writeCSV(Path.of(Logs.getLogsDir(cn, mn).toString(), "cgroup-samples.csv"));
+                    LOGGER.info("Cgroup samples: " + summary);
+                    rssKb = summary.finalRssKb;
+                    stopRunningContainer(app.runtimeContainer.name);
+                    log = summary.log(new LogBuilder()
+                                    .app(app)
+                                    .buildTimeMs(buildEnds - buildStarts)
+                                    .timeToFirstOKRequestMs(timeToFirstOKRequest)
+                                    .executableSizeKb(executableSizeKb))
+                            .build();
+                } else {
+                    // No cgroup to read RSS from, e.g. cgroup v1. MemUsage counts the page cache too,
+                    // so it is checked against its own threshold, not against RSS.threshold.kB.
+                    rssKb = Logs.SKIP;
+                    final long memUsageKb = getContainerStatsMemoryKb(app.runtimeContainer.name);
+                    stopRunningContainer(app.runtimeContainer.name);
+                    log = new LogBuilder()
+                            .app(app)
+                            .buildTimeMs(buildEnds - buildStarts)
+                            .timeToFirstOKRequestMs(timeToFirstOKRequest)
+                            .executableSizeKb(executableSizeKb)
+                            .containerMemUsageKb(memUsageKb)
+                            .build();
+                }
             }
 
             LOGGER.info("Gonna wait for ports closed...");
             // Release ports
-            Assertions.assertTrue(waitForTcpClosed("localhost", parsePort(app.urlContent.urlContent[0][0]), 60),
+            Assertions.assertTrue(waitForTcpClosed("localhost", parsePort(app.urls()[0][0]), 60),
                     "Main port is still open");
             Logs.checkLog(cn, mn, app, processLog);
             Path measurementsLog = Paths.get(Logs.getLogsDir(cn, mn).toString(), "measurements.csv");
             Logs.logMeasurements(log, measurementsLog);
             Logs.appendln(report, "Measurements:");
             Logs.appendln(report, log.headerMarkdown + "\n" + log.lineMarkdown);
-            Logs.checkThreshold(app, executableSizeKb, rssKb, timeToFirstOKRequest);
+            if (startupStats != null) {
+                Logs.checkThreshold(app, executableSizeKb, rssKb, startupStats, STARTUP_THRESHOLD_BOUND);
+            } else {
+                Logs.checkThreshold(app, executableSizeKb, rssKb, timeToFirstOKRequest);
+            }
+            Logs.checkMetrics(app, Logs.Mode.NONE, log.metrics, null);
         } finally {
+            if (timeline != null) {
+                timeline.stop();
+            }
             // Make sure processes are down even if there was an exception / failure
             if (process != null) {
                 processStopper(process, true);
@@ -182,6 +287,34 @@ public class RuntimesSmokeTest {
         }
     }
 
+    /**
+     * Cold starts before the measured one, i.e. STARTUP_WARMUP_TRIALS discarded and STARTUP_TRIALS - 1 recorded.
+     *
+     * @return times to the first OK request in ms
+     */
+    private static List<Long> startupTrials(Apps app, File appDir, File processLog, List<String> cmd) throws IOException, InterruptedException {
+        final List<Long> startups = new ArrayList<>(STARTUP_TRIALS);
+        final int port = parsePort(app.urls()[0][0]);
+        for (int i = 0; i < STARTUP_WARMUP_TRIALS + STARTUP_TRIALS - 1; i++) {
+            if (STARTUP_CLEAR_CACHES) {
+                clearCaches();
+            }
+            final Process p = runCommand(cmd, appDir, processLog, app);
+            try {
+                final long t = WebpageTester.testWeb(app.urls()[0][0], 10, app.urls()[0][1], true);
+                final boolean warmUp = i < STARTUP_WARMUP_TRIALS;
+                if (!warmUp) {
+                    startups.add(t);
+                }
+                LOGGER.infof("Startup trial %d%s: %d ms", i + 1, warmUp ? " (warm-up, discarded)" : "", t);
+            } finally {
+                processStopper(p, false);
+            }
+            Assertions.assertTrue(waitForTcpClosed("localhost", port, 60), "Main port is still open");
+        }
+        return startups;
+    }
+
     @Test
     @Tag("quarkus")
     public void quarkusFullMicroProfile(TestInfo testInfo) throws IOException, InterruptedException {
@@ -201,7 +334,7 @@ public class RuntimesSmokeTest {
         } else if (QUARKUS_VERSION.compareTo(QuarkusVersion.V_3_2_0) >= 0) {
             patch = "quarkus_3.2.x.patch";
         }
-        final File appDir = Path.of(BASE_DIR, app.dir).toFile();
+        final File appDir = ResourceAllocator.appDir(app).toFile();
         if (patch != null) {
             try {
                 runCommand(getRunCommand("git", "apply", patch), appDir);
@@ -222,11 +355,11 @@ public class RuntimesSmokeTest {
         if (QUARKUS_VERSION.compareTo(QuarkusVersion.V_3_0_0) >= 0) {
             try {
                 runCommand(getRunCommand("git", "apply", "quarkus_3.x.patch"),
-                        Path.of(BASE_DIR, apps.dir).toFile());
+                        ResourceAllocator.appDir(apps).toFile());
                 testRuntime(testInfo, apps);
             } finally {
                 runCommand(getRunCommand("git", "apply", "-R", "quarkus_3.x.patch"),
-                        Path.of(BASE_DIR, apps.dir).toFile());
+                        ResourceAllocator.appDir(apps).toFile());
             }
         } else {
             testRuntime(testInfo, apps);
@@ -20,6 +20,7 @@
 package org.graalvm.tests.integration.utils;
 
 import org.apache.commons.lang3.StringUtils;
+import org.graalvm.tests.integration.utils.thresholds.MetricThreshold;
 
 import java.io.File;
 import java.io.IOException;
@@ -74,6 +75,11 @@ public enum Apps {
             WhitelistLogLines.QUARKUS_FULL_MICROPROFILE,
             BuildAndRunCmds.QUARKUS_JSON_PERF,
             ContainerNames.NONE),
+    QUARKUS_VERTX_PERF("apps" + File.separator + "quarkus-vertx",
+            URLContent.QUARKUS_VERTX_PERF,
+            WhitelistLogLines.QUARKUS_VERTX_PERF,
+            BuildAndRunCmds.QUARKUS_VERTX_PERF,
+            ContainerNames.NONE),
     DEBUG_QUARKUS_FULL_MICROPROFILE("apps" + File.separator + "quarkus-full-microprofile",
             URLContent.NONE,
             WhitelistLogLines.QUARKUS_FULL_MICROPROFILE,
@@ -94,6 +100,11 @@ public enum Apps {
             WhitelistLogLines.HELIDON_QUICKSTART_SE,
             BuildAndRunCmds.HELIDON_QUICKSTART_SE,
             ContainerNames.NONE),
+    HELIDON_QUICKSTART_SE_PERF("apps" + File.separator + "helidon-quickstart-se",
+            URLContent.HELIDON_QUICKSTART_SE_PERF,
+            WhitelistLogLines.HELIDON_QUICKSTART_SE,
+            BuildAndRunCmds.HELIDON_QUICKSTART_SE_PERF,
+            ContainerNames.NONE),
     TIMEZONES("apps" + File.separator + "timezones",
             URLContent.NONE,
             WhitelistLogLines.NONE,
@@ -220,6 +231,10 @@ public enum Apps {
     public final WhitelistLogLines whitelistLogLines;
     public final BuildAndRunCmds buildAndRunCmds;
     public final Map<String, Long> thresholdProperties = new HashMap<>();
+    // Limits derived from PerfHistory, property -> k, see Thresholds#BASELINE_PATTERN
+    public final Map<String, Double> baselineThresholdProperties = new HashMap<>();
+    // Any numeric threshold, including decimal and relative to JVM mode ones, see MetricThreshold
+    public final Map<String, MetricThreshold> metricThresholdProperties = new HashMap<>();
     public final ContainerNames runtimeContainer;
 
     Apps(String dir, URLContent urlContent, WhitelistLogLines whitelistLogLines, BuildAndRunCmds buildAndRunCmds, ContainerNames runtimeContainer) {
@@ -234,7 +249,7 @@ public enum Apps {
         if (Files.exists(tcFile)) {
             final String appDirNormalized = dir.toUpperCase().replace(File.separator, "_").replace('-', '_') + "_";
             try {
-                final Map<String, Long> props = parseProperties(tcFile);
+                final Map<String, Long> props = parseProperties(tcFile, baselineThresholdProperties, metricThresholdProperties);
                 for (String pn : props.keySet()) {
                     final String normPn = pn.toUpperCase().replace('.', '_');
                     final String env = System.getenv().get(appDirNormalized + normPn);
@@ -247,6 +262,18 @@ public enum Apps {
                     }
                     thresholdProperties.put(pn, props.get(pn));
                 }
+                for (String pn : metricThresholdProperties.keySet()) {
+                    final String normPn = pn.toUpperCase().replace('.', '_');
+                    for (String override : new String[]{System.getenv().get(appDirNormalized + normPn), System.getProperty(appDirNormalized + normPn)}) {
+                        if (StringUtils.isNotBlank(override)) {
+                            final MetricThreshold t = MetricThreshold.parse(override);
+                            if (t == null) {
+                                throw new NumberFormatException(appDirNormalized + normPn + "=" + override + " is not a valid threshold.");
+                            }
+                            metricThresholdProperties.replace(pn, t);
+                        }
+                    }
+                }
             } catch (NumberFormatException e) {
                 fail("Check threshold.conf and Sys and Env variables " +
                         "(upper case, underscores instead of dots). " +
@@ -256,4 +283,11 @@ public enum Apps {
             }
         }
     }
+
+    /**
+     * @return urlContent on the ports the app actually listens on, see {@link ResourceAllocator#takesPorts(Apps)}
+     */
+    public String[][] urls() {
+        return ResourceAllocator.takesPorts(this) ? urlContent.resolved() : urlContent.urlContent;
+    }
 }
@@ -20,6 +20,9 @@
 package org.graalvm.tests.integration.utils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.graalvm.tests.integration.AppReproducersTest.BASE_DIR;
 import static org.graalvm.tests.integration.AppReproducersTest.LOCALEINCLUDES_TOKEN_1;
@@ -42,6 +45,9 @@ import static org.graalvm.tests.integration.utils.Commands.GRAALVM_EXPERIMENTAL_
 import static org.graalvm.tests.integration.utils.Commands.GRAALVM_EXPERIMENTAL_END;
 import static org.graalvm.tests.integration.utils.Commands.IS_THIS_MACOS;
 import static org.graalvm.tests.integration.utils.Commands.IS_THIS_WINDOWS;
+import static org.graalvm.tests.integration.utils.Commands.PERF_STAT_EVENTS;
+import static org.graalvm.tests.integration.utils.Commands.PERF_STAT_REPEATS;
+import static org.graalvm.tests.integration.utils.Commands.PERF_STAT_SEPARATOR;
 import static org.graalvm.tests.integration.utils.Commands.QUARKUS_VERSION;
 import static org.graalvm.tests.integration.utils.Commands.getUnixUIDGID;
 
@@ -108,7 +114,7 @@ public enum BuildAndRunCmds {
                                     "--trace-object-instantiation=java.util.Random"
                     } },
             new String[][] {
-                    { IS_THIS_WINDOWS ? "target\\quarkus-runner.exe" : "./target/quarkus-runner" } }
+                    { IS_THIS_WINDOWS ? "target\\quarkus-runner.exe" : "./target/quarkus-runner", "-Dquarkus.http.port=<PORT:8080>" } }
     ),
     DEBUG_QUARKUS_FULL_MICROPROFILE(
             new String[][] {
@@ -140,8 +146,8 @@ public enum BuildAndRunCmds {
                     // -XX:+UseG1GC
                     // Profile capture:
                     // No "--delay", "2000",  for perf o capture startup too...
-                    { "perf", "stat", "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar" },
-                    { "perf", "stat", "./target/quarkus-runner", "-XX:+PrintGC" } }
+                    perfStat(null, "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar"),
+                    perfStat(null, "./target/quarkus-runner", "-XX:+PrintGC") }
     ),
     QUARKUS_JSON_PERF_PARSEONCE(
             new String[][] {
@@ -163,9 +169,9 @@ public enum BuildAndRunCmds {
                     //-XX:+UseShenandoahGC
                     //-XX:+UseSerialGC
                     //-XX:+UseG1GC
-                    { "perf", "stat", "--delay", "2000", "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar" },
-                    { "perf", "stat", "--delay", "1000", "./target/quarkus-json_-ParseOnce-runner", "-XX:+PrintGC" },
-                    { "perf", "stat", "--delay", "1000", "./target/quarkus-json_+ParseOnce-runner", "-XX:+PrintGC" } }
+                    perfStat("2000", "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar"),
+                    perfStat("1000", "./target/quarkus-json_-ParseOnce-runner", "-XX:+PrintGC"),
+                    perfStat("1000", "./target/quarkus-json_+ParseOnce-runner", "-XX:+PrintGC") }
     ),
     QUARKUS_JSON_PERF(
             new String[][] {
@@ -177,8 +183,22 @@ public enum BuildAndRunCmds {
                             "-Dcustom.final.name=quarkus-json" },
                     { "mvn", "package", "-Dcustom.final.name=quarkus-json", "-Dquarkus.version=" + QUARKUS_VERSION.getVersionString() } },
             new String[][] {
-                    { "perf", "stat", "--delay", "2000", "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar" },
-                    { "perf", "stat", "--delay", "1000", "./target/quarkus-json-runner", "-XX:+PrintGC" } }
+                    perfStat("2000", "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar"),
+                    perfStat("1000", "./target/quarkus-json-runner", "-XX:+PrintGC") }
+    ),
+    QUARKUS_VERTX_PERF(
+            new String[][] {
+                    // apps/quarkus-vertx/src/main/resources/application.properties
+                    { CONTAINER_RUNTIME, "run", "--rm", "-d", "-p", "5432:5432", "--name", "quarkus_test_db",
+                            "-e", "POSTGRES_USER=quarkus_test", "-e", "POSTGRES_PASSWORD=quarkus_test",
+                            "-e", "POSTGRES_DB=quarkus_test", "quay.io/debezium/postgres:15" },
+                    { "mvn", "package", "-Pnative", "-Dquarkus.version=" + QUARKUS_VERSION.getVersionString(),
+                            "-Dquarkus.native.additional-build-args=" +
+                                    "-R:MaxHeapSize=" + MX_HEAP_MB + "m" },
+                    { "mvn", "package", "-Dquarkus.version=" + QUARKUS_VERSION.getVersionString() } },
+            new String[][] {
+                    perfStat(null, "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/quarkus-app/quarkus-run.jar"),
+                    perfStat(null, "./target/quarkus-runner", "-XX:+PrintGC") }
     ),
     QUARKUS_BUILDER_IMAGE_ENCODING(
             new String[][] {
@@ -217,7 +237,14 @@ public enum BuildAndRunCmds {
             new String[][] {
                     { "mvn", "package" } },
             new String[][] {
-                    { IS_THIS_WINDOWS ? "target\\helidon-quickstart-se.exe" : "./target/helidon-quickstart-se" } }
+                    { IS_THIS_WINDOWS ? "target\\helidon-quickstart-se.exe" : "./target/helidon-quickstart-se", "-Dserver.port=<PORT:8080>" } }
+    ),
+    HELIDON_QUICKSTART_SE_PERF(
+            new String[][] {
+                    { "mvn", "package" } },
+            new String[][] {
+                    perfStat(null, "java", "-Xlog:gc", "-XX:+UseSerialGC", "-Xmx" + MX_HEAP_MB + "m", "-jar", "target/helidon-quickstart-se.jar"),
+                    perfStat(null, "./target/helidon-quickstart-se", "-XX:+PrintGC", "-Xmx" + MX_HEAP_MB + "m") }
     ),
     TIMEZONES(
             new String[][] {
@@ -536,6 +563,28 @@ public enum BuildAndRunCmds {
                             ContainerNames.FOR_SERIALIZATION_BUILDER_IMAGE.name, "target/for-serialization" } }
     );
 
+    /**
+     * perf stat in its CSV mode writing to logs/perf-stat-[executable].csv, i.e. not interleaved with the app's output.
+     *
+     * @param delayMs null to capture startup too
+     */
+    private static String[] perfStat(String delayMs, String... cmd) {
+        final List<String> c = new ArrayList<>(List.of("perf", "stat", "-x", PERF_STAT_SEPARATOR, "-e", PERF_STAT_EVENTS));
+        if (PERF_STAT_REPEATS > 1) {
+            c.add("-r");
+            c.add(String.valueOf(PERF_STAT_REPEATS));
+        }
+        c.add("-o");
+        c.add("logs/perf-stat-" + ("java".equals(cmd[0]) ? "jvm" : new File(cmd[0]).getName()) + ".csv");
+        if (delayMs != null) {
+            c.add("--delay");
+            c.add(delayMs);
+        }
+        c.add("--");
+        c.addAll(Arrays.asList(cmd));
+        return c.toArray(new String[0]);
+    }
+
     private static String[] hyperfoil() {
         if (IS_THIS_MACOS) {
             // --network=host does not do what you think it does on macOS. It creates a shared network
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.graalvm.tests.integration.utils.versions.UsedVersion;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.BUILDER_IMAGE;
+import static org.graalvm.tests.integration.utils.Commands.CONTAINER_RUNTIME;
+import static org.graalvm.tests.integration.utils.Commands.QUARKUS_VERSION;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Content addressed cache of build outputs, i.e. the target and sources dirs, and of the build log.
+ * Disabled unless BUILD_CACHE_DIR is set. It is never evicted, wipe the directory as needed.
+ *
+ * The key is a SHA-256 of:
+ * - the app directory contents, i.e. after a possible patch was applied, without the build outputs,
+ * - the build commands with switches already replaced, and the environment,
+ * - the Mandrel version and the JDK version, locally or in the builder image if the build runs in a container,
+ *   and the fingerprint of that native-image, see {@link org.graalvm.tests.integration.utils.versions.VersionCache},
+ * - QUARKUS_VERSION_GITSHA for a Quarkus snapshot, its jars change while the version string does not.
+ *
+ * Builds that produce something outside of the app dir, e.g. a container image, are not cached.
+ * Neither are builds against a Quarkus snapshot with no QUARKUS_VERSION_GITSHA set.
+ */
+public class BuildCache {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildCache.class.getName());
+
+    public static final String DIR = getProperty("BUILD_CACHE_DIR", "");
+
+    // Output dirs, see Commands#cleanTarget
+    static final Set<String> OUTPUTS = Set.of("target", "sources");
+    private static final Set<String> NOT_HASHED = Set.of("target", "sources", "logs", "reports");
+    private static final String LOG = "build.log";
+
+    public static boolean isEnabled() {
+        return !DIR.isBlank();
+    }
+
+    public static boolean isCacheable(List<List<String>> commands) {
+        return commands.stream().noneMatch(c -> c.contains(CONTAINER_RUNTIME)) &&
+                !(QUARKUS_VERSION.isSnapshot() && QUARKUS_VERSION.getGitSHA().isBlank() && usesQuarkus(commands));
+    }
+
+    private static boolean usesQuarkus(List<List<String>> commands) {
+        return commands.stream().anyMatch(c -> c.stream().anyMatch(a -> a.startsWith("-Dquarkus.version=")));
+    }
+
+    public static String key(BuildScheduler.Build build) throws IOException {
+        final List<List<String>> commands = build.commands();
+        final boolean inContainer = commands.stream()
+                .anyMatch(c -> c.contains("-Dquarkus.native.container-build=true"));
+        final StringBuilder toolchain = new StringBuilder();
+        toolchain.append(UsedVersion.getVersion(inContainer)).append(' ')
+                .append(UsedVersion.jdkFeature(inContainer)).append('.')
+                .append(UsedVersion.jdkInterim(inContainer)).append('.')
+                .append(UsedVersion.jdkUpdate(inContainer)).append('\n');
+        if (inContainer) {
+            toolchain.append(BUILDER_IMAGE).append('\n');
+        }
+        // e.g. the builder image id, a tag can move to another image
+        toolchain.append(UsedVersion.fingerprint(inContainer)).append('\n');
+        if (QUARKUS_VERSION.isSnapshot() && usesQuarkus(commands)) {
+            toolchain.append(QUARKUS_VERSION.getGitSHA()).append('\n');
+        }
+        return key(build, toolchain.toString());
+    }
+
+    /**
+     * @param toolchain versions of what the build runs with, anything that changes the outputs while the sources
+     *                  and the commands stay the same
+     */
+    static String key(BuildScheduler.Build build, String toolchain) throws IOException {
+        final MessageDigest md = sha256();
+        final StringBuilder s = new StringBuilder();
+        build.commands().forEach(c -> s.append(String.join(" ", c)).append('\n'));
+        if (build.env != null) {
+            new TreeMap<>(build.env).forEach((k, v) -> s.append(k).append('=').append(v).append('\n'));
+        }
+        s.append(toolchain);
+        md.update(s.toString().getBytes(UTF_8));
+        final Path appDir = build.appDir.toPath();
+        final List<Path> files;
+        try (Stream<Path> walk = Files.walk(appDir)) {
+            files = walk
+                    .filter(p -> !NOT_HASHED.contains(appDir.relativize(p).getName(0).toString()))
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        try (DigestOutputStream out = new DigestOutputStream(OutputStream.nullOutputStream(), md)) {
+            for (Path f : files) {
+                // Separators normalized so as the same sources hash the same on Windows
+                out.write(appDir.relativize(f).toString().replace('\\', '/').getBytes(UTF_8));
+                out.write(0);
+                Files.copy(f, out);
+                out.write(0);
+            }
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return true if the outputs were restored to the app dir and the build log appended to the build's log
+     */
+    public static boolean restore(BuildScheduler.Build build, String key) throws IOException {
+        return restore(Path.of(DIR), build, key);
+    }
+
+    static boolean restore(Path dir, BuildScheduler.Build build, String key) throws IOException {
+        final Path entry = dir.resolve(key);
+        if (!Files.isDirectory(entry)) {
+            return false;
+        }
+        for (String o : OUTPUTS) {
+            final Path src = entry.resolve(o);
+            if (Files.isDirectory(src)) {
+                final Path dst = build.appDir.toPath().resolve(o);
+                FileUtils.deleteDirectory(dst.toFile());
+                copy(src, dst);
+            }
+        }
+        try (OutputStream out = Files.newOutputStream(build.log.toPath(), StandardOpenOption.APPEND, StandardOpenOption.CREATE)) {
+            out.write(("Build outputs restored from " + entry + "\n").getBytes(UTF_8));
+            final Path log = entry.resolve(LOG);
+            if (Files.exists(log)) {
+                Files.copy(log, out);
+            }
+        }
+        LOGGER.infof("%s restored from build cache %s", build.app, key);
+        return true;
+    }
+
+    /**
+     * @param logOffset size of the build's log before the build started, i.e. the rest is this build's output
+     */
+    public static void store(BuildScheduler.Build build, String key, long logOffset) throws IOException {
+        store(Path.of(DIR), build, key, logOffset);
+    }
+
+    static void store(Path dir, BuildScheduler.Build build, String key, long logOffset) throws IOException {
+        final Path entry = dir.resolve(key);
+        if (Files.isDirectory(entry)) {
+            return;
+        }
+        Files.createDirectories(dir);
+        // Concurrent builds of the same thing must not see a half copied entry
+        final Path tmp = dir.resolve(key + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.createDirectories(tmp);
+            for (String o : OUTPUTS) {
+                final Path src = build.appDir.toPath().resolve(o);
+                if (Files.isDirectory(src)) {
+                    copy(src, tmp.resolve(o));
+                }
+            }
+            try (FileChannel in = FileChannel.open(build.log.toPath(), StandardOpenOption.READ);
+                 InputStream is = Channels.newInputStream(in.position(logOffset))) {
+                Files.copy(is, tmp.resolve(LOG));
+            }
+            try {
+                Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException | FileAlreadyExistsException e) {
+                if (!Files.isDirectory(entry)) {
+                    Files.move(tmp, entry);
+                }
+            }
+            LOGGER.infof("%s stored to build cache %s", build.app, key);
+        } catch (IOException e) {
+            if (Files.isDirectory(entry)) {
+                // Someone else was faster
+                return;
+            }
+            throw e;
+        } finally {
+            FileUtils.deleteQuietly(tmp.toFile());
+        }
+    }
+
+    /**
+     * Keeps attributes, e.g. the executable bit of native executables.
+     */
+    private static void copy(Path src, Path dst) throws IOException {
+        final Map<Path, Path> dirs = new TreeMap<>();
+        try (Stream<Path> walk = Files.walk(src)) {
+            for (Path p : (Iterable<Path>) walk::iterator) {
+                final Path d = dst.resolve(src.relativize(p).toString());
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(d);
+                    dirs.put(p, d);
+                } else {
+                    Files.copy(p, d, StandardCopyOption.COPY_ATTRIBUTES, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        // Directory times are only right once nothing is written to them anymore
+        for (Map.Entry<Path, Path> e : dirs.entrySet()) {
+            Files.setLastModifiedTime(e.getValue(), Files.getLastModifiedTime(e.getKey()));
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is mandatory for every Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import com.sun.management.OperatingSystemMXBean;
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.graalvm.tests.integration.PerfCheckTest.NATIVE_IMAGE_XMX_GB;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
+import static org.graalvm.tests.integration.utils.Commands.replaceSwitchesInCmd;
+
+/**
+ * Runs build commands of several apps concurrently within a CPU and memory budget.
+ *
+ * Commands of one app still run one after another as they depend on each other, e.g. a container
+ * image is built from the native executable. Apps sharing a directory are built one after another too,
+ * because they would overwrite each other's target dir.
+ *
+ * Each command takes cores and memory from the budget for as long as it runs. A native-image build takes
+ * {@link #NATIVE_CORES} and the -Xmx it is given, i.e. NATIVE_IMAGE_XMX_GB, plus {@link #NATIVE_OVERHEAD_MB}
+ * for the builder's off-heap and the Maven JVM. Anything else, e.g. a JVM mode build or a container build,
+ * takes a core and {@link #JVM_BUILD_MB}.
+ *
+ * Builds are restored from the {@link BuildCache} instead if it is enabled and has them.
+ */
+public class BuildScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(BuildScheduler.class.getName());
+
+    public static final int CORES = Integer.parseInt(getProperty("BUILD_SCHEDULER_CORES",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+    public static final long MEMORY_MB = Long.parseLong(getProperty("BUILD_SCHEDULER_MEMORY_MB",
+            String.valueOf(((OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getTotalPhysicalMemorySize() / 1024 / 1024)));
+    // native-image scales well up to a point, beyond it parallel builds make better use of the cores
+    public static final int NATIVE_CORES = Integer.parseInt(getProperty("BUILD_SCHEDULER_NATIVE_CORES",
+            String.valueOf(Math.max(1, Math.min(CORES, 8)))));
+    public static final long NATIVE_OVERHEAD_MB = Long.parseLong(getProperty("BUILD_SCHEDULER_NATIVE_OVERHEAD_MB", "2048"));
+    public static final long JVM_BUILD_MB = Long.parseLong(getProperty("BUILD_SCHEDULER_JVM_BUILD_MB", "1024"));
+    public static final long TIMEOUT_MINUTES = Long.parseLong(getProperty("BUILD_SCHEDULER_TIMEOUT_MINUTES", "20"));
+
+    /**
+     * Shared by all tests so as builds running at the same time from different places respect one budget.
+     */
+    public static final BuildScheduler DEFAULT = new BuildScheduler(CORES, MEMORY_MB);
+
+    public static class Build {
+        public final Apps app;
+        public final File appDir;
+        public final File log;
+        public final Map<String, String> env;
+        public final Map<String, String> switchReplacements;
+
+        /**
+         * @param log the build's log, builds running at the same time must not share logs,
+         *            builds in the same directory run one after another and may
+         */
+        public Build(Apps app, File appDir, File log, Map<String, String> env, Map<String, String> switchReplacements) {
+            if (app.buildAndRunCmds.buildCommands.length == 0) {
+                throw new IllegalArgumentException("App " + app + " has no build commands.");
+            }
+            this.app = app;
+            this.appDir = appDir;
+            this.log = log;
+            this.env = env;
+            this.switchReplacements = switchReplacements;
+        }
+
+        public Build(Apps app, File appDir, File log) {
+            this(app, appDir, log, null, null);
+        }
+
+        public List<List<String>> commands() {
+            final List<List<String>> commands = new ArrayList<>();
+            for (String[] c : app.buildAndRunCmds.buildCommands) {
+                // Replace possible placeholders with actual switches
+                if (switchReplacements != null && !switchReplacements.isEmpty()) {
+                    commands.add(replaceSwitchesInCmd(getRunCommand(c), switchReplacements));
+                } else {
+                    commands.add(getRunCommand(c));
+                }
+            }
+            return commands;
+        }
+    }
+
+    public static class CommandTiming {
+        public final List<String> command;
+        public final long startedEpochMs;
+        // Time spent waiting for the budget
+        public final long queuedMs;
+        public final long durationMs;
+
+        public CommandTiming(List<String> command, long startedEpochMs, long queuedMs, long durationMs) {
+            this.command = command;
+            this.startedEpochMs = startedEpochMs;
+            this.queuedMs = queuedMs;
+            this.durationMs = durationMs;
+        }
+    }
+
+    public static class Result {
+        public final Build build;
+        public final List<CommandTiming> timings;
+        // Outputs were restored from the BuildCache, the commands did not run
+        public final boolean cached;
+
+        public Result(Build build, List<CommandTiming> timings, boolean cached) {
+            this.build = build;
+            this.timings = timings;
+            this.cached = cached;
+        }
+
+        public long getDurationMs() {
+            return timings.stream().mapToLong(t -> t.durationMs).sum();
+        }
+
+        public long getQueuedMs() {
+            return timings.stream().mapToLong(t -> t.queuedMs).sum();
+        }
+    }
+
+    private final int cores;
+    private final long memoryMb;
+    private final Semaphore coresBudget;
+    // Semaphore permits are ints, MB are precise enough
+    private final Semaphore memoryBudget;
+
+    public BuildScheduler(int cores, long memoryMb) {
+        if (cores < 1) {
+            throw new IllegalArgumentException("cores must be at least 1, was: " + cores);
+        }
+        if (memoryMb < 1 || memoryMb > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("memoryMb must be a positive int, was: " + memoryMb);
+        }
+        this.cores = cores;
+        this.memoryMb = memoryMb;
+        // Fair, so as a big native build is not starved by a stream of small ones
+        this.coresBudget = new Semaphore(cores, true);
+        this.memoryBudget = new Semaphore((int) memoryMb, true);
+    }
+
+    /**
+     * @return cores and MB the command needs, capped at the whole budget so as it can run at all
+     */
+    int[] demand(List<String> command) {
+        final boolean nativeBuild = command.stream().anyMatch(c ->
+                c.equals("-Pnative") || c.startsWith("-Dquarkus.package.type=native") ||
+                        c.startsWith("-Dquarkus.native.enabled=true") || c.endsWith("native-image") || c.endsWith("native-image.cmd"));
+        final long mb = nativeBuild ? NATIVE_IMAGE_XMX_GB * 1024L + NATIVE_OVERHEAD_MB : JVM_BUILD_MB;
+        return new int[]{
+                Math.min(cores, nativeBuild ? NATIVE_CORES : 1),
+                (int) Math.min(memoryMb, mb)
+        };
+    }
+
+    /**
+     * Runs the builds and waits for all of them to finish. A failure of one build does not stop the others.
+     *
+     * @return results in the order of the builds
+     */
+    public List<Result> run(List<Build> builds) throws IOException, InterruptedException {
+        // Builds in the same directory form a chain
+        final Map<String, List<Build>> chains = new LinkedHashMap<>();
+        for (Build b : builds) {
+            chains.computeIfAbsent(b.appDir.getAbsolutePath(), k -> new ArrayList<>()).add(b);
+        }
+        final Map<Build, Result> results = Collections.synchronizedMap(new LinkedHashMap<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(chains.size(), cores), r -> {
+            final Thread t = new Thread(r, "build-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            final List<Future<?>> futures = new ArrayList<>(chains.size());
+            for (List<Build> chain : chains.values()) {
+                futures.add(executor.submit(() -> {
+                    for (Build b : chain) {
+                        results.put(b, build(b));
+                    }
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = new IOException("Build failed: " + e.getCause().getMessage(), e.getCause());
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final List<Result> ordered = new ArrayList<>(builds.size());
+        for (Build b : builds) {
+            ordered.add(results.get(b));
+        }
+        return ordered;
+    }
+
+    private Result build(Build b) throws IOException, InterruptedException {
+        final List<List<String>> commands = b.commands();
+        final List<CommandTiming> timings = new ArrayList<>();
+        final String cacheKey = BuildCache.isEnabled() && BuildCache.isCacheable(commands) ? BuildCache.key(b) : null;
+        if (cacheKey != null && BuildCache.restore(b, cacheKey)) {
+            final long now = System.currentTimeMillis();
+            for (List<String> cmd : commands) {
+                timings.add(new CommandTiming(cmd, now, 0L, 0L));
+            }
+            return new Result(b, Collections.unmodifiableList(timings), true);
+        }
+        final long logOffset = b.log.exists() ? b.log.length() : 0L;
+        boolean succeeded = true;
+        for (List<String> cmd : commands) {
+            final int[] demand = demand(cmd);
+            final long queuedNs = System.nanoTime();
+            coresBudget.acquire(demand[0]);
+            try {
+                memoryBudget.acquire(demand[1]);
+                try {
+                    final long startedEpochMs = System.currentTimeMillis();
+                    final long startNs = System.nanoTime();
+                    final long queuedMs = TimeUnit.NANOSECONDS.toMillis(startNs - queuedNs);
+                    Files.writeString(b.log.toPath(), String.join(" ", cmd) + "\n", StandardOpenOption.APPEND, StandardOpenOption.CREATE);
+                    final Commands.ProcessRunner runner = new Commands.ProcessRunner(b.appDir, b.log, cmd, TIMEOUT_MINUTES, b.env);
+                    runner.run();
+                    succeeded &= runner.getExitValue() == 0;
+                    final long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+                    LOGGER.infof("%s: %d cores, %d MB, queued %d ms, took %d ms: %s",
+                            b.app, demand[0], demand[1], queuedMs, durationMs, String.join(" ", cmd));
+                    timings.add(new CommandTiming(cmd, startedEpochMs, queuedMs, durationMs));
+                } finally {
+                    memoryBudget.release(demand[1]);
+                }
+            } finally {
+                coresBudget.release(demand[0]);
+            }
+        }
+        if (cacheKey != null && succeeded) {
+            BuildCache.store(b, cacheKey, logOffset);
+        }
+        return new Result(b, Collections.unmodifiableList(timings), false);
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.CONTAINER_RUNTIME;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
+import static org.graalvm.tests.integration.utils.Commands.runCommand;
+
+/**
+ * Samples a container in the background straight from its cgroup v2 files, i.e. memory.current, memory.peak,
+ * memory.stat, cpu.stat and io.stat, without forking `docker stats' or `podman stats' for each data point.
+ *
+ * The cgroup is located once, from /proc/&lt;pid&gt;/cgroup of the container's init process.
+ * See {@link #locate(String)}, it is null if the host is not on cgroup v2 or the files are not readable,
+ * e.g. a remote Docker daemon.
+ *
+ * The memory comparable with VmRSS of a host process is anon + file_mapped from memory.stat,
+ * memory.current also counts page cache the container caused, e.g. by writing its logs.
+ */
+public class CgroupSampler {
+
+    private static final Logger LOGGER = Logger.getLogger(CgroupSampler.class.getName());
+
+    public static final long INTERVAL_MS = Long.parseLong(getProperty("CGROUP_SAMPLER_INTERVAL_MS", "50"));
+    public static final Path CGROUP_ROOT = Path.of(getProperty("CGROUP_ROOT", "/sys/fs/cgroup"));
+
+    public static class Sample {
+        public final long timeMs;
+        public final long currentKb;
+        // -1 if the kernel is older than 5.19
+        public final long peakKb;
+        public final long anonKb;
+        public final long fileKb;
+        public final long fileMappedKb;
+        public final long cpuUsageUsec;
+        public final long cpuThrottledUsec;
+        public final long ioReadBytes;
+        public final long ioWriteBytes;
+
+        public Sample(long timeMs, long currentKb, long peakKb, long anonKb, long fileKb, long fileMappedKb,
+                      long cpuUsageUsec, long cpuThrottledUsec, long ioReadBytes, long ioWriteBytes) {
+            this.timeMs = timeMs;
+            this.currentKb = currentKb;
+            this.peakKb = peakKb;
+            this.anonKb = anonKb;
+            this.fileKb = fileKb;
+            this.fileMappedKb = fileMappedKb;
+            this.cpuUsageUsec = cpuUsageUsec;
+            this.cpuThrottledUsec = cpuThrottledUsec;
+            this.ioReadBytes = ioReadBytes;
+            this.ioWriteBytes = ioWriteBytes;
+        }
+
+        /**
+         * @return the counterpart of VmRSS
+         */
+        public long rssKb() {
+            return anonKb + fileMappedKb;
+        }
+    }
+
+    public static class Summary {
+        public final int samples;
+        public final long finalRssKb;
+        public final long peakRssKb;
+        public final long meanRssKb;
+        public final long finalCurrentKb;
+        public final long peakCurrentKb;
+        public final long cpuUsageUsec;
+        public final long cpuThrottledUsec;
+        public final long ioReadBytes;
+        public final long ioWriteBytes;
+
+        public Summary(List<Sample> samples) {
+            if (samples.isEmpty()) {
+                throw new IllegalStateException("There must be at least one sample to summarize, was the container running?");
+            }
+            final Sample last = samples.get(samples.size() - 1);
+            this.samples = samples.size();
+            this.finalRssKb = last.rssKb();
+            this.peakRssKb = samples.stream().mapToLong(Sample::rssKb).max().getAsLong();
+            this.meanRssKb = Math.round(samples.stream().mapToLong(Sample::rssKb).average().getAsDouble());
+            this.finalCurrentKb = last.currentKb;
+            // memory.peak catches peaks between samples
+            this.peakCurrentKb = Math.max(last.peakKb, samples.stream().mapToLong(s -> s.currentKb).max().getAsLong());
+            this.cpuUsageUsec = last.cpuUsageUsec - samples.get(0).cpuUsageUsec;
+            this.cpuThrottledUsec = last.cpuThrottledUsec - samples.get(0).cpuThrottledUsec;
+            this.ioReadBytes = last.ioReadBytes;
+            this.ioWriteBytes = last.ioWriteBytes;
+        }
+
+        public LogBuilder log(LogBuilder logBuilder) {
+            return logBuilder
+                    .rssKb(finalRssKb)
+                    .peakRssKb(peakRssKb)
+                    .meanRssKb(meanRssKb);
+        }
+
+        public Map<String, String> report(Map<String, String> report) {
+            report.put("rssKb", String.valueOf(finalRssKb));
+            report.put("peakRssKb", String.valueOf(peakRssKb));
+            report.put("meanRssKb", String.valueOf(meanRssKb));
+            report.put("cgroupMemoryPeakKb", String.valueOf(peakCurrentKb));
+            report.put("cgroupCpuUsageUsec", String.valueOf(cpuUsageUsec));
+            report.put("cgroupCpuThrottledUsec", String.valueOf(cpuThrottledUsec));
+            return report;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("samples: %d, RSS kB final: %d, peak: %d, mean: %d, memory.current kB final: %d, peak: %d, " +
+                            "CPU usage us: %d, throttled us: %d, IO read B: %d, written B: %d",
+                    samples, finalRssKb, peakRssKb, meanRssKb, finalCurrentKb, peakCurrentKb,
+                    cpuUsageUsec, cpuThrottledUsec, ioReadBytes, ioWriteBytes);
+        }
+    }
+
+    private final Path cgroup;
+    private final long intervalMs;
+    private final List<Sample> samples = new ArrayList<>();
+    private ScheduledExecutorService executor;
+    private long startNs;
+
+    public CgroupSampler(Path cgroup) {
+        this(cgroup, INTERVAL_MS);
+    }
+
+    public CgroupSampler(Path cgroup, long intervalMs) {
+        if (intervalMs < 1) {
+            throw new IllegalArgumentException("intervalMs must be at least 1, was: " + intervalMs);
+        }
+        this.cgroup = cgroup;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * @return the cgroup v2 directory of the running container, null if it cannot be read directly
+     */
+    public static Path locate(String containerName) throws IOException {
+        try {
+            return locate(containerName, 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Polls `inspect' until the container's init process exists, so as sampling can start
+     * as soon as the container is created, i.e. before the app in it even started.
+     *
+     * @return the cgroup v2 directory of the container, null on timeout or if it cannot be read directly
+     */
+    public static Path locate(String containerName, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (Commands.IS_THIS_WINDOWS || !Files.isReadable(CGROUP_ROOT.resolve("cgroup.controllers"))) {
+            return null;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            final String out = runCommand(getRunCommand(
+                    CONTAINER_RUNTIME, "inspect", "--format", "{{.State.Pid}}", containerName)).trim();
+            long pid = -1L;
+            try {
+                pid = Long.parseLong(out);
+            } catch (NumberFormatException e) {
+                // Not created yet
+            }
+            // 0 if it is created, but not running yet
+            if (pid > 0) {
+                return locate(pid);
+            }
+            if (System.nanoTime() >= deadline) {
+                LOGGER.warnf("Could not get the PID of container %s: %s", containerName, out);
+                return null;
+            }
+            Thread.sleep(INTERVAL_MS);
+        }
+    }
+
+    /**
+     * @return the cgroup v2 directory of the process, null if it cannot be read directly
+     */
+    public static Path locate(long pid) throws IOException {
+        final Path procCgroup = Path.of("/proc", Long.toString(pid), "cgroup");
+        if (pid < 1 || !Files.isReadable(procCgroup)) {
+            return null;
+        }
+        final String relative = parseCgroupPath(Files.readString(procCgroup, UTF_8));
+        if (relative == null) {
+            return null;
+        }
+        final Path cgroup = CGROUP_ROOT.resolve(relative.substring(1));
+        return Files.isReadable(cgroup.resolve("memory.current")) ? cgroup : null;
+    }
+
+    public synchronized CgroupSampler start() {
+        if (executor != null) {
+            throw new IllegalStateException("Sampler for " + cgroup + " has already been started.");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "cgroup-sampler-" + cgroup.getFileName());
+            t.setDaemon(true);
+            return t;
+        });
+        startNs = System.nanoTime();
+        executor.scheduleAtFixedRate(this::sample, 0, intervalMs, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Stops sampling. Can be called repeatedly, e.g. from a finally block.
+     *
+     * @return summary of the samples taken so far
+     */
+    public Summary stop() throws InterruptedException {
+        final ScheduledExecutorService e;
+        synchronized (this) {
+            e = executor;
+        }
+        if (e != null) {
+            e.shutdown();
+            if (!e.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Sampler for " + cgroup + " did not terminate in time.");
+            }
+        }
+        if (getSamples().isEmpty()) {
+            // Very short interval between start and stop, give it one more try.
+            sample();
+        }
+        return new Summary(getSamples());
+    }
+
+    public List<Sample> getSamples() {
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    /**
+     * Time series as CSV, e.g. to be archived with the logs.
+     */
+    public void writeCSV(Path path) throws IOException {
+        final StringBuilder s = new StringBuilder("timeMs,RSSKb,currentKb,peakKb,anonKb,fileKb,fileMappedKb," +
+                "cpuUsageUsec,cpuThrottledUsec,ioReadBytes,ioWriteBytes\n");
+        for (Sample sample : getSamples()) {
+            s.append(sample.timeMs).append(',')
+                    .append(sample.rssKb()).append(',')
+                    .append(sample.currentKb).append(',')
+                    .append(sample.peakKb).append(',')
+                    .append(sample.anonKb).append(',')
+                    .append(sample.fileKb).append(',')
+                    .append(sample.fileMappedKb).append(',')
+                    .append(sample.cpuUsageUsec).append(',')
+                    .append(sample.cpuThrottledUsec).append(',')
+                    .append(sample.ioReadBytes).append(',')
+                    .append(sample.ioWriteBytes).append('\n');
+        }
+        Files.writeString(path, s.toString(), UTF_8);
+    }
+
+    /**
+     * A single reading, e.g. in place of the former `stats' call.
+     */
+    public static Sample read(Path cgroup) throws IOException {
+        return read(cgroup, 0L);
+    }
+
+    private static Sample read(Path cgroup, long timeMs) throws IOException {
+        final long current = Long.parseLong(Files.readString(cgroup.resolve("memory.current"), UTF_8).trim());
+        final Path peakFile = cgroup.resolve("memory.peak");
+        final long peak = Files.isReadable(peakFile) ? Long.parseLong(Files.readString(peakFile, UTF_8).trim()) : -1L;
+        final Map<String, Long> memory = parseKeyValues(Files.readString(cgroup.resolve("memory.stat"), UTF_8));
+        final Path cpuFile = cgroup.resolve("cpu.stat");
+        final Map<String, Long> cpu = Files.isReadable(cpuFile) ? parseKeyValues(Files.readString(cpuFile, UTF_8)) : Map.of();
+        final Path ioFile = cgroup.resolve("io.stat");
+        final long[] io = Files.isReadable(ioFile) ? parseIoStat(Files.readString(ioFile, UTF_8)) : new long[]{-1L, -1L};
+        return new Sample(timeMs, current / 1024L, peak < 0 ? -1L : peak / 1024L,
+                memory.getOrDefault("anon", 0L) / 1024L,
+                memory.getOrDefault("file", 0L) / 1024L,
+                memory.getOrDefault("file_mapped", 0L) / 1024L,
+                cpu.getOrDefault("usage_usec", -1L),
+                cpu.getOrDefault("throttled_usec", -1L),
+                io[0], io[1]);
+    }
+
+    private void sample() {
+        try {
+            final Sample s = read(cgroup, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs));
+            synchronized (samples) {
+                samples.add(s);
+            }
+        } catch (NoSuchFileException e) {
+            // Container is gone, its cgroup removed, no point in sampling further.
+            final ScheduledExecutorService ex;
+            synchronized (this) {
+                ex = executor;
+            }
+            if (ex != null) {
+                ex.shutdown();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to sample " + cgroup + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param procCgroup contents of /proc/&lt;pid&gt;/cgroup
+     * @return the path of the unified hierarchy, e.g. /system.slice/docker-1a2b.scope, null on cgroup v1
+     */
+    static String parseCgroupPath(String procCgroup) {
+        for (String line : procCgroup.split("\n")) {
+            if (line.startsWith("0::")) {
+                return line.substring(3).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param stat contents of e.g. memory.stat or cpu.stat, "key value" per line
+     */
+    static Map<String, Long> parseKeyValues(String stat) {
+        final Map<String, Long> result = new HashMap<>();
+        for (String line : stat.split("\n")) {
+            final int i = line.indexOf(' ');
+            if (i > 0) {
+                result.put(line.substring(0, i), Long.parseLong(line.substring(i + 1).trim()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param stat contents of io.stat, e.g. 8:0 rbytes=1459200 wbytes=314773504 rios=192 wios=353 dbytes=0 dios=0
+     * @return rbytes, wbytes summed over all devices
+     */
+    static long[] parseIoStat(String stat) {
+        final long[] result = new long[]{0L, 0L};
+        for (String line : stat.split("\n")) {
+            for (String field : line.trim().split(" ")) {
+                if (field.startsWith("rbytes=")) {
+                    result[0] += Long.parseLong(field.substring(7));
+                } else if (field.startsWith("wbytes=")) {
+                    result[1] += Long.parseLong(field.substring(7));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A stand-in for the collector server, records what it receives and answers 201 with a new id,
+ * the first n requests can be made to fail with 503 and gzip compressed bodies can be rejected with 415.
+ */
+public class CollectorStub implements Closeable {
+
+    public static class Request {
+        public final String method;
+        // Path and query
+        public final String uri;
+        public final String token;
+        public final boolean gzipped;
+        public final String body;
+
+        public Request(String method, String uri, String token, boolean gzipped, String body) {
+            this.method = method;
+            this.uri = uri;
+            this.token = token;
+            this.gzipped = gzipped;
+            this.body = body;
+        }
+    }
+
+    public final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failuresLeft;
+    private final boolean rejectGzip;
+    private final AtomicInteger ids = new AtomicInteger();
+    private final HttpServer server;
+
+    public CollectorStub(int failFirst) throws IOException {
+        this(failFirst, false);
+    }
+
+    public CollectorStub(int failFirst, boolean rejectGzip) throws IOException {
+        this.failuresLeft = new AtomicInteger(failFirst);
+        this.rejectGzip = rejectGzip;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    public String endpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (failuresLeft.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            final boolean gzipped = "gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+            if (gzipped && rejectGzip) {
+                exchange.getRequestBody().readAllBytes();
+                exchange.sendResponseHeaders(415, -1);
+                return;
+            }
+            final String body;
+            try (InputStream in = gzipped ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), UTF_8);
+            }
+            requests.add(new Request(exchange.getRequestMethod(), exchange.getRequestURI().toString(),
+                    exchange.getRequestHeaders().getFirst("token"), gzipped, body));
+            final byte[] response = ("{\"id\":" + ids.incrementAndGet() + "}").getBytes(UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(201, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -27,7 +27,6 @@ import org.jboss.logging.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -45,21 +44,23 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Queue;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -112,6 +113,16 @@ public class Commands {
     // Mind that the waiting might be blocked by setting a breakpoint in the meantime. Depend on the test flow.
     public static final long LONG_GOTO_URL_TIMEOUT_MS = Long.parseLong(getProperty("LONG_GOTO_URL_TIMEOUT_MS", "60000"));
 
+    // perf stat, events not supported by the CPU or the VM are reported as such, they don't fail the run
+    public static final String PERF_STAT_EVENTS = getProperty("PERF_STAT_EVENTS",
+            "task-clock,context-switches,cpu-migrations,page-faults,major-faults,minor-faults," +
+                    "cycles,instructions,branches,branch-misses,cache-references,cache-misses," +
+                    "LLC-load-misses,dTLB-load-misses,stalled-cycles-frontend,stalled-cycles-backend,duration_time");
+    // Mind that -r reruns the whole command, i.e. it's useful only for commands that finish on their own
+    public static final int PERF_STAT_REPEATS = Integer.parseInt(getProperty("PERF_STAT_REPEATS", "1"));
+    // Not a comma, it might be a decimal separator in some locales
+    public static final String PERF_STAT_SEPARATOR = ";";
+
     private static final Set<String> getPropertyMessages = new HashSet<>();
 
     public static String getProperty(String key) {
@@ -170,13 +181,14 @@ public class Commands {
 
     public static void cleanTarget(Apps app) {
         // Apps build
-        final String target = BASE_DIR + File.separator + app.dir + File.separator + "target";
+        final String appDir = ResourceAllocator.appDir(app).toString();
+        final String target = appDir + File.separator + "target";
         // Apps logging
-        final String logs = BASE_DIR + File.separator + app.dir + File.separator + "logs";
+        final String logs = appDir + File.separator + "logs";
         // Dir generated by debug symbols build
-        final String sources = BASE_DIR + File.separator + app.dir + File.separator + "sources";
+        final String sources = appDir + File.separator + "sources";
         // Diagnostic data
-        final String reports = BASE_DIR + File.separator + app.dir + File.separator + "reports";
+        final String reports = appDir + File.separator + "reports";
         cleanDirOrFile(target, logs, sources, reports);
     }
 
@@ -206,32 +218,46 @@ public class Commands {
         } else if ("podman".equals(baseCommand[0]) && PODMAN_WITH_SUDO || "docker".equals(baseCommand[0]) && DOCKER_WITH_SUDO) {
             runCmd.add("sudo");
         }
-        runCmd.addAll(Arrays.asList(baseCommand));
+        for (String c : baseCommand) {
+            // e.g. -Dquarkus.http.port=<PORT:8080>, see ResourceAllocator
+            runCmd.add(ResourceAllocator.resolvePorts(c));
+        }
         return runCmd;
     }
 
     public static boolean waitForTcpClosed(String host, int port, long loopTimeoutS) throws InterruptedException, UnknownHostException {
         final InetAddress address = InetAddress.getByName(host);
-        long now = System.currentTimeMillis();
-        final long startTime = now;
+        final boolean procNetTcp = (address.isLoopbackAddress() || address.isAnyLocalAddress()) && ProcessLifecycle.isProcNetTcpAvailable();
         final InetSocketAddress socketAddr = new InetSocketAddress(address, port);
-        while (now - startTime < 1000 * loopTimeoutS) {
-            try (Socket socket = new Socket()) {
-                // If it lets you write something there, it is still ready.
-                socket.connect(socketAddr, 1000);
-                socket.setSendBufferSize(1);
-                socket.getOutputStream().write(1);
-                socket.shutdownInput();
-                socket.shutdownOutput();
-                LOGGER.info("Socket still available: " + host + ":" + port);
-            } catch (IOException e) {
-                // Exception thrown - socket is likely closed.
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(loopTimeoutS);
+        while (true) {
+            // /proc/net/tcp is cheap to poll, but a port published by a container might have no LISTEN socket
+            // in this network namespace at all, e.g. Docker with userland-proxy=false, so as nothing must accept
+            // a connection either.
+            if ((!procNetTcp || !Boolean.TRUE.equals(ProcessLifecycle.isListening(port))) && !isTcpOpen(socketAddr)) {
                 return true;
             }
-            Thread.sleep(1000);
-            now = System.currentTimeMillis();
+            if (System.nanoTime() > deadline) {
+                LOGGER.info("Socket still available: " + host + ":" + port);
+                return false;
+            }
+            Thread.sleep(procNetTcp ? ProcessLifecycle.PORT_POLL_MS : 1000);
+        }
+    }
+
+    private static boolean isTcpOpen(InetSocketAddress socketAddr) {
+        try (Socket socket = new Socket()) {
+            // If it lets you write something there, it is still ready.
+            socket.connect(socketAddr, 1000);
+            socket.setSendBufferSize(1);
+            socket.getOutputStream().write(1);
+            socket.shutdownInput();
+            socket.shutdownOutput();
+            return true;
+        } catch (IOException e) {
+            // Exception thrown - socket is likely closed.
+            return false;
         }
-        return false;
     }
 
     public static int parsePort(String url) {
@@ -465,6 +491,18 @@ public class Commands {
         process.waitFor(5, TimeUnit.SECONDS);
     }
 
+    /**
+     * @return anon + file_mapped of the container's cgroup, see {@link CgroupSampler},
+     * or what `stats' says if the cgroup cannot be read directly
+     */
+    public static long getContainerMemoryKb(String containerName) throws IOException, InterruptedException {
+        final Path cgroup = CgroupSampler.locate(containerName);
+        if (cgroup != null) {
+            return CgroupSampler.read(cgroup).rssKb();
+        }
+        return getContainerStatsMemoryKb(containerName);
+    }
+
     /*
     No idea if Docker works with 1024 and Podman with 1000 :-)
     $ podman stats --no-stream --format "table {{.MemUsage}}" my-quarkus-mandrel-app-container
@@ -473,7 +511,7 @@ public class Commands {
     MEM USAGE / LIMIT
     13.43MiB / 11.28GiB
      */
-    public static long getContainerMemoryKb(String containerName) throws IOException, InterruptedException {
+    public static long getContainerStatsMemoryKb(String containerName) throws IOException, InterruptedException {
         final List<String> cmd = getRunCommand(
                 CONTAINER_RUNTIME, "stats", "--no-stream", "--format", "table {{.MemUsage}}", containerName);
         LOGGER.infof("Command: %s", cmd);
@@ -583,30 +621,11 @@ public class Commands {
         processStopper(p, force, false);
     }
 
+    /**
+     * Stops the process and all its descendants, see {@link ProcessLifecycle}.
+     */
     public static void processStopper(Process p, boolean force, boolean orderMatters) throws InterruptedException {
-        // TODO: Simplify. "Order matters" should not harm use cases, where order doesn't matter...
-        if (orderMatters) {
-            final Queue<ProcessHandle> l = new ArrayDeque<>();
-            p.children().forEach(l::add);
-            l.add(p.toHandle());
-            for (int j = 0; j < l.size(); j++) {
-                final ProcessHandle ph = l.poll();
-                ph.destroy();
-                pidKiller(ph.pid(), force);
-            }
-        } else {
-            p.children().forEach(child -> {
-                if (child.supportsNormalTermination()) {
-                    child.destroy();
-                }
-                pidKiller(child.pid(), force);
-            });
-            if (p.supportsNormalTermination()) {
-                p.destroy();
-                p.waitFor(3, TimeUnit.MINUTES);
-            }
-            pidKiller(p.pid(), force);
-        }
+        ProcessLifecycle.stop(p.toHandle(), force, orderMatters);
     }
 
     public static void clearCaches() throws IOException {
@@ -663,6 +682,8 @@ public class Commands {
         final List<String> command;
         final long timeoutMinutes;
         final Map<String, String> envProps;
+        // -1 until the process finished in time
+        private volatile int exitValue = -1;
 
         public ProcessRunner(File directory, File log, List<String> command, long timeoutMinutes) {
             this.directory = directory;
@@ -691,29 +712,31 @@ public class Commands {
             pb.directory(directory);
             pb.redirectErrorStream(true);
             Process p = null;
-            try {
-                if (!log.exists()) {
-                    Files.createFile(log.toPath());
-                }
-                final String command = "Command: " + String.join(" ", this.command) + "\n";
+            try (LogSink sink = LogSink.open(log.toPath())) {
                 LOGGER.infof("Command: %s", this.command);
-                Files.write(log.toPath(), command.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+                sink.append("Command: " + String.join(" ", this.command));
                 p = pb.start();
-                dumpAndLogProcessOutput(log, p, timeoutMinutes);
+                dumpAndLogProcessOutput(sink, p, timeoutMinutes);
             } catch (IOException e) {
                 e.printStackTrace();
             }
             try {
-                Objects.requireNonNull(p, "command " + command + " not found/invalid")
-                        .waitFor(timeoutMinutes, TimeUnit.MINUTES);
+                if (Objects.requireNonNull(p, "command " + command + " not found/invalid")
+                        .waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+                    exitValue = p.exitValue();
+                }
             } catch (InterruptedException e) {
                 e.printStackTrace();
                 Thread.currentThread().interrupt();
             }
         }
+
+        public int getExitValue() {
+            return exitValue;
+        }
     }
 
-    private static void dumpAndLogProcessOutput(File logFile, Process pA, long timeoutMinutes) {
+    private static void dumpAndLogProcessOutput(LogSink sink, Process pA, long timeoutMinutes) {
         // We use an executor service and set a timeout to avoid getting stuck in case the underlying process
         // gets stuck and doesn't terminate
         final ExecutorService dumpService = Executors.newSingleThreadExecutor();
@@ -723,7 +746,7 @@ public class Commands {
                 String line = bufferedReader.readLine();
                 while (line != null) {
                     System.out.println(line);
-                    Files.writeString(logFile.toPath(), line + "\n", StandardOpenOption.APPEND);
+                    sink.append(line);
                     line = bufferedReader.readLine();
                 }
             } catch (IOException e) {
@@ -827,6 +850,27 @@ public class Commands {
         return false;
     }
 
+    public static class PerfCounter {
+        public final String event;
+        public final double value;
+        public final String unit;
+        // Standard deviation across -r repeats in percent of the mean, -1 if not repeated
+        public final double variancePct;
+        // Multiplexing, i.e. for how much of the time the counter was actually counting, values are scaled by perf
+        public final double runningPct;
+        // <not supported> or <not counted>
+        public final boolean counted;
+
+        public PerfCounter(String event, double value, String unit, double variancePct, double runningPct, boolean counted) {
+            this.event = event;
+            this.value = value;
+            this.unit = unit;
+            this.variancePct = variancePct;
+            this.runningPct = runningPct;
+            this.counted = counted;
+        }
+    }
+
     public static class PerfRecord {
         public String file;
         public double taskClock = -1;
@@ -838,6 +882,162 @@ public class Commands {
         public long branches = -1;
         public long branchMisses = -1;
         public double secondsTimeElapsed = -1;
+        // All the counters perf reported, keyed by event name without modifiers, e.g. cycles for cycles:u
+        public final Map<String, PerfCounter> counters = new LinkedHashMap<>();
+
+        void add(PerfCounter c) {
+            counters.put(c.event, c);
+            if (!c.counted) {
+                return;
+            }
+            switch (c.event) {
+                case "task-clock":
+                    taskClock = c.value;
+                    break;
+                case "context-switches":
+                case "cs":
+                    contextSwitches = Math.round(c.value);
+                    break;
+                case "cpu-migrations":
+                case "migrations":
+                    cpuMigrations = Math.round(c.value);
+                    break;
+                case "page-faults":
+                case "faults":
+                    pageFaults = Math.round(c.value);
+                    break;
+                case "cycles":
+                    cycles = Math.round(c.value);
+                    break;
+                case "instructions":
+                    instructions = Math.round(c.value);
+                    break;
+                case "branches":
+                    branches = Math.round(c.value);
+                    break;
+                case "branch-misses":
+                    branchMisses = Math.round(c.value);
+                    break;
+                case "duration_time":
+                    secondsTimeElapsed = "ns".equals(c.unit) || c.unit.isEmpty() ? c.value / 1_000_000_000d : c.value;
+                    break;
+                default:
+                    // Just in the counters map
+            }
+        }
+
+        /**
+         * Puts the traditional fields under their traditional names, the other counters
+         * camelCased, e.g. LLC-load-misses as llcLoadMisses, with multiplexing and variance if applicable.
+         */
+        public Map<String, String> report(Map<String, String> report) {
+            report.put("file", file);
+            report.put("taskClock", String.valueOf(taskClock));
+            report.put("contextSwitches", String.valueOf(contextSwitches));
+            report.put("cpuMigrations", String.valueOf(cpuMigrations));
+            report.put("pageFaults", String.valueOf(pageFaults));
+            report.put("cycles", String.valueOf(cycles));
+            report.put("instructions", String.valueOf(instructions));
+            report.put("branches", String.valueOf(branches));
+            report.put("branchMisses", String.valueOf(branchMisses));
+            report.put("secondsTimeElapsed", String.valueOf(secondsTimeElapsed));
+            for (PerfCounter c : counters.values()) {
+                final String key = camelCase(c.event);
+                if (!report.containsKey(key)) {
+                    report.put(key, c.counted ? String.valueOf(Math.round(c.value)) : "-1");
+                }
+                if (c.counted && c.runningPct < 100d) {
+                    report.put(key + "RunningPct", String.valueOf(c.runningPct));
+                }
+                if (c.variancePct >= 0) {
+                    report.put(key + "VariancePct", String.valueOf(c.variancePct));
+                }
+            }
+            return report;
+        }
+
+        /**
+         * @return the measured values of {@link #report(Map)}, for {@link Logs#checkMetrics}
+         */
+        public Map<String, Double> metrics() {
+            return Logs.numericMetrics(report(new LinkedHashMap<>()));
+        }
+
+        static String camelCase(String event) {
+            final String[] parts = event.toLowerCase().split("[^a-z0-9]+");
+            final StringBuilder s = new StringBuilder(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                if (!parts[i].isEmpty()) {
+                    s.append(Character.toUpperCase(parts[i].charAt(0))).append(parts[i].substring(1));
+                }
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * @param perfCommand e.g. perf stat -x ; -e ... -o logs/perf-stat.csv -- ./target/app
+     * @return the measured command, i.e. everything after --
+     */
+    public static String perfStatTarget(String[] perfCommand) {
+        final int i = Arrays.asList(perfCommand).indexOf("--");
+        if (i < 0) {
+            throw new IllegalArgumentException("perf stat command is expected to separate its options with --, was: " +
+                    String.join(" ", perfCommand));
+        }
+        return String.join(" ", Arrays.copyOfRange(perfCommand, i + 1, perfCommand.length)).trim();
+    }
+
+    /**
+     * @param perfCommand e.g. perf stat -x ; -e ... -o logs/perf-stat.csv -- ./target/app
+     * @return the -o output file of the command
+     */
+    public static Path perfStatOutput(File workDir, String[] perfCommand) {
+        final int i = Arrays.asList(perfCommand).indexOf("-o");
+        if (i < 0 || i + 1 >= perfCommand.length) {
+            throw new IllegalArgumentException("perf stat command is expected to have -o output file, was: " +
+                    String.join(" ", perfCommand));
+        }
+        return Path.of(workDir.getAbsolutePath(), perfCommand[i + 1]);
+    }
+
+    /**
+     * Parses `perf stat -x' output, see "CSV FORMAT" in perf-stat(1):
+     * value, unit, event, [variance, if -r], counter run time, percentage of the measurement time
+     * the counter was running, optional metric value and unit.
+     * Values are never grouped by thousands in this format, the decimal separator is normalized.
+     */
+    public static PerfRecord parsePerfStatCSV(Path csv, String statsFor) throws IOException {
+        final PerfRecord pr = new PerfRecord();
+        pr.file = statsFor;
+        for (String line : Files.readAllLines(csv, UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] f = line.split(PERF_STAT_SEPARATOR, -1);
+            if (f.length < 3 || f[2].isBlank()) {
+                LOGGER.debug("Not a perf stat counter line: " + line);
+                continue;
+            }
+            final String event = f[2].replaceFirst(":[ukhHGpPS]+$", "");
+            final boolean counted = !f[0].startsWith("<");
+            final double value = counted ? parsePerfNumber(f[0]) : -1;
+            int next = 3;
+            double variancePct = -1;
+            if (f.length > next && f[next].endsWith("%")) {
+                variancePct = parsePerfNumber(f[next].substring(0, f[next].length() - 1));
+                next++;
+            }
+            // skipping counter run time
+            next++;
+            final double runningPct = f.length > next && !f[next].isBlank() ? parsePerfNumber(f[next]) : 100d;
+            pr.add(new PerfCounter(event, value, f[1], variancePct, runningPct, counted));
+        }
+        return pr;
+    }
+
+    private static double parsePerfNumber(String n) {
+        return Double.parseDouble(n.trim().replace(',', '.'));
     }
 
     public static PerfRecord parsePerfRecord(Path path, String statsFor) throws IOException {
@@ -877,42 +1077,42 @@ public class Commands {
                 final String line = sc.nextLine().replaceAll(",", "");
                 Matcher m = taskClock.matcher(line);
                 if (m.matches()) {
-                    pr.taskClock = Double.parseDouble(m.group(1));
+                    pr.add(new PerfCounter("task-clock", Double.parseDouble(m.group(1)), "msec", -1, 100d, true));
                     continue;
                 }
                 m = contextSwitches.matcher(line);
                 if (m.matches()) {
-                    pr.contextSwitches = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("context-switches", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = cpuMigrations.matcher(line);
                 if (m.matches()) {
-                    pr.cpuMigrations = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("cpu-migrations", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = pageFaults.matcher(line);
                 if (m.matches()) {
-                    pr.pageFaults = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("page-faults", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = cycles.matcher(line);
                 if (m.matches()) {
-                    pr.cycles = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("cycles", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = instructions.matcher(line);
                 if (m.matches()) {
-                    pr.instructions = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("instructions", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = branches.matcher(line);
                 if (m.matches()) {
-                    pr.branches = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("branches", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = branchMisses.matcher(line);
                 if (m.matches()) {
-                    pr.branchMisses = Long.parseLong(m.group(1));
+                    pr.add(new PerfCounter("branch-misses", Long.parseLong(m.group(1)), "", -1, 100d, true));
                     continue;
                 }
                 m = secondsTimeElapsed.matcher(line);
@@ -931,12 +1131,17 @@ public class Commands {
     }
 
     public static SerialGCLog parseSerialGCLog(Path path, String statsFor, boolean isJVM) throws IOException {
-        final Pattern begin = Pattern.compile(".*\\s+\\Q" + statsFor + "\\E$");
+        return parseSerialGCLog(path, Pattern.compile(".*\\s+\\Q" + statsFor + "\\E$"), Pattern.compile(".*quarkus.*stopped.*"), isJVM);
+    }
+
+    /**
+     * GC events between the first line matching begin and the next one matching end, e.g. within a phase of a test.
+     */
+    public static SerialGCLog parseSerialGCLog(Path path, Pattern begin, Pattern end, boolean isJVM) throws IOException {
         final Pattern incremental = isJVM ? Pattern.compile("\\[[^]]*]\\[info]\\[gc] GC\\([0-9]+\\) Pause Young \\(Allocation[^)]*\\)[^)]*\\)\\s+([0-9\\.]+)ms$") :
                 Pattern.compile("^\\[Incremental\\s+GC\\s+\\(CollectOnAllocation\\)[^,]*,\\s+([0-9\\.]+)\\s+secs\\]$");
         final Pattern full = isJVM ? Pattern.compile("\\[[^]]*]\\[info]\\[gc] GC\\([0-9]+\\) Pause Full \\(Allocation[^)]*\\)[^)]*\\)\\s+([0-9\\.]+)ms$") :
                 Pattern.compile("^\\[Full\\s+GC\\s+\\(CollectOnAllocation\\)[^,]*,\\s+([0-9\\.]+)\\s+secs\\]$");
-        final Pattern end = Pattern.compile(".*quarkus.*stopped.*");
         try (Scanner sc = new Scanner(path, UTF_8)) {
             while (sc.hasNextLine()) {
                 final String l = sc.nextLine();
@@ -1029,36 +1234,33 @@ public class Commands {
         return sb.toString();
     }
 
-    public static int waitForFileToMatch(Pattern lineMatchRegexp, Path path, int skipLines, long timeout, long sleep, TimeUnit unit) throws IOException {
-        long timeoutMillis = unit.toMillis(timeout);
-        long sleepMillis = unit.toMillis(sleep);
-        long startMillis = System.currentTimeMillis();
+    /**
+     * Waits for a line in the file matching the regexp. The file is tailed by {@link LogTailer},
+     * i.e. only the appended bytes are read, by a single reader thread polling every LOG_TAILER_POLL_MS.
+     *
+     * @return line number of the matching line or -1 if there was none within the timeout
+     */
+    public static int waitForFileToMatch(Pattern lineMatchRegexp, Path path, int skipLines, long timeout, TimeUnit unit) throws IOException {
         LOGGER.infof("Waiting for file %s to have a line matching this regexp: %s", path, lineMatchRegexp);
-        // Reading the file again and again, could hurt on huge files...
-        while (System.currentTimeMillis() - startMillis < timeoutMillis) {
-            if (Files.exists(path)) {
-                try (final BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(new ByteArrayInputStream(Files.readAllBytes(path)), StandardCharsets.UTF_8))) {
-                    String line;
-                    int c = 0;
-                    while ((line = reader.readLine()) != null) {
-                        c++;
-                        if (c > skipLines && lineMatchRegexp.matcher(line).matches()) {
-                            return c;
-                        }
-                    }
-                }
-            } else {
-                LOGGER.error("File " + path + " is missing");
-            }
-            try {
-                Thread.sleep(sleepMillis);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-                Thread.currentThread().interrupt();
-            }
+        if (Files.notExists(path)) {
+            LOGGER.error("File " + path + " is missing");
+        }
+        // Lines still buffered by a LogSink would be missed
+        LogSink.flush(path);
+        final CompletableFuture<Integer> match = LogTailer.subscribe(lineMatchRegexp, path, skipLines);
+        try {
+            return match.get(timeout, unit);
+        } catch (TimeoutException e) {
+            return -1;
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to tail " + path, e.getCause());
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+            return -1;
+        } finally {
+            match.cancel(false);
         }
-        return -1;
     }
 
     public static boolean waitForBufferToMatch(StringBuilder report, StringBuffer stringBuffer, Pattern pattern, long timeout, long sleep, TimeUnit unit) {
@@ -1119,31 +1321,36 @@ public class Commands {
      */
     public static void builderRoutine(Apps app, StringBuilder report, String cn, String mn, File appDir,
                                       File processLog, Map<String, String> env, Map<String, String> switchReplacements) throws IOException {
-        String[][] buildCommands = app.buildAndRunCmds.buildCommands;
-        assertTrue(buildCommands.length > 0);
+        assertTrue(app.buildAndRunCmds.buildCommands.length > 0);
+        // Commands follow one after another, other tests' builds might be running alongside though
+        builderRoutine(List.of(new BuildScheduler.Build(app, appDir, processLog, env, switchReplacements)), report, cn, mn);
+    }
+
+    /**
+     * Builds the apps concurrently, within the budget of {@link BuildScheduler#DEFAULT}, and waits for all of them.
+     * Builds of apps in the same directory still run one after another.
+     */
+    public static void builderRoutine(List<BuildScheduler.Build> builds, StringBuilder report, String cn, String mn) throws IOException {
         if (report != null) {
             Logs.appendln(report, "# " + cn + ", " + mn);
         }
-        for (int i = 0; i < buildCommands.length; i++) {
-            // We cannot run commands in parallel, we need them to follow one after another
-            final ExecutorService buildService = Executors.newFixedThreadPool(1);
-            final List<String> cmd;
-            // Replace possible placeholders with actual switches
-            if (switchReplacements != null && !switchReplacements.isEmpty()) {
-                cmd = replaceSwitchesInCmd(getRunCommand(buildCommands[i]), switchReplacements);
-            } else {
-                cmd = getRunCommand(buildCommands[i]);
-            }
-            Files.writeString(processLog.toPath(), String.join(" ", cmd) + "\n", StandardOpenOption.APPEND, StandardOpenOption.CREATE);
-            buildService.submit(new Commands.ProcessRunner(appDir, processLog, cmd, 20, env)); // might take a long time....
+        final List<BuildScheduler.Result> results;
+        try {
+            results = BuildScheduler.DEFAULT.run(builds);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while building " + builds.stream().map(b -> b.app.toString()).collect(Collectors.joining(", ")), e);
+        }
+        for (BuildScheduler.Result result : results) {
             if (report != null) {
-                Logs.appendln(report, (new Date()).toString());
-                Logs.appendln(report, appDir.getAbsolutePath());
-                Logs.appendlnSection(report, String.join(" ", cmd));
+                for (BuildScheduler.CommandTiming t : result.timings) {
+                    Logs.appendln(report, (new Date(t.startedEpochMs)).toString());
+                    Logs.appendln(report, result.build.appDir.getAbsolutePath());
+                    Logs.appendlnSection(report, String.join(" ", t.command));
+                }
             }
-            shutdownAndAwaitTermination(buildService, 20, TimeUnit.MINUTES); // Native image build might take a long time....
+            assertTrue(result.build.log.exists());
         }
-        assertTrue(processLog.exists());
     }
 
     public static void builderRoutine(Apps app, StringBuilder report, String cn, String mn, File appDir, File processLog) throws IOException {
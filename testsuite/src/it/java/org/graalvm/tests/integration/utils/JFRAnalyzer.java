@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+import org.apache.commons.io.FileUtils;
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Counts events in a JFR recording in-process, with jdk.jfr.consumer, instead of scraping
+ * the text output of jfr summary and jfr print.
+ *
+ * The recording is read once. Each event is counted by its type and it is checked against
+ * the registered matches. Events of a match are further counted by thread and by top stack frame.
+ *
+ * A recording is a sequence of self-contained chunks. Recordings with more than one chunk are split
+ * and the chunks are read in parallel, by JFR_ANALYZER_THREADS threads.
+ *
+ * The test JVM reads the recording, so it must understand the JFR file format of the JDK the app ran with.
+ */
+public class JFRAnalyzer {
+
+    private static final Logger LOGGER = Logger.getLogger(JFRAnalyzer.class.getName());
+
+    public static final int THREADS = Integer.parseInt(getProperty("JFR_ANALYZER_THREADS",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+    // Chunk header: magic, major and minor version, chunk size in bytes including the header
+    private static final byte[] MAGIC = new byte[]{'F', 'L', 'R', 0};
+    private static final int CHUNK_SIZE_OFFSET = 8;
+    private static final int HEADER_PEEK = 16;
+
+    public static final String NO_THREAD = "<no thread>";
+    public static final String NO_STACK_TRACE = "<no stack trace>";
+
+    public static class Match {
+        public final String name;
+        public final String eventType;
+        public final Predicate<RecordedEvent> predicate;
+
+        public Match(String name, String eventType, Predicate<RecordedEvent> predicate) {
+            this.name = name;
+            this.eventType = eventType;
+            this.predicate = predicate;
+        }
+    }
+
+    public static class Result {
+        public final Path recording;
+        public final int chunks;
+        public final long events;
+        public final long durationMs;
+        // Event type -> count
+        public final Map<String, Long> eventCounts;
+        // Match name -> count
+        public final Map<String, Long> matchCounts;
+        // Match name -> thread name -> count
+        public final Map<String, Map<String, Long>> matchCountsByThread;
+        // Match name -> top frame, i.e. class.method:line -> count
+        public final Map<String, Map<String, Long>> matchCountsByTopFrame;
+
+        Result(Path recording, int chunks, long durationMs, Counts counts) {
+            this.recording = recording;
+            this.chunks = chunks;
+            this.events = counts.events;
+            this.durationMs = durationMs;
+            this.eventCounts = Collections.unmodifiableMap(counts.eventCounts);
+            this.matchCounts = Collections.unmodifiableMap(counts.matchCounts);
+            this.matchCountsByThread = Collections.unmodifiableMap(counts.matchCountsByThread);
+            this.matchCountsByTopFrame = Collections.unmodifiableMap(counts.matchCountsByTopFrame);
+        }
+
+        public long getEventCount(String eventType) {
+            return eventCounts.getOrDefault(eventType, 0L);
+        }
+
+        public long getMatchCount(String name) {
+            if (!matchCounts.containsKey(name)) {
+                throw new IllegalArgumentException("There is no match named " + name + ", known matches: " + matchCounts.keySet());
+            }
+            return matchCounts.get(name);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder s = new StringBuilder();
+            s.append(recording.getFileName()).append(": ").append(events).append(" events in ").append(chunks)
+                    .append(" chunks, analyzed in ").append(durationMs).append(" ms\n");
+            eventCounts.forEach((k, v) -> s.append(k).append(": ").append(v).append('\n'));
+            matchCounts.forEach((k, v) -> s.append(k).append(": ").append(v).append('\n'));
+            return s.toString();
+        }
+    }
+
+    /**
+     * Mutable tallies of one chunk, merged into one at the end.
+     */
+    static class Counts {
+        long events;
+        final Map<String, Long> eventCounts = new TreeMap<>();
+        final Map<String, Long> matchCounts = new LinkedHashMap<>();
+        final Map<String, Map<String, Long>> matchCountsByThread = new LinkedHashMap<>();
+        final Map<String, Map<String, Long>> matchCountsByTopFrame = new LinkedHashMap<>();
+
+        Counts(List<Match> matches) {
+            for (Match m : matches) {
+                matchCounts.put(m.name, 0L);
+                matchCountsByThread.put(m.name, new TreeMap<>());
+                matchCountsByTopFrame.put(m.name, new TreeMap<>());
+            }
+        }
+
+        void add(RecordedEvent e, List<Match> matches) {
+            events++;
+            final String type = e.getEventType().getName();
+            eventCounts.merge(type, 1L, Long::sum);
+            for (Match m : matches) {
+                if (m.eventType.equals(type) && (m.predicate == null || m.predicate.test(e))) {
+                    matchCounts.merge(m.name, 1L, Long::sum);
+                    matchCountsByThread.get(m.name).merge(threadName(e), 1L, Long::sum);
+                    matchCountsByTopFrame.get(m.name).merge(topFrame(e), 1L, Long::sum);
+                }
+            }
+        }
+
+        void merge(Counts o) {
+            events += o.events;
+            o.eventCounts.forEach((k, v) -> eventCounts.merge(k, v, Long::sum));
+            o.matchCounts.forEach((k, v) -> matchCounts.merge(k, v, Long::sum));
+            o.matchCountsByThread.forEach((k, v) -> v.forEach((t, c) -> matchCountsByThread.get(k).merge(t, c, Long::sum)));
+            o.matchCountsByTopFrame.forEach((k, v) -> v.forEach((f, c) -> matchCountsByTopFrame.get(k).merge(f, c, Long::sum)));
+        }
+    }
+
+    private final Path recording;
+    private final List<Match> matches = new ArrayList<>();
+    private int threads = THREADS;
+
+    public JFRAnalyzer(Path recording) {
+        this.recording = recording;
+    }
+
+    /**
+     * @param name      unique name of the match in the result
+     * @param eventType e.g. jdk.ThreadPark
+     * @param predicate null matches all events of the type
+     */
+    public JFRAnalyzer match(String name, String eventType, Predicate<RecordedEvent> predicate) {
+        if (matches.stream().anyMatch(m -> m.name.equals(name))) {
+            throw new IllegalArgumentException("Match " + name + " is already registered.");
+        }
+        matches.add(new Match(name, eventType, predicate));
+        return this;
+    }
+
+    public JFRAnalyzer threads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1, was: " + threads);
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    public Result analyze() throws IOException, InterruptedException {
+        if (!Files.isRegularFile(recording)) {
+            throw new IOException("The flight record file " + recording + " does not exist.");
+        }
+        final long start = System.currentTimeMillis();
+        final List<long[]> chunks = chunks(recording);
+        final Counts counts = new Counts(matches);
+        if (chunks.size() < 2 || threads == 1) {
+            read(recording, counts);
+        } else {
+            final Path tmp = Files.createTempDirectory("jfr-chunks");
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, chunks.size()), r -> {
+                final Thread t = new Thread(r, "jfr-analyzer");
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                final List<Future<Counts>> futures = new ArrayList<>(chunks.size());
+                for (int i = 0; i < chunks.size(); i++) {
+                    final long[] chunk = chunks.get(i);
+                    final Path chunkFile = tmp.resolve(i + ".jfr");
+                    futures.add(executor.submit(() -> {
+                        copy(recording, chunk[0], chunk[1], chunkFile);
+                        final Counts c = new Counts(matches);
+                        read(chunkFile, c);
+                        Files.delete(chunkFile);
+                        return c;
+                    }));
+                }
+                for (Future<Counts> f : futures) {
+                    counts.merge(f.get());
+                }
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to analyze " + recording + ": " + e.getCause().getMessage(), e.getCause());
+            } finally {
+                executor.shutdownNow();
+                FileUtils.deleteQuietly(tmp.toFile());
+            }
+        }
+        final Result result = new Result(recording, chunks.size(), System.currentTimeMillis() - start, counts);
+        LOGGER.infof("%s: %d events in %d chunks analyzed in %d ms", recording, result.events, result.chunks, result.durationMs);
+        return result;
+    }
+
+    /**
+     * @return offset and size of each chunk, a chunk that is still being written or was cut short spans the rest of the file
+     */
+    static List<long[]> chunks(Path recording) throws IOException {
+        final List<long[]> chunks = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(recording, StandardOpenOption.READ)) {
+            final long size = ch.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_PEEK);
+            long offset = 0;
+            while (offset < size) {
+                header.clear();
+                final int read = ch.read(header, offset);
+                header.flip();
+                boolean magic = read == HEADER_PEEK;
+                for (int i = 0; magic && i < MAGIC.length; i++) {
+                    magic = header.get(i) == MAGIC[i];
+                }
+                if (!magic) {
+                    throw new IOException("Not a JFR chunk at offset " + offset + " of " + recording);
+                }
+                final long chunkSize = header.getLong(CHUNK_SIZE_OFFSET);
+                if (chunkSize <= HEADER_PEEK || offset + chunkSize > size) {
+                    chunks.add(new long[]{offset, size - offset});
+                    break;
+                }
+                chunks.add(new long[]{offset, chunkSize});
+                offset += chunkSize;
+            }
+        }
+        return chunks;
+    }
+
+    private static void copy(Path src, long offset, long size, Path dst) throws IOException {
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dst, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long done = 0;
+            while (done < size) {
+                done += in.transferTo(offset + done, size - done, out);
+            }
+        }
+    }
+
+    private void read(Path file, Counts counts) throws IOException {
+        try (RecordingFile rf = new RecordingFile(file)) {
+            while (rf.hasMoreEvents()) {
+                counts.add(rf.readEvent(), matches);
+            }
+        }
+    }
+
+    static String threadName(RecordedEvent e) {
+        final RecordedThread t = e.getThread();
+        if (t == null) {
+            return NO_THREAD;
+        }
+        return t.getJavaName() != null ? t.getJavaName() : t.getOSName();
+    }
+
+    static String topFrame(RecordedEvent e) {
+        if (e.getStackTrace() == null || e.getStackTrace().getFrames().isEmpty()) {
+            return NO_STACK_TRACE;
+        }
+        final RecordedFrame f = e.getStackTrace().getFrames().get(0);
+        return f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber();
+    }
+
+    /**
+     * e.g. classField("parkedClass", "org.acme.getting.started.GreetingService") for jdk.ThreadPark
+     */
+    public static Predicate<RecordedEvent> classField(String field, String className) {
+        return e -> {
+            if (!e.hasField(field)) {
+                return false;
+            }
+            final Object v = e.getValue(field);
+            return v instanceof RecordedClass && className.equals(((RecordedClass) v).getName());
+        };
+    }
+
+    /**
+     * Matches the field's value as a string, classes by their name, threads by their Java name.
+     */
+    public static Predicate<RecordedEvent> fieldMatches(String field, Pattern pattern) {
+        return e -> {
+            if (!e.hasField(field)) {
+                return false;
+            }
+            final Object v = e.getValue(field);
+            final String s;
+            if (v instanceof RecordedClass) {
+                s = ((RecordedClass) v).getName();
+            } else if (v instanceof RecordedThread) {
+                s = ((RecordedThread) v).getJavaName();
+            } else {
+                s = String.valueOf(v);
+            }
+            return s != null && pattern.matcher(s).matches();
+        };
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded load generator for hosts where we cannot or do not want to run the Hyperfoil container.
+ * It drives a list of endpoints round-robin with a bounded number of in-flight requests
+ * using the asynchronous, NIO based, java.net.http.HttpClient.
+ *
+ * The run ends either when the configured number of requests was sent or when the configured
+ * duration elapsed, whichever comes first. If a request rate is set, the latency is measured
+ * from the time the request was supposed to be sent, not from when it actually was sent,
+ * so that a stalled server is not hidden by the generator waiting for it (coordinated omission).
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(LoadGenerator.class.getName());
+
+    public static class Endpoint {
+        public final String name;
+        public final HttpRequest request;
+        public final String expected;
+        public final int expectedStatus;
+
+        /**
+         * @param name     tag the endpoint is reported under, e.g. the URL path
+         * @param request  the request to send, it is reused for each call
+         * @param expected a string the response body must contain, null means just HTTP 200 is checked
+         */
+        public Endpoint(String name, HttpRequest request, String expected) {
+            this(name, request, expected, 200);
+        }
+
+        /**
+         * @param expectedStatus e.g. 204 for a PUT that returns no content
+         */
+        public Endpoint(String name, HttpRequest request, String expected, int expectedStatus) {
+            this.name = name;
+            this.request = request;
+            this.expected = expected;
+            this.expectedStatus = expectedStatus;
+        }
+    }
+
+    public static class Result {
+        public final Map<String, LatencyHistogram> histograms;
+        public final LatencyHistogram total;
+        public final Map<String, Long> errors;
+        public final long elapsedNs;
+
+        public Result(Map<String, LatencyHistogram> histograms, LatencyHistogram total, Map<String, Long> errors, long elapsedNs) {
+            this.histograms = histograms;
+            this.total = total;
+            this.errors = errors;
+            this.elapsedNs = elapsedNs;
+        }
+
+        public long getErrorsCount() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        public long getRequestsPerSecond() {
+            return elapsedNs <= 0 ? 0L : Math.round(total.getTotalCount() / (elapsedNs / 1_000_000_000d));
+        }
+
+        /**
+         * Puts the aggregated latencies in ns and the throughput in requests per second to the builder.
+         */
+        public LogBuilder log(LogBuilder logBuilder) {
+            return logBuilder
+                    .meanResponseTime(total.getMean())
+                    .maxResponseTime(total.getMax())
+                    .responseTime50Percentile(total.getValueAtPercentile(50))
+                    .responseTime90Percentile(total.getValueAtPercentile(90))
+                    .responseTime99Percentile(total.getValueAtPercentile(99))
+                    .responseTime999Percentile(total.getValueAtPercentile(99.9))
+                    .requestsPerSecond(getRequestsPerSecond());
+        }
+
+        /**
+         * Puts the aggregated latencies in ns and the throughput to the perf report map.
+         */
+        public Map<String, String> report(Map<String, String> report) {
+            return report(report, "");
+        }
+
+        /**
+         * @param prefix e.g. dump for dumpMeanResponseTimeNs, so as several loads fit in one report
+         */
+        public Map<String, String> report(Map<String, String> report, String prefix) {
+            report.put(key(prefix, "meanResponseTimeNs"), String.valueOf(total.getMean()));
+            report.put(key(prefix, "maxResponseTimeNs"), String.valueOf(total.getMax()));
+            report.put(key(prefix, "responseTime50PercentileNs"), String.valueOf(total.getValueAtPercentile(50)));
+            report.put(key(prefix, "responseTime90PercentileNs"), String.valueOf(total.getValueAtPercentile(90)));
+            report.put(key(prefix, "responseTime99PercentileNs"), String.valueOf(total.getValueAtPercentile(99)));
+            report.put(key(prefix, "responseTime999PercentileNs"), String.valueOf(total.getValueAtPercentile(99.9)));
+            report.put(key(prefix, "requestsPerSecond"), String.valueOf(getRequestsPerSecond()));
+            return report;
+        }
+
+        private static String key(String prefix, String metric) {
+            return prefix.isEmpty() ? metric : prefix + Character.toUpperCase(metric.charAt(0)) + metric.substring(1);
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder s = new StringBuilder();
+            s.append(String.format("%d requests in %d ms, %d req/s, %d errors%n",
+                    total.getTotalCount(), TimeUnit.NANOSECONDS.toMillis(elapsedNs), getRequestsPerSecond(), getErrorsCount()));
+            histograms.forEach((name, h) -> s.append(String.format("%s [ns] %s, errors: %d%n", name, h, errors.get(name))));
+            s.append(String.format("total [ns] %s", total));
+            return s.toString();
+        }
+    }
+
+    private int concurrency = 1;
+    private int requestsPerSecond = 0;
+    private long requests = -1L;
+    private Duration duration = null;
+    private Duration requestTimeout = Duration.ofSeconds(30);
+
+    public LoadGenerator concurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1, was: " + concurrency);
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * @param requestsPerSecond 0 means as fast as the concurrency allows
+     */
+    public LoadGenerator requestsPerSecond(int requestsPerSecond) {
+        if (requestsPerSecond < 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be a positive int, was: " + requestsPerSecond);
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
+
+    public LoadGenerator requests(long requests) {
+        if (requests < 1) {
+            throw new IllegalArgumentException("requests must be at least 1, was: " + requests);
+        }
+        this.requests = requests;
+        return this;
+    }
+
+    public LoadGenerator duration(Duration duration) {
+        if (duration == null || duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("duration must be a positive duration, was: " + duration);
+        }
+        this.duration = duration;
+        return this;
+    }
+
+    public LoadGenerator requestTimeout(Duration requestTimeout) {
+        if (requestTimeout == null || requestTimeout.isNegative() || requestTimeout.isZero()) {
+            throw new IllegalArgumentException("requestTimeout must be a positive duration, was: " + requestTimeout);
+        }
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
+    /**
+     * GET endpoints for all URLs of the given app, tagged with the URL path.
+     */
+    public static List<Endpoint> endpoints(URLContent urlContent) {
+        final List<Endpoint> endpoints = new ArrayList<>(urlContent.urlContent.length);
+        for (String[] u : urlContent.urlContent) {
+            final URI uri = URI.create(u[0]);
+            final String name = uri.getPath() == null || uri.getPath().isEmpty() ? "/" : uri.getPath();
+            endpoints.add(new Endpoint(name, HttpRequest.newBuilder().GET().uri(uri).build(), u[1]));
+        }
+        return endpoints;
+    }
+
+    public Result run(List<Endpoint> endpoints) throws InterruptedException {
+        if (endpoints == null || endpoints.isEmpty()) {
+            throw new IllegalArgumentException("There must be at least one endpoint to drive load against.");
+        }
+        if (requests == -1L && duration == null) {
+            throw new IllegalArgumentException("Either requests count or duration must be set, otherwise the load never ends.");
+        }
+        final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        final Map<String, LongAdder> errors = new LinkedHashMap<>();
+        for (Endpoint e : endpoints) {
+            histograms.putIfAbsent(e.name, new LatencyHistogram());
+            errors.putIfAbsent(e.name, new LongAdder());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        final HttpClient hc = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .executor(executor)
+                .build();
+        final Semaphore inFlight = new Semaphore(concurrency);
+        final long intervalNs = requestsPerSecond > 0 ? 1_000_000_000L / requestsPerSecond : 0L;
+        final long startNs = System.nanoTime();
+        final long endNs = duration != null ? startNs + duration.toNanos() : Long.MAX_VALUE;
+        LOGGER.infof("Load: %d endpoints, concurrency %d, %s req/s, %s requests, duration %s",
+                endpoints.size(), concurrency, requestsPerSecond > 0 ? requestsPerSecond : "max",
+                requests > 0 ? requests : "unlimited", duration != null ? duration : "unlimited");
+        try {
+            long sent = 0;
+            long intendedNs = startNs;
+            while ((requests == -1L || sent < requests) && System.nanoTime() < endNs) {
+                if (intervalNs > 0) {
+                    intendedNs += intervalNs;
+                    final long sleepNs = intendedNs - System.nanoTime();
+                    if (sleepNs > 0) {
+                        TimeUnit.NANOSECONDS.sleep(sleepNs);
+                    }
+                }
+                inFlight.acquire();
+                final Endpoint e = endpoints.get((int) (sent % endpoints.size()));
+                final long sentNs = intervalNs > 0 ? intendedNs : System.nanoTime();
+                hc.sendAsync(e.request, HttpResponse.BodyHandlers.ofString())
+                        .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .whenComplete((r, t) -> {
+                            try {
+                                histograms.get(e.name).record(System.nanoTime() - sentNs);
+                                if (t != null || r.statusCode() != e.expectedStatus || (e.expected != null && !r.body().contains(e.expected))) {
+                                    errors.get(e.name).increment();
+                                }
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                sent++;
+            }
+            // Wait for the in-flight requests to finish
+            if (!inFlight.tryAcquire(concurrency, requestTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                LOGGER.warn("Some requests did not finish within " + requestTimeout + ".");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        final long elapsedNs = System.nanoTime() - startNs;
+        final LatencyHistogram total = new LatencyHistogram();
+        histograms.values().forEach(total::add);
+        final Map<String, Long> errorCounts = new LinkedHashMap<>();
+        errors.forEach((name, count) -> errorCounts.put(name, count.sum()));
+        final Result result = new Result(Collections.unmodifiableMap(histograms), total, Collections.unmodifiableMap(errorCounts), elapsedNs);
+        LOGGER.info("Load results:\n" + result);
+        return result;
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.graalvm.tests.integration.utils;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -31,12 +33,27 @@ public class LogBuilder {
         public final String headerMarkdown;
         public final String lineCSV;
         public final String lineMarkdown;
+        // Measured values keyed by their header, e.g. buildTimeMs, for Logs#checkMetrics
+        public final Map<String, Long> metrics;
 
         public Log(String headerCSV, String headerMarkdown, String lineCSV, String lineMarkdown) {
             this.headerCSV = headerCSV;
             this.headerMarkdown = headerMarkdown;
             this.lineCSV = lineCSV;
             this.lineMarkdown = lineMarkdown;
+            this.metrics = new LinkedHashMap<>();
+            final String[] headers = headerCSV.split(",");
+            final String[] values = lineCSV.split(",");
+            for (int i = 0; i < headers.length && i < values.length; i++) {
+                try {
+                    final long v = Long.parseLong(values[i].trim());
+                    if (v >= 0) {
+                        metrics.put(headers[i].trim(), v);
+                    }
+                } catch (NumberFormatException e) {
+                    // Not a measurement, e.g. the app name
+                }
+            }
         }
     }
 
@@ -60,8 +77,33 @@ public class LogBuilder {
     private long responseTime90Percentile = -1L;
     private static final String responseTime99PercentileHeader = "responseTime99PercentileNs";
     private long responseTime99Percentile = -1L;
+    private static final String responseTime999PercentileHeader = "responseTime999PercentileNs";
+    private long responseTime999Percentile = -1L;
+    private static final String requestsPerSecondHeader = "requestsPerSecond";
+    private long requestsPerSecond = -1L;
     private static final String openedFilesHeader = "FDs";
     private long openedFiles = -1L;
+    private static final String peakRssKbHeader = "peakRSSKb";
+    private long peakRssKb = -1L;
+    private static final String meanRssKbHeader = "meanRSSKb";
+    private long meanRssKb = -1L;
+    // MemUsage of `stats', page cache included, where the container's cgroup cannot be read
+    private static final String containerMemUsageKbHeader = "containerMemUsageKb";
+    private long containerMemUsageKb = -1L;
+    private static final String peakOpenedFilesHeader = "peakFDs";
+    private long peakOpenedFiles = -1L;
+    private static final String peakThreadsHeader = "peakThreads";
+    private long peakThreads = -1L;
+    private static final String spawnToFirstOutputMsHeader = "spawnToFirstOutputMs";
+    private long spawnToFirstOutputMs = -1L;
+    private static final String spawnToStartedLogMsHeader = "spawnToStartedLogMs";
+    private long spawnToStartedLogMs = -1L;
+    private static final String spawnToListeningMsHeader = "spawnToListeningMs";
+    private long spawnToListeningMs = -1L;
+    private static final String spawnToFirstConnectionMsHeader = "spawnToFirstConnectionMs";
+    private long spawnToFirstConnectionMs = -1L;
+    private static final String spawnToFirstOKMsHeader = "spawnToFirstOKMs";
+    private long spawnToFirstOKMs = -1L;
     private static final String appHeader = "App";
     private String app = null;
 
@@ -139,6 +181,20 @@ public class LogBuilder {
         this.responseTime99Percentile = responseTime99Percentile;
         return this;
     }
+    public LogBuilder responseTime999Percentile(long responseTime999Percentile) {
+        if (responseTime999Percentile < 0) {
+            throw new IllegalArgumentException("responseTime999Percentile must be a positive long, was: " + responseTime999Percentile);
+        }
+        this.responseTime999Percentile = responseTime999Percentile;
+        return this;
+    }
+    public LogBuilder requestsPerSecond(long requestsPerSecond) {
+        if (requestsPerSecond < 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be a positive long, was: " + requestsPerSecond);
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        return this;
+    }
 
     public LogBuilder openedFiles(long openedFiles) {
         if (openedFiles < 0) {
@@ -148,6 +204,86 @@ public class LogBuilder {
         return this;
     }
 
+    public LogBuilder peakRssKb(long peakRssKb) {
+        if (peakRssKb < 0) {
+            throw new IllegalArgumentException("peakRssKb must be a positive long, was: " + peakRssKb);
+        }
+        this.peakRssKb = peakRssKb;
+        return this;
+    }
+
+    public LogBuilder meanRssKb(long meanRssKb) {
+        if (meanRssKb < 0) {
+            throw new IllegalArgumentException("meanRssKb must be a positive long, was: " + meanRssKb);
+        }
+        this.meanRssKb = meanRssKb;
+        return this;
+    }
+
+    public LogBuilder containerMemUsageKb(long containerMemUsageKb) {
+        if (containerMemUsageKb < 0) {
+            throw new IllegalArgumentException("containerMemUsageKb must be a positive long, was: " + containerMemUsageKb);
+        }
+        this.containerMemUsageKb = containerMemUsageKb;
+        return this;
+    }
+
+    public LogBuilder peakOpenedFiles(long peakOpenedFiles) {
+        if (peakOpenedFiles < 0) {
+            throw new IllegalArgumentException("peakOpenedFiles must be a positive long, was: " + peakOpenedFiles);
+        }
+        this.peakOpenedFiles = peakOpenedFiles;
+        return this;
+    }
+
+    public LogBuilder peakThreads(long peakThreads) {
+        if (peakThreads < 0) {
+            throw new IllegalArgumentException("peakThreads must be a positive long, was: " + peakThreads);
+        }
+        this.peakThreads = peakThreads;
+        return this;
+    }
+
+    public LogBuilder spawnToFirstOutputMs(long spawnToFirstOutputMs) {
+        if (spawnToFirstOutputMs < 0) {
+            throw new IllegalArgumentException("spawnToFirstOutputMs must be a positive long, was: " + spawnToFirstOutputMs);
+        }
+        this.spawnToFirstOutputMs = spawnToFirstOutputMs;
+        return this;
+    }
+
+    public LogBuilder spawnToStartedLogMs(long spawnToStartedLogMs) {
+        if (spawnToStartedLogMs < 0) {
+            throw new IllegalArgumentException("spawnToStartedLogMs must be a positive long, was: " + spawnToStartedLogMs);
+        }
+        this.spawnToStartedLogMs = spawnToStartedLogMs;
+        return this;
+    }
+
+    public LogBuilder spawnToListeningMs(long spawnToListeningMs) {
+        if (spawnToListeningMs < 0) {
+            throw new IllegalArgumentException("spawnToListeningMs must be a positive long, was: " + spawnToListeningMs);
+        }
+        this.spawnToListeningMs = spawnToListeningMs;
+        return this;
+    }
+
+    public LogBuilder spawnToFirstConnectionMs(long spawnToFirstConnectionMs) {
+        if (spawnToFirstConnectionMs < 0) {
+            throw new IllegalArgumentException("spawnToFirstConnectionMs must be a positive long, was: " + spawnToFirstConnectionMs);
+        }
+        this.spawnToFirstConnectionMs = spawnToFirstConnectionMs;
+        return this;
+    }
+
+    public LogBuilder spawnToFirstOKMs(long spawnToFirstOKMs) {
+        if (spawnToFirstOKMs < 0) {
+            throw new IllegalArgumentException("spawnToFirstOKMs must be a positive long, was: " + spawnToFirstOKMs);
+        }
+        this.spawnToFirstOKMs = spawnToFirstOKMs;
+        return this;
+    }
+
     public LogBuilder app(Apps app) {
         Objects.requireNonNull(app, "Valid app flavour must be provided");
         this.app = app.toString();
@@ -241,6 +377,20 @@ public class LogBuilder {
             l.append(',');
             sections++;
         }
+        if (responseTime999Percentile != -1L) {
+            h.append(responseTime999PercentileHeader);
+            h.append(',');
+            l.append(responseTime999Percentile);
+            l.append(',');
+            sections++;
+        }
+        if (requestsPerSecond != -1L) {
+            h.append(requestsPerSecondHeader);
+            h.append(',');
+            l.append(requestsPerSecond);
+            l.append(',');
+            sections++;
+        }
         if (openedFiles != -1L) {
             h.append(openedFilesHeader);
             h.append(',');
@@ -248,6 +398,76 @@ public class LogBuilder {
             l.append(',');
             sections++;
         }
+        if (peakRssKb != -1L) {
+            h.append(peakRssKbHeader);
+            h.append(',');
+            l.append(peakRssKb);
+            l.append(',');
+            sections++;
+        }
+        if (meanRssKb != -1L) {
+            h.append(meanRssKbHeader);
+            h.append(',');
+            l.append(meanRssKb);
+            l.append(',');
+            sections++;
+        }
+        if (containerMemUsageKb != -1L) {
+            h.append(containerMemUsageKbHeader);
+            h.append(',');
+            l.append(containerMemUsageKb);
+            l.append(',');
+            sections++;
+        }
+        if (peakOpenedFiles != -1L) {
+            h.append(peakOpenedFilesHeader);
+            h.append(',');
+            l.append(peakOpenedFiles);
+            l.append(',');
+            sections++;
+        }
+        if (peakThreads != -1L) {
+            h.append(peakThreadsHeader);
+            h.append(',');
+            l.append(peakThreads);
+            l.append(',');
+            sections++;
+        }
+        if (spawnToFirstOutputMs != -1L) {
+            h.append(spawnToFirstOutputMsHeader);
+            h.append(',');
+            l.append(spawnToFirstOutputMs);
+            l.append(',');
+            sections++;
+        }
+        if (spawnToStartedLogMs != -1L) {
+            h.append(spawnToStartedLogMsHeader);
+            h.append(',');
+            l.append(spawnToStartedLogMs);
+            l.append(',');
+            sections++;
+        }
+        if (spawnToListeningMs != -1L) {
+            h.append(spawnToListeningMsHeader);
+            h.append(',');
+            l.append(spawnToListeningMs);
+            l.append(',');
+            sections++;
+        }
+        if (spawnToFirstConnectionMs != -1L) {
+            h.append(spawnToFirstConnectionMsHeader);
+            h.append(',');
+            l.append(spawnToFirstConnectionMs);
+            l.append(',');
+            sections++;
+        }
+        if (spawnToFirstOKMs != -1L) {
+            h.append(spawnToFirstOKMsHeader);
+            h.append(',');
+            l.append(spawnToFirstOKMs);
+            l.append(',');
+            sections++;
+        }
         String header = h.toString();
         // Strip trailing ',' for CSV
         String headerCSV = header.substring(0, header.length() - 1);
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Appends lines to a log file from a background thread, so as a process emitting thousands of lines,
+ * e.g. native-image, does not cost an open, write and close of the log file per line on the measured path.
+ *
+ * There is one sink, i.e. one open channel, per file, shared by whoever opens it, see {@link #open(Path)}.
+ * Lines go through a bounded queue of LOG_SINK_QUEUE_LINES, a producer faster than the disk blocks,
+ * and are written in batches. With LOG_SINK_TIMESTAMPS=true, each line is prefixed with the monotonic
+ * time since the sink was opened, e.g. [+12.345678s].
+ *
+ * Lines are in the file only after {@link #flush()}, {@link #flush(Path)} or {@link #close()} return.
+ */
+public class LogSink implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(LogSink.class.getName());
+
+    public static final int QUEUE_LINES = Integer.parseInt(getProperty("LOG_SINK_QUEUE_LINES", "8192"));
+    public static final boolean TIMESTAMPS = Boolean.parseBoolean(getProperty("LOG_SINK_TIMESTAMPS", "false"));
+    public static final long FLUSH_TIMEOUT_S = 60;
+
+    private static final Map<Path, LogSink> SINKS = new HashMap<>();
+    private static final Object CLOSE = new Object();
+
+    public final Path path;
+    public final boolean timestamps;
+    private final long startNanos = System.nanoTime();
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUE_LINES);
+    private final FileChannel channel;
+    private final Thread writer;
+    private int references = 0;
+    private volatile IOException failure = null;
+    private volatile boolean closed = false;
+
+    private LogSink(Path path, boolean timestamps) throws IOException {
+        this.path = path;
+        this.timestamps = timestamps;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new Thread(this::write, "log-sink-" + path.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return the sink of the file, opened if it is not open yet, to be closed by the caller
+     */
+    public static LogSink open(Path path) throws IOException {
+        return open(path, TIMESTAMPS);
+    }
+
+    /**
+     * @param timestamps effective only if the sink is not open yet
+     */
+    public static LogSink open(Path path, boolean timestamps) throws IOException {
+        final Path key = path.toAbsolutePath().normalize();
+        synchronized (SINKS) {
+            LogSink sink = SINKS.get(key);
+            if (sink == null) {
+                sink = new LogSink(key, timestamps);
+                SINKS.put(key, sink);
+            }
+            sink.references++;
+            return sink;
+        }
+    }
+
+    /**
+     * Flush barrier for readers of the file, e.g. {@link Commands#waitForFileToMatch}, a no-op if no sink is open for it.
+     */
+    public static void flush(Path path) throws IOException {
+        final LogSink sink;
+        synchronized (SINKS) {
+            sink = SINKS.get(path.toAbsolutePath().normalize());
+        }
+        if (sink != null) {
+            sink.flush();
+        }
+    }
+
+    /**
+     * Blocks while the queue is full.
+     */
+    public void append(String line) throws IOException {
+        if (closed) {
+            throw new IOException(path + " sink is closed");
+        }
+        if (failure != null) {
+            throw new IOException("Writing to " + path + " failed", failure);
+        }
+        final String l;
+        if (timestamps) {
+            final long nanos = System.nanoTime() - startNanos;
+            l = String.format("[+%d.%06ds] ", nanos / 1_000_000_000L, (nanos % 1_000_000_000L) / 1_000L) + line + "\n";
+        } else {
+            l = line + "\n";
+        }
+        try {
+            queue.put(l);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while appending to " + path);
+        }
+    }
+
+    /**
+     * Returns once all the lines appended so far are written to the file.
+     */
+    public void flush() throws IOException {
+        final CountDownLatch barrier = new CountDownLatch(1);
+        try {
+            queue.put(barrier);
+            if (!barrier.await(FLUSH_TIMEOUT_S, TimeUnit.SECONDS)) {
+                throw new IOException("Timed out flushing " + path);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing " + path);
+        }
+        if (failure != null) {
+            throw new IOException("Writing to " + path + " failed", failure);
+        }
+    }
+
+    /**
+     * Flushes, the file is closed once the last of those who opened it closes it.
+     */
+    @Override
+    public void close() throws IOException {
+        final boolean last;
+        synchronized (SINKS) {
+            last = --references == 0;
+            if (last) {
+                SINKS.remove(path);
+                closed = true;
+            }
+        }
+        if (!last) {
+            flush();
+            return;
+        }
+        try {
+            queue.put(CLOSE);
+            writer.join(TimeUnit.SECONDS.toMillis(FLUSH_TIMEOUT_S));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while closing " + path);
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw new IOException("Writing to " + path + " failed", failure);
+        }
+    }
+
+    private void write() {
+        final List<Object> batch = new ArrayList<>();
+        final StringBuilder s = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            for (Object o : batch) {
+                if (o instanceof String) {
+                    s.append((String) o);
+                    continue;
+                }
+                // A barrier or the end, what is before it must be in the file
+                writeOut(s);
+                if (o == CLOSE) {
+                    return;
+                }
+                ((CountDownLatch) o).countDown();
+            }
+            writeOut(s);
+            batch.clear();
+        }
+    }
+
+    private void writeOut(StringBuilder s) {
+        if (s.length() == 0) {
+            return;
+        }
+        try {
+            final ByteBuffer b = ByteBuffer.wrap(s.toString().getBytes(UTF_8));
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        } catch (IOException e) {
+            if (failure == null) {
+                LOGGER.error("Failed to write to " + path, e);
+            }
+            failure = e;
+        }
+        s.setLength(0);
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Tails log files for lines matching patterns. A single daemon thread serves all
+ * the subscriptions on all the files. For each file it remembers the position it read up to,
+ * so each poll reads just the newly appended bytes. Bytes of a multibyte character split
+ * between two reads are kept for the next decoding round.
+ *
+ * The channel is closed as soon as there are no subscriptions for the file so as not to keep
+ * logs open, e.g. Windows would not let us delete them. The position is remembered though,
+ * and reused if the file is still the same one, i.e. not truncated or replaced. A deleted and recreated
+ * file can get the same inode back, so as its creation time must match too. Where the file system
+ * does not keep one, Java reports the last modified time instead, i.e. a file appended to since is read
+ * from the start again, which costs a re-read, but never skips lines.
+ *
+ * Lines are numbered from 1 and terminated by \n, \r or \r\n, the same as BufferedReader#readLine does.
+ */
+public class LogTailer {
+
+    private static final Logger LOGGER = Logger.getLogger(LogTailer.class.getName());
+
+    public static final long POLL_MS = Long.parseLong(getProperty("LOG_TAILER_POLL_MS", "10"));
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private static final Object LOCK = new Object();
+    private static final Map<Path, TailedFile> FILES = new HashMap<>();
+    private static Thread reader;
+
+    private static class Subscription {
+        final Pattern pattern;
+        final int skipLines;
+        final CompletableFuture<Integer> match = new CompletableFuture<>();
+
+        Subscription(Pattern pattern, int skipLines) {
+            this.pattern = pattern;
+            this.skipLines = skipLines;
+        }
+
+        boolean test(String line, int lineNumber) {
+            if (lineNumber > skipLines && pattern.matcher(line).matches()) {
+                match.complete(lineNumber);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static class TailedFile {
+        final Path path;
+        final List<Subscription> subscriptions = new ArrayList<>();
+        final CharsetDecoder decoder = UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_BYTES);
+        final CharBuffer chars = CharBuffer.allocate(CHUNK_BYTES);
+        final StringBuilder partialLine = new StringBuilder();
+        FileChannel channel;
+        Object fileKey;
+        long position;
+        int lines;
+        boolean lastWasCR;
+
+        TailedFile(Path path) {
+            this.path = path;
+        }
+
+        void reset() {
+            decoder.reset();
+            bytes.clear();
+            chars.clear();
+            partialLine.setLength(0);
+            position = 0;
+            lines = 0;
+            lastWasCR = false;
+        }
+
+        void open() throws IOException {
+            final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            // fileKey, i.e. device and inode, is null on Windows, creation time is then the best we have
+            final Object key = attrs.fileKey() != null ? List.of(attrs.fileKey(), attrs.creationTime()) : attrs.creationTime();
+            if (!key.equals(fileKey) || attrs.size() < position) {
+                reset();
+                fileKey = key;
+            }
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        void close() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.error("Failed to close " + path + ": " + e.getMessage());
+                }
+                channel = null;
+            }
+        }
+
+        /**
+         * New subscribers need to see lines we have already read past.
+         */
+        void catchUp(Subscription s) throws IOException {
+            if (s.skipLines >= lines) {
+                return;
+            }
+            try (BufferedReader r = new BufferedReader(new InputStreamReader(Files.newInputStream(path), UTF_8))) {
+                String line;
+                int c = 0;
+                while (c < lines && (line = r.readLine()) != null) {
+                    c++;
+                    if (s.test(line, c)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        void poll() throws IOException {
+            if (channel == null) {
+                open();
+            }
+            if (channel.size() < position) {
+                LOGGER.info(path + " was truncated, reading it from the start.");
+                reset();
+            }
+            channel.position(position);
+            int read;
+            while ((read = channel.read(bytes)) > 0) {
+                position += read;
+                bytes.flip();
+                decoder.decode(bytes, chars, false);
+                // Keeps an incomplete multibyte sequence for the next round
+                bytes.compact();
+                chars.flip();
+                while (chars.hasRemaining()) {
+                    final char ch = chars.get();
+                    if (ch == '\n' && lastWasCR) {
+                        lastWasCR = false;
+                        continue;
+                    }
+                    lastWasCR = ch == '\r';
+                    if (ch == '\n' || ch == '\r') {
+                        lines++;
+                        final String line = partialLine.toString();
+                        partialLine.setLength(0);
+                        subscriptions.removeIf(s -> s.match.isDone() || s.test(line, lines));
+                    } else {
+                        partialLine.append(ch);
+                    }
+                }
+                chars.clear();
+                if (subscriptions.isEmpty()) {
+                    return;
+                }
+            }
+            // The last line need not be terminated yet
+            if (partialLine.length() > 0) {
+                final String line = partialLine.toString();
+                subscriptions.removeIf(s -> s.match.isDone() || s.test(line, lines + 1));
+            }
+        }
+    }
+
+    /**
+     * @param pattern   the whole line must match
+     * @param path      file to watch, it need not exist yet
+     * @param skipLines lines up to and including this line number are not matched
+     * @return line number of the first matching line. Cancel it to unsubscribe.
+     */
+    public static CompletableFuture<Integer> subscribe(Pattern pattern, Path path, int skipLines) {
+        final Subscription s = new Subscription(pattern, skipLines);
+        synchronized (LOCK) {
+            final TailedFile f = FILES.computeIfAbsent(path.toAbsolutePath(), TailedFile::new);
+            try {
+                if (f.lines > 0 && Files.exists(f.path)) {
+                    f.catchUp(s);
+                }
+            } catch (IOException e) {
+                s.match.completeExceptionally(e);
+            }
+            if (!s.match.isDone()) {
+                f.subscriptions.add(s);
+                if (reader == null) {
+                    reader = new Thread(LogTailer::readLoop, "log-tailer");
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+                LOCK.notifyAll();
+            }
+        }
+        return s.match;
+    }
+
+    private static void readLoop() {
+        try {
+            while (true) {
+                synchronized (LOCK) {
+                    while (FILES.values().stream().allMatch(f -> f.subscriptions.isEmpty())) {
+                        LOCK.wait();
+                    }
+                    for (Iterator<TailedFile> it = FILES.values().iterator(); it.hasNext(); ) {
+                        final TailedFile f = it.next();
+                        f.subscriptions.removeIf(s -> s.match.isDone());
+                        if (f.subscriptions.isEmpty()) {
+                            f.close();
+                            continue;
+                        }
+                        try {
+                            f.poll();
+                        } catch (NoSuchFileException e) {
+                            // Not created yet or deleted, i.e. cleaned between tests
+                            f.close();
+                            f.fileKey = null;
+                        } catch (IOException e) {
+                            LOGGER.error("Failed to read " + f.path + ": " + e.getMessage());
+                            f.subscriptions.forEach(s -> s.match.completeExceptionally(e));
+                            f.subscriptions.clear();
+                            f.close();
+                            it.remove();
+                        }
+                        if (f.subscriptions.isEmpty()) {
+                            f.close();
+                        }
+                    }
+                }
+                Thread.sleep(POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            synchronized (LOCK) {
+                reader = null;
+            }
+        }
+    }
+}
@@ -20,6 +20,8 @@
 package org.graalvm.tests.integration.utils;
 
 import org.apache.commons.lang3.StringUtils;
+import org.graalvm.tests.integration.utils.thresholds.MetricThreshold;
+import org.graalvm.tests.integration.utils.versions.UsedVersion;
 import org.jboss.logging.Logger;
 
 import java.io.File;
@@ -29,10 +31,11 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Scanner;
-import java.util.Set;
+import java.util.Map;
 import java.util.regex.Pattern;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -41,6 +44,7 @@ import static org.graalvm.tests.integration.RuntimesSmokeTest.BASE_DIR;
 import static org.graalvm.tests.integration.utils.Commands.FAIL_ON_PERF_REGRESSION;
 import static org.graalvm.tests.integration.utils.Commands.IS_THIS_MACOS;
 import static org.graalvm.tests.integration.utils.Commands.IS_THIS_WINDOWS;
+import static org.graalvm.tests.integration.utils.Commands.QUARKUS_VERSION;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -49,37 +53,46 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 public class Logs {
     private static final Logger LOGGER = Logger.getLogger(Logs.class.getName());
     private static final Pattern WARN_ERROR_DETECTION_PATTERN = Pattern.compile("(?i:.*(ERROR|SEVERE|WARN|No such file|Not found|unknown).*)");
+    // Must be kept in sync with the pattern above, it is a cheap pre-check for it
+    private static final String[] WARN_ERROR_DETECTION_KEYWORDS = new String[]{"error", "severe", "warn", "no such file", "not found", "unknown"};
     public static final long SKIP = -1L;
 
     public static void checkLog(String testClass, String testMethod, Apps app, File log) throws IOException {
         final boolean inContainer = app.runtimeContainer != ContainerNames.NONE;
-        final Pattern[] whitelistPatterns = new Pattern[app.whitelistLogLines.get(inContainer).length + WhitelistLogLines.ALL.get(inContainer).length];
-        System.arraycopy(app.whitelistLogLines.get(inContainer), 0, whitelistPatterns, 0, app.whitelistLogLines.get(inContainer).length);
-        System.arraycopy(WhitelistLogLines.ALL.get(inContainer), 0, whitelistPatterns, app.whitelistLogLines.get(inContainer).length, WhitelistLogLines.ALL.get(inContainer).length);
-        try (Scanner sc = new Scanner(log, UTF_8)) {
-            final Set<String> offendingLines = new HashSet<>();
-            while (sc.hasNextLine()) {
-                final String line = sc.nextLine();
-                final boolean error = WARN_ERROR_DETECTION_PATTERN.matcher(line).matches();
-                boolean whiteListed = false;
-                if (error) {
-                    for (Pattern p : whitelistPatterns) {
-                        if (p.matcher(line).matches()) {
-                            whiteListed = true;
-                            LOGGER.info(log.getName() + " log for " + testMethod + " contains whitelisted error: `" + line + "'");
-                            break;
-                        }
-                    }
-                    if (!whiteListed) {
-                        offendingLines.add(line);
-                    }
-                }
-            }
-            assertTrue(offendingLines.isEmpty(),
-                    log.getName() + " log should not contain error or warning lines that are not whitelisted. " +
-                            "See " + Path.of(BASE_DIR, "testsuite", "target", "archived-logs", testClass, testMethod, log.getName()) +
-                            " and check these offending lines: \n" + String.join("\n", offendingLines));
+        final WhitelistMatcher whitelist = WhitelistMatcher.of(app.whitelistLogLines, inContainer);
+        final WhitelistMatcher.Result result = whitelist.scan(log.toPath(), WARN_ERROR_DETECTION_PATTERN, WARN_ERROR_DETECTION_KEYWORDS);
+        for (String line : result.whitelistedLines) {
+            LOGGER.info(log.getName() + " log for " + testMethod + " contains whitelisted error: `" + line + "'");
         }
+        logWhitelistHits(testClass, testMethod, log, whitelist, result);
+        assertTrue(result.offendingLines.isEmpty(),
+                log.getName() + " log should not contain error or warning lines that are not whitelisted. " +
+                        "See " + Path.of(BASE_DIR, "testsuite", "target", "archived-logs", testClass, testMethod, log.getName()) +
+                        " and check these offending lines: \n" + String.join("\n", result.offendingLines));
+    }
+
+    /**
+     * Aggregates per pattern hit counts across the whole test suite run,
+     * so as whitelist entries that never match anything can be found.
+     * Synchronized as tests running in parallel share the file, the header must be written once.
+     */
+    private static synchronized void logWhitelistHits(String testClass, String testMethod, File log, WhitelistMatcher whitelist,
+            WhitelistMatcher.Result result) throws IOException {
+        final Path hitsLog = Path.of(getLogsDir().toString(), "whitelist-hits.csv");
+        final StringBuilder s = new StringBuilder();
+        if (Files.notExists(hitsLog)) {
+            s.append("testClass,testMethod,log,whitelist,hits,pattern\n");
+        }
+        for (int i = 0; i < whitelist.patterns.length; i++) {
+            s.append(testClass).append(',')
+                    .append(testMethod).append(',')
+                    .append(log.getName()).append(',')
+                    .append(whitelist.name).append(',')
+                    .append(result.hits[i]).append(',')
+                    // The pattern may contain commas and quotes
+                    .append('"').append(whitelist.patterns[i].pattern().replace("\"", "\"\"")).append('"').append('\n');
+        }
+        Files.write(hitsLog, s.toString().getBytes(UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
     }
 
     public enum Mode {
@@ -96,24 +109,40 @@ public class Logs {
     }
 
     public static void checkThreshold(Apps app, Mode mode, long executableSizeKb, long rssKb, long timeToFirstOKRequest,
-            long timeToFinishMs, long mean, long p50, long p90) {
+            long timeToFinishMs, long mean, long p50, long p90, long p99) {
 
         final Path properties = Path.of(BASE_DIR, app.dir, "threshold.conf");
-        if (app.thresholdProperties.isEmpty() &&
-                (executableSizeKb != SKIP || rssKb != SKIP || timeToFirstOKRequest != SKIP || timeToFinishMs != SKIP)) {
+        final String platform = IS_THIS_WINDOWS ? "windows" : (IS_THIS_MACOS ? "macos" : "linux");
+        final String propPrefix = platform +
+                ((app.runtimeContainer != ContainerNames.NONE) ? ".container" : "") +
+                ((mode != Mode.NONE) ? "." + mode : "");
+        final List<String> failures = new ArrayList<>();
+        final Map<String, Long> thresholds = new HashMap<>(app.thresholdProperties);
+        final Map<String, Long> values = new LinkedHashMap<>();
+        PerfHistory.Key historyKey = null;
+        if (PerfHistory.ENABLED) {
+            values.put("executable.size.threshold.kB", executableSizeKb);
+            values.put("time.to.first.ok.request.threshold.ms", timeToFirstOKRequest);
+            values.put("RSS.threshold.kB", rssKb);
+            values.put("time.to.finish.threshold.ms", timeToFinishMs);
+            values.put("mean.latency", mean);
+            values.put("p50.latency", p50);
+            values.put("p90.latency", p90);
+            values.put("p99.latency", p99);
+            historyKey = checkHistory(app, mode, platform, propPrefix, values, thresholds, failures);
+        }
+        if (thresholds.isEmpty() &&
+                (executableSizeKb != SKIP || rssKb != SKIP || timeToFirstOKRequest != SKIP || timeToFinishMs != SKIP ||
+                        mean != SKIP || p50 != SKIP || p90 != SKIP || p99 != SKIP)) {
             LOGGER.warn("It seem there is no " +properties +
                     ". Skipping checking thresholds.");
             return;
         }
-        final String propPrefix = (IS_THIS_WINDOWS ? "windows" : (IS_THIS_MACOS ? "macos" : "linux")) +
-                ((app.runtimeContainer != ContainerNames.NONE) ? ".container" : "") +
-                ((mode != Mode.NONE) ? "." + mode : "");
-        final List<String> failures = new ArrayList<>();
 
         if (executableSizeKb != SKIP) {
             final String key = propPrefix + ".executable.size.threshold.kB";
-            if (app.thresholdProperties.containsKey(key)) {
-                long executableSizeThresholdKb = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long executableSizeThresholdKb = thresholds.get(key);
                 assertThreshold(failures, executableSizeKb <= executableSizeThresholdKb,
                         "Application " + app + (mode != null ? " in mode " + mode : "") + " executable size " +
                                 ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? "overhead is" : "is ") +
@@ -126,8 +155,8 @@ public class Logs {
 
         if (timeToFirstOKRequest != SKIP) {
             final String key = propPrefix + ".time.to.first.ok.request.threshold.ms";
-            if (app.thresholdProperties.containsKey(key)) {
-                long timeToFirstOKRequestThresholdMs = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long timeToFirstOKRequestThresholdMs = thresholds.get(key);
                 assertThreshold(failures, timeToFirstOKRequest <= timeToFirstOKRequestThresholdMs,
                         "Application " + app + (mode != null ? " in mode " + mode : "") +
                                 " took " + timeToFirstOKRequest + " ms " + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? "more " : "") +
@@ -140,8 +169,8 @@ public class Logs {
 
         if (rssKb != SKIP) {
             final String key = propPrefix + ".RSS.threshold.kB";
-            if (app.thresholdProperties.containsKey(key)) {
-                long rssThresholdKb = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long rssThresholdKb = thresholds.get(key);
                 assertThreshold(failures, rssKb <= rssThresholdKb,
                         "Application " + app + (mode != null ? " in mode " + mode : "") +
                                 " consumed " + rssKb + " kB of RSS memory " + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? "more " : "") + ", which is over " +
@@ -153,8 +182,8 @@ public class Logs {
 
         if (timeToFinishMs != SKIP) {
             final String key = propPrefix + ".time.to.finish.threshold.ms";
-            if (app.thresholdProperties.containsKey(key)) {
-                long timeToFinishThresholdMs = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long timeToFinishThresholdMs = thresholds.get(key);
                 assertThreshold(failures, timeToFinishMs <= timeToFinishThresholdMs,
                         "Application " + app + (mode != null ? " in mode " + mode : "") + " took " +
                                 timeToFinishMs + " ms " + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? "more " : "") + "to finish, which is over " +
@@ -166,8 +195,8 @@ public class Logs {
 
         if (mean != SKIP) {
             final String key = propPrefix + ".mean.latency";
-            if (app.thresholdProperties.containsKey(key)) {
-                long meanThreshold = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long meanThreshold = thresholds.get(key);
                 assertThreshold(failures, mean <= meanThreshold,
                         "Application " + app + (mode != null ? " in mode " + mode : "") + " has mean response latency " +
                                 mean + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? " more" : " ") + ", which is over " +
@@ -179,8 +208,8 @@ public class Logs {
 
         if (p50 != SKIP) {
             final String key = propPrefix + ".p50.latency";
-            if (app.thresholdProperties.containsKey(key)) {
-                long p50Threshold = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long p50Threshold = thresholds.get(key);
                 assertThreshold(failures, p50 <= p50Threshold,
                         "Application " + app + (mode != null ? " in mode " + mode : "") + " has p50 response latency " +
                                 p50 + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? " more" : "") + ", which is over " +
@@ -192,8 +221,8 @@ public class Logs {
 
         if (p90 != SKIP) {
             final String key = propPrefix + ".p90.latency";
-            if (app.thresholdProperties.containsKey(key)) {
-                long p90Threshold = app.thresholdProperties.get(key);
+            if (thresholds.containsKey(key)) {
+                long p90Threshold = thresholds.get(key);
                 assertThreshold(failures, p90 <= p90Threshold,
                         "Application " + app + (mode != null ? " in mode " + mode : "") + " has p90 response latency " +
                                 p90 + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? " more" : "") + ", which is over " +
@@ -203,9 +232,137 @@ public class Logs {
             }
         }
 
+        if (p99 != SKIP) {
+            final String key = propPrefix + ".p99.latency";
+            if (thresholds.containsKey(key)) {
+                long p99Threshold = thresholds.get(key);
+                assertThreshold(failures, p99 <= p99Threshold,
+                        "Application " + app + (mode != null ? " in mode " + mode : "") + " has p99 response latency " +
+                                p99 + ((mode == Mode.DIFF_JVM || mode == Mode.DIFF_NATIVE) ? " more" : "") + ", which is over " +
+                                p99Threshold + "  threshold by " + percentageValOverTh(p99, p99Threshold) + "%.", true);
+            } else {
+                LOGGER.error("p99 was to be checked, but there is no " + key + " in " + properties);
+            }
+        }
+
+        if (historyKey != null) {
+            try {
+                PerfHistory.record(historyKey, values, failures.isEmpty());
+            } catch (IOException e) {
+                LOGGER.error("Failed to record performance history in " + PerfHistory.DIR, e);
+            }
+        }
         assertTrue(failures.isEmpty(), "\n" + String.join("\n", failures) + "\n");
     }
 
+    /**
+     * Derives limits for properties set to baseline in threshold.conf from the history of the same app, mode,
+     * platform and versions, runs that failed left out, and looks for step regressions, runs that failed included.
+     * Step regressions fail only metrics that use a baseline, they are just logged for the others.
+     *
+     * @return the history to record the values to once they are checked, null if it cannot be accessed
+     */
+    private static PerfHistory.Key checkHistory(Apps app, Mode mode, String platform, String propPrefix, Map<String, Long> values,
+            Map<String, Long> thresholds, List<String> failures) {
+        final boolean inContainer = app.runtimeContainer != ContainerNames.NONE;
+        final PerfHistory.Key key = new PerfHistory.Key(app.name(), mode.toString(), platform, inContainer,
+                UsedVersion.getVersion(inContainer).toString(), QUARKUS_VERSION.getVersionString());
+        try {
+            for (Map.Entry<String, Long> v : values.entrySet()) {
+                if (v.getValue() == SKIP) {
+                    continue;
+                }
+                final String property = propPrefix + "." + v.getKey();
+                final Double configuredK = app.baselineThresholdProperties.get(property);
+                final double k = (configuredK == null || configuredK.isNaN()) ? PerfHistory.K : configuredK;
+                final long[] history = PerfHistory.values(key, v.getKey(), false);
+                if (configuredK != null) {
+                    final long[] passed = PerfHistory.values(key, v.getKey(), true);
+                    final PerfHistory.Baseline baseline = PerfHistory.baseline(passed);
+                    if (baseline == null) {
+                        LOGGER.info(property + " is to be derived from history, but there are only " + passed.length +
+                                " passed runs of " + key + " in " + PerfHistory.DIR + ", at least " + PerfHistory.MIN_SAMPLES + " are needed.");
+                    } else {
+                        final long limit = baseline.limit(k);
+                        LOGGER.infof("%s derived from %s with k=%.1f: %d", property, baseline, k, limit);
+                        // A hand-tuned threshold, if any, stays as a sanity cap
+                        thresholds.merge(property, limit, Math::min);
+                    }
+                }
+                final long[] withCurrent = Arrays.copyOf(history, history.length + 1);
+                withCurrent[history.length] = v.getValue();
+                if (PerfHistory.isStepRegression(withCurrent, k)) {
+                    final String message = "Application " + app + " in mode " + mode + ": " + v.getKey() +
+                            " stepped up in the last " + PerfHistory.CHANGE_RUNS + " runs of " + key + ": " + Arrays.toString(withCurrent);
+                    if (configuredK != null) {
+                        assertThreshold(failures, false, message, !v.getKey().endsWith("kB"));
+                    } else {
+                        LOGGER.warn(message);
+                    }
+                }
+            }
+            return key;
+        } catch (IOException e) {
+            LOGGER.error("Failed to access performance history in " + PerfHistory.DIR, e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks arbitrary metrics, e.g. perf stat counters or GC times, against their thresholds from threshold.conf,
+     * e.g. linux.native.instructions=1.2x. Thresholds relative to JVM mode need the same metric in jvmMetrics.
+     *
+     * @param jvmMetrics metrics measured in JVM mode, null if there are none
+     */
+    public static void checkMetrics(Apps app, Mode mode, Map<String, ? extends Number> metrics, Map<String, ? extends Number> jvmMetrics) {
+        final String platform = IS_THIS_WINDOWS ? "windows" : (IS_THIS_MACOS ? "macos" : "linux");
+        final String propPrefix = platform +
+                ((app.runtimeContainer != ContainerNames.NONE) ? ".container" : "") +
+                ((mode != Mode.NONE) ? "." + mode : "") + ".";
+        final List<String> failures = new ArrayList<>();
+        for (Map.Entry<String, MetricThreshold> t : app.metricThresholdProperties.entrySet()) {
+            if (!t.getKey().startsWith(propPrefix)) {
+                continue;
+            }
+            final String metric = t.getKey().substring(propPrefix.length());
+            final Number value = metrics.get(metric);
+            if (value == null) {
+                continue;
+            }
+            final MetricThreshold threshold = t.getValue();
+            final Number jvmValue = jvmMetrics == null ? null : jvmMetrics.get(metric);
+            if (threshold.isRelative() && jvmValue == null) {
+                LOGGER.error(t.getKey() + "=" + threshold + " needs " + metric + " measured in JVM mode, there is none. Skipping.");
+                continue;
+            }
+            final double limit = threshold.limit(jvmValue == null ? 0d : jvmValue.doubleValue());
+            assertThreshold(failures, value.doubleValue() <= limit,
+                    "Application " + app + " in mode " + mode + " " + metric + " was " + value + ", which is over " +
+                            limit + " (" + threshold + ") threshold by " +
+                            percentageValOverTh(value.floatValue(), (float) limit) + "%.",
+                    MetricThreshold.isTimeSensitive(metric));
+        }
+        assertTrue(failures.isEmpty(), "\n" + String.join("\n", failures) + "\n");
+    }
+
+    /**
+     * @return numeric values only, negative ones, i.e. not measured, are left out
+     */
+    public static Map<String, Double> numericMetrics(Map<String, String> values) {
+        final Map<String, Double> metrics = new LinkedHashMap<>();
+        values.forEach((k, v) -> {
+            try {
+                final double d = Double.parseDouble(v);
+                if (d >= 0) {
+                    metrics.put(k, d);
+                }
+            } catch (NumberFormatException | NullPointerException e) {
+                // Not a metric, e.g. the app name
+            }
+        });
+        return metrics;
+    }
+
     public static void assertThreshold(List<String> failures, boolean condition, String message, boolean timeSensitive) {
         if (!condition) {
             if (FAIL_ON_PERF_REGRESSION == FailOnPerfRegressionEnum.TRUE ||
@@ -223,15 +380,44 @@ public class Logs {
     }
 
     public static void checkThreshold(Apps app, long executableSizeKb, long rssKb, long timeToFirstOKRequest) {
-        checkThreshold(app, Mode.NONE, executableSizeKb, rssKb, timeToFirstOKRequest, SKIP, SKIP, SKIP, SKIP);
+        checkThreshold(app, Mode.NONE, executableSizeKb, rssKb, timeToFirstOKRequest, SKIP, SKIP, SKIP, SKIP, SKIP);
+    }
+
+    /**
+     * Time to first OK request is checked against a bound of the confidence interval
+     * of the median of repeated starts instead of a single noisy sample.
+     */
+    public static void checkThreshold(Apps app, long executableSizeKb, long rssKb, SampleStats timeToFirstOKRequest, SampleStats.Bound bound) {
+        LOGGER.infof("Time to first OK request [ms] %s, checking its %s bound.", timeToFirstOKRequest, bound);
+        checkThreshold(app, Mode.NONE, executableSizeKb, rssKb, timeToFirstOKRequest.get(bound), SKIP, SKIP, SKIP, SKIP, SKIP);
     }
 
     public static void checkThreshold(Apps app, Mode mode, long executableSizeKb, long rssKb, long timeToFirstOKRequest, long timeToFinishMs) {
-        checkThreshold(app, mode, executableSizeKb, rssKb, timeToFirstOKRequest, timeToFinishMs, SKIP, SKIP, SKIP);
+        checkThreshold(app, mode, executableSizeKb, rssKb, timeToFirstOKRequest, timeToFinishMs, SKIP, SKIP, SKIP, SKIP);
     }
 
     public static void checkThreshold(Apps app, Mode mode, long executableSizeKb, long rssKb, long timeToFirstOKRequest, long mean, long p50, long p90) {
-        checkThreshold(app, mode, executableSizeKb, rssKb, timeToFirstOKRequest, SKIP, mean, p50, p90);
+        checkThreshold(app, mode, executableSizeKb, rssKb, timeToFirstOKRequest, SKIP, mean, p50, p90, SKIP);
+    }
+
+    /**
+     * @return true if threshold.conf has any threshold for the app in the mode on this platform,
+     * or if values are checked against the perf history
+     */
+    public static boolean hasThresholds(Apps app, Mode mode) {
+        if (PerfHistory.ENABLED) {
+            return true;
+        }
+        final String platform = IS_THIS_WINDOWS ? "windows" : (IS_THIS_MACOS ? "macos" : "linux");
+        final String propPrefix = platform +
+                ((app.runtimeContainer != ContainerNames.NONE) ? ".container" : "") +
+                ((mode != Mode.NONE) ? "." + mode : "") + ".";
+        return app.thresholdProperties.keySet().stream().anyMatch(k -> k.startsWith(propPrefix));
+    }
+
+    public static void checkThreshold(Apps app, Mode mode, long rssKb, long timeToFirstOKRequest, LoadGenerator.Result load) {
+        checkThreshold(app, mode, SKIP, rssKb, timeToFirstOKRequest, SKIP, load.total.getMean(),
+                load.total.getValueAtPercentile(50), load.total.getValueAtPercentile(90), load.total.getValueAtPercentile(99));
     }
 
     public static void archiveLog(String testClass, String testMethod, File log) throws IOException {
@@ -261,7 +447,9 @@ public class Logs {
         Files.write(Paths.get(destDir.toString(), "report.md"), text.getBytes(UTF_8), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
         final Path aggregateReport = Paths.get(getLogsDir().toString(), "aggregated-report.md");
         if (Files.notExists(aggregateReport)) {
-            Files.write(aggregateReport, ("# Aggregated Report\n\n").getBytes(UTF_8), StandardOpenOption.CREATE);
+            final StringBuilder header = new StringBuilder("# Aggregated Report\n\n");
+            UsedVersion.resolved().forEach((k, v) -> appendln(header, k + ": " + v));
+            Files.write(aggregateReport, header.toString().getBytes(UTF_8), StandardOpenOption.CREATE);
         }
         Files.write(aggregateReport, text.getBytes(UTF_8), StandardOpenOption.APPEND);
     }
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Overhead of A over B from paired trials, i.e. the i-th A trial ran right next to the i-th B trial,
+ * so drift over time, e.g. thermal throttling or a noisy neighbour, affects both sides of a pair alike
+ * and cancels out in their difference.
+ *
+ * The overhead of a pair is (a - b) / b in percent. Reported are the median overhead, a percentile
+ * bootstrap confidence interval of it and a two-sided Wilcoxon signed-rank test p-value, exact for
+ * small samples, of the hypothesis that there is no difference at all.
+ */
+public class PairedComparison {
+
+    public enum Order {
+        // ABABAB...
+        INTERLEAVED,
+        // Each pair is either AB or BA, decided by a coin flip
+        RANDOMIZED;
+
+        public static Order of(String s) {
+            return valueOf(s.trim().toUpperCase());
+        }
+    }
+
+    public final String name;
+    public final double[] overheadsPct;
+    public final double medianPct;
+    public final double confidence;
+    public final double ciLowerPct;
+    public final double ciUpperPct;
+    public final double pValue;
+
+    public PairedComparison(String name, long[] a, long[] b, double confidence) {
+        if (a.length != b.length || a.length == 0) {
+            throw new IllegalArgumentException("There must be the same non zero number of A and B samples, was: " +
+                    a.length + " and " + b.length);
+        }
+        if (confidence <= 0d || confidence >= 1d) {
+            throw new IllegalArgumentException("confidence must be within (0, 1), was: " + confidence);
+        }
+        this.name = name;
+        this.confidence = confidence;
+        this.overheadsPct = new double[a.length];
+        for (int i = 0; i < a.length; i++) {
+            if (b[i] == 0) {
+                throw new IllegalArgumentException(name + " B sample " + i + " is 0, the overhead is undefined.");
+            }
+            overheadsPct[i] = (a[i] - b[i]) * 100d / b[i];
+        }
+        final double[] sorted = overheadsPct.clone();
+        Arrays.sort(sorted);
+        this.medianPct = SampleStats.median(sorted);
+        final Random random = new Random(SampleStats.SEED);
+        final double[] medians = new double[SampleStats.BOOTSTRAP_RESAMPLES];
+        final double[] resample = new double[sorted.length];
+        for (int r = 0; r < medians.length; r++) {
+            for (int i = 0; i < sorted.length; i++) {
+                resample[i] = sorted[random.nextInt(sorted.length)];
+            }
+            Arrays.sort(resample);
+            medians[r] = SampleStats.median(resample);
+        }
+        Arrays.sort(medians);
+        final double alpha = (1d - confidence) / 2d;
+        this.ciLowerPct = medians[(int) Math.floor(alpha * (medians.length - 1))];
+        this.ciUpperPct = medians[(int) Math.ceil((1d - alpha) * (medians.length - 1))];
+        this.pValue = wilcoxonSignedRank(overheadsPct);
+    }
+
+    public PairedComparison(String name, long[] a, long[] b) {
+        this(name, a, b, 0.95d);
+    }
+
+    /**
+     * @return the overhead in % at the bound, see {@link SampleStats#get(SampleStats.Bound)}
+     */
+    public long get(SampleStats.Bound bound) {
+        switch (bound) {
+            case LOWER:
+                return (long) Math.floor(ciLowerPct);
+            case UPPER:
+                return (long) Math.ceil(ciUpperPct);
+            default:
+                return Math.round(medianPct);
+        }
+    }
+
+    /**
+     * @return true for A, false for B, pairs are formed by consecutive elements
+     */
+    public static List<Boolean> schedule(int pairs, Order order, Random random) {
+        final List<Boolean> schedule = new ArrayList<>(pairs * 2);
+        for (int i = 0; i < pairs; i++) {
+            final boolean aFirst = order == Order.INTERLEAVED || random.nextBoolean();
+            schedule.add(aFirst);
+            schedule.add(!aFirst);
+        }
+        return schedule;
+    }
+
+    /**
+     * Zero differences are dropped, tied magnitudes get their average rank.
+     * The exact null distribution is computed on doubled ranks, so as average ranks stay integers,
+     * for up to 50 non zero differences, the normal approximation is used beyond that.
+     *
+     * @return two-sided p-value
+     */
+    static double wilcoxonSignedRank(double[] differences) {
+        final double[] nonZero = Arrays.stream(differences).filter(d -> d != 0d).toArray();
+        final int n = nonZero.length;
+        if (n == 0) {
+            return 1d;
+        }
+        final Integer[] byMagnitude = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            byMagnitude[i] = i;
+        }
+        Arrays.sort(byMagnitude, (x, y) -> Double.compare(Math.abs(nonZero[x]), Math.abs(nonZero[y])));
+        // Doubled ranks, i.e. average rank of a tie group * 2 is always an integer
+        final int[] ranks2 = new int[n];
+        for (int i = 0; i < n; ) {
+            int j = i;
+            while (j + 1 < n && Math.abs(nonZero[byMagnitude[j + 1]]) == Math.abs(nonZero[byMagnitude[i]])) {
+                j++;
+            }
+            // ranks i+1..j+1 averaged, doubled
+            for (int k = i; k <= j; k++) {
+                ranks2[byMagnitude[k]] = i + j + 2;
+            }
+            i = j + 1;
+        }
+        int wPlus2 = 0;
+        int total2 = 0;
+        for (int i = 0; i < n; i++) {
+            total2 += ranks2[i];
+            if (nonZero[i] > 0) {
+                wPlus2 += ranks2[i];
+            }
+        }
+        final int w2 = Math.min(wPlus2, total2 - wPlus2);
+        if (n > 50) {
+            // W is the smaller of the rank sums, i.e. at most the mean, the variance accounts for ties
+            final double mean = total2 / 4d;
+            double variance = 0d;
+            for (int r : ranks2) {
+                variance += (r / 2d) * (r / 2d);
+            }
+            variance /= 4d;
+            final double z = (w2 / 2d - mean + 0.5d) / Math.sqrt(variance);
+            return Math.min(1d, 2d * normalCdf(z));
+        }
+        // Number of sign assignments yielding each doubled rank sum
+        final double[] counts = new double[total2 + 1];
+        counts[0] = 1d;
+        int max = 0;
+        for (int r : ranks2) {
+            for (int s = max; s >= 0; s--) {
+                if (counts[s] != 0d) {
+                    counts[s + r] += counts[s];
+                }
+            }
+            max += r;
+        }
+        double tail = 0d;
+        for (int s = 0; s <= w2; s++) {
+            tail += counts[s];
+        }
+        return Math.min(1d, 2d * tail / Math.pow(2d, n));
+    }
+
+    private static double normalCdf(double z) {
+        // Abramowitz and Stegun 7.1.26, plenty for a p-value
+        final double t = 1d / (1d + 0.3275911d * Math.abs(z) / Math.sqrt(2d));
+        final double erf = 1d - (((((1.061405429d * t - 1.453152027d) * t) + 1.421413741d) * t - 0.284496736d) * t + 0.254829592d) * t *
+                Math.exp(-z * z / 2d);
+        return z >= 0 ? (1d + erf) / 2d : (1d - erf) / 2d;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s overhead: median %.2f%%, %.0f%% CI [%.2f%%, %.2f%%], Wilcoxon signed-rank p-value %.4f, pairs: %d, per pair: %s",
+                name, medianPct, confidence * 100d, ciLowerPct, ciUpperPct, pValue, overheadsPct.length, Arrays.toString(overheadsPct));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.RuntimesSmokeTest.BASE_DIR;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Append-only history of measurements checked against thresholds, one CSV file per app, mode, platform,
+ * container flag, Mandrel version and Quarkus version, i.e. only like is compared with like.
+ *
+ * Each row says whether the run passed its thresholds. Limits can be derived from the recent history instead
+ * of being hand-tuned: median + k * MAD of the last {@link #WINDOW} values of runs that passed, i.e. a regression
+ * does not get absorbed into the baseline it failed against, MAD scaled to be comparable to the standard deviation, but at least
+ * {@link #MIN_MARGIN_PCT} % over the median so as a perfectly stable history does not fail on noise.
+ *
+ * A step regression is when the last {@link #CHANGE_RUNS} values are all over the median of the values
+ * before them and their median is over the median of those by more than k * MAD / sqrt(CHANGE_RUNS),
+ * or the minimal margin. Runs that failed count here. Unlike a single value over a limit, it is not a spike, and it is small steps
+ * sustained over several runs, e.g. 3 % more RSS, that it catches.
+ *
+ * The history lives in PERF_HISTORY_DIR, target/perf-history by default, point it outside of target
+ * to keep it across clean builds.
+ */
+public class PerfHistory {
+
+    private static final Logger LOGGER = Logger.getLogger(PerfHistory.class.getName());
+
+    public static final boolean ENABLED = Boolean.parseBoolean(getProperty("PERF_HISTORY", "true"));
+    public static final String DIR = getProperty("PERF_HISTORY_DIR",
+            Path.of(BASE_DIR, "testsuite", "target", "perf-history").toString());
+    public static final int WINDOW = Integer.parseInt(getProperty("PERF_HISTORY_WINDOW", "20"));
+    public static final int MIN_SAMPLES = Integer.parseInt(getProperty("PERF_HISTORY_MIN_SAMPLES", "5"));
+    public static final double K = Double.parseDouble(getProperty("PERF_HISTORY_K", "3"));
+    public static final double MIN_MARGIN_PCT = Double.parseDouble(getProperty("PERF_HISTORY_MIN_MARGIN_PCT", "2"));
+    public static final int CHANGE_RUNS = Integer.parseInt(getProperty("PERF_HISTORY_CHANGE_RUNS", "3"));
+
+    // MAD * 1.4826 estimates the standard deviation of normally distributed values
+    private static final double MAD_SCALE = 1.4826d;
+    private static final String HEADER = "epochMs,metric,value,passed\n";
+
+    public static class Key {
+        public final String app;
+        public final String mode;
+        public final String platform;
+        public final boolean inContainer;
+        public final String mandrelVersion;
+        public final String quarkusVersion;
+
+        public Key(String app, String mode, String platform, boolean inContainer, String mandrelVersion, String quarkusVersion) {
+            this.app = app;
+            this.mode = mode;
+            this.platform = platform;
+            this.inContainer = inContainer;
+            this.mandrelVersion = mandrelVersion;
+            this.quarkusVersion = quarkusVersion;
+        }
+
+        public Path file() {
+            return Path.of(DIR, String.join("_", app, mode, platform, inContainer ? "container" : "host",
+                    "mandrel-" + mandrelVersion, "quarkus-" + quarkusVersion).replaceAll("[^A-Za-z0-9._-]", "-") + ".csv");
+        }
+
+        @Override
+        public String toString() {
+            return app + " " + mode + " " + platform + (inContainer ? " container" : "") +
+                    " Mandrel " + mandrelVersion + " Quarkus " + quarkusVersion;
+        }
+    }
+
+    public static class Baseline {
+        public final long[] samples;
+        public final double median;
+        public final double mad;
+
+        public Baseline(long[] samples) {
+            if (samples.length == 0) {
+                throw new IllegalArgumentException("There must be at least one sample.");
+            }
+            this.samples = samples.clone();
+            final long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            this.median = SampleStats.median(sorted);
+            final double[] deviations = new double[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                deviations[i] = Math.abs(sorted[i] - median);
+            }
+            Arrays.sort(deviations);
+            this.mad = SampleStats.median(deviations);
+        }
+
+        public long limit(double k) {
+            return (long) Math.ceil(median + Math.max(k * MAD_SCALE * mad, Math.abs(median) * MIN_MARGIN_PCT / 100d));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("median %.1f, MAD %.1f of %d runs", median, mad, samples.length);
+        }
+    }
+
+    /**
+     * Appends the values, metrics with {@link Logs#SKIP} values are left out.
+     * Synchronized as a file lock held by this JVM cannot be taken again by another of its threads.
+     *
+     * @param passed whether the run passed its thresholds
+     */
+    public static synchronized void record(Key key, Map<String, Long> values, boolean passed) throws IOException {
+        final StringBuilder s = new StringBuilder();
+        final long now = System.currentTimeMillis();
+        values.forEach((metric, value) -> {
+            if (value != Logs.SKIP) {
+                s.append(now).append(',').append(metric).append(',').append(value).append(',').append(passed).append('\n');
+            }
+        });
+        if (s.length() == 0) {
+            return;
+        }
+        final Path file = key.file();
+        Files.createDirectories(file.getParent());
+        // Other JVMs, e.g. another testsuite run, may record to the same file
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             FileLock ignored = ch.lock()) {
+            if (ch.size() == 0) {
+                s.insert(0, HEADER);
+            }
+            final ByteBuffer b = ByteBuffer.wrap(s.toString().getBytes(UTF_8));
+            while (b.hasRemaining()) {
+                ch.write(b);
+            }
+        }
+    }
+
+    /**
+     * @param passedOnly leave out values of runs that failed their thresholds
+     * @return values of the metric, oldest first, at most the last {@link #WINDOW} + {@link #CHANGE_RUNS}
+     */
+    public static long[] values(Key key, String metric, boolean passedOnly) throws IOException {
+        final Path file = key.file();
+        if (Files.notExists(file)) {
+            return new long[0];
+        }
+        final List<Long> values = new ArrayList<>();
+        for (String line : Files.readAllLines(file, UTF_8)) {
+            final String[] cols = line.split(",");
+            // Rows written before the passed column was added are taken as passed
+            if ((cols.length == 3 || cols.length == 4) && cols[1].equals(metric)
+                    && (!passedOnly || cols.length == 3 || Boolean.parseBoolean(cols[3]))) {
+                try {
+                    values.add(Long.parseLong(cols[2]));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("Ignoring malformed line '" + line + "' in " + file);
+                }
+            }
+        }
+        return values.subList(Math.max(0, values.size() - WINDOW - CHANGE_RUNS), values.size())
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * @param history oldest first
+     * @return baseline of the last {@link #WINDOW} values, null if there are fewer than {@link #MIN_SAMPLES}
+     */
+    public static Baseline baseline(long[] history) {
+        if (history.length < MIN_SAMPLES) {
+            return null;
+        }
+        return new Baseline(Arrays.copyOfRange(history, Math.max(0, history.length - WINDOW), history.length));
+    }
+
+    /**
+     * @param history oldest first, the current value included
+     * @return true if the last {@link #CHANGE_RUNS} values form a step up from the values before them
+     */
+    public static boolean isStepRegression(long[] history, double k) {
+        if (history.length < MIN_SAMPLES + CHANGE_RUNS) {
+            return false;
+        }
+        final long[] after = Arrays.copyOfRange(history, history.length - CHANGE_RUNS, history.length);
+        final Baseline before = baseline(Arrays.copyOfRange(history, 0, history.length - CHANGE_RUNS));
+        final Baseline recent = new Baseline(after);
+        // The median of several runs is less noisy than a single run, i.e. a smaller step stands out
+        final double margin = Math.max(k * MAD_SCALE * before.mad / Math.sqrt(CHANGE_RUNS), Math.abs(before.median) * MIN_MARGIN_PCT / 100d);
+        return Arrays.stream(after).allMatch(v -> v > before.median) && recent.median > before.median + margin;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.graalvm.tests.integration.utils.Commands.IS_THIS_WINDOWS;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Stops a process with its whole descendant tree and waits for ports to be released without forking
+ * kill commands or connecting to the port once per second.
+ *
+ * The tree is captured before any signal is sent, so as descendants re-parented to init after their parent
+ * died are not missed. SIGTERM is sent first, then SIGKILL to whatever did not exit within PROCESS_STOP_GRACE_MS.
+ * A forceful stop sends SIGKILL to the descendants right away, but the root still gets SIGTERM and the grace period,
+ * so as e.g. a JFR recording or a GC log it writes on exit is not lost.
+ * Exits are awaited on {@link ProcessHandle#onExit()}, i.e. the stop returns as soon as the tree is gone.
+ *
+ * On Linux, a port is released once there is no socket listening on it in /proc/net/tcp and /proc/net/tcp6,
+ * polled every PORT_RELEASE_POLL_MS. Elsewhere, the old connect based check is used.
+ */
+public class ProcessLifecycle {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessLifecycle.class.getName());
+
+    public static final long GRACE_MS = Long.parseLong(getProperty("PROCESS_STOP_GRACE_MS", "10000"));
+    public static final long KILL_GRACE_MS = Long.parseLong(getProperty("PROCESS_KILL_GRACE_MS", "5000"));
+    public static final long PORT_POLL_MS = Long.parseLong(getProperty("PORT_RELEASE_POLL_MS", "50"));
+
+    private static final Path[] PROC_NET_TCP = new Path[]{Path.of("/proc/net/tcp"), Path.of("/proc/net/tcp6")};
+    // st column of /proc/net/tcp, see include/net/tcp_states.h
+    private static final String TCP_LISTEN = "0A";
+
+    /**
+     * @return descendants, the deepest first, and the root last
+     */
+    public static List<ProcessHandle> tree(ProcessHandle root) {
+        final List<ProcessHandle> tree = root.descendants()
+                .sorted(Comparator.comparingInt((ProcessHandle h) -> depth(h, root)).reversed())
+                .collect(Collectors.toCollection(ArrayList::new));
+        tree.add(root);
+        return tree;
+    }
+
+    private static int depth(ProcessHandle h, ProcessHandle root) {
+        int depth = 0;
+        Optional<ProcessHandle> p = Optional.of(h);
+        while (p.isPresent() && p.get().pid() != root.pid()) {
+            depth++;
+            p = p.get().parent();
+        }
+        return depth;
+    }
+
+    public static boolean stop(ProcessHandle root, boolean force, boolean orderMatters) throws InterruptedException {
+        return stop(root, force, orderMatters, GRACE_MS, KILL_GRACE_MS);
+    }
+
+    /**
+     * @param force       SIGKILL the descendants right away, the root still gets SIGTERM first
+     * @param orderMatters stop the tree one process at a time, the deepest first, the root last,
+     *                     otherwise all at once
+     * @return true if the whole tree exited
+     */
+    public static boolean stop(ProcessHandle root, boolean force, boolean orderMatters, long graceMs, long killGraceMs)
+            throws InterruptedException {
+        final List<ProcessHandle> tree = tree(root);
+        LOGGER.infof("Stopping PIDs: %s, forcefully: %b", tree.stream().map(h -> Long.toString(h.pid()))
+                .collect(Collectors.joining(",")), force);
+        if (IS_THIS_WINDOWS) {
+            // No SIGTERM on Windows, taskkill takes care of the tree
+            Commands.pidKiller(root.pid(), force);
+            return awaitExit(tree, killGraceMs);
+        }
+        if (orderMatters) {
+            boolean exited = true;
+            for (ProcessHandle h : tree) {
+                exited &= terminate(List.of(h), force && h != root, graceMs, killGraceMs);
+            }
+            return exited;
+        }
+        if (force) {
+            final boolean exited = terminate(tree.subList(0, tree.size() - 1), true, graceMs, killGraceMs);
+            return terminate(List.of(root), false, graceMs, killGraceMs) && exited;
+        }
+        return terminate(tree, false, graceMs, killGraceMs);
+    }
+
+    private static boolean terminate(List<ProcessHandle> handles, boolean force, long graceMs, long killGraceMs)
+            throws InterruptedException {
+        final List<ProcessHandle> alive = handles.stream().filter(ProcessHandle::isAlive).collect(Collectors.toList());
+        if (alive.isEmpty()) {
+            return true;
+        }
+        if (!force) {
+            alive.forEach(ProcessHandle::destroy);
+            if (awaitExit(alive, graceMs)) {
+                return true;
+            }
+            LOGGER.warnf("PIDs %s did not exit within %d ms after SIGTERM, sending SIGKILL", alive.stream()
+                    .filter(ProcessHandle::isAlive).map(h -> Long.toString(h.pid())).collect(Collectors.joining(",")), graceMs);
+        }
+        alive.forEach(ProcessHandle::destroyForcibly);
+        if (awaitExit(alive, killGraceMs)) {
+            return true;
+        }
+        LOGGER.errorf("PIDs %s are still alive after SIGKILL", alive.stream()
+                .filter(ProcessHandle::isAlive).map(h -> Long.toString(h.pid())).collect(Collectors.joining(",")));
+        return false;
+    }
+
+    public static boolean awaitExit(List<ProcessHandle> handles, long timeoutMs) throws InterruptedException {
+        try {
+            CompletableFuture.allOf(handles.stream().map(ProcessHandle::onExit).toArray(CompletableFuture[]::new))
+                    .get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return null if /proc/net/tcp is not available, i.e. not Linux
+     */
+    public static Boolean isListening(int port) {
+        boolean readable = false;
+        for (Path p : PROC_NET_TCP) {
+            final List<String> lines;
+            try {
+                lines = Files.readAllLines(p, US_ASCII);
+            } catch (IOException e) {
+                continue;
+            }
+            readable = true;
+            // sl local_address rem_address st ..., e.g. 0: 0100007F:1F90 00000000:0000 0A ...
+            for (int i = 1; i < lines.size(); i++) {
+                final String[] cols = lines.get(i).trim().split("\\s+");
+                if (cols.length > 3 && TCP_LISTEN.equals(cols[3])) {
+                    final String local = cols[1];
+                    if (Integer.parseInt(local.substring(local.lastIndexOf(':') + 1), 16) == port) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return readable ? Boolean.FALSE : null;
+    }
+
+    public static boolean isProcNetTcpAvailable() {
+        return !IS_THIS_WINDOWS && Files.isReadable(PROC_NET_TCP[0]);
+    }
+
+    /**
+     * Only sees sockets in this network namespace, a port published by a container might be served
+     * with no LISTEN socket here, see {@link Commands#waitForTcpClosed(String, int, long)}.
+     *
+     * @return true once nothing listens on the port, false on timeout
+     */
+    public static boolean waitForPortReleased(int port, long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            final Boolean listening = isListening(port);
+            if (listening == null) {
+                throw new IllegalStateException("/proc/net/tcp is not available, see isProcNetTcpAvailable()");
+            }
+            if (!listening) {
+                return true;
+            }
+            if (System.nanoTime() > deadline) {
+                LOGGER.info("Port still listening: " + port);
+                return false;
+            }
+            Thread.sleep(PORT_POLL_MS);
+        }
+    }
+}
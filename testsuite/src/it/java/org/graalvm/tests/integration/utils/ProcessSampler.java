@@ -0,0 +1,286 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Samples a process in the background straight from /proc/&lt;pid&gt;/{status,stat,fd},
+ * i.e. without forking `ps' or `lsof' for each data point. Linux only, see {@link #isSupported()}.
+ */
+public class ProcessSampler {
+
+    private static final Logger LOGGER = Logger.getLogger(ProcessSampler.class.getName());
+
+    public static final long INTERVAL_MS = Long.parseLong(getProperty("PROCESS_SAMPLER_INTERVAL_MS", "50"));
+
+    public static class Sample {
+        public final long timeMs;
+        public final long rssKb;
+        public final long hwmKb;
+        public final long utimeTicks;
+        public final long stimeTicks;
+        public final long threads;
+        public final long fds;
+
+        public Sample(long timeMs, long rssKb, long hwmKb, long utimeTicks, long stimeTicks, long threads, long fds) {
+            this.timeMs = timeMs;
+            this.rssKb = rssKb;
+            this.hwmKb = hwmKb;
+            this.utimeTicks = utimeTicks;
+            this.stimeTicks = stimeTicks;
+            this.threads = threads;
+            this.fds = fds;
+        }
+    }
+
+    public static class Summary {
+        public final int samples;
+        public final long finalRssKb;
+        public final long peakRssKb;
+        public final long meanRssKb;
+        public final long finalThreads;
+        public final long peakThreads;
+        public final long finalFds;
+        public final long peakFds;
+        public final long utimeTicks;
+        public final long stimeTicks;
+
+        public Summary(List<Sample> samples) {
+            if (samples.isEmpty()) {
+                throw new IllegalStateException("There must be at least one sample to summarize, was the process alive?");
+            }
+            final Sample last = samples.get(samples.size() - 1);
+            this.samples = samples.size();
+            this.finalRssKb = last.rssKb;
+            // VmHWM catches peaks between samples
+            this.peakRssKb = Math.max(last.hwmKb, samples.stream().mapToLong(s -> s.rssKb).max().getAsLong());
+            this.meanRssKb = Math.round(samples.stream().mapToLong(s -> s.rssKb).average().getAsDouble());
+            this.finalThreads = last.threads;
+            this.peakThreads = samples.stream().mapToLong(s -> s.threads).max().getAsLong();
+            this.finalFds = last.fds;
+            this.peakFds = samples.stream().mapToLong(s -> s.fds).max().getAsLong();
+            this.utimeTicks = last.utimeTicks;
+            this.stimeTicks = last.stimeTicks;
+        }
+
+        public LogBuilder log(LogBuilder logBuilder) {
+            return logBuilder
+                    .rssKb(finalRssKb)
+                    .peakRssKb(peakRssKb)
+                    .meanRssKb(meanRssKb)
+                    .openedFiles(finalFds)
+                    .peakOpenedFiles(peakFds)
+                    .peakThreads(peakThreads);
+        }
+
+        public Map<String, String> report(Map<String, String> report) {
+            report.put("rssKb", String.valueOf(finalRssKb));
+            report.put("peakRssKb", String.valueOf(peakRssKb));
+            report.put("meanRssKb", String.valueOf(meanRssKb));
+            report.put("peakThreads", String.valueOf(peakThreads));
+            report.put("peakOpenedFiles", String.valueOf(peakFds));
+            return report;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("samples: %d, RSS kB final: %d, peak: %d, mean: %d, threads final: %d, peak: %d, " +
+                            "FDs final: %d, peak: %d, utime ticks: %d, stime ticks: %d",
+                    samples, finalRssKb, peakRssKb, meanRssKb, finalThreads, peakThreads, finalFds, peakFds, utimeTicks, stimeTicks);
+        }
+    }
+
+    private final long pid;
+    private final long intervalMs;
+    private final List<Sample> samples = new ArrayList<>();
+    private ScheduledExecutorService executor;
+    private long startNs;
+
+    public ProcessSampler(long pid) {
+        this(pid, INTERVAL_MS);
+    }
+
+    public ProcessSampler(long pid, long intervalMs) {
+        if (intervalMs < 1) {
+            throw new IllegalArgumentException("intervalMs must be at least 1, was: " + intervalMs);
+        }
+        this.pid = pid;
+        this.intervalMs = intervalMs;
+    }
+
+    public static boolean isSupported() {
+        return Files.isReadable(Path.of("/proc", "self", "status"));
+    }
+
+    public synchronized ProcessSampler start() {
+        if (executor != null) {
+            throw new IllegalStateException("Sampler for pid " + pid + " has already been started.");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread t = new Thread(r, "process-sampler-" + pid);
+            t.setDaemon(true);
+            return t;
+        });
+        startNs = System.nanoTime();
+        executor.scheduleAtFixedRate(this::sample, 0, intervalMs, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Stops sampling. Can be called repeatedly, e.g. from a finally block.
+     *
+     * @return summary of the samples taken so far
+     */
+    public Summary stop() throws InterruptedException {
+        final ScheduledExecutorService e;
+        synchronized (this) {
+            e = executor;
+        }
+        if (e != null) {
+            e.shutdown();
+            if (!e.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("Sampler for pid " + pid + " did not terminate in time.");
+            }
+        }
+        if (getSamples().isEmpty()) {
+            // Very short interval between start and stop, give it one more try.
+            sample();
+        }
+        return new Summary(getSamples());
+    }
+
+    /**
+     * @return milliseconds since {@link #start()}, on the same clock as {@link Sample#timeMs}
+     */
+    public long elapsedMs() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+    }
+
+    /**
+     * Peak RSS within a part of the run, e.g. a phase of a test. VmHWM is not used, it covers the whole run.
+     *
+     * @return -1 if there is no sample between fromMs and toMs
+     */
+    public long peakRssKb(long fromMs, long toMs) {
+        return getSamples().stream()
+                .filter(s -> s.timeMs >= fromMs && s.timeMs <= toMs)
+                .mapToLong(s -> s.rssKb)
+                .max()
+                .orElse(-1L);
+    }
+
+    public List<Sample> getSamples() {
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    /**
+     * Time series as CSV, e.g. to be archived with the logs.
+     */
+    public void writeCSV(Path path) throws IOException {
+        final StringBuilder s = new StringBuilder("timeMs,RSSKb,VmHWMKb,utimeTicks,stimeTicks,threads,FDs\n");
+        for (Sample sample : getSamples()) {
+            s.append(sample.timeMs).append(',')
+                    .append(sample.rssKb).append(',')
+                    .append(sample.hwmKb).append(',')
+                    .append(sample.utimeTicks).append(',')
+                    .append(sample.stimeTicks).append(',')
+                    .append(sample.threads).append(',')
+                    .append(sample.fds).append('\n');
+        }
+        Files.writeString(path, s.toString(), UTF_8);
+    }
+
+    private void sample() {
+        final Path proc = Path.of("/proc", Long.toString(pid));
+        try {
+            final long timeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNs);
+            final long[] status = parseStatus(Files.readString(proc.resolve("status"), UTF_8));
+            final long[] stat = parseStat(Files.readString(proc.resolve("stat"), UTF_8));
+            final long fds;
+            try (Stream<Path> s = Files.list(proc.resolve("fd"))) {
+                fds = s.count();
+            }
+            if (status[0] == -1L) {
+                // Zombie, memory already released
+                return;
+            }
+            synchronized (samples) {
+                samples.add(new Sample(timeMs, status[0], status[1], stat[0], stat[1], stat[2], fds));
+            }
+        } catch (NoSuchFileException e) {
+            // Process is gone, no point in sampling further.
+            final ScheduledExecutorService ex;
+            synchronized (this) {
+                ex = executor;
+            }
+            if (ex != null) {
+                ex.shutdown();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to sample pid " + pid + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @param status contents of /proc/&lt;pid&gt;/status
+     * @return VmRSS kB, VmHWM kB, -1 if not present, e.g. for a zombie
+     */
+    static long[] parseStatus(String status) {
+        final long[] result = new long[]{-1L, -1L};
+        for (String line : status.split("\n")) {
+            if (line.startsWith("VmRSS:")) {
+                result[0] = Long.parseLong(line.substring(6).replace("kB", "").trim());
+            } else if (line.startsWith("VmHWM:")) {
+                result[1] = Long.parseLong(line.substring(6).replace("kB", "").trim());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * See proc(5), the comm field can contain spaces and parentheses, so we count fields from the last ')'.
+     *
+     * @param stat contents of /proc/&lt;pid&gt;/stat
+     * @return utime ticks, stime ticks, num_threads
+     */
+    static long[] parseStat(String stat) {
+        final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+        // fields[0] is the 3rd field, state
+        return new long[]{Long.parseLong(fields[11]), Long.parseLong(fields[12]), Long.parseLong(fields[17])};
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.logging.Logger;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.graalvm.tests.integration.utils.Commands.getBaseDir;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Hands out free ports and private working copies of app directories, so as tests can run in parallel,
+ * see -Dts.parallel=true and junit.jupiter.execution.parallel.* in testsuite/pom.xml.
+ *
+ * With ISOLATE_WORKSPACES=true, which defaults to the parallel switch, {@link #appDir(Apps)} copies the app
+ * to testsuite/target/workspaces/<n>/apps/<dir> once per test thread, next to a copy of the root pom.xml
+ * the app's parent relativePath points to. Apps running in a container are not copied, their commands mount
+ * BASE_DIR/apps/... and use fixed container names; tests using them hold the {@link #CONTAINERS} lock.
+ * Neither are apps whose commands refer to BASE_DIR/apps/..., see {@link #isRelocatable(Apps)}.
+ *
+ * {@link #port(int)} maps an app's default port, e.g. 8080, to a free one for the current test thread,
+ * see {@link Apps#urls()} and the &lt;PORT:8080&gt; token in run commands. Without isolation,
+ * ports and directories are the defaults.
+ *
+ * Register with @ExtendWith(ResourceAllocator.class) to have everything released after each test.
+ */
+public class ResourceAllocator implements AfterEachCallback {
+
+    private static final Logger LOGGER = Logger.getLogger(ResourceAllocator.class.getName());
+
+    public static final boolean ISOLATE = Boolean.parseBoolean(getProperty("ISOLATE_WORKSPACES",
+            getProperty("TS_PARALLEL", "false")));
+    public static final Path WORKSPACES = Path.of(getBaseDir(), "testsuite", "target", "workspaces");
+
+    // @ResourceLock keys for what cannot be isolated
+    public static final String CONTAINERS = "container-runtime";
+    public static final String DEFAULT_PORTS = "default-ports";
+
+    public static final Pattern PORT_TOKEN = Pattern.compile("<PORT:([0-9]+)>");
+    private static final Pattern URL_PORT = Pattern.compile("^([a-z]+://[^/:]+):([0-9]+)(.*)$");
+
+    // Not copied to workspaces, see Commands#cleanTarget
+    private static final Set<String> BUILD_OUTPUTS = Set.of("target", "logs", "sources", "reports");
+
+    private static final AtomicInteger WORKSPACE_IDS = new AtomicInteger();
+    private static final Set<Integer> PORTS = ConcurrentHashMap.newKeySet();
+    private static final ThreadLocal<Allocation> ALLOCATIONS = ThreadLocal.withInitial(Allocation::new);
+
+    private static class Allocation {
+        private final Map<Integer, Integer> ports = new HashMap<>();
+        private final List<Path> workspaces = new ArrayList<>();
+        private Path workspace = null;
+    }
+
+    /**
+     * @return a port nobody listens on at the moment, not handed out by this allocator before unless released
+     */
+    public static int freePort() {
+        while (true) {
+            final int port;
+            try (ServerSocket s = new ServerSocket()) {
+                s.setReuseAddress(false);
+                s.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+                port = s.getLocalPort();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to find a free port", e);
+            }
+            if (PORTS.add(port)) {
+                return port;
+            }
+        }
+    }
+
+    /**
+     * @return the port the current test thread uses instead of defaultPort, defaultPort itself without isolation
+     */
+    public static int port(int defaultPort) {
+        if (!ISOLATE) {
+            return defaultPort;
+        }
+        return ALLOCATIONS.get().ports.computeIfAbsent(defaultPort, p -> {
+            final int port = freePort();
+            LOGGER.infof("Port %d is %d for %s", p, port, Thread.currentThread().getName());
+            return port;
+        });
+    }
+
+    /**
+     * Replaces &lt;PORT:nnnn&gt; tokens with {@link #port(int)}.
+     */
+    public static String resolvePorts(String s) {
+        if (s == null || s.indexOf('<') < 0) {
+            return s;
+        }
+        final Matcher m = PORT_TOKEN.matcher(s);
+        final StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            m.appendReplacement(sb, Integer.toString(port(Integer.parseInt(m.group(1)))));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * @return the url with its port mapped by {@link #port(int)}
+     */
+    public static String resolveUrl(String url) {
+        final Matcher m = URL_PORT.matcher(url);
+        if (!ISOLATE || !m.matches()) {
+            return url;
+        }
+        return m.group(1) + ":" + port(Integer.parseInt(m.group(2))) + m.group(3);
+    }
+
+    /**
+     * @return true if the app's run commands take their ports as &lt;PORT:nnnn&gt; tokens
+     */
+    public static boolean takesPorts(Apps app) {
+        return commands(app).anyMatch(c -> PORT_TOKEN.matcher(c).find());
+    }
+
+    /**
+     * An app is relocatable unless it runs in a container or its commands refer to its original directory.
+     */
+    public static boolean isRelocatable(Apps app) {
+        final String original = Path.of(getBaseDir(), app.dir).toString();
+        return app.runtimeContainer == ContainerNames.NONE && commands(app).noneMatch(c -> c.contains(original));
+    }
+
+    private static Stream<String> commands(Apps app) {
+        return Stream.of(app.buildAndRunCmds.buildCommands, app.buildAndRunCmds.runCommands)
+                .filter(Objects::nonNull)
+                .flatMap(Arrays::stream)
+                .flatMap(Arrays::stream)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * @return the directory the app is built and run in by the current test thread
+     */
+    public static Path appDir(Apps app) {
+        return appDir(app, ISOLATE);
+    }
+
+    static Path appDir(Apps app, boolean isolate) {
+        final Path original = Path.of(getBaseDir(), app.dir);
+        if (!isolate || !isRelocatable(app)) {
+            return original;
+        }
+        final Allocation allocation = ALLOCATIONS.get();
+        try {
+            if (allocation.workspace == null) {
+                allocation.workspace = WORKSPACES.resolve(Integer.toString(WORKSPACE_IDS.incrementAndGet()));
+                Files.createDirectories(allocation.workspace);
+                // Apps' poms have <relativePath>../../pom.xml</relativePath>
+                Files.copy(Path.of(getBaseDir(), "pom.xml"), allocation.workspace.resolve("pom.xml"));
+                allocation.workspaces.add(allocation.workspace);
+            }
+            final Path copy = allocation.workspace.resolve(app.dir);
+            if (!Files.exists(copy)) {
+                FileUtils.copyDirectory(original.toFile(), copy.toFile(),
+                        f -> !(f.isDirectory() && f.getParentFile().toPath().equals(original) && BUILD_OUTPUTS.contains(f.getName())));
+                LOGGER.infof("App %s is in workspace %s for %s", app, allocation.workspace, Thread.currentThread().getName());
+            }
+            return copy;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create a workspace for " + app, e);
+        }
+    }
+
+    /**
+     * Deletes the current test thread's workspaces and returns its ports.
+     */
+    public static void release() {
+        final Allocation allocation = ALLOCATIONS.get();
+        PORTS.removeAll(allocation.ports.values());
+        allocation.ports.clear();
+        for (Path w : allocation.workspaces) {
+            final File f = w.toFile();
+            try {
+                FileUtils.deleteDirectory(f);
+            } catch (IOException e) {
+                LOGGER.warnf("Failed to delete workspace %s: %s", w, e.getMessage());
+                FileUtils.deleteQuietly(f);
+            }
+        }
+        allocation.workspaces.clear();
+        allocation.workspace = null;
+        ALLOCATIONS.remove();
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        release();
+    }
+}
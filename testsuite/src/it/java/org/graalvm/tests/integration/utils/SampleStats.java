@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Robust statistics of a handful of repeated measurements, e.g. cold starts.
+ * Median and MAD are not thrown off by a single outlier the way mean and standard deviation are.
+ * The confidence interval of the median is estimated by the percentile bootstrap, i.e. resampling
+ * the samples with replacement, so no distribution is assumed. The resampling is seeded so as
+ * the same samples always yield the same interval.
+ */
+public class SampleStats {
+
+    public static final int BOOTSTRAP_RESAMPLES = 10_000;
+    public static final long SEED = 42L;
+
+    public final long[] samples;
+    public final double median;
+    // Median absolute deviation, not scaled to be a consistent estimator of the standard deviation
+    public final double mad;
+    public final long min;
+    public final long max;
+    public final double confidence;
+    public final double ciLower;
+    public final double ciUpper;
+
+    /**
+     * @param confidence e.g. 0.95
+     */
+    public SampleStats(long[] samples, double confidence) {
+        if (samples == null || samples.length == 0) {
+            throw new IllegalArgumentException("There must be at least one sample.");
+        }
+        if (confidence <= 0d || confidence >= 1d) {
+            throw new IllegalArgumentException("confidence must be within (0, 1), was: " + confidence);
+        }
+        this.samples = samples.clone();
+        this.confidence = confidence;
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        this.min = sorted[0];
+        this.max = sorted[sorted.length - 1];
+        this.median = median(sorted);
+        final double[] deviations = new double[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            deviations[i] = Math.abs(sorted[i] - median);
+        }
+        Arrays.sort(deviations);
+        this.mad = median(deviations);
+        final double[] ci = bootstrapMedianCI(sorted, confidence, BOOTSTRAP_RESAMPLES, new Random(SEED));
+        this.ciLower = ci[0];
+        this.ciUpper = ci[1];
+    }
+
+    public SampleStats(long[] samples) {
+        this(samples, 0.95d);
+    }
+
+    public enum Bound {
+        LOWER,
+        MEDIAN,
+        UPPER;
+
+        public static Bound of(String s) {
+            return valueOf(s.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Gating on the lower bound fails only if even the optimistic end of the interval is over a threshold,
+     * i.e. the regression is real with the given confidence. The upper bound is the strict variant.
+     */
+    public long get(Bound bound) {
+        switch (bound) {
+            case LOWER:
+                return (long) Math.floor(ciLower);
+            case UPPER:
+                return (long) Math.ceil(ciUpper);
+            default:
+                return Math.round(median);
+        }
+    }
+
+    static double median(long[] sorted) {
+        final int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2d;
+    }
+
+    static double median(double[] sorted) {
+        final int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2d;
+    }
+
+    static double[] bootstrapMedianCI(long[] samples, double confidence, int resamples, Random random) {
+        final double[] medians = new double[resamples];
+        final long[] resample = new long[samples.length];
+        for (int r = 0; r < resamples; r++) {
+            for (int i = 0; i < samples.length; i++) {
+                resample[i] = samples[random.nextInt(samples.length)];
+            }
+            Arrays.sort(resample);
+            medians[r] = median(resample);
+        }
+        Arrays.sort(medians);
+        final double alpha = (1d - confidence) / 2d;
+        final int lo = (int) Math.floor(alpha * (resamples - 1));
+        final int hi = (int) Math.ceil((1d - alpha) * (resamples - 1));
+        return new double[]{medians[lo], medians[hi]};
+    }
+
+    @Override
+    public String toString() {
+        return String.format("n: %d, median: %.1f, MAD: %.1f, min: %d, max: %d, %.0f%% CI of median: [%.1f, %.1f], samples: %s",
+                samples.length, median, mad, min, max, confidence * 100d, ciLower, ciUpper, Arrays.toString(samples));
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Breaks the time to the first OK request down to startup phases, so as a regression points to
+ * exec and page-in, runtime initialization, framework boot or socket binding right away:
+ *
+ * - SPAWN, the process start instant as the OS reports it,
+ * - FIRST_OUTPUT, the app's log, i.e. its redirected stdout, grew for the first time,
+ * - STARTED_LOG, the framework logged it started, see STARTUP_LOG_PATTERN,
+ * - LISTENING, the port appeared in /proc/net/tcp in LISTEN state,
+ * - FIRST_CONNECTION, a connection to the port was accepted,
+ * - FIRST_OK, the first OK response, see {@link #ok()}.
+ *
+ * The log and the port are polled on a daemon thread every STARTUP_TIMELINE_POLL_MS.
+ * Without /proc/net/tcp, i.e. not on Linux, LISTENING is left out.
+ *
+ * Each phase is reported as milliseconds since SPAWN, e.g. spawnToListeningMs, so as it can have
+ * its own threshold in threshold.conf, e.g. linux.spawnToListeningMs=150.
+ */
+public class StartupTimeline {
+
+    private static final Logger LOGGER = Logger.getLogger(StartupTimeline.class.getName());
+
+    public static final long POLL_MS = Long.parseLong(getProperty("STARTUP_TIMELINE_POLL_MS", "2"));
+    public static final Pattern STARTED_LOG = Pattern.compile(getProperty("STARTUP_LOG_PATTERN",
+            ".*( started in |WEB server is up).*"));
+    private static final int CONNECT_TIMEOUT_MS = 50;
+
+    public enum Phase {
+        SPAWN,
+        FIRST_OUTPUT,
+        STARTED_LOG,
+        LISTENING,
+        FIRST_CONNECTION,
+        FIRST_OK
+    }
+
+    private final Path log;
+    private final int port;
+    private final Instant created;
+    private final Map<Phase, Instant> phases = new EnumMap<>(Phase.class);
+    private long logOffset;
+    private final StringBuilder partialLine = new StringBuilder();
+    private Thread thread;
+
+    /**
+     * To be created right before the process is started, so as earlier content of the log is skipped.
+     *
+     * @param log  the file the process' output is appended to
+     * @param port the port the app listens on
+     */
+    public StartupTimeline(Path log, int port) throws IOException {
+        this.log = log;
+        this.port = port;
+        this.logOffset = Files.exists(log) ? Files.size(log) : 0L;
+        this.created = Instant.now();
+    }
+
+    public StartupTimeline start(ProcessHandle process) {
+        // The start instant has a clock tick resolution, it must not precede the moment we started to wait
+        final Instant started = process.info().startInstant().orElse(created);
+        mark(Phase.SPAWN, started.isBefore(created) ? created : started);
+        thread = new Thread(this::poll, "startup-timeline-" + process.pid());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    private void poll() {
+        final boolean procNetTcp = ProcessLifecycle.isProcNetTcpAvailable();
+        try {
+            while (!Thread.currentThread().isInterrupted() && !done()) {
+                if (!has(Phase.STARTED_LOG)) {
+                    readLog();
+                }
+                if (procNetTcp && !has(Phase.LISTENING) && Boolean.TRUE.equals(ProcessLifecycle.isListening(port))) {
+                    mark(Phase.LISTENING, Instant.now());
+                }
+                if (!has(Phase.FIRST_CONNECTION) && (!procNetTcp || has(Phase.LISTENING)) && connect()) {
+                    mark(Phase.FIRST_CONNECTION, Instant.now());
+                }
+                Thread.sleep(POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean done() {
+        return has(Phase.FIRST_OK) ||
+                (has(Phase.STARTED_LOG) && has(Phase.FIRST_CONNECTION));
+    }
+
+    private void readLog() {
+        try (RandomAccessFile f = new RandomAccessFile(log.toFile(), "r")) {
+            final long length = f.length();
+            if (length <= logOffset) {
+                return;
+            }
+            final Instant now = Instant.now();
+            if (!has(Phase.FIRST_OUTPUT)) {
+                mark(Phase.FIRST_OUTPUT, now);
+            }
+            final byte[] bytes = new byte[(int) Math.min(length - logOffset, Integer.MAX_VALUE)];
+            f.seek(logOffset);
+            f.readFully(bytes);
+            logOffset += bytes.length;
+            partialLine.append(new String(bytes, UTF_8));
+            int eol;
+            while ((eol = partialLine.indexOf("\n")) >= 0) {
+                final String line = partialLine.substring(0, eol);
+                partialLine.delete(0, eol + 1);
+                if (STARTED_LOG.matcher(line).matches()) {
+                    mark(Phase.STARTED_LOG, now);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // The log might not have been created yet
+        }
+    }
+
+    private boolean connect() {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT_MS);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Marks the first OK response and stops polling.
+     */
+    public void ok() throws InterruptedException {
+        mark(Phase.FIRST_OK, Instant.now());
+        stop();
+    }
+
+    public void stop() throws InterruptedException {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+            thread = null;
+            LOGGER.info("Startup timeline: " + this);
+        }
+    }
+
+    private synchronized void mark(Phase phase, Instant instant) {
+        phases.putIfAbsent(phase, instant);
+    }
+
+    private synchronized boolean has(Phase phase) {
+        return phases.containsKey(phase);
+    }
+
+    public synchronized Instant get(Phase phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * @return milliseconds since SPAWN, -1 if the phase was not observed
+     */
+    public synchronized long sinceSpawnMs(Phase phase) {
+        final Instant spawn = phases.get(Phase.SPAWN);
+        final Instant at = phases.get(phase);
+        if (spawn == null || at == null) {
+            return -1L;
+        }
+        return Math.max(0L, Duration.between(spawn, at).toMillis());
+    }
+
+    public LogBuilder log(LogBuilder logBuilder) {
+        final long firstOutput = sinceSpawnMs(Phase.FIRST_OUTPUT);
+        final long startedLog = sinceSpawnMs(Phase.STARTED_LOG);
+        final long listening = sinceSpawnMs(Phase.LISTENING);
+        final long firstConnection = sinceSpawnMs(Phase.FIRST_CONNECTION);
+        final long firstOK = sinceSpawnMs(Phase.FIRST_OK);
+        if (firstOutput != -1L) {
+            logBuilder.spawnToFirstOutputMs(firstOutput);
+        }
+        if (startedLog != -1L) {
+            logBuilder.spawnToStartedLogMs(startedLog);
+        }
+        if (listening != -1L) {
+            logBuilder.spawnToListeningMs(listening);
+        }
+        if (firstConnection != -1L) {
+            logBuilder.spawnToFirstConnectionMs(firstConnection);
+        }
+        if (firstOK != -1L) {
+            logBuilder.spawnToFirstOKMs(firstOK);
+        }
+        return logBuilder;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder s = new StringBuilder();
+        for (Phase p : Phase.values()) {
+            if (phases.containsKey(p)) {
+                if (s.length() > 0) {
+                    s.append(", ");
+                }
+                s.append(p).append(" +").append(sinceSpawnMs(p)).append(" ms");
+            }
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads a response body as it arrives, without keeping it, and notes when its first and its last byte came,
+ * so as a streamed response, e.g. NDJSON or SSE, can be told from a buffered one, which has nothing
+ * to send until it is all done.
+ *
+ * Items are counted by a marker, e.g. "\n" for NDJSON lines or "data:" for SSE events, so as the client
+ * can check it got all of them.
+ */
+public class StreamedResponse {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public final int statusCode;
+    // Since the request was sent, -1 if the body was empty
+    public final long timeToFirstByteNs;
+    public final long timeToLastByteNs;
+    public final long bytes;
+    public final long items;
+
+    StreamedResponse(int statusCode, long timeToFirstByteNs, long timeToLastByteNs, long bytes, long items) {
+        this.statusCode = statusCode;
+        this.timeToFirstByteNs = timeToFirstByteNs;
+        this.timeToLastByteNs = timeToLastByteNs;
+        this.bytes = bytes;
+        this.items = items;
+    }
+
+    public static StreamedResponse fetch(HttpClient client, HttpRequest request, String itemMarker)
+            throws IOException, InterruptedException {
+        final long startNs = System.nanoTime();
+        final HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            return read(response.statusCode(), body, itemMarker, startNs);
+        }
+    }
+
+    static StreamedResponse read(int statusCode, InputStream body, String itemMarker, long startNs) throws IOException {
+        final byte[] marker = itemMarker.getBytes(UTF_8);
+        if (marker.length == 0) {
+            throw new IllegalArgumentException("itemMarker must not be empty");
+        }
+        // Knuth-Morris-Pratt, a marker might be split between two reads
+        final int[] fallback = new int[marker.length];
+        for (int i = 1, k = 0; i < marker.length; i++) {
+            while (k > 0 && marker[i] != marker[k]) {
+                k = fallback[k - 1];
+            }
+            if (marker[i] == marker[k]) {
+                k++;
+            }
+            fallback[i] = k;
+        }
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long firstByteNs = -1L;
+        long bytes = 0L;
+        long items = 0L;
+        int matched = 0;
+        int n;
+        while ((n = body.read(buffer)) != -1) {
+            if (n == 0) {
+                continue;
+            }
+            if (firstByteNs == -1L) {
+                firstByteNs = System.nanoTime() - startNs;
+            }
+            bytes += n;
+            for (int i = 0; i < n; i++) {
+                while (matched > 0 && buffer[i] != marker[matched]) {
+                    matched = fallback[matched - 1];
+                }
+                if (buffer[i] == marker[matched]) {
+                    matched++;
+                }
+                if (matched == marker.length) {
+                    items++;
+                    matched = fallback[matched - 1];
+                }
+            }
+        }
+        return new StreamedResponse(statusCode, firstByteNs, System.nanoTime() - startNs, bytes, items);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HTTP %d, %d items, %d bytes, first byte after %d ms, last byte after %d ms",
+                statusCode, items, bytes, TimeUnit.NANOSECONDS.toMillis(timeToFirstByteNs),
+                TimeUnit.NANOSECONDS.toMillis(timeToLastByteNs));
+    }
+}
@@ -47,6 +47,10 @@ public enum URLContent {
             new String[]{"http://localhost:8887/dump"},
             new String[]{"http://localhost:8887/load"},
             new String[]{"http://localhost:8887/load/hash"},
+            // Same content as /dump, streamed
+            new String[]{"http://localhost:8887/dump/stream"},
+            // Same hash as /load/hash, digested while parsing
+            new String[]{"http://localhost:8887/load/hash/stream"},
     }),
 
     QUARKUS_BUILDER_IMAGE_ENCODING(new String[][]{
@@ -66,12 +70,43 @@ public enum URLContent {
             new String[]{"http://localhost:8080/metrics", "availableProcessors"}
     }),
 
+    HELIDON_QUICKSTART_SE_PERF(new String[][]{
+            // apps/helidon-quickstart-se/src/main/resources/application.yaml
+            new String[]{"http://localhost:8080/greet", "Hello World!"},
+            new String[]{"http://localhost:8080/greet/Karm", "Hello Karm!"},
+            // PUT {"greeting":"Hello"}, the very same greeting again, so as the content of the others does not change under load
+            new String[]{"http://localhost:8080/greet/greeting"},
+    }),
+
     DEBUG_QUARKUS_BUILDER_IMAGE_VERTX(new String[][]{
-        new String[]{"http://localhost:8080/fruits", "\"name\":\"Apple\""}});
+        new String[]{"http://localhost:8080/fruits", "\"name\":\"Apple\""}}),
+
+    QUARKUS_VERTX_PERF(new String[][]{
+            new String[]{"http://localhost:8080/fruits", "\"name\":\"Apple\""},
+            // One executeBatch per request
+            new String[]{"http://localhost:8080/fruits/batch"},
+            // One query per fruit, pipelined on a single connection
+            new String[]{"http://localhost:8080/fruits/pipelined"},
+            // Read from a cursor, ?fetch= rows at a time
+            new String[]{"http://localhost:8080/fruits/stream/ndjson"},
+            new String[]{"http://localhost:8080/fruits/stream/sse"},
+    });
 
     public final String[][] urlContent;
 
     URLContent(String[][] urlContent) {
         this.urlContent = urlContent;
     }
+
+    /**
+     * @return urlContent with the ports of the current test thread, see {@link ResourceAllocator#port(int)}
+     */
+    public String[][] resolved() {
+        final String[][] resolved = new String[urlContent.length][];
+        for (int i = 0; i < urlContent.length; i++) {
+            resolved[i] = urlContent[i].clone();
+            resolved[i][0] = ResourceAllocator.resolveUrl(urlContent[i][0]);
+        }
+        return resolved;
+    }
 }
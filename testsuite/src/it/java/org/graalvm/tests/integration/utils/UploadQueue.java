@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import org.jboss.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.RuntimesSmokeTest.BASE_DIR;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+
+/**
+ * Uploads payloads to the collector on a background thread, so as a slow or unreachable collector
+ * does not stall the test thread between measurement runs.
+ *
+ * Runtime payloads, i.e. JSON arrays of reports, waiting for the same context are merged into one request,
+ * up to {@link #BATCH_SIZE} payloads. Build time payloads are sent one by one, the secondary payload is PUT
+ * to the id the collector assigned to the main one. Bodies are gzip compressed if PERF_APP_UPLOAD_GZIP=true.
+ * A collector that answers a compressed body with 415 or 400 gets it again uncompressed, and so do all
+ * the later ones, so as gzip being on does not lose payloads on a collector that cannot decompress.
+ *
+ * Connection failures, 408, 429 and 5xx responses are retried with exponential backoff, payloads still
+ * not uploaded are spooled to {@link #SPOOL_DIR} and enqueued again when the next queue starts, e.g. in
+ * a later run. Point PERF_APP_UPLOAD_SPOOL_DIR outside of target to keep the spool across clean builds.
+ * Other 4xx responses mean the collector rejected the payload, it is logged and dropped.
+ */
+public class UploadQueue implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(UploadQueue.class.getName());
+
+    public static final int BATCH_SIZE = Integer.parseInt(getProperty("PERF_APP_UPLOAD_BATCH_SIZE", "10"));
+    public static final int RETRIES = Integer.parseInt(getProperty("PERF_APP_UPLOAD_RETRIES", "5"));
+    public static final long BACKOFF_MS = Long.parseLong(getProperty("PERF_APP_UPLOAD_BACKOFF_MS", "1000"));
+    public static final long MAX_BACKOFF_MS = 30_000L;
+    public static final boolean GZIP = Boolean.parseBoolean(getProperty("PERF_APP_UPLOAD_GZIP", "false"));
+    public static final String SPOOL_DIR = getProperty("PERF_APP_UPLOAD_SPOOL_DIR",
+            Path.of(BASE_DIR, "testsuite", "target", "upload-spool").toString());
+
+    public static class Upload {
+        public final String context;
+        // Relative to the endpoint, e.g. context/import?t=...
+        public final String path;
+        public final String payload;
+        public final String secondaryPayload;
+        public final boolean runtime;
+        // Set once the main payload is uploaded, so as a retry does not upload it twice
+        volatile String secondaryPath;
+
+        public Upload(String context, String path, String payload, String secondaryPayload, boolean runtime) {
+            this.context = context;
+            this.path = path;
+            this.payload = payload;
+            this.secondaryPayload = secondaryPayload;
+            this.runtime = runtime;
+        }
+
+        public static Upload runtime(String context, String jsonPayload) {
+            return new Upload(context, context, jsonPayload, null, true);
+        }
+
+        public static Upload buildtime(String context, String path, String jsonPayload, String secondaryJsonPayload) {
+            return new Upload(context, path, jsonPayload, secondaryJsonPayload, false);
+        }
+
+        JSONObject toJSON() {
+            return new JSONObject()
+                    .put("context", context)
+                    .put("path", path)
+                    .put("payload", payload)
+                    .putOpt("secondaryPayload", secondaryPayload)
+                    .putOpt("secondaryPath", secondaryPath)
+                    .put("runtime", runtime);
+        }
+
+        static Upload of(JSONObject o) {
+            final Upload u = new Upload(o.getString("context"), o.getString("path"), o.getString("payload"),
+                    o.optString("secondaryPayload", null), o.getBoolean("runtime"));
+            u.secondaryPath = o.optString("secondaryPath", null);
+            return u;
+        }
+    }
+
+    private static class RetriableException extends IOException {
+        RetriableException(String message) {
+            super(message);
+        }
+    }
+
+    private static final AtomicInteger SPOOL_SEQ = new AtomicInteger();
+
+    private final String endpoint;
+    private final String token;
+    private final Path spoolDir;
+    private final int retries;
+    private final long backoffMs;
+    // Turned off for good once the collector rejected a compressed body
+    private volatile boolean gzip;
+    private final HttpClient hc;
+    private final LinkedBlockingQueue<Upload> queue = new LinkedBlockingQueue<>();
+    // Enqueued and not yet uploaded, dropped or spooled
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread worker;
+    private volatile boolean closed = false;
+
+    public UploadQueue(String endpoint, String token, Path spoolDir, int retries, long backoffMs, boolean gzip) {
+        if (endpoint == null || endpoint.isBlank()) {
+            throw new IllegalArgumentException("endpoint must not be blank");
+        }
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.token = token;
+        this.spoolDir = spoolDir;
+        this.retries = retries;
+        this.backoffMs = backoffMs;
+        this.gzip = gzip;
+        this.hc = HttpClient.newBuilder()
+                .followRedirects(HttpClient.Redirect.ALWAYS)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        recoverSpool();
+        this.worker = new Thread(this::work, "upload-queue");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public UploadQueue(String endpoint, String token) {
+        this(endpoint, token, Path.of(SPOOL_DIR), RETRIES, BACKOFF_MS, GZIP);
+    }
+
+    public void submit(Upload upload) {
+        if (closed) {
+            throw new IllegalStateException("The queue is closed.");
+        }
+        pending.incrementAndGet();
+        queue.add(upload);
+    }
+
+    /**
+     * Waits until everything enqueued so far is uploaded, dropped or spooled.
+     *
+     * @return false on timeout
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pending.get() > 0) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    public int pending() {
+        return pending.get();
+    }
+
+    /**
+     * Waits for the queue to drain up to the timeout, whatever is left is spooled.
+     */
+    public void close(long timeout, TimeUnit unit) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!flush(timeout, unit)) {
+                LOGGER.warn("Timed out waiting for " + pending.get() + " uploads, spooling them to " + spoolDir);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        final List<Upload> left = new ArrayList<>();
+        queue.drainTo(left);
+        left.forEach(this::spool);
+    }
+
+    @Override
+    public void close() {
+        close(1, TimeUnit.MINUTES);
+    }
+
+    private void work() {
+        final List<Upload> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+            // Runtime payloads of the same context are merged, anything else is sent as it is
+            final Map<String, List<Upload>> groups = new LinkedHashMap<>();
+            for (Upload u : batch) {
+                groups.computeIfAbsent(u.runtime ? u.context : "\0" + groups.size(), k -> new ArrayList<>()).add(u);
+            }
+            batch.clear();
+            boolean interrupted = false;
+            for (List<Upload> group : groups.values()) {
+                if (interrupted) {
+                    group.forEach(this::spool);
+                } else {
+                    interrupted = uploadWithRetries(group);
+                }
+                pending.addAndGet(-group.size());
+            }
+            if (interrupted) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if interrupted, i.e. the queue is being closed
+     */
+    private boolean uploadWithRetries(List<Upload> group) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                upload(group);
+                return false;
+            } catch (RetriableException e) {
+                if (attempt >= retries) {
+                    LOGGER.error("Failed to upload " + group.size() + " payloads after " + (attempt + 1) +
+                            " attempts: " + e.getMessage() + ", spooling them to " + spoolDir);
+                    group.forEach(this::spool);
+                    return false;
+                }
+                // Exponential backoff with jitter, so as parallel runners do not hammer the collector in lockstep
+                final long delay = Math.min(MAX_BACKOFF_MS, backoffMs << Math.min(attempt, 20));
+                final long jittered = delay / 2 + (long) (Math.random() * (delay / 2 + 1));
+                LOGGER.warn("Upload attempt " + (attempt + 1) + " failed: " + e.getMessage() + ", retrying in " + jittered + " ms");
+                try {
+                    Thread.sleep(jittered);
+                } catch (InterruptedException ie) {
+                    group.forEach(this::spool);
+                    return true;
+                }
+            } catch (IOException | JSONException e) {
+                LOGGER.error("Payload was NOT uploaded to the collector server, dropping it: " + e.getMessage());
+                return false;
+            } catch (InterruptedException e) {
+                group.forEach(this::spool);
+                return true;
+            }
+        }
+    }
+
+    private void upload(List<Upload> group) throws IOException, InterruptedException {
+        final Upload first = group.get(0);
+        if (first.runtime) {
+            final String payload;
+            if (group.size() == 1) {
+                payload = first.payload;
+            } else {
+                final JSONArray merged = new JSONArray();
+                for (Upload u : group) {
+                    final Object o = new JSONArray("[" + u.payload + "]").get(0);
+                    if (o instanceof JSONArray) {
+                        ((JSONArray) o).forEach(merged::put);
+                    } else {
+                        merged.put(o);
+                    }
+                }
+                payload = merged.toString();
+            }
+            send("POST", first.path, payload);
+            return;
+        }
+        if (first.secondaryPath == null) {
+            final HttpResponse<String> r = send("POST", first.path, first.payload);
+            if (first.secondaryPayload == null || first.secondaryPayload.isEmpty()) {
+                return;
+            }
+            if (r.body().isEmpty()) {
+                throw new IOException("Main payload POSTed, but there is no id in the response, SKIPPING secondary payload.");
+            }
+            first.secondaryPath = first.context + "/" + new JSONObject(r.body()).getInt("id");
+        }
+        send("PUT", first.secondaryPath, first.secondaryPayload);
+    }
+
+    private HttpResponse<String> send(String method, String path, String payload) throws IOException, InterruptedException {
+        final HttpRequest.Builder b = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint + "/" + path))
+                .timeout(Duration.ofSeconds(60))
+                .header("User-Agent", Uploader.USER_AGENT)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json");
+        if (token != null) {
+            b.header("token", token);
+        }
+        final byte[] body = payload.getBytes(UTF_8);
+        final boolean gzipped = gzip;
+        HttpResponse<String> r = send(b.copy(), method, body, gzipped);
+        if (gzipped && (r.statusCode() == 415 || r.statusCode() == 400)) {
+            LOGGER.warn(r.uri() + " responded " + r.statusCode() + " to a gzip compressed body, " +
+                    "sending it and all the following ones uncompressed. Set PERF_APP_UPLOAD_GZIP=false to skip this.");
+            gzip = false;
+            r = send(b, method, body, false);
+        }
+        final int code = r.statusCode();
+        if (code >= 200 && code < 300) {
+            return r;
+        }
+        if (code == 408 || code == 429 || code >= 500) {
+            throw new RetriableException(r.uri() + " responded " + code);
+        }
+        throw new IOException(r.uri() + " responded " + code + ": " + r.body());
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder b, String method, byte[] body, boolean gzipped)
+            throws IOException, InterruptedException {
+        if (gzipped) {
+            b.header("Content-Encoding", "gzip");
+            b.method(method, HttpRequest.BodyPublishers.ofByteArray(gzip(body)));
+        } else {
+            b.method(method, HttpRequest.BodyPublishers.ofByteArray(body));
+        }
+        final HttpRequest request = b.build();
+        LOGGER.info(method + "ing " + body.length + " bytes to " + request.uri());
+        try {
+            return hc.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException e) {
+            throw new RetriableException(request.uri() + ": " + e);
+        }
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private void spool(Upload u) {
+        try {
+            Files.createDirectories(spoolDir);
+            // Sortable by time, so as the backlog is uploaded in order
+            final String name = String.format("%013d-%d-%06d", System.currentTimeMillis(), ProcessHandle.current().pid(), SPOOL_SEQ.incrementAndGet());
+            final Path tmp = spoolDir.resolve(name + ".tmp");
+            Files.writeString(tmp, u.toJSON().toString(), UTF_8);
+            Files.move(tmp, spoolDir.resolve(name + ".json"), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.error("Failed to spool payload for " + u.path + ", it is lost: " + u.payload, e);
+        }
+    }
+
+    /**
+     * Enqueues payloads spooled by previous runs. A file is claimed by renaming it,
+     * so as queues running in parallel do not upload it twice.
+     */
+    private void recoverSpool() {
+        if (Files.notExists(spoolDir)) {
+            return;
+        }
+        final List<Path> spooled;
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            spooled = files.filter(f -> f.getFileName().toString().endsWith(".json")).sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            LOGGER.error("Failed to list spooled uploads in " + spoolDir, e);
+            return;
+        }
+        for (Path f : spooled) {
+            final Path claimed = f.resolveSibling(f.getFileName() + ".claimed-" + ProcessHandle.current().pid());
+            try {
+                Files.move(f, claimed, StandardCopyOption.ATOMIC_MOVE);
+                final Upload u = Upload.of(new JSONObject(Files.readString(claimed, UTF_8)));
+                Files.delete(claimed);
+                submit(u);
+            } catch (NoSuchFileException e) {
+                // Claimed by another queue
+            } catch (IOException | JSONException e) {
+                LOGGER.error("Failed to recover spooled upload " + f, e);
+            }
+        }
+        if (!spooled.isEmpty()) {
+            LOGGER.info("Enqueued " + spooled.size() + " payloads spooled by previous runs from " + spoolDir);
+        }
+    }
+}
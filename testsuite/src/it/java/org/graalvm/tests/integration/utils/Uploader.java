@@ -1,20 +1,11 @@
 package org.graalvm.tests.integration.utils;
 
 import org.jboss.logging.Logger;
-import org.json.JSONObject;
 import org.junit.platform.commons.util.StringUtils;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
 
 import static org.graalvm.tests.integration.utils.Commands.getProperty;
-import static org.jboss.resteasy.spi.HttpResponseCodes.SC_ACCEPTED;
-import static org.jboss.resteasy.spi.HttpResponseCodes.SC_CREATED;
-import static org.jboss.resteasy.spi.HttpResponseCodes.SC_OK;
 
 public class Uploader {
     private static final Logger LOGGER = Logger.getLogger(Uploader.class.getName());
@@ -23,77 +14,63 @@ public class Uploader {
     public static final String PERF_APP_ENDPOINT = getProperty("PERF_APP_ENDPOINT");
     public static final String PERF_APP_SECRET_TOKEN = getProperty("PERF_APP_SECRET_TOKEN");
     public static final String PERF_APP_RUNNER_INFO_ID = getProperty("PERF_APP_RUNNER_INFO_ID");
+    public static final long PERF_APP_UPLOAD_FLUSH_TIMEOUT_S = Long.parseLong(getProperty("PERF_APP_UPLOAD_FLUSH_TIMEOUT_S", "120"));
 
     public static final String USER_AGENT = "Mandrel Integration TS";
 
-    private static HttpClient hc = null;
+    private static UploadQueue queue = null;
 
-    public static HttpResponse<String> postRuntimePayload(final String appContext, final String jsonPayload) throws URISyntaxException, IOException, InterruptedException {
-        if (PERF_APP_ENDPOINT == null || PERF_APP_ENDPOINT.isEmpty() || PERF_APP_SECRET_TOKEN == null || PERF_APP_SECRET_TOKEN.isEmpty()) {
+    /**
+     * @return null if the collector is not configured
+     */
+    public static synchronized UploadQueue queue() {
+        if (StringUtils.isBlank(PERF_APP_ENDPOINT) || StringUtils.isBlank(PERF_APP_SECRET_TOKEN)) {
             LOGGER.error("Both PERF_APP_ENDPOINT and PERF_APP_SECRET_TOKEN (or -Dperf.app.endpoint -Dperf.app.secret.token) must" +
                     "be populated to use the uploader.");
             return null;
         }
-        if (hc == null) {
-            hc = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
+        if (queue == null) {
+            final UploadQueue q = new UploadQueue(PERF_APP_ENDPOINT, PERF_APP_SECRET_TOKEN);
+            // Whatever is not uploaded by the end of the run is spooled for the next one
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> q.close(PERF_APP_UPLOAD_FLUSH_TIMEOUT_S, TimeUnit.SECONDS)));
+            queue = q;
         }
-        final String[] headers = new String[] {
-                "User-Agent", USER_AGENT,
-                "token", PERF_APP_SECRET_TOKEN,
-                "Content-Type", "application/json",
-                "Accept", "application/json"
-        };
-        final HttpRequest releaseRequest = HttpRequest.newBuilder()
-                .method("POST", HttpRequest.BodyPublishers.ofString(jsonPayload))
-                .uri(new URI(PERF_APP_ENDPOINT + "/" + appContext))
-                .headers(headers)
-                .build();
-        LOGGER.info("POSTing payload to " + releaseRequest.uri());
-        return hc.send(releaseRequest, HttpResponse.BodyHandlers.ofString());
+        return queue;
     }
 
-    public static HttpResponse<String> postBuildtimePayload(final String appContext, final String qversion, final String mversion,
-            final String... jsonPayload) throws URISyntaxException, IOException, InterruptedException {
-        if (StringUtils.isBlank(PERF_APP_ENDPOINT) || StringUtils.isBlank(PERF_APP_SECRET_TOKEN)) {
-            LOGGER.error("Both PERF_APP_ENDPOINT and PERF_APP_SECRET_TOKEN (or -Dperf.app.endpoint -Dperf.app.secret.token) must" +
-                    "be populated to use the uploader.");
-            return null;
+    /**
+     * Enqueues the payload, it is uploaded in the background, see {@link UploadQueue}.
+     */
+    public static void submitRuntimePayload(final String appContext, final String jsonPayload) {
+        final UploadQueue q = queue();
+        if (q != null) {
+            q.submit(UploadQueue.Upload.runtime(appContext, jsonPayload));
         }
+    }
+
+    /**
+     * Enqueues the payloads, the secondary one, if any, is PUT to the id the collector assigns to the main one.
+     */
+    public static void submitBuildtimePayload(final String appContext, final String qversion, final String mversion,
+            final String... jsonPayload) {
         if (jsonPayload.length < 1 || jsonPayload.length > 2) {
             LOGGER.error("Invalid number of JSON payloads. Expected 1 or 2, got " + jsonPayload.length);
-            return null;
+            return;
         }
-        if (hc == null) {
-            hc = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
+        final UploadQueue q = queue();
+        if (q != null) {
+            final String path = appContext + "/import?t=" + mversion + "," + qversion +
+                    (PERF_APP_RUNNER_INFO_ID != null ? "&runnerid=" + PERF_APP_RUNNER_INFO_ID : "");
+            q.submit(UploadQueue.Upload.buildtime(appContext, path, jsonPayload[0], jsonPayload.length == 2 ? jsonPayload[1] : null));
         }
-        final String[] headers = new String[] {
-                "User-Agent", USER_AGENT,
-                "token", PERF_APP_SECRET_TOKEN,
-                "Content-Type", "application/json",
-                "Accept", "application/json"
-        };
-        final HttpRequest mainPayload = HttpRequest.newBuilder()
-                .method("POST", HttpRequest.BodyPublishers.ofString(jsonPayload[0]))
-                .uri(new URI(PERF_APP_ENDPOINT + "/" + appContext + "/import?t=" + mversion + "," + qversion
-                        + (PERF_APP_RUNNER_INFO_ID != null ? "&runnerid=" + PERF_APP_RUNNER_INFO_ID : "")))
-                .headers(headers)
-                .build();
-        LOGGER.info("POSTing to " + mainPayload.uri() + ", payload: " + jsonPayload[0]);
-        final HttpResponse<String> r = hc.send(mainPayload, HttpResponse.BodyHandlers.ofString());
-        if (jsonPayload.length == 2 && jsonPayload[1] != null && !jsonPayload[1].isEmpty()) {
-            if (!(r.statusCode() == SC_CREATED || r.statusCode() == SC_ACCEPTED || r.statusCode() == SC_OK) || r.body().isEmpty()) {
-                LOGGER.error("Failed to POST main payload, SKIPPING secondary payload: " + jsonPayload[1]);
-                return r;
-            }
-            int id = (new JSONObject(r.body())).getInt("id");
-            final HttpRequest secondaryPayload = HttpRequest.newBuilder()
-                    .method("PUT", HttpRequest.BodyPublishers.ofString(jsonPayload[1]))
-                    .uri(new URI(PERF_APP_ENDPOINT + "/" + appContext + "/" + id))
-                    .headers(headers)
-                    .build();
-            LOGGER.info("POSTing payload to " + secondaryPayload.uri());
-            return hc.send(secondaryPayload, HttpResponse.BodyHandlers.ofString());
+    }
+
+    /**
+     * Waits for the enqueued payloads to be uploaded, meant to be called once the measurements are done.
+     */
+    public static synchronized void flush() throws InterruptedException {
+        if (queue != null && !queue.flush(PERF_APP_UPLOAD_FLUSH_TIMEOUT_S, TimeUnit.SECONDS)) {
+            LOGGER.warn(queue.pending() + " payloads are still waiting to be uploaded, they will be spooled at exit.");
         }
-        return r;
     }
 }
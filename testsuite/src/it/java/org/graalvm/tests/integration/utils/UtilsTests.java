@@ -19,16 +19,62 @@ package org.graalvm.tests.integration.utils;
  *
  */
 
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.graalvm.tests.integration.utils.versions.VersionCache;
+import org.json.JSONArray;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.graalvm.tests.integration.RuntimesSmokeTest.BASE_DIR;
 import static org.graalvm.tests.integration.utils.Commands.parsePerfRecord;
 import static org.graalvm.tests.integration.utils.Commands.parseSerialGCLog;
+import static org.graalvm.tests.integration.utils.Commands.waitForFileToMatch;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 /**
  * Testing test suite...
@@ -79,6 +125,53 @@ public class UtilsTests {
         assertEquals(expected, actual, "perf tool output parsing method was likely changed without updating the test");
     }
 
+    @Test
+    public void parsePerfStatCSV(@TempDir Path tmp) throws IOException {
+        final Path csv = Path.of(BASE_DIR, "testsuite", "src", "test", "resources", "perf-stat.csv");
+        final String[] cmd = new String[] { "perf", "stat", "-x", ";", "-e", "cycles", "-o", "logs/perf-stat.csv", "--delay", "1000",
+                "--", "./target/quarkus-json-runner", "-XX:+PrintGC" };
+        final String filename = Commands.perfStatTarget(cmd);
+        assertEquals("./target/quarkus-json-runner -XX:+PrintGC", filename);
+        assertEquals(Path.of(BASE_DIR, "logs", "perf-stat.csv"), Commands.perfStatOutput(new File(BASE_DIR), cmd));
+        final Commands.PerfRecord pr = Commands.parsePerfStatCSV(csv, filename);
+        assertEquals(filename, pr.file);
+        assertEquals(1234.56, pr.taskClock, 0.0001);
+        assertEquals(421, pr.contextSwitches);
+        assertEquals(12, pr.cpuMigrations);
+        assertEquals(25118, pr.pageFaults);
+        assertEquals(4128935612L, pr.cycles);
+        assertEquals(5012398711L, pr.instructions);
+        assertEquals(1002145678L, pr.branches);
+        assertEquals(21456789L, pr.branchMisses);
+        assertEquals(1.302456789, pr.secondsTimeElapsed, 0.0000001);
+        assertEquals(15, pr.counters.size());
+        final Map<String, String> report = pr.report(new TreeMap<>());
+        assertEquals("1234.56", report.get("taskClock"));
+        assertEquals("3", report.get("majorFaults"));
+        assertEquals("25115", report.get("minorFaults"));
+        assertEquals("81.97", report.get("cyclesRunningPct"));
+        assertEquals("-1", report.get("cacheReferences"));
+        assertEquals("-1", report.get("cacheMisses"));
+        assertNull(report.get("cacheMissesRunningPct"), "Not counted at all, multiplexing is meaningless");
+        assertEquals("987654", report.get("llcLoadMisses"));
+        assertEquals("49.98", report.get("llcLoadMissesRunningPct"));
+        assertEquals("1302456789", report.get("durationTime"));
+        assertNull(report.get("contextSwitchesRunningPct"));
+        assertNull(report.get("cyclesVariancePct"));
+
+        // perf stat -r 5
+        final Path repeated = tmp.resolve("perf-stat-r.csv");
+        Files.writeString(repeated, "1001,25;msec;task-clock;5006250000;100,00;0,98;CPUs utilized\n" +
+                "4128935612;;cycles;1012030000;100,00;3,34;GHz;0,42%\n" +
+                "4128935612;;instructions;1,37%;1012030000;100,00;1,00;insn per cycle\n", UTF_8);
+        final Commands.PerfRecord r = Commands.parsePerfStatCSV(repeated, filename);
+        assertEquals(1001.25, r.taskClock, 0.0001);
+        assertEquals(-1, r.counters.get("cycles").variancePct, "Metric columns must not be mistaken for variance");
+        assertEquals(1.37, r.counters.get("instructions").variancePct, 0.0001);
+        assertEquals(100d, r.counters.get("instructions").runningPct, 0.0001);
+        assertEquals("1.37", r.report(new TreeMap<>()).get("instructionsVariancePct"));
+    }
+
     @Test
     public void parseSerialGC() throws IOException {
         final String filename = "./target/quarkus-json_+ParseOnce-runner -XX:+PrintGC";
@@ -97,4 +190,713 @@ public class UtilsTests {
                 pr.fullGCevents);
         assertEquals(expected, actual, "perf tool output parsing method was likely changed without updating the test");
     }
+
+    @Test
+    public void latencyHistogram() {
+        final LatencyHistogram h = new LatencyHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            h.record(i * 1000L);
+        }
+        assertEquals(100_000, h.getTotalCount());
+        assertEquals(1000L, h.getMin());
+        assertEquals(100_000_000L, h.getMax());
+        assertEquals(50_000_500L, h.getMean());
+        // Buckets are less than 1% wide
+        final double[][] expected = new double[][]{{50, 50_000_000d}, {90, 90_000_000d}, {99, 99_000_000d}, {99.9, 99_900_000d}};
+        for (double[] e : expected) {
+            final long actual = h.getValueAtPercentile(e[0]);
+            assertTrue(Math.abs(actual - e[1]) / e[1] < 0.01, "p" + e[0] + " should be ~" + e[1] + ", was " + actual);
+        }
+        final LatencyHistogram merged = new LatencyHistogram();
+        merged.add(h);
+        merged.add(h);
+        assertEquals(200_000, merged.getTotalCount());
+        assertEquals(h.getValueAtPercentile(99), merged.getValueAtPercentile(99));
+        for (long v = 0; v < 1_000_000; v += 7) {
+            assertTrue(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(v)) >= v);
+        }
+    }
+
+    @Test
+    public void parseProc() {
+        final String status = "" +
+                "Name:\tquarkus-runner\n" +
+                "VmPeak:\t  1049268 kB\n" +
+                "VmHWM:\t    61812 kB\n" +
+                "VmRSS:\t    58124 kB\n" +
+                "Threads:\t17\n";
+        assertArrayEquals(new long[]{58124L, 61812L}, ProcessSampler.parseStatus(status));
+        // comm with spaces and parentheses
+        final String stat = "4242 (my (weird) app) S 1934 4242 1934 0 -1 4194304 80 0 0 0 130 27 0 0 20 0 17 0 143344 2703360 311 " +
+                "18446744073709551615 94748733128704 94748733148585 140735109281968 0 0 0 0 0 0 0 0 0 17 0 0 0 0 0 0\n";
+        assertArrayEquals(new long[]{130L, 27L, 17L}, ProcessSampler.parseStat(stat));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void processSampler() throws InterruptedException {
+        final ProcessSampler sampler = new ProcessSampler(ProcessHandle.current().pid(), 5).start();
+        Thread.sleep(100);
+        final ProcessSampler.Summary summary = sampler.stop();
+        assertTrue(summary.samples > 1, "There should have been more samples taken.");
+        assertTrue(summary.finalRssKb > 0 && summary.peakRssKb >= summary.finalRssKb);
+        assertTrue(summary.peakThreads > 1 && summary.peakFds > 0);
+        assertTrue(sampler.peakRssKb(0, sampler.elapsedMs()) > 0);
+        assertEquals(-1L, sampler.peakRssKb(sampler.elapsedMs() + 1000, sampler.elapsedMs() + 2000), "No samples in the future");
+    }
+
+    @Test
+    public void logTailer(@TempDir Path tmp) throws IOException, InterruptedException, ExecutionException, TimeoutException {
+        final Path log = tmp.resolve("log-tailer.log");
+        Files.writeString(log, "first line\nsecond line\n", UTF_8);
+        final CompletableFuture<Integer> started = LogTailer.subscribe(Pattern.compile(".*started in ž.*"), log, 0);
+        final CompletableFuture<Integer> stopped = LogTailer.subscribe(Pattern.compile(".*stopped.*"), log, 0);
+        assertEquals(2, waitForFileToMatch(Pattern.compile("second.*"), log, 0, 5, TimeUnit.SECONDS));
+        // Multibyte character split between two writes
+        final byte[] z = "ž".getBytes(UTF_8);
+        Files.write(log, "app started in ".getBytes(UTF_8), StandardOpenOption.APPEND);
+        Files.write(log, new byte[]{z[0]}, StandardOpenOption.APPEND);
+        Thread.sleep(LogTailer.POLL_MS * 3);
+        Files.write(log, new byte[]{z[1]}, StandardOpenOption.APPEND);
+        Files.write(log, "\r\nthird\rstopped\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+        assertEquals(3, started.get(5, TimeUnit.SECONDS));
+        assertEquals(5, stopped.get(5, TimeUnit.SECONDS));
+        // Already read lines are seen by a new subscriber, skipped ones are not
+        assertEquals(1, waitForFileToMatch(Pattern.compile(".*line"), log, 0, 5, TimeUnit.SECONDS));
+        assertEquals(2, waitForFileToMatch(Pattern.compile(".*line"), log, 1, 5, TimeUnit.SECONDS));
+        assertEquals(-1, waitForFileToMatch(Pattern.compile(".*line"), log, 2, 100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void whitelistMatcher(@TempDir Path tmp) throws IOException {
+        assertEquals("[WARNING]", WhitelistMatcher.requiredLiteral(Pattern.compile("^\\[WARNING\\][\\s\\t]*$")));
+        assertEquals("Database driver: undefined/unknown", WhitelistMatcher.requiredLiteral(Pattern.compile(".*Database driver: undefined/unknown.*")));
+        assertEquals(" Failures: 0, Errors: 0,", WhitelistMatcher.requiredLiteral(Pattern.compile(".* Failures: 0, Errors: 0,.*")));
+        assertEquals("GC warning: ", WhitelistMatcher.requiredLiteral(Pattern.compile(".*GC warning: [0-9.]+s spent in [0-9]+ GCs.*")));
+        assertEquals("Warning: Could not", WhitelistMatcher.requiredLiteral(Pattern.compile("Warning: Could nott?.*")));
+        assertNull(WhitelistMatcher.requiredLiteral(Pattern.compile(".*(foo|bar baz).*")));
+        assertNull(WhitelistMatcher.requiredLiteral(Pattern.compile(".*\\QLiteral\\E.*")));
+        assertNull(WhitelistMatcher.requiredLiteral(Pattern.compile("(?i:.*warn.*)")));
+        assertNull(WhitelistMatcher.requiredLiteral(Pattern.compile(".*ab.*")));
+
+        final Path log = tmp.resolve("whitelist.log");
+        final StringBuilder s = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            s.append("INFO all good ").append(i).append('\n');
+            if (i % 10_000 == 0) {
+                s.append("Downloaded from central: https://repo.maven.apache.org/maven2/org/apache/maven/maven-error-diagnostics/2.2.1/x.pom\n");
+                s.append("Database driver: undefined/unknown\n");
+            }
+        }
+        s.append("SEVERE: Something bad ").append('\n');
+        s.append("java.io.FileNotFoundException: not found").append('\n');
+        final WhitelistMatcher whitelist = WhitelistMatcher.of(WhitelistLogLines.NONE, false);
+        Files.writeString(log, s.toString(), UTF_8);
+        final WhitelistMatcher.Result r = whitelist.scan(log, Pattern.compile("(?i:.*(ERROR|SEVERE|WARN|No such file|Not found|unknown).*)"),
+                new String[]{"error", "severe", "warn", "no such file", "not found", "unknown"});
+        assertEquals(2, r.offendingLines.size(), "Offending lines: " + r.offendingLines);
+        assertEquals(10, r.whitelistedLines.size());
+        assertEquals(5, r.hits[whitelist.whitelistedBy("Database driver: undefined/unknown")]);
+        assertEquals(r.whitelistedLines.size(), Arrays.stream(r.hits).sum());
+    }
+
+    @Test
+    public void buildSchedulerDemand() {
+        final BuildScheduler s = new BuildScheduler(64, 4096);
+        final int[] nativeBuild = s.demand(Arrays.asList("mvn", "package", "-Pnative", "-Dquarkus.version=3.8.4"));
+        assertEquals(Math.min(64, BuildScheduler.NATIVE_CORES), nativeBuild[0]);
+        assertEquals(4096, nativeBuild[1], "Demand must be capped at the budget, otherwise the build would never start");
+        assertArrayEquals(new int[]{1, (int) BuildScheduler.JVM_BUILD_MB}, s.demand(Arrays.asList("mvn", "package")));
+        final BuildScheduler small = new BuildScheduler(2, 512);
+        assertArrayEquals(new int[]{1, 512}, small.demand(Arrays.asList("mvn", "package")));
+        assertEquals(Math.min(2, BuildScheduler.NATIVE_CORES), small.demand(Arrays.asList("/opt/mandrel/bin/native-image", "-jar", "app.jar"))[0]);
+    }
+
+    @Test
+    public void buildSchedulerRun(@TempDir Path tmp) throws IOException, InterruptedException {
+        assumeTrue(!Commands.IS_THIS_WINDOWS, "Builds of this test run sleep.");
+        // Apps cannot be loaded otherwise, see quarkus-spöklik-encoding
+        assumeTrue(UTF_8.name().equals(System.getProperty("sun.jnu.encoding")), "File system encoding is not UTF-8");
+        final Path dirA = Files.createDirectory(tmp.resolve("a"));
+        final Path dirB = Files.createDirectory(tmp.resolve("b"));
+        final List<BuildScheduler.Build> builds = List.of(sleepBuild(dirA), sleepBuild(dirB));
+        List<BuildScheduler.Result> r = new BuildScheduler(2, 2 * BuildScheduler.JVM_BUILD_MB).run(builds);
+        assertEquals(builds.get(0), r.get(0).build);
+        assertEquals(builds.get(1), r.get(1).build);
+        assertTrue(overlap(r.get(0), r.get(1)), "There is budget for both builds, they must run at the same time.");
+        r = new BuildScheduler(2, BuildScheduler.JVM_BUILD_MB).run(builds);
+        assertFalse(overlap(r.get(0), r.get(1)), "There is memory for a single build only.");
+        assertTrue(r.get(0).getQueuedMs() + r.get(1).getQueuedMs() >= 900, "One build must have waited for the other one.");
+        r = new BuildScheduler(1, 2 * BuildScheduler.JVM_BUILD_MB).run(builds);
+        assertFalse(overlap(r.get(0), r.get(1)), "There is a single core only.");
+        // The same directory, i.e. the same target dir, is never built twice at the same time
+        r = new BuildScheduler(2, 2 * BuildScheduler.JVM_BUILD_MB).run(List.of(sleepBuild(dirA), sleepBuild(dirA)));
+        assertFalse(overlap(r.get(0), r.get(1)), "Builds in the same directory must run one after another.");
+    }
+
+    private static BuildScheduler.Build sleepBuild(Path dir) {
+        return build(dir, dir.resolve("build.log"), null, List.of("sleep", "1"));
+    }
+
+    private static BuildScheduler.Build build(Path dir, Path log, Map<String, String> env, List<String> command) {
+        return new BuildScheduler.Build(Apps.JFR_PERFORMANCE, dir.toFile(), log.toFile(), env, null) {
+            @Override
+            public List<List<String>> commands() {
+                return List.of(command);
+            }
+        };
+    }
+
+    private static boolean overlap(BuildScheduler.Result a, BuildScheduler.Result b) {
+        final BuildScheduler.CommandTiming x = a.timings.get(0);
+        final BuildScheduler.CommandTiming y = b.timings.get(0);
+        return x.startedEpochMs < y.startedEpochMs + y.durationMs && y.startedEpochMs < x.startedEpochMs + x.durationMs;
+    }
+
+    @Test
+    public void buildCache(@TempDir Path tmp) throws IOException, InterruptedException, ExecutionException {
+        // Apps cannot be loaded otherwise, see quarkus-spöklik-encoding
+        assumeTrue(UTF_8.name().equals(System.getProperty("sun.jnu.encoding")), "File system encoding is not UTF-8");
+        final Path app = Files.createDirectories(tmp.resolve("app"));
+        final Path cache = tmp.resolve("cache");
+        final Path log = tmp.resolve("build.log");
+        final List<String> mvn = List.of("mvn", "package");
+        Files.createDirectories(app.resolve("src"));
+        Files.writeString(app.resolve("pom.xml"), "<project/>", UTF_8);
+        Files.writeString(app.resolve("src").resolve("Main.java"), "class Main {}", UTF_8);
+
+        final String key = BuildCache.key(build(app, log, null, mvn), "22.3.0 17.0.5\n");
+        assertEquals(key, BuildCache.key(build(app, log, null, mvn), "22.3.0 17.0.5\n"), "The same build must hash the same");
+        Files.createDirectories(app.resolve("target"));
+        Files.writeString(app.resolve("target").resolve("app-runner"), "native executable", UTF_8);
+        Files.createDirectories(app.resolve("logs"));
+        Files.writeString(app.resolve("logs").resolve("build-and-run.log"), "whatever", UTF_8);
+        assertEquals(key, BuildCache.key(build(app, log, null, mvn), "22.3.0 17.0.5\n"), "Outputs and logs are not hashed");
+        assertNotEquals(key, BuildCache.key(build(app, log, null, List.of("mvn", "package", "-Pnative")), "22.3.0 17.0.5\n"));
+        assertNotEquals(key, BuildCache.key(build(app, log, Map.of("MAVEN_OPTS", "-Xmx1g"), mvn), "22.3.0 17.0.5\n"));
+        assertNotEquals(key, BuildCache.key(build(app, log, null, mvn), "23.1.0 21.0.1\n"));
+        Files.writeString(app.resolve("src").resolve("Main.java"), "class Main { }", UTF_8);
+        assertNotEquals(key, BuildCache.key(build(app, log, null, mvn), "22.3.0 17.0.5\n"));
+
+        // Just the output of this build goes to the cache
+        Files.writeString(log, "previous build\n", UTF_8);
+        final long offset = Files.size(log);
+        Files.writeString(log, "this build\n", UTF_8, StandardOpenOption.APPEND);
+        assertFalse(BuildCache.restore(cache, build(app, log, null, mvn), key));
+        BuildCache.store(cache, build(app, log, null, mvn), key, offset);
+        assertEquals("this build\n", Files.readString(cache.resolve(key).resolve("build.log"), UTF_8));
+        assertFalse(Files.exists(cache.resolve(key).resolve("logs")));
+
+        FileUtils.deleteDirectory(app.resolve("target").toFile());
+        final Path restoredLog = tmp.resolve("restored.log");
+        Files.writeString(restoredLog, "before\n", UTF_8);
+        assertTrue(BuildCache.restore(cache, build(app, restoredLog, null, mvn), key));
+        assertEquals("native executable", Files.readString(app.resolve("target").resolve("app-runner"), UTF_8));
+        final String restored = Files.readString(restoredLog, UTF_8);
+        assertTrue(restored.startsWith("before\nBuild outputs restored from "), restored);
+        assertTrue(restored.endsWith("this build\n"), restored);
+
+        // Concurrent builds of the same thing store it once, no temporary entries are left behind
+        final String concurrentKey = key + "-concurrent";
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> stores = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                stores.add(executor.submit(() -> {
+                    BuildCache.store(cache, build(app, log, null, mvn), concurrentKey, offset);
+                    return null;
+                }));
+            }
+            for (Future<?> f : stores) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("native executable", Files.readString(cache.resolve(concurrentKey).resolve("target").resolve("app-runner"), UTF_8));
+        assertEquals("this build\n", Files.readString(cache.resolve(concurrentKey).resolve("build.log"), UTF_8));
+        try (Stream<Path> entries = Files.list(cache)) {
+            assertEquals(List.of(key, concurrentKey), entries.map(e -> e.getFileName().toString()).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void sampleStats() {
+        final SampleStats s = new SampleStats(new long[]{510, 498, 502, 1900, 505, 500, 507});
+        assertEquals(505d, s.median);
+        // |deviations| sorted: 0, 2, 3, 5, 5, 7, 1395
+        assertEquals(5d, s.mad);
+        assertEquals(498, s.min);
+        assertEquals(1900, s.max);
+        assertTrue(s.ciLower <= s.median && s.median <= s.ciUpper, s.toString());
+        assertTrue(s.ciUpper < 1900, "A single outlier must not drag the interval of the median: " + s);
+        assertEquals(s.ciLower, new SampleStats(new long[]{510, 498, 502, 1900, 505, 500, 507}).ciLower, "Bootstrap must be reproducible");
+        assertEquals((long) Math.floor(s.ciLower), s.get(SampleStats.Bound.LOWER));
+        assertEquals(505L, s.get(SampleStats.Bound.of("median")));
+        assertEquals(1000d, new SampleStats(new long[]{1000}).ciUpper);
+        assertEquals(15d, new SampleStats(new long[]{10, 20}).median);
+    }
+
+    @Test
+    public void pairedComparison() {
+        final PairedComparison c = new PairedComparison("startup",
+                new long[]{110, 120, 105, 130, 115, 125}, new long[]{100, 100, 100, 100, 100, 100});
+        assertArrayEquals(new double[]{10, 20, 5, 30, 15, 25}, c.overheadsPct);
+        assertEquals(17.5d, c.medianPct);
+        assertTrue(c.ciLowerPct <= c.medianPct && c.medianPct <= c.ciUpperPct, c.toString());
+        // All 6 differences positive: 2 * 1/2^6
+        assertEquals(0.03125d, c.pValue, 1e-12);
+        assertEquals(18L, c.get(SampleStats.Bound.MEDIAN));
+        // JFR faster is a negative overhead
+        assertEquals(-50d, new PairedComparison("rss", new long[]{50}, new long[]{100}).medianPct);
+        // Tied magnitudes, ranks 1.5, 1.5, 3, W- = 1.5, 3 of the 8 sign assignments are as extreme
+        assertEquals(0.75d, PairedComparison.wilcoxonSignedRank(new double[]{1, -1, 2}), 1e-12);
+        assertEquals(1d, PairedComparison.wilcoxonSignedRank(new double[]{0, 0, 0}));
+        final double[] many = new double[60];
+        Arrays.fill(many, 3d);
+        assertTrue(PairedComparison.wilcoxonSignedRank(many) < 1e-6, "Normal approximation of 60 positive differences");
+
+        assertEquals(Arrays.asList(true, false, true, false, true, false),
+                PairedComparison.schedule(3, PairedComparison.Order.of("interleaved"), new Random(SampleStats.SEED)));
+        final List<Boolean> randomized = PairedComparison.schedule(50, PairedComparison.Order.RANDOMIZED, new Random(SampleStats.SEED));
+        assertEquals(100, randomized.size());
+        for (int i = 0; i < randomized.size(); i += 2) {
+            assertTrue(randomized.get(i) ^ randomized.get(i + 1), "Each pair must have one A and one B trial");
+        }
+        assertTrue(!randomized.equals(PairedComparison.schedule(50, PairedComparison.Order.INTERLEAVED, null)),
+                "Randomized order must differ from interleaved");
+    }
+
+    @Name("mandrel.tests.Park")
+    static class ParkEvent extends Event {
+        @Label("Parked Class")
+        Class<?> parkedClass;
+    }
+
+    private static Path record(Path dir, String name, int parks) throws IOException {
+        final Path file = dir.resolve(name);
+        try (Recording r = new Recording()) {
+            r.enable(ParkEvent.class);
+            r.start();
+            for (int i = 0; i < parks; i++) {
+                final ParkEvent e = new ParkEvent();
+                e.parkedClass = i % 2 == 0 ? UtilsTests.class : String.class;
+                e.commit();
+            }
+            r.stop();
+            r.dump(file);
+        }
+        return file;
+    }
+
+    @Test
+    public void jfrAnalyzer(@TempDir Path dir) throws IOException, InterruptedException {
+        final Path a = record(dir, "a.jfr", 10);
+        final Path b = record(dir, "b.jfr", 5);
+        // Concatenated recordings are a valid multi chunk recording
+        final Path ab = dir.resolve("ab.jfr");
+        Files.write(ab, Files.readAllBytes(a));
+        Files.write(ab, Files.readAllBytes(b), StandardOpenOption.APPEND);
+        assertEquals(2, JFRAnalyzer.chunks(ab).size());
+        for (int threads : new int[]{1, 2}) {
+            final JFRAnalyzer.Result r = new JFRAnalyzer(ab)
+                    .match("utils", "mandrel.tests.Park", JFRAnalyzer.classField("parkedClass", UtilsTests.class.getName()))
+                    .match("string", "mandrel.tests.Park", JFRAnalyzer.fieldMatches("parkedClass", Pattern.compile("java\\.lang\\..*")))
+                    .match("all", "mandrel.tests.Park", null)
+                    .threads(threads)
+                    .analyze();
+            assertEquals(15, r.getEventCount("mandrel.tests.Park"), r.toString());
+            assertEquals(8, r.getMatchCount("utils"), r.toString());
+            assertEquals(7, r.getMatchCount("string"), r.toString());
+            assertEquals(15, r.getMatchCount("all"), r.toString());
+            assertEquals(15L, r.matchCountsByThread.get("all").get(Thread.currentThread().getName()));
+            assertEquals(15L, r.matchCountsByTopFrame.get("all").values().stream().mapToLong(Long::longValue).sum());
+            assertTrue(r.matchCountsByTopFrame.get("all").keySet().stream().allMatch(f -> f.startsWith(UtilsTests.class.getName() + ".record:")),
+                    r.matchCountsByTopFrame.toString());
+        }
+    }
+
+    @Test
+    public void perfHistory() throws IOException {
+        final PerfHistory.Baseline b = new PerfHistory.Baseline(new long[]{100, 102, 98, 101, 99, 100, 250});
+        assertEquals(100d, b.median);
+        assertEquals(1d, b.mad);
+        assertEquals(105L, b.limit(3));
+        // 1.4826 * MAD is less than the minimal margin of 2% of the median
+        assertEquals(102L, b.limit(1));
+        assertEquals(115L, new PerfHistory.Baseline(new long[]{90, 100, 110}).limit(1));
+
+        final long[] stable = new long[]{100, 101, 99, 100, 102, 98, 100, 101};
+        assertFalse(PerfHistory.isStepRegression(stable, 3));
+        // A single spike is not a step
+        assertFalse(PerfHistory.isStepRegression(new long[]{100, 101, 99, 100, 102, 98, 100, 101, 100, 150}, 3));
+        // 4 % step up
+        assertTrue(PerfHistory.isStepRegression(new long[]{100, 101, 99, 100, 102, 98, 100, 104, 105, 104}, 3));
+        assertFalse(PerfHistory.isStepRegression(new long[]{100, 104, 105, 104}, 3), "Not enough history");
+
+        final PerfHistory.Key key = new PerfHistory.Key("UtilsTests" + System.nanoTime(), Logs.Mode.NATIVE.toString(),
+                "linux", false, "24.0.0", "3.8.4");
+        try {
+            assertArrayEquals(new long[0], PerfHistory.values(key, "RSS.threshold.kB", false));
+            for (long v : stable) {
+                PerfHistory.record(key, Map.of("RSS.threshold.kB", v, "mean.latency", Logs.SKIP), true);
+            }
+            assertArrayEquals(stable, PerfHistory.values(key, "RSS.threshold.kB", false));
+            assertArrayEquals(new long[0], PerfHistory.values(key, "mean.latency", false));
+            assertEquals(100d, PerfHistory.baseline(PerfHistory.values(key, "RSS.threshold.kB", true)).median);
+            // Failed runs do not shift the baseline, the step detector sees them though
+            for (long v : new long[]{104, 105, 104}) {
+                PerfHistory.record(key, Map.of("RSS.threshold.kB", v), false);
+            }
+            assertArrayEquals(stable, PerfHistory.values(key, "RSS.threshold.kB", true));
+            assertEquals(100d, PerfHistory.baseline(PerfHistory.values(key, "RSS.threshold.kB", true)).median);
+            assertTrue(PerfHistory.isStepRegression(PerfHistory.values(key, "RSS.threshold.kB", false), 3));
+            // Rows of older files have no passed column
+            Files.writeString(key.file(), "1,RSS.threshold.kB,200\n", UTF_8, StandardOpenOption.APPEND);
+            assertEquals(200L, PerfHistory.values(key, "RSS.threshold.kB", true)[stable.length]);
+        } finally {
+            Files.deleteIfExists(key.file());
+        }
+    }
+
+    @Test
+    public void uploadQueue(@TempDir Path spool) throws IOException, InterruptedException {
+        try (CollectorStub collector = new CollectorStub(2)) {
+            try (UploadQueue q = new UploadQueue(collector.endpoint(), "secret", spool, 3, 10, true)) {
+                q.submit(UploadQueue.Upload.runtime("api/perf", "[{\"a\":1}]"));
+                q.submit(UploadQueue.Upload.runtime("api/perf", "[{\"a\":2},{\"a\":3}]"));
+                q.submit(UploadQueue.Upload.buildtime("api/stats", "api/stats/import?t=24.0,3.8", "{\"main\":1}", "{\"secondary\":1}"));
+                assertTrue(q.flush(10, TimeUnit.SECONDS));
+            }
+            final List<CollectorStub.Request> runtime = collector.requests.stream()
+                    .filter(r -> r.uri.equals("/api/perf")).collect(Collectors.toList());
+            assertEquals(3, runtime.stream().mapToInt(r -> new JSONArray(r.body).length()).sum(), "Retried after 503, all records uploaded");
+            assertTrue(collector.requests.stream().allMatch(r -> r.gzipped && "secret".equals(r.token)));
+            final CollectorStub.Request main = collector.requests.stream()
+                    .filter(r -> r.uri.equals("/api/stats/import?t=24.0,3.8")).findFirst().orElseThrow();
+            final int id = collector.requests.indexOf(main) + 1;
+            assertTrue(collector.requests.stream().anyMatch(r -> r.method.equals("PUT") && r.uri.equals("/api/stats/" + id) &&
+                    r.body.equals("{\"secondary\":1}")), "Secondary payload PUT to the id of the main one");
+            assertEquals(1, collector.requests.stream().filter(r -> r.body.equals("{\"main\":1}")).count(), "Main payload uploaded once");
+        }
+        try (CollectorStub collector = new CollectorStub(0, true)) {
+            try (UploadQueue q = new UploadQueue(collector.endpoint(), "secret", spool, 1, 10, true)) {
+                q.submit(UploadQueue.Upload.runtime("api/perf", "[{\"a\":1}]"));
+                assertTrue(q.flush(10, TimeUnit.SECONDS));
+                q.submit(UploadQueue.Upload.runtime("api/perf", "[{\"a\":2}]"));
+                assertTrue(q.flush(10, TimeUnit.SECONDS));
+            }
+            assertEquals(2, collector.requests.size(), "Rejected gzip body sent again uncompressed, not dropped");
+            assertTrue(collector.requests.stream().noneMatch(r -> r.gzipped));
+            try (Stream<Path> files = Files.list(spool)) {
+                assertEquals(0, files.count());
+            }
+        }
+        // Nothing listens there anymore, payloads are spooled
+        final String unreachable;
+        try (CollectorStub gone = new CollectorStub(0)) {
+            unreachable = gone.endpoint();
+        }
+        try (UploadQueue q = new UploadQueue(unreachable, "secret", spool, 1, 10, false)) {
+            q.submit(UploadQueue.Upload.runtime("api/perf", "[{\"a\":1}]"));
+            q.submit(UploadQueue.Upload.runtime("api/perf", "[{\"a\":2}]"));
+            assertTrue(q.flush(30, TimeUnit.SECONDS));
+        }
+        try (Stream<Path> files = Files.list(spool)) {
+            assertEquals(2, files.count());
+        }
+        // The next run flushes the backlog, spooled payloads waiting together are merged into one request
+        try (CollectorStub collector = new CollectorStub(0);
+             UploadQueue q = new UploadQueue(collector.endpoint(), "secret", spool, 1, 10, false)) {
+            assertTrue(q.flush(10, TimeUnit.SECONDS));
+            assertEquals(1, collector.requests.size());
+            assertEquals(new JSONArray("[{\"a\":1},{\"a\":2}]").toString(), new JSONArray(collector.requests.get(0).body).toString());
+        }
+        try (Stream<Path> files = Files.list(spool)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void logSink(@TempDir Path dir) throws IOException, InterruptedException, ExecutionException {
+        final Path log = dir.resolve("build-and-run.log");
+        Files.writeString(log, "Command: before\n", UTF_8);
+        try (LogSink a = LogSink.open(log); LogSink b = LogSink.open(log)) {
+            assertSame(a, b, "One sink per file");
+            // More lines than the queue holds, producers block instead of losing lines
+            final int lines = LogSink.QUEUE_LINES * 2;
+            final CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+                try {
+                    for (int i = 0; i < lines; i++) {
+                        a.append("a" + i);
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            for (int i = 0; i < lines; i++) {
+                b.append("b" + i);
+            }
+            producer.get();
+            b.append("last line");
+            // The flush barrier makes buffered lines visible to waitForFileToMatch
+            assertEquals(lines * 2 + 2, waitForFileToMatch(Pattern.compile("last line"), log, 0, 5, TimeUnit.SECONDS));
+            final List<String> written = Files.readAllLines(log, UTF_8);
+            assertEquals("Command: before", written.get(0));
+            assertEquals(lines * 2 + 2, written.size());
+            assertEquals("a" + (lines - 1), written.stream().filter(l -> l.startsWith("a")).reduce((x, y) -> y).orElseThrow());
+        }
+        final Path timestamped = dir.resolve("timestamped.log");
+        try (LogSink s = LogSink.open(timestamped, true)) {
+            s.append("started");
+        }
+        assertTrue(Pattern.matches("\\[\\+[0-9]+\\.[0-9]{6}s\\] started\n", Files.readString(timestamped, UTF_8)));
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    public void processLifecycle() throws IOException, InterruptedException {
+        // A child and a grandchild, the grandchild ignores SIGTERM
+        final Process p = new ProcessBuilder("bash", "-c", "sleep 60 & (trap '' TERM; sleep 60) & wait").start();
+        try {
+            List<ProcessHandle> tree = ProcessLifecycle.tree(p.toHandle());
+            for (int i = 0; i < 50 && tree.size() < 3; i++) {
+                Thread.sleep(100);
+                tree = ProcessLifecycle.tree(p.toHandle());
+            }
+            assertTrue(tree.size() >= 3, tree.toString());
+            assertEquals(p.pid(), tree.get(tree.size() - 1).pid(), "The root goes last");
+            final long start = System.nanoTime();
+            assertTrue(ProcessLifecycle.stop(p.toHandle(), false, false, 500, 5000));
+            assertTrue(tree.stream().noneMatch(ProcessHandle::isAlive), "The whole tree is gone");
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000, "SIGKILL follows after the grace period");
+        } finally {
+            p.destroyForcibly();
+        }
+
+        // Forcefully, the root still gets SIGTERM, e.g. to dump a JFR recording
+        final Process root = new ProcessBuilder("bash", "-c", "trap 'exit 3' TERM; while true; do sleep 0.1; done").start();
+        try {
+            Thread.sleep(300);
+            assertTrue(ProcessLifecycle.stop(root.toHandle(), true, false, 5000, 5000));
+            assertEquals(3, root.waitFor(), "The root must have exited on SIGTERM, not on SIGKILL");
+        } finally {
+            root.destroyForcibly();
+        }
+
+        final ServerSocket server = new ServerSocket(0);
+        final int port = server.getLocalPort();
+        try {
+            assertEquals(Boolean.TRUE, ProcessLifecycle.isListening(port));
+            assertFalse(ProcessLifecycle.waitForPortReleased(port, 200, TimeUnit.MILLISECONDS));
+            assertFalse(Commands.waitForTcpClosed("localhost", port, 0));
+        } finally {
+            server.close();
+        }
+        assertTrue(ProcessLifecycle.waitForPortReleased(port, 5, TimeUnit.SECONDS));
+        assertTrue(Commands.waitForTcpClosed("localhost", port, 5));
+    }
+
+    @Test
+    public void resourceAllocator() throws IOException {
+        final int a = ResourceAllocator.freePort();
+        final int b = ResourceAllocator.freePort();
+        assertTrue(a != b, "A port is handed out once");
+        try (ServerSocket s = new ServerSocket(a)) {
+            assertEquals(a, s.getLocalPort());
+        }
+        if (!ResourceAllocator.ISOLATE) {
+            assertEquals(8080, ResourceAllocator.port(8080));
+            assertEquals("-Dserver.port=8080", ResourceAllocator.resolvePorts("-Dserver.port=<PORT:8080>"));
+        }
+        // Apps has apps/quarkus-spöklik-encoding
+        assumeTrue(UTF_8.name().equals(System.getProperty("sun.jnu.encoding")), "File system encoding is not UTF-8");
+        if (!ResourceAllocator.ISOLATE) {
+            assertEquals("http://localhost:8080/greet", Apps.HELIDON_QUICKSTART_SE.urls()[0][0]);
+        }
+        assertTrue(ResourceAllocator.takesPorts(Apps.HELIDON_QUICKSTART_SE));
+        assertFalse(ResourceAllocator.takesPorts(Apps.TIMEZONES));
+        assertTrue(ResourceAllocator.isRelocatable(Apps.TIMEZONES));
+        assertFalse(ResourceAllocator.isRelocatable(Apps.IMAGEIO_BUILDER_IMAGE), "Runs in a container");
+
+        final Path target = Path.of(BASE_DIR, Apps.TIMEZONES.dir, "target");
+        final boolean created = !Files.exists(target);
+        Files.createDirectories(target);
+        final Path copy = ResourceAllocator.appDir(Apps.TIMEZONES, true);
+        try {
+            assertTrue(copy.startsWith(ResourceAllocator.WORKSPACES), copy.toString());
+            assertTrue(Files.exists(copy.resolve("pom.xml")));
+            assertTrue(Files.exists(copy.resolve(Path.of("..", "..", "pom.xml")).normalize()), "The parent's relativePath");
+            assertFalse(Files.exists(copy.resolve("target")), "Build outputs are not copied");
+            assertEquals(copy, ResourceAllocator.appDir(Apps.TIMEZONES, true), "One copy per test thread");
+        } finally {
+            ResourceAllocator.release();
+            if (created) {
+                FileUtils.deleteQuietly(target.toFile());
+            }
+        }
+        assertFalse(Files.exists(copy), "Released");
+    }
+
+    @Test
+    public void cgroupSampler() throws IOException, InterruptedException {
+        assertEquals("/system.slice/docker-1a2b.scope", CgroupSampler.parseCgroupPath("0::/system.slice/docker-1a2b.scope\n"));
+        assertNull(CgroupSampler.parseCgroupPath("12:memory:/docker/1a2b\n11:cpu,cpuacct:/docker/1a2b\n"), "cgroup v1");
+        final Map<String, Long> memory = CgroupSampler.parseKeyValues("anon 10485760\nfile 4194304\nfile_mapped 2097152\n");
+        assertEquals(10485760L, memory.get("anon"));
+        assertEquals(2097152L, memory.get("file_mapped"));
+        assertArrayEquals(new long[]{1459200L + 4096L, 314773504L}, CgroupSampler.parseIoStat(
+                "8:0 rbytes=1459200 wbytes=314773504 rios=192 wios=353 dbytes=0 dios=0\n" +
+                        "253:0 rbytes=4096 wbytes=0 rios=1 wios=0 dbytes=0 dios=0\n"));
+
+        final Path cgroup = CgroupSampler.locate(ProcessHandle.current().pid());
+        assumeTrue(cgroup != null, "cgroup v2 is not available");
+        final CgroupSampler sampler = new CgroupSampler(cgroup, 10).start();
+        Thread.sleep(100);
+        final CgroupSampler.Summary summary = sampler.stop();
+        assertTrue(summary.samples > 1, summary.toString());
+        assertTrue(summary.finalRssKb > 0, summary.toString());
+        assertTrue(summary.peakCurrentKb >= summary.finalCurrentKb, summary.toString());
+    }
+
+    @Test
+    public void versionCache(@TempDir Path dir) throws IOException {
+        final Path nativeImage = dir.resolve("native-image");
+        Files.writeString(nativeImage, "#!/bin/sh\necho native-image 21.3.0.0-Final Mandrel Distribution (Java Version 17.0.1+12)\n", UTF_8);
+        final String a = VersionCache.localFingerprint(nativeImage);
+        assertEquals(a, VersionCache.localFingerprint(nativeImage), "Stable for the same file");
+        assertNull(VersionCache.localFingerprint(dir.resolve("nothing-here")));
+
+        final VersionCache cache = new VersionCache(dir.resolve("cache"));
+        assertNull(cache.get(a));
+        final List<String> output = List.of("native-image 17.0.6 2023-01-17",
+                "OpenJDK Runtime Environment Mandrel-23.0.0-dev (build 17.0.6+10)",
+                "OpenJDK 64-Bit Server VM Mandrel-23.0.0-dev (build 17.0.6+10, mixed mode)");
+        cache.put(a, output);
+        assertEquals(output, cache.get(a));
+
+        // Same size, same path, different contents, e.g. replaced within the same second
+        Files.writeString(nativeImage, "#!/bin/sh\necho native-image 21.3.1.0-Final Mandrel Distribution (Java Version 17.0.1+12)\n", UTF_8);
+        final String b = VersionCache.localFingerprint(nativeImage);
+        assertFalse(a.equals(b), "A different native-image must not hit the cache");
+        assertNull(cache.get(b));
+    }
+
+    @Test
+    public void startupTimeline(@TempDir Path tmp) throws IOException, InterruptedException {
+        final Path log = tmp.resolve("build-and-run.log");
+        // Earlier content, e.g. the build, is not the app's output
+        Files.writeString(log, "[INFO] BUILD SUCCESS\n", UTF_8);
+        final int port = ResourceAllocator.freePort();
+        final StartupTimeline timeline = new StartupTimeline(log, port).start(ProcessHandle.current());
+        Thread.sleep(20);
+        assertNull(timeline.get(StartupTimeline.Phase.FIRST_OUTPUT), "Content from before the start must be skipped");
+        Files.writeString(log, "__  ____  __  _____   ___  __ ____  ______ \n", UTF_8, StandardOpenOption.APPEND);
+        Thread.sleep(20);
+        Files.writeString(log, "INFO  [io.quarkus] (main) quarkus-full-microprofile 1.0.0-SNAPSHOT native " +
+                "(powered by Quarkus 3.2.0.Final) started in 0.025s. Listening on: http://0.0.0.0:8080\n", UTF_8, StandardOpenOption.APPEND);
+        Thread.sleep(20);
+        try (ServerSocket s = new ServerSocket(port)) {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (timeline.get(StartupTimeline.Phase.FIRST_CONNECTION) == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            timeline.ok();
+        }
+        final StartupTimeline.Phase[] phases = ProcessLifecycle.isProcNetTcpAvailable() ?
+                StartupTimeline.Phase.values() :
+                Stream.of(StartupTimeline.Phase.values()).filter(p -> p != StartupTimeline.Phase.LISTENING)
+                        .toArray(StartupTimeline.Phase[]::new);
+        long previous = 0;
+        for (StartupTimeline.Phase p : phases) {
+            final long ms = timeline.sinceSpawnMs(p);
+            assertTrue(ms >= previous, p + " at " + ms + " ms must not precede the previous phase, timeline: " + timeline);
+            previous = ms;
+        }
+        assertTrue(timeline.sinceSpawnMs(StartupTimeline.Phase.STARTED_LOG) >= 40,
+                "The started line was written 40 ms after the start, timeline: " + timeline);
+        final LogBuilder.Log l = timeline.log(new LogBuilder().app("test")).build();
+        assertTrue(l.headerCSV.contains("spawnToStartedLogMs") && l.headerCSV.contains("spawnToFirstOKMs"), l.headerCSV);
+    }
+
+    @Test
+    public void parseSerialGCPhases(@TempDir Path tmp) throws IOException {
+        final Path log = tmp.resolve("build-and-run.log");
+        Files.writeString(log, "" +
+                "perf stat ./target/quarkus-json-runner -XX:+PrintGC\n" +
+                "[Incremental GC (CollectOnAllocation) 262144K->10240K, 0.0100000 secs]\n" +
+                "PerfCheckTest phase dump of ./target/quarkus-json-runner -XX:+PrintGC\n" +
+                "[Incremental GC (CollectOnAllocation) 262144K->10240K, 0.0200000 secs]\n" +
+                "[Full GC (CollectOnAllocation) 262144K->10240K, 0.1000000 secs]\n" +
+                "PerfCheckTest phase dumpStream of ./target/quarkus-json-runner -XX:+PrintGC\n" +
+                "[Incremental GC (CollectOnAllocation) 262144K->10240K, 0.0300000 secs]\n" +
+                "INFO  [io.quarkus] (Shutdown thread) quarkus-json stopped in 0.001s\n", UTF_8);
+        final Pattern end = Pattern.compile(".*(PerfCheckTest phase |quarkus.*stopped).*");
+        final Commands.SerialGCLog dump = parseSerialGCLog(log,
+                Pattern.compile(Pattern.quote("PerfCheckTest phase dump of ./target/quarkus-json-runner -XX:+PrintGC")), end, false);
+        assertEquals(1, dump.incrementalGCevents);
+        assertEquals(1, dump.fullGCevents);
+        assertEquals(0.12, dump.timeSpentInGCs, 1e-9);
+        final Commands.SerialGCLog dumpStream = parseSerialGCLog(log,
+                Pattern.compile(Pattern.quote("PerfCheckTest phase dumpStream of ./target/quarkus-json-runner -XX:+PrintGC")), end, false);
+        assertEquals(1, dumpStream.incrementalGCevents);
+        assertEquals(0, dumpStream.fullGCevents);
+        final Commands.SerialGCLog all = parseSerialGCLog(log, "./target/quarkus-json-runner -XX:+PrintGC", false);
+        assertEquals(3, all.incrementalGCevents, "The whole run is not cut by the phases");
+    }
+
+    @Test
+    public void streamedResponse() throws IOException {
+        final byte[] body = ("" +
+                "data:{\"id\":1,\"name\":\"Orange\"}\n\n" +
+                "data:{\"id\":2,\"name\":\"Pear\"}\n\n" +
+                "data:{\"id\":3,\"name\":\"Apple\"}\n\n").getBytes(UTF_8);
+        // A few bytes per read, markers end up split between reads
+        final InputStream trickle = new ByteArrayInputStream(body) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        final StreamedResponse r = StreamedResponse.read(200, trickle, "data:", System.nanoTime());
+        assertEquals(200, r.statusCode);
+        assertEquals(3, r.items);
+        assertEquals(body.length, r.bytes);
+        assertTrue(r.timeToFirstByteNs >= 0 && r.timeToFirstByteNs <= r.timeToLastByteNs, r.toString());
+        assertEquals(6, StreamedResponse.read(200, new ByteArrayInputStream(body), "\n", System.nanoTime()).items);
+        // Overlapping prefixes
+        assertEquals(2, StreamedResponse.read(200,
+                new ByteArrayInputStream("aaab-aab".getBytes(UTF_8)), "aab", System.nanoTime()).items);
+        final StreamedResponse empty = StreamedResponse.read(204, new ByteArrayInputStream(new byte[0]), "\n", System.nanoTime());
+        assertEquals(-1L, empty.timeToFirstByteNs);
+        assertEquals(0, empty.items);
+    }
+
+    @Test
+    public void loadGeneratorExpectedStatus() throws IOException, InterruptedException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/greet/greeting", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        try {
+            final URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/greet/greeting");
+            final HttpRequest put = HttpRequest.newBuilder()
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"greeting\":\"Hello\"}"))
+                    .uri(uri)
+                    .header("Content-Type", "application/json")
+                    .build();
+            final LoadGenerator.Result noContent = new LoadGenerator().requests(10)
+                    .run(List.of(new LoadGenerator.Endpoint("204", put, null, 204)));
+            assertEquals(0, noContent.getErrorsCount(), noContent.toString());
+            assertEquals(10, noContent.total.getTotalCount());
+            final LoadGenerator.Result ok = new LoadGenerator().requests(10)
+                    .run(List.of(new LoadGenerator.Endpoint("200", put, null)));
+            assertEquals(10, ok.getErrorsCount(), "HTTP 204 is not the default HTTP 200");
+        } finally {
+            server.stop(0);
+        }
+    }
 }
@@ -248,6 +248,27 @@ public enum WhitelistLogLines {
             };
         }
     },
+    QUARKUS_VERTX_PERF {
+        @Override
+        public Pattern[] get(boolean inContainer) {
+            return new Pattern[]{
+                    // Params quirk, harmless
+                    Pattern.compile(".*Unrecognized configuration key.*quarkus.home.*was provided.*"),
+                    Pattern.compile(".*Unrecognized configuration key.*quarkus.version.*was provided.*"),
+                    // Expected part of the app log
+                    Pattern.compile(".*'table \"fruits\" does not exist, skipping'.*"),
+                    // Not sure, definitely not Mandrel related though
+                    Pattern.compile(".*xml-apis:xml-apis:jar:.* has been relocated to xml-apis:xml-apis:jar:.*"),
+                    // GC warning thrown in GraalVM >= 22.0 under constraint environment (e.g. CI) see https://github.com/Karm/mandrel-integration-tests/issues/68
+                    Pattern.compile(".*GC warning: [0-9.]+s spent in [0-9]+ GCs during the last stage, taking up [0-9]+.[0-9]+% of the time.*"),
+                    // https://github.com/quarkusio/quarkus/issues/30508#issuecomment-1402066131
+                    Pattern.compile(".*Warning: Could not register io.netty.* queryAllPublicMethods for reflection.*"),
+                    // Deprecated/to be updated with Rest Easy Reactive
+                    Pattern.compile(".*The option '-H:ReflectionConfigurationResources=META-INF/native-image/io.netty/netty-transport/reflection-config.json' is experimental.*"),
+                    Pattern.compile(".*The option '-H:IncludeResourceBundles=yasson-messages' is experimental.*"),
+            };
+        }
+    },
     HELIDON_QUICKSTART_SE {
         @Override
         public Pattern[] get(boolean inContainer) {
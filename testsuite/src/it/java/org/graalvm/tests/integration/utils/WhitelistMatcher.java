@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Whitelist of an app, i.e. its own patterns followed by {@link WhitelistLogLines#ALL}, compiled once
+ * per app and container mode. Most log lines are not errors at all, so the error detection is guarded
+ * by a cheap case-insensitive keyword search, and the error lines are then tested just against
+ * the whitelist patterns whose required literal, if any could be extracted, is present on the line.
+ *
+ * Big logs are scanned in parallel chunks. Hits are counted per pattern so as
+ * whitelist entries that never match anything can be spotted and removed.
+ */
+public class WhitelistMatcher {
+
+    private static final Map<String, WhitelistMatcher> CACHE = new ConcurrentHashMap<>();
+    private static final int CHUNK_LINES = 20_000;
+    private static final int MIN_LITERAL_LENGTH = 3;
+
+    public static class Result {
+        public final Set<String> offendingLines;
+        public final List<String> whitelistedLines;
+        public final long[] hits;
+
+        public Result(Set<String> offendingLines, List<String> whitelistedLines, long[] hits) {
+            this.offendingLines = offendingLines;
+            this.whitelistedLines = whitelistedLines;
+            this.hits = hits;
+        }
+    }
+
+    public final String name;
+    public final Pattern[] patterns;
+    private final String[] literals;
+
+    private WhitelistMatcher(String name, Pattern[] patterns) {
+        this.name = name;
+        this.patterns = patterns;
+        this.literals = new String[patterns.length];
+        for (int i = 0; i < patterns.length; i++) {
+            literals[i] = requiredLiteral(patterns[i]);
+        }
+    }
+
+    public static WhitelistMatcher of(WhitelistLogLines whitelist, boolean inContainer) {
+        return CACHE.computeIfAbsent(whitelist.name() + (inContainer ? "_container" : ""), k -> {
+            final Pattern[] app = whitelist.get(inContainer);
+            final Pattern[] all = WhitelistLogLines.ALL.get(inContainer);
+            final Pattern[] p = new Pattern[app.length + all.length];
+            System.arraycopy(app, 0, p, 0, app.length);
+            System.arraycopy(all, 0, p, app.length, all.length);
+            return new WhitelistMatcher(k, p);
+        });
+    }
+
+    /**
+     * @param errorPattern  lines matching it are errors unless whitelisted
+     * @param errorKeywords lower case strings at least one of which must be on a line
+     *                      for the errorPattern to match it, i.e. a cheap pre-check
+     */
+    public Result scan(Path log, Pattern errorPattern, String[] errorKeywords) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        // InputStreamReader replaces malformed input instead of throwing
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(Files.newInputStream(log), UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        final int chunks = (lines.size() + CHUNK_LINES - 1) / CHUNK_LINES;
+        final IntStream chunkIds = IntStream.range(0, chunks);
+        final List<Result> results = (chunks > 1 ? chunkIds.parallel() : chunkIds)
+                .mapToObj(c -> scan(lines.subList(c * CHUNK_LINES, Math.min(lines.size(), (c + 1) * CHUNK_LINES)), errorPattern, errorKeywords))
+                .collect(Collectors.toList());
+        final Set<String> offending = new LinkedHashSet<>();
+        final List<String> whitelisted = new ArrayList<>();
+        final long[] hits = new long[patterns.length];
+        for (Result r : results) {
+            offending.addAll(r.offendingLines);
+            whitelisted.addAll(r.whitelistedLines);
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] += r.hits[i];
+            }
+        }
+        return new Result(Collections.unmodifiableSet(offending), Collections.unmodifiableList(whitelisted), hits);
+    }
+
+    private Result scan(List<String> lines, Pattern errorPattern, String[] errorKeywords) {
+        final Set<String> offending = new LinkedHashSet<>();
+        final List<String> whitelisted = new ArrayList<>();
+        final long[] hits = new long[patterns.length];
+        for (String line : lines) {
+            if (!containsIgnoreCase(line, errorKeywords) || !errorPattern.matcher(line).matches()) {
+                continue;
+            }
+            final int i = whitelistedBy(line);
+            if (i >= 0) {
+                hits[i]++;
+                whitelisted.add(line);
+            } else {
+                offending.add(line);
+            }
+        }
+        return new Result(offending, whitelisted, hits);
+    }
+
+    /**
+     * @return index of the first pattern matching the line, -1 if none does
+     */
+    public int whitelistedBy(String line) {
+        for (int i = 0; i < patterns.length; i++) {
+            if ((literals[i] == null || line.contains(literals[i])) && patterns[i].matcher(line).matches()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean containsIgnoreCase(String line, String[] keywords) {
+        for (String k : keywords) {
+            for (int i = 0; i <= line.length() - k.length(); i++) {
+                if (line.regionMatches(true, i, k, 0, k.length())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the longest literal a line must contain to possibly match the pattern.
+     * This is deliberately conservative, patterns with alternations, flags or any escape
+     * sequence we do not recognize yield null, i.e. the pattern is always evaluated.
+     */
+    static String requiredLiteral(Pattern pattern) {
+        final String p = pattern.pattern();
+        if (pattern.flags() != 0) {
+            return null;
+        }
+        String longest = "";
+        final StringBuilder run = new StringBuilder();
+        for (int i = 0; i < p.length(); i++) {
+            final char c = p.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= p.length()) {
+                        return null;
+                    }
+                    final char e = p.charAt(++i);
+                    if (Character.isLetterOrDigit(e)) {
+                        // \s, \d, \t, ... are fine to just end the run, anything more elaborate we don't bother with
+                        if ("sSdDwWtnrfbB".indexOf(e) < 0) {
+                            return null;
+                        }
+                        longest = longer(longest, run);
+                        run.setLength(0);
+                    } else {
+                        run.append(e);
+                    }
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The preceding char is optional
+                    if (run.length() > 0) {
+                        run.setLength(run.length() - 1);
+                    }
+                    longest = longer(longest, run);
+                    run.setLength(0);
+                    if (c == '{') {
+                        i = p.indexOf('}', i);
+                        if (i < 0) {
+                            return null;
+                        }
+                    }
+                    break;
+                case '[':
+                    // Character class; skip it
+                    longest = longer(longest, run);
+                    run.setLength(0);
+                    i++;
+                    while (i < p.length() && p.charAt(i) != ']') {
+                        if (p.charAt(i) == '\\') {
+                            i++;
+                        }
+                        i++;
+                    }
+                    if (i >= p.length()) {
+                        return null;
+                    }
+                    // A quantifier after the class is harmless, the run is empty
+                    break;
+                case '|':
+                case '(':
+                case ')':
+                    // Groups might be optional or alternated, not worth analyzing
+                    return null;
+                case '.':
+                case '+':
+                case '^':
+                case '$':
+                    longest = longer(longest, run);
+                    run.setLength(0);
+                    break;
+                default:
+                    run.append(c);
+            }
+        }
+        longest = longer(longest, run);
+        return longest.length() >= MIN_LITERAL_LENGTH ? longest : null;
+    }
+
+    private static String longer(String longest, StringBuilder run) {
+        return run.length() > longest.length() ? run.toString() : longest;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils.thresholds;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Upper limit of an arbitrary metric, e.g. instructions or timeSpentInGCs, in one of the forms:
+ * - 1.5e9, an absolute value,
+ * - 1.2x, a multiple of the same metric measured in JVM mode,
+ * - +15%, a percentage over the same metric measured in JVM mode.
+ */
+public class MetricThreshold {
+
+    public enum Kind {
+        ABSOLUTE,
+        RATIO_TO_JVM,
+        PERCENT_OVER_JVM
+    }
+
+    //@formatter:off
+    public static final Pattern VALUE_PATTERN = Pattern.compile(
+            "\\s*(?<value>[+-]?[0-9]+(?:\\.[0-9]+)?(?:[eE][+-]?[0-9]+)?)\\s*(?<unit>x|%)?\\s*");
+    //@formatter:on
+
+    // Anything time related is noisier than counters and sizes, see FAIL_ON_PERF_REGRESSION
+    private static final Pattern TIME_SENSITIVE_METRIC = Pattern.compile(
+            "(?i:.*(time|latency|clock|second|duration).*)|.*(Ms|Ns)");
+
+    public final Kind kind;
+    public final double value;
+
+    public MetricThreshold(Kind kind, double value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    /**
+     * @return null if the text is not a threshold value
+     */
+    public static MetricThreshold parse(String text) {
+        final Matcher m = VALUE_PATTERN.matcher(text);
+        if (!m.matches()) {
+            return null;
+        }
+        final double v = Double.parseDouble(m.group("value"));
+        final String unit = m.group("unit");
+        if (unit == null) {
+            return new MetricThreshold(Kind.ABSOLUTE, v);
+        }
+        return new MetricThreshold("x".equals(unit) ? Kind.RATIO_TO_JVM : Kind.PERCENT_OVER_JVM, v);
+    }
+
+    public boolean isRelative() {
+        return kind != Kind.ABSOLUTE;
+    }
+
+    /**
+     * @param jvmValue the metric in JVM mode, ignored for absolute thresholds
+     */
+    public double limit(double jvmValue) {
+        switch (kind) {
+            case RATIO_TO_JVM:
+                return jvmValue * value;
+            case PERCENT_OVER_JVM:
+                return jvmValue * (1d + value / 100d);
+            default:
+                return value;
+        }
+    }
+
+    public static boolean isTimeSensitive(String metric) {
+        return TIME_SENSITIVE_METRIC.matcher(metric).matches();
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case RATIO_TO_JVM:
+                return value + "x JVM mode";
+            case PERCENT_OVER_JVM:
+                return (value >= 0 ? "+" : "") + value + "% over JVM mode";
+            default:
+                return String.valueOf(value);
+        }
+    }
+}
@@ -62,11 +62,33 @@ public class Thresholds {
                     "(?:max\\s*=\\s*\"(?<max>[^\"]+?)\"\\s*,?\\s*))+\\s*\\)\\s*");
     public static final Pattern PROP_PATTERN = Pattern.compile(
             "\\s*(?<key>[^=]+?)\\s*=\\s*(?<value>[0-9]+?)\\s*");
+    // e.g. linux.RSS.threshold.kB=baseline(3), the limit is derived from PerfHistory, k defaults to PERF_HISTORY_K
+    public static final Pattern BASELINE_PATTERN = Pattern.compile(
+            "\\s*(?<key>[^=]+?)\\s*=\\s*baseline\\s*(?:\\(\\s*(?<k>[0-9]+(?:\\.[0-9]+)?)\\s*\\))?\\s*");
+    public static final Pattern METRIC_PATTERN = Pattern.compile(
+            "\\s*(?<key>[^=]+?)\\s*=(?<threshold>" + MetricThreshold.VALUE_PATTERN.pattern() + ")");
     //@formatter:on
     private static final String QMARK = "@IfQ";
     private static final String MMARK = "@IfM";
 
     public static Map<String, Long> parseProperties(final Path conf) throws IOException {
+        return parseProperties(conf, new HashMap<>());
+    }
+
+    /**
+     * @param baselines filled with keys whose limit is to be derived from the history of measurements,
+     *                  the value is k in median + k * MAD, NaN if the default is to be used
+     */
+    public static Map<String, Long> parseProperties(final Path conf, final Map<String, Double> baselines) throws IOException {
+        return parseProperties(conf, baselines, new HashMap<>());
+    }
+
+    /**
+     * @param metrics filled with all numeric thresholds, including those with decimal values and those
+     *                relative to JVM mode, e.g. linux.native.instructions=1.2x, see {@link MetricThreshold}
+     */
+    public static Map<String, Long> parseProperties(final Path conf, final Map<String, Double> baselines,
+            final Map<String, MetricThreshold> metrics) throws IOException {
         final Map<String, Long> props = new HashMap<>();
         // Ignore empty lines, leading, trailing spaces, comments
         //@formatter:off
@@ -126,9 +148,26 @@ public class Thresholds {
                 final String value = propMatch.group("value");
                 if (useProp) {
                     props.put(key, Long.parseLong(value));
+                    metrics.put(key, new MetricThreshold(MetricThreshold.Kind.ABSOLUTE, Long.parseLong(value)));
+                }
+                continue;
+            }
+            final Matcher metricMatch = METRIC_PATTERN.matcher(line);
+            if (metricMatch.matches()) {
+                if (useProp) {
+                    metrics.put(metricMatch.group("key"), MetricThreshold.parse(metricMatch.group("threshold")));
+                }
+                continue;
+            }
+            final Matcher baselineMatch = BASELINE_PATTERN.matcher(line);
+            if (baselineMatch.matches()) {
+                final String k = baselineMatch.group("k");
+                if (useProp) {
+                    baselines.put(baselineMatch.group("key"), k == null ? Double.NaN : Double.parseDouble(k));
                 }
             } else {
-                LOGGER.error("Line '" + line + "' does not match the pattern '" + PROP_PATTERN.pattern() + "'. Ignoring.");
+                LOGGER.error("Line '" + line + "' does not match any of the patterns '" + PROP_PATTERN.pattern() + "', '" +
+                        METRIC_PATTERN.pattern() + "', '" + BASELINE_PATTERN.pattern() + "'. Ignoring.");
             }
         }
         return props;
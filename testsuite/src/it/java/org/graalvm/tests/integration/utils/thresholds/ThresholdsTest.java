@@ -22,6 +22,7 @@ package org.graalvm.tests.integration.utils.thresholds;
 import org.graalvm.tests.integration.utils.versions.QuarkusVersion;
 import org.graalvm.tests.integration.utils.versions.UsedVersion;
 import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
@@ -32,6 +33,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 
@@ -45,6 +47,7 @@ import static org.graalvm.tests.integration.utils.thresholds.Thresholds.MVERSION
 import static org.graalvm.tests.integration.utils.thresholds.Thresholds.QVERSION_PATTERN;
 import static org.graalvm.tests.integration.utils.thresholds.Thresholds.parseProperties;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -56,6 +59,56 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 @Tag("testing-testsuite")
 public class ThresholdsTest {
 
+    @Test
+    public void testBaseline() throws IOException {
+        final Path config = Files.createTempFile(ThresholdsTest.class.getSimpleName(), ".conf");
+        try {
+            Files.writeString(config, "some.property.a=100\n" +
+                    "some.property.a=baseline\n" +
+                    "some.property.b = baseline( 2.5 )\n" +
+                    "some.property.c=baseline(x)\n");
+            final Map<String, Double> baselines = new HashMap<>();
+            final Map<String, Long> thresholds = parseProperties(config, baselines);
+            assertEquals(Map.of("some.property.a", 100L), thresholds, "A hand-tuned value stays as a cap.");
+            assertEquals(2, baselines.size(), baselines.toString());
+            assertTrue(baselines.get("some.property.a").isNaN(), "k is not set, the default is to be used.");
+            assertEquals(2.5d, baselines.get("some.property.b"));
+        } finally {
+            Files.deleteIfExists(config);
+        }
+    }
+
+    @Test
+    public void testMetricThreshold() throws IOException {
+        final Path config = Files.createTempFile(ThresholdsTest.class.getSimpleName(), ".conf");
+        try {
+            Files.writeString(config, "linux.native.RSS.threshold.kB=1000\n" +
+                    "linux.native.instructions = 1.2x\n" +
+                    "linux.native.timeSpentInGCs=+15%\n" +
+                    "linux.native.cacheMissRate=0.05\n" +
+                    "linux.native.branches=1.5e9\n" +
+                    "linux.native.p99.latency=baseline\n");
+            final Map<String, MetricThreshold> metrics = new HashMap<>();
+            final Map<String, Long> thresholds = parseProperties(config, new HashMap<>(), metrics);
+            assertEquals(Map.of("linux.native.RSS.threshold.kB", 1000L), thresholds, "Only long values are legacy thresholds.");
+            assertEquals(5, metrics.size(), metrics.toString());
+            assertEquals(1000d, metrics.get("linux.native.RSS.threshold.kB").limit(0d));
+            assertEquals(MetricThreshold.Kind.RATIO_TO_JVM, metrics.get("linux.native.instructions").kind);
+            assertEquals(1200d, metrics.get("linux.native.instructions").limit(1000d), 1e-9);
+            assertEquals(MetricThreshold.Kind.PERCENT_OVER_JVM, metrics.get("linux.native.timeSpentInGCs").kind);
+            assertEquals(115d, metrics.get("linux.native.timeSpentInGCs").limit(100d), 1e-9);
+            assertEquals(0.05d, metrics.get("linux.native.cacheMissRate").limit(1000d), 1e-9);
+            assertEquals(1.5e9d, metrics.get("linux.native.branches").limit(0d), 1e-9);
+            assertNull(MetricThreshold.parse("baseline"));
+            assertTrue(MetricThreshold.isTimeSensitive("timeSpentInGCs"));
+            assertTrue(MetricThreshold.isTimeSensitive("buildTimeMs"));
+            assertTrue(MetricThreshold.isTimeSensitive("p99.latency"));
+            assertFalse(MetricThreshold.isTimeSensitive("instructions"));
+        } finally {
+            Files.deleteIfExists(config);
+        }
+    }
+
     @ParameterizedTest
     //@formatter:off
     @CsvSource(value = {
@@ -26,8 +26,11 @@ import org.jboss.logging.Logger;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +85,10 @@ import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
 public class UsedVersion {
     private static final int UNDEFINED = -1;
 
+    // What the resolved versions were resolved from, see VersionCache
+    private static final Map<Boolean, String> FINGERPRINTS = new ConcurrentHashMap<>();
+    private static final Map<String, String> RESOLVED = new ConcurrentSkipListMap<>();
+
     public static Version getVersion(boolean inContainer) {
         return inContainer ? InContainer.mVersion.version : Locally.mVersion.version;
     }
@@ -102,6 +109,22 @@ public class UsedVersion {
         return inContainer ? InContainer.mVersion.jdkUpdate : Locally.mVersion.jdkUpdate;
     }
 
+    /**
+     * @return what identifies the native-image the version was resolved from, e.g. the builder image id,
+     * empty if it is not known, see {@link VersionCache}
+     */
+    public static String fingerprint(boolean inContainer) {
+        getVersion(inContainer);
+        return FINGERPRINTS.getOrDefault(inContainer, "");
+    }
+
+    /**
+     * @return versions resolved so far, without resolving any, e.g. for report headers
+     */
+    public static Map<String, String> resolved() {
+        return Collections.unmodifiableMap(RESOLVED);
+    }
+
     // Implements version parsing after https://github.com/oracle/graal/pull/6302
     static final class VersionParseHelper {
 
@@ -288,6 +311,10 @@ public class UsedVersion {
                     mandrelVersion.version == null ? "UNKNOWN" : mandrelVersion.version.toString(),
                     inContainer ? "in container" : "installed locally on PATH",
                     mandrelVersion.jdkFeature, mandrelVersion.jdkInterim, mandrelVersion.jdkUpdate, mandrelVersion.betaBits);
+            RESOLVED.put(inContainer ? "Mandrel in container" : "Mandrel locally", String.format("%s, JDK %d.%d.%d%s, %s",
+                    mandrelVersion.version == null ? "UNKNOWN" : mandrelVersion.version.toString(),
+                    mandrelVersion.jdkFeature, mandrelVersion.jdkInterim, mandrelVersion.jdkUpdate, mandrelVersion.betaBits,
+                    FINGERPRINTS.getOrDefault(inContainer, "not fingerprinted")));
             return mandrelVersion;
         }
 
@@ -334,15 +361,64 @@ public class UsedVersion {
         }
 
         private static List<String> runNativeImageVersion(boolean inContainer) {
-            final String out;
+            FINGERPRINTS.remove(inContainer);
+            final String fingerprint;
             if (inContainer) {
-                final List<String> pullCmd = List.of(CONTAINER_RUNTIME, "pull", BUILDER_IMAGE);
-                LOGGER.info("Running command " + pullCmd + " so as to pull Mandrel image locally.");
-                try {
-                    Commands.runCommand(pullCmd);
-                } catch (IOException e) {
-                    throw new RuntimeException("Failing to pull " + BUILDER_IMAGE, e);
+                pullBuilderImage();
+                fingerprint = fingerprintOrNull(() -> VersionCache.imageFingerprint(BUILDER_IMAGE));
+            } else if (System.getProperty("FAKE_NATIVE_IMAGE_DIR") != null) {
+                // The testsuite's own tests, throwaway scripts, not worth keeping
+                fingerprint = null;
+            } else {
+                final String command = IS_THIS_WINDOWS ? "native-image.cmd" : "native-image";
+                fingerprint = fingerprintOrNull(() -> VersionCache.localFingerprint(VersionCache.which(command)));
+            }
+            if (fingerprint != null) {
+                FINGERPRINTS.put(inContainer, fingerprint);
+            }
+            final VersionCache cache = new VersionCache(VersionCache.DIR);
+            if (fingerprint != null && VersionCache.ENABLED) {
+                final List<String> cached = cache.get(fingerprint);
+                if (cached != null) {
+                    LOGGER.info("Using cached native-image version output for " + fingerprint);
+                    return cached;
                 }
+            }
+            final List<String> out = executeNativeImageVersion(inContainer);
+            // Only what looks like a version, not e.g. an error of a runtime that is not running
+            if (fingerprint != null && VersionCache.ENABLED
+                    && out.stream().anyMatch(l -> l.startsWith("GraalVM") || l.startsWith("native-image"))) {
+                cache.put(fingerprint, out);
+            }
+            return out;
+        }
+
+        private interface Fingerprint {
+            String get() throws IOException;
+        }
+
+        private static String fingerprintOrNull(Fingerprint f) {
+            try {
+                return f.get();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to fingerprint native-image, its version will not be cached: " + e.getMessage());
+                return null;
+            }
+        }
+
+        private static void pullBuilderImage() {
+            final List<String> pullCmd = List.of(CONTAINER_RUNTIME, "pull", BUILDER_IMAGE);
+            LOGGER.info("Running command " + pullCmd + " so as to pull Mandrel image locally.");
+            try {
+                Commands.runCommand(pullCmd);
+            } catch (IOException e) {
+                throw new RuntimeException("Failing to pull " + BUILDER_IMAGE, e);
+            }
+        }
+
+        private static List<String> executeNativeImageVersion(boolean inContainer) {
+            final String out;
+            if (inContainer) {
                 final List<String> cmd = List.of(CONTAINER_RUNTIME, "run", "-t", BUILDER_IMAGE, "native-image", "--version");
                 LOGGER.info("Running command " + cmd + " to determine Mandrel version used.");
                 try {
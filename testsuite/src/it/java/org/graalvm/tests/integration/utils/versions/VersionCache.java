@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2024, Red Hat Inc. All rights reserved.
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * You may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package org.graalvm.tests.integration.utils.versions;
+
+import org.graalvm.tests.integration.utils.Commands;
+import org.jboss.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.graalvm.tests.integration.utils.Commands.CONTAINER_RUNTIME;
+import static org.graalvm.tests.integration.utils.Commands.IS_THIS_WINDOWS;
+import static org.graalvm.tests.integration.utils.Commands.getProperty;
+import static org.graalvm.tests.integration.utils.Commands.getRunCommand;
+
+/**
+ * Keeps `native-image --version' output on disk, so as it is not run again, let alone in a freshly started
+ * builder image container, as long as the native-image it would run is the same.
+ *
+ * The same is identified by a fingerprint:
+ * - locally, the real path of native-image found on PATH, its size, its modification time,
+ *   and its SHA-256 if it is a small launcher script,
+ * - in a container, the id, i.e. the digest, of the builder image after it was pulled.
+ *
+ * The cache lives in VERSION_CACHE_DIR, ~/.cache/mandrel-integration-tests/native-image-versions by default,
+ * i.e. it survives clean builds. VERSION_CACHE=false disables it.
+ */
+public class VersionCache {
+
+    private static final Logger LOGGER = Logger.getLogger(VersionCache.class.getName());
+
+    public static final boolean ENABLED = Boolean.parseBoolean(getProperty("VERSION_CACHE", "true"));
+    public static final Path DIR = Path.of(getProperty("VERSION_CACHE_DIR",
+            Path.of(System.getProperty("user.home"), ".cache", "mandrel-integration-tests", "native-image-versions").toString()));
+
+    // Launcher scripts are hashed, native executables are too big for that to be worth it
+    private static final long HASHED_MAX_BYTES = 1024 * 1024;
+
+    private final Path dir;
+
+    public VersionCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the cached output, null if there is none
+     */
+    public List<String> get(String fingerprint) {
+        final Path f = file(fingerprint);
+        if (!Files.isReadable(f)) {
+            return null;
+        }
+        try {
+            return Arrays.asList(Files.readString(f, UTF_8).split("\n"));
+        } catch (IOException e) {
+            LOGGER.warnf("Failed to read %s: %s", f, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(String fingerprint, List<String> output) {
+        final Path f = file(fingerprint);
+        try {
+            Files.createDirectories(dir);
+            // Another JVM fork might be reading it at the same time
+            final Path tmp = Files.createTempFile(dir, f.getFileName().toString(), ".tmp");
+            Files.writeString(tmp, String.join("\n", output), UTF_8);
+            Files.move(tmp, f, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warnf("Failed to write %s: %s", f, e.getMessage());
+        }
+    }
+
+    private Path file(String fingerprint) {
+        return dir.resolve(sha256(fingerprint.getBytes(UTF_8)) + ".txt");
+    }
+
+    /**
+     * @return null if the executable does not exist
+     */
+    public static String localFingerprint(Path nativeImage) throws IOException {
+        if (nativeImage == null || !Files.isRegularFile(nativeImage)) {
+            return null;
+        }
+        final Path real = nativeImage.toRealPath();
+        final BasicFileAttributes a = Files.readAttributes(real, BasicFileAttributes.class);
+        final StringBuilder s = new StringBuilder("local:").append(real)
+                .append(':').append(a.size())
+                .append(':').append(a.lastModifiedTime().toMillis());
+        if (a.size() <= HASHED_MAX_BYTES) {
+            s.append(':').append(sha256(Files.readAllBytes(real)));
+        }
+        return s.toString();
+    }
+
+    /**
+     * @return null if the image is not available locally
+     */
+    public static String imageFingerprint(String image) throws IOException {
+        final List<String> cmd = getRunCommand(CONTAINER_RUNTIME, "image", "inspect", "--format", "{{.Id}}", image);
+        final String id = Commands.runCommand(cmd).trim();
+        if (!id.matches("(sha256:)?[0-9a-f]{12,}")) {
+            LOGGER.warnf("Could not get the id of image %s: %s", image, id);
+            return null;
+        }
+        return "image:" + image + ":" + id;
+    }
+
+    /**
+     * @return the executable the command would run, the first one on PATH, null if there is none
+     */
+    public static Path which(String command) {
+        if (command.contains(File.separator)) {
+            return Path.of(command);
+        }
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String d : path.split(File.pathSeparator)) {
+            final Path p = Path.of(d, command);
+            if (Files.isRegularFile(p) && (IS_THIS_WINDOWS || Files.isExecutable(p))) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    static String sha256(byte[] bytes) {
+        try {
+            final StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+}